@@ -0,0 +1,197 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.agent.instrument;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gcr.callbacks.GcRadarCallback;
+import com.gcr.monitors.SimpleObjectMonitor;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class AutoRegistration holds the monitor shared by the instrumented
+ * classes & is called at the end of their constructors to register the new
+ * instances. The application can get the monitor to read its metrics & poll
+ * the pending objects, & can set the callback the registered objects report
+ * to.
+ *
+ * An instance is registered once, by the constructor of the most derived
+ * instrumented class, & only one instance in every sample interval is. The
+ * registration goes through
+ * {@link SimpleObjectMonitor#offerObject(Object, GcRadarCallback)} so that the
+ * constructors never wait for a pass of the monitor thread. The registration
+ * never throws, the failures are counted.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class AutoRegistration {
+
+	private static final GcRadarCallback NO_CALLBACK = new GcRadarCallback() {
+		@Override
+		public <T> void objectReclaimedByGC(
+				AbstractObjectRefrenceKey<T> objWrapper) {
+		}
+
+		@Override
+		public <T> void noSurvivingRefrence(
+				AbstractObjectRefrenceKey<T> objWrapper) {
+		}
+	};
+
+	private static final Set<String> INSTRUMENTED_CLASSES = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	// the instrumented class, among the class & its super classes, whose
+	// constructor registers the instances of the class
+	private static final ClassValue<String> REGISTERING_CLASS = new ClassValue<String>() {
+		@Override
+		protected String computeValue(Class<?> type) {
+			for (Class<?> current = type; current != null; current = current
+					.getSuperclass()) {
+				if (INSTRUMENTED_CLASSES.contains(current.getName())) {
+					return current.getName();
+				}
+			}
+			return null;
+		}
+	};
+
+	private static final AtomicLong FAILED_REGISTRATIONS = new AtomicLong();
+
+	private static volatile SimpleObjectMonitor<Object> monitor;
+	private static volatile GcRadarCallback callback = NO_CALLBACK;
+	private static volatile int sampleInterval = 1;
+
+	private AutoRegistration() {
+	}
+
+	/**
+	 * Installs the monitor the instances are registered with. Called by the
+	 * agent before any class is instrumented.
+	 *
+	 * @param sharedMonitor
+	 *            the monitor
+	 * @param interval
+	 *            one instance in this many is registered
+	 * @throws IllegalArgumentException
+	 *             if interval is less than 1
+	 */
+	static void install(SimpleObjectMonitor<Object> sharedMonitor, int interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException(
+					"sampleInterval can not be less than 1");
+		}
+
+		sampleInterval = interval;
+		monitor = sharedMonitor;
+	}
+
+	/**
+	 * Notes a class as instrumented, before its instrumented constructors can
+	 * run.
+	 *
+	 * @param className
+	 *            the binary name of the class
+	 */
+	static void markInstrumented(String className) {
+		INSTRUMENTED_CLASSES.add(className);
+	}
+
+	/**
+	 * Called at the end of the constructors of the instrumented classes.
+	 *
+	 * @param object
+	 *            the instance constructed
+	 * @param constructedClass
+	 *            the binary name of the class whose constructor ended
+	 */
+	public static void register(Object object, String constructedClass) {
+		SimpleObjectMonitor<Object> current = monitor;
+		if (current == null) {
+			return;
+		}
+
+		int interval = sampleInterval;
+		if (interval > 1 && ThreadLocalRandom.current().nextInt(interval) != 0) {
+			return;
+		}
+
+		try {
+			// the constructors of the super classes run first, only the
+			// outermost instrumented one registers
+			if (constructedClass.equals(REGISTERING_CLASS.get(object
+					.getClass()))) {
+				current.offerObject(object, callback);
+			}
+		} catch (Throwable e) {
+			// never fail the constructor of the application
+			FAILED_REGISTRATIONS.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the monitor shared by the instrumented classes.
+	 *
+	 * @return the monitor, null if the agent is not running
+	 */
+	public static SimpleObjectMonitor<Object> getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * Sets the callback the instances registered from now on report their GC
+	 * events to. By default the events are only counted in the metrics of the
+	 * monitor.
+	 *
+	 * @param gcRadarCallback
+	 *            the callback, null for none
+	 */
+	public static void setCallback(GcRadarCallback gcRadarCallback) {
+		callback = gcRadarCallback == null ? NO_CALLBACK : gcRadarCallback;
+	}
+
+	/**
+	 * Gets the sample interval, one instance in this many is registered.
+	 *
+	 * @return the sample interval
+	 */
+	public static int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Gets the number of classes instrumented.
+	 *
+	 * @return the instrumented class count
+	 */
+	public static int getInstrumentedClassCount() {
+		return INSTRUMENTED_CLASSES.size();
+	}
+
+	/**
+	 * Gets the number of registrations that failed with an exception.
+	 *
+	 * @return the failed registration count
+	 */
+	public static long getFailedRegistrationCount() {
+		return FAILED_REGISTRATIONS.get();
+	}
+}
@@ -0,0 +1,144 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.agent.instrument;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+
+import com.gcr.agent.GcRadarAgent;
+import com.gcr.monitors.SimpleObjectMonitor;
+
+/**
+ * The Class AutoRegistrationAgent is the entry point of the auto-registration
+ * agent. It creates the monitor shared by the instrumented classes & installs
+ * the {@link ConstructorRegistrationTransformer}, so that the instances of the
+ * classes matched by the {@link AutoRegistrationOptions options} are
+ * registered without calling addObject.
+ *
+ * The agent is given on the command line,
+ * <code>-javaagent:gcradar-agent.jar=include=com.acme.**</code>, or attached
+ * to a running JVM with the {@link AutoRegistrationAttacher}. When attached,
+ * the classes already loaded are retransformed, the instances they created
+ * before are not registered. The sizes of the objects are recorded as with
+ * the {@link GcRadarAgent}.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class AutoRegistrationAgent {
+
+	private static ConstructorRegistrationTransformer transformer;
+
+	private AutoRegistrationAgent() {
+	}
+
+	/**
+	 * Called by the JVM when the agent is given on the command line.
+	 *
+	 * @param agentArgs
+	 *            the options of the agent
+	 * @param inst
+	 *            the instrumentation
+	 * @throws IllegalArgumentException
+	 *             if the options are invalid
+	 */
+	public static void premain(String agentArgs, Instrumentation inst) {
+		start(agentArgs, inst);
+	}
+
+	/**
+	 * Called by the JVM when the agent is attached to a running JVM.
+	 *
+	 * @param agentArgs
+	 *            the options of the agent
+	 * @param inst
+	 *            the instrumentation
+	 * @throws IllegalArgumentException
+	 *             if the options are invalid
+	 */
+	public static void agentmain(String agentArgs, Instrumentation inst) {
+		start(agentArgs, inst);
+	}
+
+	/**
+	 * Gets the transformer installed.
+	 *
+	 * @return the transformer, null if the agent is not running
+	 */
+	public static synchronized ConstructorRegistrationTransformer getTransformer() {
+		return transformer;
+	}
+
+	private static synchronized void start(String agentArgs,
+			Instrumentation inst) {
+		if (transformer != null) {
+			throw new IllegalStateException(
+					"The auto-registration agent is already running");
+		}
+
+		AutoRegistrationOptions options = AutoRegistrationOptions
+				.parse(agentArgs);
+		ClassPatternMatcher matcher = options.getMatcher();
+
+		GcRadarAgent.install(inst);
+
+		SimpleObjectMonitor<Object> monitor = new SimpleObjectMonitor<Object>();
+		// the instrumented objects must not keep the application from exiting
+		monitor.setDaemon(true);
+		monitor.setMaxTrackedCount(options.getMaxTracked());
+		if (options.getMbeanName() != null) {
+			try {
+				monitor.registerMBean(options.getMbeanName());
+			} catch (JMException e) {
+				throw new IllegalArgumentException("Invalid MBean name: '"
+						+ options.getMbeanName() + "'", e);
+			}
+		}
+		monitor.startMonitoring();
+		AutoRegistration.install(monitor, options.getSampleInterval());
+
+		transformer = new ConstructorRegistrationTransformer(matcher);
+		inst.addTransformer(transformer, true);
+
+		if (inst.isRetransformClassesSupported()) {
+			retransformLoadedClasses(inst, matcher);
+		}
+	}
+
+	private static void retransformLoadedClasses(Instrumentation inst,
+			ClassPatternMatcher matcher) {
+		List<Class<?>> loaded = new ArrayList<Class<?>>();
+		for (Class<?> type : inst.getAllLoadedClasses()) {
+			if (!type.isInterface() && !type.isArray()
+					&& matcher.matches(type.getName())
+					&& inst.isModifiableClass(type)) {
+				loaded.add(type);
+			}
+		}
+
+		// one by one, so that a class failing does not leave the others out
+		for (Class<?> type : loaded) {
+			try {
+				inst.retransformClasses(type);
+			} catch (Throwable e) {
+				// the class keeps its original constructors
+			}
+		}
+	}
+}
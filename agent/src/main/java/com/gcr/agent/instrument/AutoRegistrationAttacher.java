@@ -0,0 +1,104 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.agent.instrument;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * The Class AutoRegistrationAttacher attaches the auto-registration agent to
+ * a running JVM through the Attach API:
+ *
+ * <pre>
+ * java -jar gcradar-agent.jar &lt;pid&gt; include=com.acme.**,sampleInterval=64
+ * </pre>
+ *
+ * The Attach API is reached by reflection, it is in the
+ * <code>jdk.attach</code> module from Java 9 & in the <code>tools.jar</code>
+ * of the JDK before, which then has to be on the class path.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class AutoRegistrationAttacher {
+
+	private static final String VIRTUAL_MACHINE = "com.sun.tools.attach.VirtualMachine";
+
+	private AutoRegistrationAttacher() {
+	}
+
+	/**
+	 * Attaches the agent.
+	 *
+	 * @param args
+	 *            the pid of the JVM & the options of the agent
+	 * @throws Exception
+	 *             if the agent could not be attached
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err
+					.println("Usage: java -jar gcradar-agent.jar <pid> <options>");
+			System.exit(1);
+		}
+
+		// fail here rather than in the target JVM on invalid options
+		AutoRegistrationOptions.parse(args[1]);
+
+		attach(args[0], args[1]);
+		System.out.println("gcRadar agent attached to " + args[0]);
+	}
+
+	/**
+	 * Attaches the agent to a running JVM.
+	 *
+	 * @param pid
+	 *            the pid of the JVM
+	 * @param options
+	 *            the options of the agent
+	 * @throws Exception
+	 *             if the Attach API is not available or the agent could not
+	 *             be attached
+	 */
+	public static void attach(String pid, String options) throws Exception {
+		Class<?> virtualMachineClass;
+		try {
+			virtualMachineClass = Class.forName(VIRTUAL_MACHINE);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(
+					"The Attach API is not available, run the attacher with a JDK",
+					e);
+		}
+
+		String agentJar = new File(AutoRegistrationAttacher.class
+				.getProtectionDomain().getCodeSource().getLocation().toURI())
+				.getAbsolutePath();
+
+		try {
+			Object virtualMachine = virtualMachineClass.getMethod("attach",
+					String.class).invoke(null, pid);
+			try {
+				virtualMachineClass.getMethod("loadAgent", String.class,
+						String.class).invoke(virtualMachine, agentJar, options);
+			} finally {
+				virtualMachineClass.getMethod("detach").invoke(virtualMachine);
+			}
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof Exception ? (Exception) cause : e;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.agent.instrument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class AutoRegistrationOptions parses the options of the
+ * auto-registration agent, given as
+ * <code>-javaagent:gcradar-agent.jar=&lt;options&gt;</code> or to the
+ * attacher. The options are separated by commas, the patterns of a list by
+ * semicolons:
+ *
+ * <pre>
+ * include=com.acme.Order;com.acme.cache.**,exclude=com.acme.cache.Key,sampleInterval=64,maxTracked=100000,mbean=orders
+ * </pre>
+ *
+ * <ul>
+ * <li><code>include</code> - the patterns of the classes instrumented, see
+ * {@link ClassPatternMatcher}, required</li>
+ * <li><code>exclude</code> - the patterns left out from the included ones</li>
+ * <li><code>sampleInterval</code> - one instance in this many is registered,
+ * {@value #DEFAULT_SAMPLE_INTERVAL} by default, 1 to register all</li>
+ * <li><code>maxTracked</code> - the cap of the objects tracked, see
+ * {@link com.gcr.monitors.SimpleObjectMonitor#setMaxTrackedCount(int)}, 0 for
+ * no cap, {@value #DEFAULT_MAX_TRACKED} by default</li>
+ * <li><code>mbean</code> - the name the metrics of the monitor are registered
+ * under, not registered by default</li>
+ * </ul>
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class AutoRegistrationOptions {
+
+	/** The default sample interval. */
+	public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+	/** The default cap of the objects tracked. */
+	public static final int DEFAULT_MAX_TRACKED = 100000;
+
+	private final List<String> included = new ArrayList<String>();
+	private final List<String> excluded = new ArrayList<String>();
+	private int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+	private int maxTracked = DEFAULT_MAX_TRACKED;
+	private String mbeanName;
+
+	private AutoRegistrationOptions() {
+	}
+
+	/**
+	 * Parses the options of the agent.
+	 *
+	 * @param agentArgs
+	 *            the options, may be null
+	 * @return the options
+	 * @throws IllegalArgumentException
+	 *             if an option is unknown or invalid, or no class is included
+	 */
+	public static AutoRegistrationOptions parse(String agentArgs) {
+		AutoRegistrationOptions options = new AutoRegistrationOptions();
+
+		if (agentArgs != null) {
+			for (String option : agentArgs.split(",")) {
+				option = option.trim();
+				if (option.length() == 0) {
+					continue;
+				}
+
+				int separator = option.indexOf('=');
+				if (separator < 0) {
+					throw new IllegalArgumentException("Option without value: '"
+							+ option + "'");
+				}
+				String key = option.substring(0, separator).trim();
+				String value = option.substring(separator + 1).trim();
+
+				if ("include".equals(key)) {
+					addPatterns(options.included, value);
+				} else if ("exclude".equals(key)) {
+					addPatterns(options.excluded, value);
+				} else if ("sampleInterval".equals(key)) {
+					options.sampleInterval = parseInt(key, value, 1);
+				} else if ("maxTracked".equals(key)) {
+					options.maxTracked = parseInt(key, value, 0);
+				} else if ("mbean".equals(key)) {
+					options.mbeanName = value;
+				} else {
+					throw new IllegalArgumentException("Unknown option: '" + key
+							+ "'");
+				}
+			}
+		}
+
+		if (options.included.isEmpty()) {
+			throw new IllegalArgumentException(
+					"No class to instrument, the include option is required");
+		}
+		return options;
+	}
+
+	/**
+	 * Gets the matcher of the classes instrumented.
+	 *
+	 * @return the matcher
+	 */
+	public ClassPatternMatcher getMatcher() {
+		return new ClassPatternMatcher(included, excluded);
+	}
+
+	/**
+	 * Gets the sample interval, one instance in this many is registered.
+	 *
+	 * @return the sample interval
+	 */
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Gets the cap of the objects tracked.
+	 *
+	 * @return the cap, 0 for no cap
+	 */
+	public int getMaxTracked() {
+		return maxTracked;
+	}
+
+	/**
+	 * Gets the name the metrics of the monitor are registered under.
+	 *
+	 * @return the MBean name, null if not registered
+	 */
+	public String getMbeanName() {
+		return mbeanName;
+	}
+
+	private static void addPatterns(List<String> patterns, String value) {
+		for (String pattern : value.split(";")) {
+			pattern = pattern.trim();
+			if (pattern.length() > 0) {
+				patterns.add(pattern);
+			}
+		}
+	}
+
+	private static int parseInt(String key, String value, int min) {
+		int parsed;
+		try {
+			parsed = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Option " + key
+					+ " is not a number: '" + value + "'");
+		}
+		if (parsed < min) {
+			throw new IllegalArgumentException("Option " + key
+					+ " can not be less than " + min);
+		}
+		return parsed;
+	}
+}
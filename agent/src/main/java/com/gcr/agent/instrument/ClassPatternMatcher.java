@@ -0,0 +1,120 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.agent.instrument;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class ClassPatternMatcher decides which classes the agent instruments.
+ * A class is matched if its name matches one of the patterns included & none
+ * of the patterns excluded. A pattern is either
+ * <ul>
+ * <li>a class name, <code>com.acme.Order</code>, matching the class only,</li>
+ * <li>a package followed by <code>.*</code>, <code>com.acme.*</code>,
+ * matching the classes of the package,</li>
+ * <li>a package followed by <code>.**</code>, <code>com.acme.**</code>,
+ * matching the classes of the package & of its sub packages.</li>
+ * </ul>
+ * The nested classes are named with their binary names, e.g.
+ * <code>com.acme.Order$Line</code>.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class ClassPatternMatcher {
+
+	private final List<String> included;
+	private final List<String> excluded;
+
+	/**
+	 * Instantiates a new matcher.
+	 *
+	 * @param included
+	 *            the patterns of the classes instrumented
+	 * @param excluded
+	 *            the patterns of the classes left out from the included ones
+	 * @throws IllegalArgumentException
+	 *             if a pattern is empty or ends with a dot
+	 */
+	public ClassPatternMatcher(List<String> included, List<String> excluded) {
+		this.included = new ArrayList<String>(included);
+		this.excluded = new ArrayList<String>(excluded);
+
+		for (String pattern : this.included) {
+			validate(pattern);
+		}
+		for (String pattern : this.excluded) {
+			validate(pattern);
+		}
+	}
+
+	/**
+	 * Checks if the class is to be instrumented.
+	 *
+	 * @param className
+	 *            the binary name of the class, e.g. com.acme.Order$Line
+	 * @return true, if matched
+	 */
+	public boolean matches(String className) {
+		return matchesAny(included, className)
+				&& !matchesAny(excluded, className);
+	}
+
+	/**
+	 * Checks if no class can be matched.
+	 *
+	 * @return true, if no pattern is included
+	 */
+	public boolean isEmpty() {
+		return included.isEmpty();
+	}
+
+	private static boolean matchesAny(List<String> patterns, String className) {
+		for (String pattern : patterns) {
+			if (matches(pattern, className)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matches(String pattern, String className) {
+		if (pattern.endsWith(".**")) {
+			String packagePrefix = pattern.substring(0, pattern.length() - 2);
+			return className.startsWith(packagePrefix);
+		} else if (pattern.endsWith(".*")) {
+			String packagePrefix = pattern.substring(0, pattern.length() - 1);
+			return className.startsWith(packagePrefix)
+					&& className.indexOf('.', packagePrefix.length()) < 0;
+		} else {
+			return pattern.equals(className);
+		}
+	}
+
+	private static void validate(String pattern) {
+		if (pattern.length() == 0 || pattern.endsWith(".")
+				|| pattern.equals("*") || pattern.equals("**")) {
+			throw new IllegalArgumentException("Invalid class pattern: '"
+					+ pattern + "'");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "include=" + included + ", exclude=" + excluded;
+	}
+}
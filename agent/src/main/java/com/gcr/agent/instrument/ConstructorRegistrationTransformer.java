@@ -0,0 +1,206 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.agent.instrument;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+import org.objectweb.asm.commons.Method;
+
+/**
+ * The Class ConstructorRegistrationTransformer rewrites the constructors of
+ * the classes matched so that they end with a call to
+ * {@link AutoRegistration#register(Object, String)}. The call is added before
+ * every return of a constructor, not on the exceptions thrown, & not to the
+ * constructors delegating to another constructor of the class, which already
+ * registers the instance.
+ *
+ * The interfaces, the classes of gcRadar & the classes of the bootstrap class
+ * loader are never instrumented, nor the classes of the class loaders that can
+ * not see the agent. A class that can not be transformed is left unchanged.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class ConstructorRegistrationTransformer implements ClassFileTransformer {
+
+	private static final Type REGISTRATION_TYPE = Type
+			.getType(AutoRegistration.class);
+	private static final Method REGISTER_METHOD = Method
+			.getMethod("void register(Object, String)");
+
+	private final ClassPatternMatcher matcher;
+
+	// whether each class loader sees the AutoRegistration of the agent
+	private final Map<ClassLoader, Boolean> visibleLoaders = new WeakHashMap<ClassLoader, Boolean>();
+
+	private final AtomicLong failedTransformations = new AtomicLong();
+
+	/**
+	 * Instantiates a new transformer.
+	 *
+	 * @param matcher
+	 *            the matcher of the classes instrumented
+	 */
+	public ConstructorRegistrationTransformer(ClassPatternMatcher matcher) {
+		this.matcher = matcher;
+	}
+
+	@Override
+	public byte[] transform(ClassLoader loader, String className,
+			Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+			byte[] classfileBuffer) {
+		if (className == null || loader == null) {
+			return null;
+		}
+
+		String binaryName = className.replace('/', '.');
+		if (binaryName.startsWith("com.gcr.") || !matcher.matches(binaryName)
+				|| !seesRegistration(loader)) {
+			return null;
+		}
+
+		try {
+			ClassReader reader = new ClassReader(classfileBuffer);
+			if ((reader.getAccess() & (Opcodes.ACC_INTERFACE | Opcodes.ACC_MODULE)) != 0) {
+				return null;
+			}
+
+			ClassWriter writer = new ClassWriter(reader,
+					ClassWriter.COMPUTE_MAXS);
+			RegistrationClassVisitor visitor = new RegistrationClassVisitor(
+					writer, className, binaryName);
+			reader.accept(visitor, ClassReader.EXPAND_FRAMES);
+			if (!visitor.instrumented) {
+				return null;
+			}
+
+			byte[] transformed = writer.toByteArray();
+			AutoRegistration.markInstrumented(binaryName);
+			return transformed;
+		} catch (Throwable e) {
+			failedTransformations.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the number of classes matched that could not be transformed.
+	 *
+	 * @return the failed transformation count
+	 */
+	public long getFailedTransformationCount() {
+		return failedTransformations.get();
+	}
+
+	private boolean seesRegistration(ClassLoader loader) {
+		synchronized (visibleLoaders) {
+			Boolean visible = visibleLoaders.get(loader);
+			if (visible == null) {
+				try {
+					visible = Boolean.valueOf(Class.forName(
+							AutoRegistration.class.getName(), false, loader) == AutoRegistration.class);
+				} catch (ClassNotFoundException e) {
+					visible = Boolean.FALSE;
+				} catch (LinkageError e) {
+					visible = Boolean.FALSE;
+				}
+				visibleLoaders.put(loader, visible);
+			}
+			return visible.booleanValue();
+		}
+	}
+
+	private static class RegistrationClassVisitor extends ClassVisitor {
+
+		private final String internalName;
+		private final String binaryName;
+		private boolean instrumented;
+
+		RegistrationClassVisitor(ClassVisitor next, String internalName,
+				String binaryName) {
+			super(Opcodes.ASM9, next);
+			this.internalName = internalName;
+			this.binaryName = binaryName;
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name,
+				String descriptor, String signature, String[] exceptions) {
+			MethodVisitor next = super.visitMethod(access, name, descriptor,
+					signature, exceptions);
+			if (!"<init>".equals(name) || next == null) {
+				return next;
+			}
+
+			instrumented = true;
+			return new RegistrationConstructorAdapter(next, access, name,
+					descriptor, internalName, binaryName);
+		}
+	}
+
+	private static class RegistrationConstructorAdapter extends AdviceAdapter {
+
+		private final String internalName;
+		private final String binaryName;
+
+		// the owner of the last constructor called, at the start of the body
+		// the one of the super or this constructor call
+		private String lastConstructorOwner;
+		private boolean delegating;
+
+		RegistrationConstructorAdapter(MethodVisitor next, int access,
+				String name, String descriptor, String internalName,
+				String binaryName) {
+			super(Opcodes.ASM9, next, access, name, descriptor);
+			this.internalName = internalName;
+			this.binaryName = binaryName;
+		}
+
+		@Override
+		public void visitMethodInsn(int opcode, String owner, String name,
+				String descriptor, boolean isInterface) {
+			if (opcode == INVOKESPECIAL && "<init>".equals(name)) {
+				lastConstructorOwner = owner;
+			}
+			super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+		}
+
+		@Override
+		protected void onMethodEnter() {
+			delegating = internalName.equals(lastConstructorOwner);
+		}
+
+		@Override
+		protected void onMethodExit(int opcode) {
+			if (opcode != ATHROW && !delegating) {
+				loadThis();
+				push(binaryName);
+				invokeStatic(REGISTRATION_TYPE, REGISTER_METHOD);
+			}
+		}
+	}
+}
@@ -0,0 +1,354 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.gcr.benchmarks.GcImpactWorkload.TrackingModeEnum;
+
+/**
+ * The Class GcImpactHarness measures the impact of the tracking on the
+ * collector. The {@link GcImpactWorkload} is run in a new JVM for every
+ * collector & tracking mode with the unified GC logging turned on, the
+ * pauses & the reference processing times are then read from the GC log and
+ * reported along with the throughput of the workload relative to the run
+ * without tracking.
+ * 
+ * The options are given as <code>--name=value</code>:
+ * <ul>
+ * <li><code>gcs</code> - the collectors, default <code>G1,Parallel,Z</code>,
+ * the ones the JVM does not support are skipped</li>
+ * <li><code>modes</code> - the {@link TrackingModeEnum tracking modes},
+ * default all</li>
+ * <li><code>warmup</code> & <code>measurement</code> - the seconds of each,
+ * default 10 & 30</li>
+ * <li><code>threads</code> - the allocating threads, default the number of
+ * processors</li>
+ * <li><code>live</code> - the requests kept alive, default 200000</li>
+ * <li><code>sample</code> - the sampling interval, default 64</li>
+ * <li><code>heap</code> - the heap size, default <code>1g</code></li>
+ * <li><code>out</code> - the directory of the logs & of
+ * <code>results.csv</code>, default <code>target/gc-impact</code></li>
+ * </ul>
+ * 
+ * A run that fails, typically because the tracking can not keep up with
+ * the allocation rate & fills the heap, is reported as failed and the other
+ * runs go on.
+ * 
+ * The harness needs Java 11 or later for the unified logging of all the
+ * collectors, the library itself is not affected by it.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class GcImpactHarness {
+
+	// [12.345s][gc,phases      ] GC(12) Pause Young (Normal) ... 1.234ms
+	private static final Pattern LOG_LINE = Pattern
+			.compile("^\\[([0-9.]+)s\\]\\[([a-z,]+)\\s*\\] (.*)$");
+	private static final Pattern PAUSE = Pattern
+			.compile("^GC\\(\\d+\\) (?:[YO]: )?Pause .* ([0-9.]+)ms$");
+	private static final Pattern PAUSED_REFERENCE_PROCESSING = Pattern
+			.compile("^GC\\(\\d+\\)\\s+Reference Processing:? ([0-9.]+)ms$");
+	private static final Pattern CONCURRENT_REFERENCE_PROCESSING = Pattern
+			.compile("^GC\\(\\d+\\) (?:[YO]: )?Concurrent Process Non-Strong References ([0-9.]+)ms$");
+
+	private final Map<String, String> options = new LinkedHashMap<String, String>();
+
+	GcImpactHarness(String[] args) {
+		options.put("gcs", "G1,Parallel,Z");
+		options.put("modes", join(TrackingModeEnum.values()));
+		options.put("warmup", "10");
+		options.put("measurement", "30");
+		options.put("threads",
+				String.valueOf(Runtime.getRuntime().availableProcessors()));
+		options.put("live", "200000");
+		options.put("sample", "64");
+		options.put("heap", "1g");
+		options.put("out", "target/gc-impact");
+
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0) {
+				throw new IllegalArgumentException("Expected --name=value: "
+						+ arg);
+			}
+			String name = arg.substring(2, separator);
+			if (!options.containsKey(name)) {
+				throw new IllegalArgumentException("Unknown option: " + name);
+			}
+			options.put(name, arg.substring(separator + 1));
+		}
+	}
+
+	void run() throws IOException, InterruptedException {
+		File outDirectory = new File(options.get("out"));
+		if (!outDirectory.isDirectory() && !outDirectory.mkdirs()) {
+			throw new IOException("Can not create " + outDirectory);
+		}
+
+		List<TrackingModeEnum> modes = new ArrayList<TrackingModeEnum>();
+		for (String mode : options.get("modes").split(",")) {
+			modes.add(TrackingModeEnum.valueOf(mode.trim().toUpperCase()));
+		}
+
+		PrintWriter csv = new PrintWriter(new FileWriter(new File(
+				outDirectory, "results.csv")));
+		try {
+			csv.println("gc,mode,requests_per_second,throughput_change_percent,pauses,pause_total_ms,pause_p50_ms,pause_p99_ms,pause_max_ms,paused_reference_processing_ms,concurrent_reference_processing_ms");
+			System.out.printf("%-9s %-13s %14s %9s %7s %11s %9s %9s %9s %11s %11s%n",
+					"gc", "mode", "requests/s", "vs OFF", "pauses",
+					"pause ms", "p50 ms", "p99 ms", "max ms", "ref ms",
+					"conc ref ms");
+
+			for (String gc : options.get("gcs").split(",")) {
+				gc = gc.trim();
+				if (!isSupported(gc)) {
+					System.out.println(gc + " is not supported by this JVM, skipped");
+					continue;
+				}
+
+				Map<TrackingModeEnum, RunResult> results = new EnumMap<TrackingModeEnum, RunResult>(
+						TrackingModeEnum.class);
+				for (TrackingModeEnum mode : modes) {
+					RunResult result = runWorkload(outDirectory, gc, mode);
+					if (result.failure != null) {
+						System.out.printf("%-9s %-13s %s%n", gc, mode,
+								result.failure);
+						csv.printf("%s,%s,,,,,,,,,%n", gc, mode);
+						csv.flush();
+						continue;
+					}
+					results.put(mode, result);
+
+					RunResult baseline = results.get(TrackingModeEnum.OFF);
+					String change = baseline == null ? "" : String.format(
+							"%+.1f%%", 100.0 * (result.requestsPerSecond()
+									/ baseline.requestsPerSecond() - 1));
+					System.out.printf("%-9s %-13s %14.0f %9s %7d %11.1f %9.3f %9.3f %9.3f %11.1f %11.1f%n",
+							gc, mode, result.requestsPerSecond(), change,
+							result.pauses.size(), result.pauseTotal(),
+							result.pausePercentile(0.5),
+							result.pausePercentile(0.99),
+							result.pausePercentile(1.0),
+							result.pausedReferenceProcessingMillis,
+							result.concurrentReferenceProcessingMillis);
+					csv.printf("%s,%s,%.0f,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f%n",
+							gc, mode, result.requestsPerSecond(),
+							change.replace("%", ""), result.pauses.size(),
+							result.pauseTotal(), result.pausePercentile(0.5),
+							result.pausePercentile(0.99),
+							result.pausePercentile(1.0),
+							result.pausedReferenceProcessingMillis,
+							result.concurrentReferenceProcessingMillis);
+					csv.flush();
+				}
+			}
+		} finally {
+			csv.close();
+		}
+	}
+
+	private RunResult runWorkload(File outDirectory, String gc,
+			TrackingModeEnum mode) throws IOException, InterruptedException {
+		String name = gc + "-" + mode;
+		File gcLog = new File(outDirectory, name + ".gc.log");
+		File output = new File(outDirectory, name + ".out");
+
+		List<String> command = new ArrayList<String>();
+		command.add(javaExecutable());
+		command.add("-XX:+Use" + gc + "GC");
+		command.add("-Xms" + options.get("heap"));
+		command.add("-Xmx" + options.get("heap"));
+		// a tracking mode the collector can not keep up with fills the heap
+		command.add("-XX:+ExitOnOutOfMemoryError");
+		command.add("-Xlog:gc,gc+phases=debug,gc+phases+ref=debug:file="
+				+ gcLog.getPath() + ":uptime,tags");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(GcImpactWorkload.class.getName());
+		command.add(mode.name());
+		command.add(options.get("warmup"));
+		command.add(options.get("measurement"));
+		command.add(options.get("threads"));
+		command.add(options.get("live"));
+		command.add(options.get("sample"));
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true)
+				.redirectOutput(output).start();
+		long timeoutSeconds = Long.parseLong(options.get("warmup"))
+				+ Long.parseLong(options.get("measurement")) + 120;
+		RunResult result = new RunResult();
+		if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+			process.destroyForcibly().waitFor();
+			result.failure = "failed, did not finish within " + timeoutSeconds
+					+ "s, see " + output;
+			return result;
+		}
+		if (process.exitValue() != 0) {
+			result.failure = "failed, exited with " + process.exitValue()
+					+ ", see " + output;
+			return result;
+		}
+
+		readOutput(output, result);
+		readGcLog(gcLog, result);
+		return result;
+	}
+
+	private static void readOutput(File output, RunResult result)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(output));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(" ");
+				if (fields[0].equals("MEASUREMENT_START")) {
+					result.measurementStartSeconds = Long.parseLong(fields[1]) / 1000.0;
+				} else if (fields[0].equals("RESULT")) {
+					result.requests = Long.parseLong(fields[1]);
+					result.nanos = Long.parseLong(fields[2]);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (result.nanos == 0) {
+			throw new IOException("No result in " + output);
+		}
+	}
+
+	private static void readGcLog(File gcLog, RunResult result)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(gcLog));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Matcher logLine = LOG_LINE.matcher(line);
+				if (!logLine.matches()
+						|| Double.parseDouble(logLine.group(1)) < result.measurementStartSeconds) {
+					continue;
+				}
+
+				String tags = logLine.group(2);
+				String message = logLine.group(3);
+				if (tags.equals("gc") || tags.equals("gc,phases")) {
+					Matcher pause = PAUSE.matcher(message);
+					if (pause.matches()) {
+						result.pauses.add(Double.valueOf(pause.group(1)));
+						continue;
+					}
+				}
+				if (tags.equals("gc,phases")) {
+					Matcher paused = PAUSED_REFERENCE_PROCESSING
+							.matcher(message);
+					if (paused.matches()) {
+						result.pausedReferenceProcessingMillis += Double
+								.parseDouble(paused.group(1));
+						continue;
+					}
+					Matcher concurrent = CONCURRENT_REFERENCE_PROCESSING
+							.matcher(message);
+					if (concurrent.matches()) {
+						result.concurrentReferenceProcessingMillis += Double
+								.parseDouble(concurrent.group(1));
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static boolean isSupported(String gc) throws IOException,
+			InterruptedException {
+		Process process = new ProcessBuilder(javaExecutable(), "-XX:+Use" + gc
+				+ "GC", "-version").redirectErrorStream(true)
+				.redirectOutput(new File(isWindows() ? "NUL" : "/dev/null"))
+				.start();
+		return process.waitFor() == 0;
+	}
+
+	private static String javaExecutable() {
+		return System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java";
+	}
+
+	private static boolean isWindows() {
+		return System.getProperty("os.name").startsWith("Windows");
+	}
+
+	private static String join(Object[] values) {
+		String joined = Arrays.toString(values);
+		return joined.substring(1, joined.length() - 1).replace(" ", "");
+	}
+
+	/**
+	 * The measurements of one run of the workload.
+	 */
+	private static class RunResult {
+		private String failure;
+		private double measurementStartSeconds;
+		private long requests;
+		private long nanos;
+		private final List<Double> pauses = new ArrayList<Double>();
+		private double pausedReferenceProcessingMillis;
+		private double concurrentReferenceProcessingMillis;
+
+		private double requestsPerSecond() {
+			return requests * 1e9 / nanos;
+		}
+
+		private double pauseTotal() {
+			double total = 0;
+			for (Double pause : pauses) {
+				total += pause;
+			}
+			return total;
+		}
+
+		private double pausePercentile(double percentile) {
+			if (pauses.isEmpty()) {
+				return 0;
+			}
+			List<Double> sorted = new ArrayList<Double>(pauses);
+			Collections.sort(sorted);
+			int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+			return sorted.get(Math.max(0, index));
+		}
+	}
+
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		new GcImpactHarness(args).run();
+	}
+}
@@ -0,0 +1,241 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.gcr.monitors.SimpleObjectMonitor;
+
+/**
+ * The Class GcImpactWorkload is the allocation heavy workload run by the
+ * {@link GcImpactHarness} in a JVM of its own, once per collector & tracking
+ * mode. Every thread allocates requests of a random size & keeps the last of
+ * them in a window, so that part of them survive a few collections, and
+ * tracks them according to the mode.
+ * 
+ * The arguments are the mode, the warmup & measurement seconds, the number of
+ * threads, the number of requests kept alive & the sampling interval. When
+ * the measurement starts the uptime is printed as
+ * <code>MEASUREMENT_START &lt;millis&gt;</code> so that the collections of the
+ * warmup can be left out, at the end the completed requests are printed as
+ * <code>RESULT &lt;requests&gt; &lt;nanos&gt;</code>.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class GcImpactWorkload {
+
+	/** The way the allocated requests are tracked. */
+	public enum TrackingModeEnum {
+		/** No tracking, the baseline. */
+		OFF,
+		/** Every request is added to a {@link SimpleObjectMonitor}. */
+		FULL,
+		/** One request in every sampling interval is added to the monitor. */
+		SAMPLED,
+		/**
+		 * A bare {@link WeakReference} per request, the lower bound of the
+		 * cost of the weak half of the tracking.
+		 */
+		WEAK_ONLY,
+		/**
+		 * A bare {@link PhantomReference} per request, the lower bound of the
+		 * cost of the phantom half of the tracking.
+		 */
+		PHANTOM_ONLY;
+	}
+
+	private final TrackingModeEnum mode;
+	private final int threadCount;
+	private final int windowPerThread;
+	private final int sampleInterval;
+
+	private final SimpleObjectMonitor<Object> monitor;
+	private final ReferenceQueue<Object> referenceQueue;
+	private final Set<Reference<Object>> pendingReferences;
+
+	private volatile boolean measuring;
+	private volatile boolean stopped;
+	private long measurementNanos;
+
+	GcImpactWorkload(TrackingModeEnum mode, int threadCount, int liveRequests,
+			int sampleInterval) {
+		this.mode = mode;
+		this.threadCount = threadCount;
+		this.windowPerThread = Math.max(1, liveRequests / threadCount);
+		this.sampleInterval = sampleInterval;
+
+		if (mode == TrackingModeEnum.FULL || mode == TrackingModeEnum.SAMPLED) {
+			monitor = new SimpleObjectMonitor<Object>();
+		} else {
+			monitor = null;
+		}
+		if (mode == TrackingModeEnum.WEAK_ONLY
+				|| mode == TrackingModeEnum.PHANTOM_ONLY) {
+			referenceQueue = new ReferenceQueue<Object>();
+			pendingReferences = Collections
+					.newSetFromMap(new ConcurrentHashMap<Reference<Object>, Boolean>());
+		} else {
+			referenceQueue = null;
+			pendingReferences = null;
+		}
+	}
+
+	/**
+	 * Runs the workload, the warmup first & then the measurement.
+	 * 
+	 * @return the number of requests completed during the measurement
+	 */
+	long run(long warmupSeconds, long measurementSeconds)
+			throws InterruptedException {
+		if (referenceQueue != null) {
+			Thread drainer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							pendingReferences.remove(referenceQueue.remove());
+						}
+					} catch (InterruptedException e) {
+						// the workload is over
+					}
+				}
+			}, "reference-drainer");
+			drainer.setDaemon(true);
+			drainer.start();
+		}
+
+		final long[] completed = new long[threadCount];
+		final CountDownLatch finished = new CountDownLatch(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			final int threadIndex = i;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						completed[threadIndex] = allocate(threadIndex);
+					} finally {
+						finished.countDown();
+					}
+				}
+			}, "workload-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		TimeUnit.SECONDS.sleep(warmupSeconds);
+		measuring = true;
+		long measurementStart = System.nanoTime();
+		System.out.println("MEASUREMENT_START "
+				+ ManagementFactory.getRuntimeMXBean().getUptime());
+		TimeUnit.SECONDS.sleep(measurementSeconds);
+		stopped = true;
+		measurementNanos = System.nanoTime() - measurementStart;
+		finished.await();
+
+		if (monitor != null) {
+			monitor.stopMonitoring();
+		}
+
+		long total = 0;
+		for (long count : completed) {
+			total += count;
+		}
+		return total;
+	}
+
+	private long allocate(int threadIndex) {
+		Random random = new Random(threadIndex);
+		Object[] window = new Object[windowPerThread];
+		int next = 0;
+		long count = 0;
+		long measured = 0;
+		boolean wasMeasuring = false;
+
+		while (!stopped) {
+			byte[] request = new byte[64 + random.nextInt(960)];
+			request[0] = (byte) count;
+			window[next] = request;
+			next = next + 1 == window.length ? 0 : next + 1;
+			track(request, count);
+			count++;
+
+			if (measuring) {
+				if (!wasMeasuring) {
+					wasMeasuring = true;
+					measured = count;
+				}
+			}
+		}
+		return wasMeasuring ? count - measured : 0;
+	}
+
+	private void track(Object request, long count) {
+		switch (mode) {
+		case FULL:
+			monitor.addObject(request, NoOpCallback.INSTANCE);
+			break;
+		case SAMPLED:
+			if (count % sampleInterval == 0) {
+				monitor.addObject(request, NoOpCallback.INSTANCE);
+			}
+			break;
+		case WEAK_ONLY:
+			pendingReferences.add(new WeakReference<Object>(request,
+					referenceQueue));
+			break;
+		case PHANTOM_ONLY:
+			pendingReferences.add(new PhantomReference<Object>(request,
+					referenceQueue));
+			break;
+		default:
+			break;
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length != 6) {
+			System.err
+					.println("Usage: GcImpactWorkload <mode> <warmup seconds> <measurement seconds> <threads> <live requests> <sample interval>");
+			System.exit(2);
+		}
+
+		TrackingModeEnum mode = TrackingModeEnum.valueOf(args[0]);
+		long warmupSeconds = Long.parseLong(args[1]);
+		long measurementSeconds = Long.parseLong(args[2]);
+		int threads = Integer.parseInt(args[3]);
+		int liveRequests = Integer.parseInt(args[4]);
+		int sampleInterval = Integer.parseInt(args[5]);
+
+		GcImpactWorkload workload = new GcImpactWorkload(mode, threads,
+				liveRequests, sampleInterval);
+		long completed = workload.run(warmupSeconds, measurementSeconds);
+		System.out.println("RESULT " + completed + " "
+				+ workload.measurementNanos);
+		System.exit(0);
+	}
+}
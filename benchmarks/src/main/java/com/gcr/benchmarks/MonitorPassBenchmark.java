@@ -0,0 +1,89 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gcr.monitors.SimpleObjectMonitor;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
+
+/**
+ * The Class MonitorPassBenchmark measures the time the monitor thread takes
+ * for one pass over a watch list of 1k, 100k & 1M live objects. Every
+ * operation waits for the next pass to complete, so in the steady state the
+ * average time of an operation is the time between two passes, which is the
+ * scan of the watch list plus the yield that follows it.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class MonitorPassBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int tracked;
+
+	private SimpleObjectMonitor<Object> monitor;
+	private MonitorMetrics metrics;
+	private Object[] trackedObjects;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		monitor = new SimpleObjectMonitor<Object>();
+		trackedObjects = new Object[tracked];
+		for (int i = 0; i < tracked; i++) {
+			trackedObjects[i] = new Object();
+			monitor.addObject(trackedObjects[i], NoOpCallback.INSTANCE);
+		}
+		metrics = monitor.getMetrics();
+		monitor.startMonitoring();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		monitor.stopMonitoring();
+	}
+
+	@Benchmark
+	public long pass() {
+		long passCount = metrics.getPassCount();
+		long current;
+		while ((current = metrics.getPassCount()) == passCount) {
+			Thread.yield();
+		}
+		return current;
+	}
+}
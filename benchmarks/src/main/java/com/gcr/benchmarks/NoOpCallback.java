@@ -0,0 +1,40 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.benchmarks;
+
+import com.gcr.callbacks.GcRadarCallback;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class NoOpCallback is the callback used by the benchmarks, so that the
+ * cost measured is the one of gcRadar and not of the client code.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+class NoOpCallback implements GcRadarCallback {
+
+	static final NoOpCallback INSTANCE = new NoOpCallback();
+
+	@Override
+	public <T> void noSurvivingRefrence(AbstractObjectRefrenceKey<T> refrenceKey) {
+	}
+
+	@Override
+	public <T> void objectReclaimedByGC(AbstractObjectRefrenceKey<T> refrenceKey) {
+	}
+}
@@ -0,0 +1,103 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.benchmarks;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gcr.callbacks.GcRadarCallback;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
+import com.gcr.monitors.modules.notification.impl.NotificationModule;
+import com.gcr.monitors.modules.notification.impl.PollingNotificationModule;
+import com.gcr.monitors.modules.notification.structs.NotificationEvent;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class NotificationDispatchBenchmark measures the delivery of a pre-GC &
+ * a post-GC event, the work done on the monitor thread for every reclaimed
+ * object, by the callback notification module with & without the callback
+ * latency metrics and by the polling notification module.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationDispatchBenchmark {
+
+	private final Object object = new Object();
+	private AbstractObjectRefrenceKey<Object> refrenceKey;
+
+	private NotificationModule callbackModule;
+	private NotificationModule measuredCallbackModule;
+	private PollingNotificationModule pollingModule;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		refrenceKey = new BenchmarkKey(object, NoOpCallback.INSTANCE);
+
+		callbackModule = new NotificationModule() {
+		};
+		measuredCallbackModule = new NotificationModule() {
+		};
+		measuredCallbackModule.setMetrics(new MonitorMetrics());
+		pollingModule = new PollingNotificationModule();
+	}
+
+	@Benchmark
+	public boolean callback() {
+		callbackModule.notifyPreGcEvent(refrenceKey);
+		return callbackModule.notifyPostGcEvent(refrenceKey);
+	}
+
+	@Benchmark
+	public boolean callbackWithMetrics() {
+		measuredCallbackModule.notifyPreGcEvent(refrenceKey);
+		return measuredCallbackModule.notifyPostGcEvent(refrenceKey);
+	}
+
+	@Benchmark
+	public NotificationEvent polling() {
+		pollingModule.notifyPreGcEvent(refrenceKey);
+		pollingModule.notifyPostGcEvent(refrenceKey);
+		pollingModule.poll();
+		return pollingModule.poll();
+	}
+
+	private static class BenchmarkKey extends AbstractObjectRefrenceKey<Object> {
+		private BenchmarkKey(Object object, GcRadarCallback callback) {
+			super(object, "benchmark", new ReferenceQueue<Object>(),
+					new ReferenceQueue<Object>(), callback);
+		}
+	}
+}
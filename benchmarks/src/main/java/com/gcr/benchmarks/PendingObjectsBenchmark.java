@@ -0,0 +1,75 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.benchmarks;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gcr.monitors.SimpleObjectMonitor;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class PendingObjectsBenchmark measures
+ * {@link SimpleObjectMonitor#getPendingObjects()}, the sorted copy of the
+ * watch list handed out to the polling client code.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class PendingObjectsBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int tracked;
+
+	private SimpleObjectMonitor<Object> monitor;
+	private Object[] trackedObjects;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// the monitor is not started, only the copy is measured
+		monitor = new SimpleObjectMonitor<Object>();
+		trackedObjects = new Object[tracked];
+		for (int i = 0; i < tracked; i++) {
+			trackedObjects[i] = new Object();
+			monitor.addObject(trackedObjects[i], NoOpCallback.INSTANCE);
+		}
+	}
+
+	@Benchmark
+	public Set<AbstractObjectRefrenceKey<Object>> getPendingObjects() {
+		return monitor.getPendingObjects();
+	}
+}
@@ -0,0 +1,132 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gcr.monitors.SimpleObjectMonitor;
+
+/**
+ * The Class RegistrationBenchmark measures
+ * {@link SimpleObjectMonitor#addObject(Object, String, com.gcr.callbacks.GcRadarCallback)}
+ * followed by {@link SimpleObjectMonitor#removeObject(String)} from 1, 8 & 32
+ * threads, with the monitor thread scanning the pinned objects at the same
+ * time.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistrationBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class MonitorState {
+
+		/** The objects kept reachable so that the monitor thread keeps running. */
+		@Param({ "1000" })
+		public int pinned;
+
+		SimpleObjectMonitor<Object> monitor;
+		private Object[] pinnedObjects;
+
+		final AtomicInteger threadIds = new AtomicInteger();
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			monitor = new SimpleObjectMonitor<Object>();
+			pinnedObjects = new Object[pinned];
+			for (int i = 0; i < pinned; i++) {
+				pinnedObjects[i] = new Object();
+				monitor.addObject(pinnedObjects[i], "pinned-" + i,
+						NoOpCallback.INSTANCE);
+			}
+			monitor.startMonitoring();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			monitor.stopMonitoring();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+		// the identifiers are reused as every object is removed right after
+		// being added, so that the string building is not measured
+		private final String[] identifiers = new String[1024];
+		private final Object object = new Object();
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(MonitorState monitorState) {
+			int threadId = monitorState.threadIds.incrementAndGet();
+			for (int i = 0; i < identifiers.length; i++) {
+				identifiers[i] = "thread-" + threadId + "-" + i;
+			}
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public boolean addRemove1Thread(MonitorState monitorState,
+			ThreadState threadState) {
+		return addRemove(monitorState, threadState);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public boolean addRemove8Threads(MonitorState monitorState,
+			ThreadState threadState) {
+		return addRemove(monitorState, threadState);
+	}
+
+	@Benchmark
+	@Threads(32)
+	public boolean addRemove32Threads(MonitorState monitorState,
+			ThreadState threadState) {
+		return addRemove(monitorState, threadState);
+	}
+
+	private static boolean addRemove(MonitorState monitorState,
+			ThreadState threadState) {
+		String identifier = threadState.identifiers[threadState.next++
+				& (threadState.identifiers.length - 1)];
+		monitorState.monitor.addObject(threadState.object, identifier,
+				NoOpCallback.INSTANCE);
+		return monitorState.monitor.removeObject(identifier);
+	}
+}
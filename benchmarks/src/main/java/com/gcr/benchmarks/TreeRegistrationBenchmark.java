@@ -0,0 +1,161 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.gcr.monitors.ObjectTreeMonitor;
+import com.gcr.monitors.modules.in.structs.annotation.GcRadarNotToInclude;
+import com.gcr.monitors.modules.in.structs.annotation.GcRadarToInclude;
+
+/**
+ * The Class TreeRegistrationBenchmark measures
+ * {@link ObjectTreeMonitor#addObject(Object, String, com.gcr.callbacks.GcRadarCallback)},
+ * which scans the fields of the object with the annotation scanner & registers
+ * the comprising objects, for a few representative class shapes in both the
+ * operating modes.
+ * 
+ * The tree monitor can not remove the comprising objects, so every operation
+ * adds a batch of 1000 new objects to a fresh monitor and the score is the
+ * time of the whole batch.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 50, batchSize = 1000)
+@Measurement(iterations = 50, batchSize = 1000)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class TreeRegistrationBenchmark {
+
+	/** The shape of the added objects. */
+	public enum Shape {
+		/** No reference fields. */
+		LEAF,
+		/** A few reference fields mixed with primitives & an excluded field. */
+		MIXED,
+		/** Sixteen reference fields. */
+		WIDE,
+		/** Reference fields spread over a class hierarchy. */
+		INHERITED;
+
+		Object newInstance() {
+			switch (this) {
+			case LEAF:
+				return new Leaf();
+			case MIXED:
+				return new Mixed();
+			case WIDE:
+				return new Wide();
+			default:
+				return new Inherited();
+			}
+		}
+	}
+
+	@Param
+	public Shape shape;
+
+	@Param({ "true", "false" })
+	public boolean optimistic;
+
+	private ObjectTreeMonitor<Object> monitor;
+	private int next;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		monitor = new ObjectTreeMonitor<Object>(optimistic);
+		next = 0;
+	}
+
+	@Benchmark
+	public boolean addObject() {
+		return monitor.addObject(shape.newInstance(), "root-" + next++,
+				NoOpCallback.INSTANCE);
+	}
+
+	static class Leaf {
+		int id;
+		long timestamp;
+		double value;
+	}
+
+	static class Mixed {
+		int id;
+		long timestamp;
+		@GcRadarToInclude
+		String name = new String("name");
+		@GcRadarToInclude
+		List<Object> items = new ArrayList<Object>();
+		@GcRadarToInclude
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		@GcRadarToInclude
+		Leaf leaf = new Leaf();
+		@GcRadarNotToInclude
+		Object cache = new Object();
+	}
+
+	static class Wide {
+		@GcRadarToInclude
+		Object f0 = new Object(), f1 = new Object(), f2 = new Object(),
+				f3 = new Object(), f4 = new Object(), f5 = new Object(),
+				f6 = new Object(), f7 = new Object(), f8 = new Object(),
+				f9 = new Object(), f10 = new Object(), f11 = new Object(),
+				f12 = new Object(), f13 = new Object(), f14 = new Object(),
+				f15 = new Object();
+	}
+
+	static class Base {
+		@GcRadarToInclude
+		Object base0 = new Object();
+		@GcRadarToInclude
+		Object base1 = new Object();
+	}
+
+	static class Middle extends Base {
+		@GcRadarToInclude
+		Object middle0 = new Object();
+		@GcRadarToInclude
+		Object middle1 = new Object();
+	}
+
+	static class Inherited extends Middle {
+		@GcRadarToInclude
+		Object leaf0 = new Object();
+		@GcRadarToInclude
+		Object leaf1 = new Object();
+	}
+}
@@ -0,0 +1,113 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.agent;
+
+import java.lang.instrument.Instrumentation;
+
+/**
+ * The Class GcRadarAgent is the entry point of the optional agent mode of the
+ * library. When the gcRadar jar is given to the JVM as an agent, with
+ * <code>-javaagent:gcRadar.jar</code> or attached at runtime, the
+ * {@link Instrumentation} it is handed is kept and the monitors record the
+ * size of every object when it is added, so that the bytes reclaimed & the
+ * bytes still pending are known without a heap dump.
+ *
+ * The jar has to carry the <code>Premain-Class</code> &
+ * <code>Agent-Class</code> manifest attributes naming this class. Without the
+ * agent the sizes are not known and reported as -1.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class GcRadarAgent {
+
+	private static volatile Instrumentation instrumentation;
+
+	private GcRadarAgent() {
+	}
+
+	/**
+	 * Called by the JVM when the agent is given on the command line.
+	 *
+	 * @param agentArgs
+	 *            the options of the agent
+	 * @param inst
+	 *            the instrumentation
+	 */
+	public static void premain(String agentArgs, Instrumentation inst) {
+		install(inst);
+	}
+
+	/**
+	 * Called by the JVM when the agent is attached to a running JVM.
+	 *
+	 * @param agentArgs
+	 *            the options of the agent
+	 * @param inst
+	 *            the instrumentation
+	 */
+	public static void agentmain(String agentArgs, Instrumentation inst) {
+		install(inst);
+	}
+
+	/**
+	 * Installs the instrumentation the sizes are measured with, for the
+	 * applications that are agents themselves & already hold one.
+	 *
+	 * @param inst
+	 *            the instrumentation
+	 * @throws NullPointerException
+	 *             if inst is null
+	 */
+	public static void install(Instrumentation inst) {
+		if (inst == null) {
+			throw new NullPointerException("Instrumentation can not be null");
+		}
+
+		instrumentation = inst;
+	}
+
+	/**
+	 * Checks if the agent is installed & the sizes are measured.
+	 *
+	 * @return true, if installed
+	 */
+	public static boolean isInstalled() {
+		return instrumentation != null;
+	}
+
+	/**
+	 * Gets the instrumentation handed to the agent.
+	 *
+	 * @return the instrumentation, null if the agent is not installed
+	 */
+	public static Instrumentation getInstrumentation() {
+		return instrumentation;
+	}
+
+	/**
+	 * Gets the shallow size of an object, the size of the object itself
+	 * without the objects it refers to, as estimated by the JVM.
+	 *
+	 * @param object
+	 *            the object
+	 * @return the size in bytes, -1 if the agent is not installed
+	 */
+	public static long getObjectSize(Object object) {
+		Instrumentation current = instrumentation;
+		return current == null ? -1 : current.getObjectSize(object);
+	}
+}
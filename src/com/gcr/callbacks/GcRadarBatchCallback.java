@@ -0,0 +1,46 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.callbacks;
+
+import com.gcr.structs.GcEventBatch;
+
+/**
+ * This interface can be implemented by the entity that wishes to receive the
+ * GC events in batches rather than one call per object per event. The events
+ * detected for the objects registered with the callback during one pass of the
+ * monitor are handed over in chunks, an object that has been orphaned and
+ * reclaimed in the same pass is reported once with both the events.
+ * 
+ * When the callback implements this interface the monitor will not call the
+ * per object methods of {@link GcRadarCallback}.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public interface GcRadarBatchCallback extends GcRadarCallback
+{
+    /**
+     * This method is called by the monitor with a chunk of the GC events
+     * detected during a pass of the monitor.
+     * 
+     * @param batch
+     *            {@link GcEventBatch} the events. The batch is reused by the
+     *            monitor once the method returns, so neither the batch nor the
+     *            arrays it exposes should be retained.
+     */
+    void gcEventsDetected(GcEventBatch batch);
+}
@@ -0,0 +1,43 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.callbacks;
+
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * This interface can be implemented by the entity that wishes to be told when
+ * an object registered with an expected lifetime outlives it. An object that is
+ * still reachable past its deadline is a leak suspect, it may still be
+ * reclaimed later in which case the usual GC events follow.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public interface GcRadarLeakCallback extends GcRadarCallback
+{
+    /**
+     * This method is called by the monitor, at most once per object, when the
+     * expected lifetime of the registered object has passed and the object has
+     * not been orphaned.
+     * 
+     * @param objWrapper
+     *            {@link AbstractObjectRefrenceKey} The key that represents the
+     *            object suspected of leaking. This object is used by gcRadar as
+     *            a wrapper around the object being monitored.
+     */
+    <T> void leakSuspected(AbstractObjectRefrenceKey<T> objWrapper);
+}
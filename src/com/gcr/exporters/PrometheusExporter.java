@@ -0,0 +1,682 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.exporters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.gcr.monitors.modules.monitoring.structs.ClassMetrics;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
+import com.gcr.monitors.modules.monitoring.structs.TagMetrics;
+import com.gcr.structs.LifetimeHistogram;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The Class PrometheusExporter serves the metrics of the registered monitors
+ * over HTTP in the Prometheus text exposition format, at
+ * {@value #METRICS_PATH}. The exporter is opt-in, nothing is served until a
+ * exporter is created & started.
+ * 
+ * <pre>
+ * PrometheusExporter exporter = new PrometheusExporter(9404);
+ * exporter.register(&quot;orders&quot;, monitor.getMetrics());
+ * exporter.start();
+ * </pre>
+ * 
+ * The scrapes are served one at a time by a single daemon thread that renders
+ * into buffers reused across scrapes. The metrics are read from counters that
+ * take no lock, so scraping never holds up the monitor thread or the
+ * registration of objects.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class PrometheusExporter {
+
+	/** The path the metrics are served at. */
+	public static final String METRICS_PATH = "/metrics";
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final long[] LIFETIME_BUCKETS_MILLIS = { 1, 10, 100, 1000,
+			10000, 60000, 600000, 3600000 };
+	private static final String[] LIFETIME_BUCKET_LABELS = { "0.001", "0.01",
+			"0.1", "1", "10", "60", "600", "3600" };
+
+	private static final double NANOS_PER_SECOND = 1000000000.0;
+
+	private static final MonitorFamily[] MONITOR_FAMILIES = {
+			new MonitorFamily("gcradar_tracked_objects", "gauge",
+					"Objects being monitored.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getTrackedCount();
+				}
+			},
+			new MonitorFamily("gcradar_registrations_total", "counter",
+					"Objects added to the monitor.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getRegistrationCount();
+				}
+			},
+			new MonitorFamily("gcradar_orphaned_total", "counter",
+					"Pre GC events, weak references found enqueued.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getOrphanedCount();
+				}
+			},
+			new MonitorFamily("gcradar_reclaimed_total", "counter",
+					"Post GC events, phantom references found enqueued.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getReclaimedCount();
+				}
+			},
+			new MonitorFamily("gcradar_leak_suspects_total", "counter",
+					"Objects that outlived their expected lifetime.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getLeakSuspectCount();
+				}
+			},
+			new MonitorFamily("gcradar_pending_bytes", "gauge",
+					"Summed size of the objects being monitored, with the agent installed.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getPendingBytes();
+				}
+			},
+			new MonitorFamily("gcradar_reclaimed_bytes_total", "counter",
+					"Summed size of the objects reclaimed, with the agent installed.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getReclaimedBytes();
+				}
+			},
+			new MonitorFamily("gcradar_admission_denied_total", "counter",
+					"Objects not admitted to the monitoring under heap pressure.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getAdmissionDeniedCount();
+				}
+			},
+			new MonitorFamily("gcradar_sampled_out_total", "counter",
+					"Objects not admitted to the monitoring at its cap.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getSampledOutCount();
+				}
+			},
+			new MonitorFamily("gcradar_monitor_passes_total", "counter",
+					"Passes of the monitor thread over the watch list.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getPassCount();
+				}
+			},
+			new MonitorFamily("gcradar_monitor_pass_seconds_total", "counter",
+					"Time spent in the passes of the monitor thread.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getTotalPassNanos() / NANOS_PER_SECOND;
+				}
+			},
+			new MonitorFamily("gcradar_monitor_scanned_total", "counter",
+					"Objects scanned by the passes of the monitor thread.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getTotalScannedCount();
+				}
+			},
+			new MonitorFamily("gcradar_monitor_thread_cpu_seconds_total",
+					"counter", "CPU time used by the monitor thread.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getMonitorThreadCpuNanos()
+							/ NANOS_PER_SECOND;
+				}
+			},
+			new MonitorFamily("gcradar_notification_queue_depth", "gauge",
+					"Events waiting to be delivered.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getQueueDepth();
+				}
+			},
+			new MonitorFamily("gcradar_callbacks_total", "counter",
+					"Callbacks made.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getCallbackCount();
+				}
+			},
+			new MonitorFamily("gcradar_callback_seconds_total", "counter",
+					"Time spent in the callbacks.") {
+				@Override
+				double value(MonitorMetrics metrics) {
+					return metrics.getTotalCallbackNanos() / NANOS_PER_SECOND;
+				}
+			} };
+
+	private static final ClassFamily[] CLASS_FAMILIES = {
+			new ClassFamily("gcradar_class_live_objects", "gauge",
+					"Objects of the class being monitored.") {
+				@Override
+				double value(ClassMetrics metrics) {
+					return metrics.getLiveCount();
+				}
+			},
+			new ClassFamily("gcradar_class_registrations_total", "counter",
+					"Objects of the class added to the monitor.") {
+				@Override
+				double value(ClassMetrics metrics) {
+					return metrics.getRegisteredCount();
+				}
+			},
+			new ClassFamily("gcradar_class_reclaimed_total", "counter",
+					"Objects of the class reclaimed.") {
+				@Override
+				double value(ClassMetrics metrics) {
+					return metrics.getReclaimedCount();
+				}
+			},
+			new ClassFamily("gcradar_class_reclaimed_minor_total", "counter",
+					"Objects of the class reclaimed in a young collection.") {
+				@Override
+				double value(ClassMetrics metrics) {
+					return metrics.getMinorReclaimedCount();
+				}
+			},
+			new ClassFamily("gcradar_class_reclaimed_major_total", "counter",
+					"Objects of the class reclaimed in an old or full collection.") {
+				@Override
+				double value(ClassMetrics metrics) {
+					return metrics.getMajorReclaimedCount();
+				}
+			},
+			new ClassFamily("gcradar_class_pending_bytes", "gauge",
+					"Summed size of the objects of the class being monitored.") {
+				@Override
+				double value(ClassMetrics metrics) {
+					return metrics.getPendingBytes();
+				}
+			},
+			new ClassFamily("gcradar_class_reclaimed_bytes_total", "counter",
+					"Summed size of the objects of the class reclaimed.") {
+				@Override
+				double value(ClassMetrics metrics) {
+					return metrics.getReclaimedBytes();
+				}
+			},
+			new ClassFamily("gcradar_class_leak_suspects_total", "counter",
+					"Objects of the class that outlived their expected lifetime.") {
+				@Override
+				double value(ClassMetrics metrics) {
+					return metrics.getLeakSuspectCount();
+				}
+			} };
+
+	private static final HistogramFamily[] HISTOGRAM_FAMILIES = {
+			new HistogramFamily("gcradar_class_lifetime_seconds", "histogram",
+					"Time from adding an object of the class to its post GC event.") {
+				@Override
+				LifetimeHistogram histogram(ClassMetrics metrics) {
+					return metrics.getLifetimeHistogram();
+				}
+			},
+			new HistogramFamily("gcradar_class_orphan_age_seconds",
+					"histogram",
+					"Time from adding an object of the class to its pre GC event.") {
+				@Override
+				LifetimeHistogram histogram(ClassMetrics metrics) {
+					return metrics.getOrphanAgeHistogram();
+				}
+			},
+			new HistogramFamily("gcradar_class_reclaim_delay_seconds",
+					"histogram",
+					"Time from the pre GC event of an object of the class to its post GC event.") {
+				@Override
+				LifetimeHistogram histogram(ClassMetrics metrics) {
+					return metrics.getReclaimDelayHistogram();
+				}
+			} };
+
+	private static final TagFamily[] TAG_FAMILIES = {
+			new TagFamily("gcradar_tag_live_objects", "gauge",
+					"Objects with the tag being monitored.") {
+				@Override
+				double value(TagMetrics metrics) {
+					return metrics.getLiveCount();
+				}
+			},
+			new TagFamily("gcradar_tag_registrations_total", "counter",
+					"Objects with the tag added to the monitor.") {
+				@Override
+				double value(TagMetrics metrics) {
+					return metrics.getRegisteredCount();
+				}
+			},
+			new TagFamily("gcradar_tag_reclaimed_total", "counter",
+					"Objects with the tag reclaimed.") {
+				@Override
+				double value(TagMetrics metrics) {
+					return metrics.getReclaimedCount();
+				}
+			},
+			new TagFamily("gcradar_tag_pending_bytes", "gauge",
+					"Summed size of the objects with the tag being monitored.") {
+				@Override
+				double value(TagMetrics metrics) {
+					return metrics.getPendingBytes();
+				}
+			},
+			new TagFamily("gcradar_tag_reclaimed_bytes_total", "counter",
+					"Summed size of the objects with the tag reclaimed.") {
+				@Override
+				double value(TagMetrics metrics) {
+					return metrics.getReclaimedBytes();
+				}
+			} };
+
+	private final Map<String, MonitorMetrics> monitors = new ConcurrentSkipListMap<String, MonitorMetrics>();
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	// only used by the exporter thread
+	private final StringBuilder text = new StringBuilder(16 * 1024);
+	private byte[] bytes = new byte[16 * 1024];
+	private final long[] bucketCounts = new long[LIFETIME_BUCKETS_MILLIS.length + 1];
+
+	/**
+	 * Instantiates a new exporter listening on all the interfaces.
+	 * 
+	 * @param port
+	 *            the port, 0 for any free port
+	 * @throws IOException
+	 *             if the port can not be bound
+	 */
+	public PrometheusExporter(int port) throws IOException {
+		this(new InetSocketAddress(port));
+	}
+
+	/**
+	 * Instantiates a new exporter.
+	 * 
+	 * @param address
+	 *            the address to listen on
+	 * @throws IOException
+	 *             if the address can not be bound
+	 */
+	public PrometheusExporter(InetSocketAddress address) throws IOException {
+		this.server = HttpServer.create(address, 0);
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable,
+						"gcRadar-prometheus-exporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		server.setExecutor(executor);
+		server.createContext(METRICS_PATH, new MetricsHandler());
+	}
+
+	/**
+	 * Adds the metrics of a monitor to the ones served, replacing the metrics
+	 * registered under the same name.
+	 * 
+	 * @param monitorName
+	 *            the name of the monitor, the value of the monitor label
+	 * @param metrics
+	 *            the metrics of the monitor
+	 * @throws NullPointerException
+	 *             if monitorName or metrics is null
+	 */
+	public void register(String monitorName, MonitorMetrics metrics) {
+		if (monitorName == null || metrics == null) {
+			throw new NullPointerException(
+					"Monitor name & metrics can not be null");
+		}
+
+		monitors.put(monitorName, metrics);
+	}
+
+	/**
+	 * Removes the metrics of a monitor from the ones served.
+	 * 
+	 * @param monitorName
+	 *            the name of the monitor
+	 * @return true, if metrics were registered under the name
+	 */
+	public boolean unregister(String monitorName) {
+		return monitors.remove(monitorName) != null;
+	}
+
+	/**
+	 * Starts serving the metrics.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops serving the metrics.
+	 * 
+	 * @param delaySeconds
+	 *            the time the scrapes in progress are given to complete
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+	}
+
+	/**
+	 * Gets the address the exporter listens on.
+	 * 
+	 * @return the address
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	private void render() {
+		text.setLength(0);
+
+		for (MonitorFamily family : MONITOR_FAMILIES) {
+			appendHeader(family.name, family.type, family.help);
+			for (Map.Entry<String, MonitorMetrics> entry : monitors.entrySet()) {
+				appendName(family.name, entry.getKey(), null, null);
+				appendValue(family.value(entry.getValue()));
+			}
+		}
+
+		for (ClassFamily family : CLASS_FAMILIES) {
+			appendHeader(family.name, family.type, family.help);
+			for (Map.Entry<String, MonitorMetrics> entry : monitors.entrySet()) {
+				for (ClassMetrics classMetrics : entry.getValue()
+						.getClassMetrics()) {
+					appendName(family.name, entry.getKey(), "class",
+							classMetrics.getClassName());
+					appendValue(family.value(classMetrics));
+				}
+			}
+		}
+
+		for (HistogramFamily family : HISTOGRAM_FAMILIES) {
+			appendHeader(family.name, family.type, family.help);
+			for (Map.Entry<String, MonitorMetrics> entry : monitors.entrySet()) {
+				for (ClassMetrics classMetrics : entry.getValue()
+						.getClassMetrics()) {
+					appendHistogram(family.name, entry.getKey(), "class",
+							classMetrics.getClassName(),
+							family.histogram(classMetrics));
+				}
+			}
+		}
+
+		for (TagFamily family : TAG_FAMILIES) {
+			appendHeader(family.name, family.type, family.help);
+			for (Map.Entry<String, MonitorMetrics> entry : monitors.entrySet()) {
+				for (TagMetrics tagMetrics : entry.getValue().getTagMetrics()) {
+					appendName(family.name, entry.getKey(), "tag",
+							tagMetrics.getTag());
+					appendValue(family.value(tagMetrics));
+				}
+			}
+		}
+
+		String name = "gcradar_tag_lifetime_seconds";
+		appendHeader(name, "histogram",
+				"Time from adding an object with the tag to its post GC event.");
+		for (Map.Entry<String, MonitorMetrics> entry : monitors.entrySet()) {
+			for (TagMetrics tagMetrics : entry.getValue().getTagMetrics()) {
+				appendHistogram(name, entry.getKey(), "tag",
+						tagMetrics.getTag(), tagMetrics.getLifetimeHistogram());
+			}
+		}
+	}
+
+	private void appendHistogram(String name, String monitorName,
+			String labelName, String labelValue, LifetimeHistogram histogram) {
+		for (int i = 0; i < bucketCounts.length; i++) {
+			bucketCounts[i] = 0;
+		}
+
+		// a bucket of the histogram is counted in the first exposed bucket
+		// that holds all of its values
+		for (int i = 0; i < histogram.getBucketLength(); i++) {
+			long count = histogram.getBucketCount(i);
+			if (count == 0) {
+				continue;
+			}
+
+			long upperBound = histogram.getBucketUpperBound(i);
+			int bucket = 0;
+			while (bucket < LIFETIME_BUCKETS_MILLIS.length
+					&& upperBound > LIFETIME_BUCKETS_MILLIS[bucket]) {
+				bucket++;
+			}
+			bucketCounts[bucket] += count;
+		}
+
+		long cumulative = 0;
+		for (int i = 0; i < bucketCounts.length; i++) {
+			cumulative += bucketCounts[i];
+			text.append(name).append("_bucket{monitor=\"");
+			appendEscaped(monitorName);
+			text.append("\",").append(labelName).append("=\"");
+			appendEscaped(labelValue);
+			text.append("\",le=\"")
+					.append(i < LIFETIME_BUCKET_LABELS.length ? LIFETIME_BUCKET_LABELS[i]
+							: "+Inf").append("\"} ");
+			text.append(cumulative).append('\n');
+		}
+
+		appendName(name + "_sum", monitorName, labelName, labelValue);
+		appendValue(histogram.getSum() / 1000.0);
+		appendName(name + "_count", monitorName, labelName, labelValue);
+		appendValue(cumulative);
+	}
+
+	private void appendHeader(String name, String type, String help) {
+		text.append("# HELP ").append(name).append(' ').append(help)
+				.append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type)
+				.append('\n');
+	}
+
+	private void appendName(String name, String monitorName,
+			String labelName, String labelValue) {
+		text.append(name).append("{monitor=\"");
+		appendEscaped(monitorName);
+		if (labelName != null) {
+			text.append("\",").append(labelName).append("=\"");
+			appendEscaped(labelValue);
+		}
+		text.append("\"} ");
+	}
+
+	private void appendValue(double value) {
+		if (value == (long) value) {
+			text.append((long) value);
+		} else {
+			text.append(value);
+		}
+		text.append('\n');
+	}
+
+	private void appendEscaped(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				text.append('\\').append(c);
+			} else if (c == '\n') {
+				text.append("\\n");
+			} else {
+				text.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Encodes the rendered text as UTF-8 into the reused byte buffer.
+	 * 
+	 * @return the number of bytes
+	 */
+	private int encode() {
+		if (bytes.length < text.length() * 3) {
+			bytes = new byte[text.length() * 3];
+		}
+
+		int length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				bytes[length++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[length++] = (byte) (0xC0 | (c >> 6));
+				bytes[length++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, text.charAt(++i));
+				bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				bytes[length++] = (byte) (0xE0 | (c >> 12));
+				bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[length++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * The handler of the scrapes.
+	 */
+	private class MetricsHandler implements HttpHandler {
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				String method = exchange.getRequestMethod();
+				boolean head = "HEAD".equals(method);
+				if (!head && !"GET".equals(method)) {
+					exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+
+				render();
+				int length = encode();
+
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				if (head) {
+					exchange.sendResponseHeaders(200, -1);
+				} else {
+					exchange.sendResponseHeaders(200, length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(bytes, 0, length);
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * A metric family with one sample per monitor.
+	 */
+	private abstract static class MonitorFamily {
+		private final String name;
+		private final String type;
+		private final String help;
+
+		private MonitorFamily(String name, String type, String help) {
+			this.name = name;
+			this.type = type;
+			this.help = help;
+		}
+
+		abstract double value(MonitorMetrics metrics);
+	}
+
+	/**
+	 * A metric family with one sample per class of each monitor.
+	 */
+	private abstract static class ClassFamily {
+		private final String name;
+		private final String type;
+		private final String help;
+
+		private ClassFamily(String name, String type, String help) {
+			this.name = name;
+			this.type = type;
+			this.help = help;
+		}
+
+		abstract double value(ClassMetrics metrics);
+	}
+
+	/**
+	 * A metric family with one sample per tag of each monitor.
+	 */
+	private abstract static class TagFamily {
+		private final String name;
+		private final String type;
+		private final String help;
+
+		private TagFamily(String name, String type, String help) {
+			this.name = name;
+			this.type = type;
+			this.help = help;
+		}
+
+		abstract double value(TagMetrics metrics);
+	}
+
+	/**
+	 * A histogram family with one histogram per class of each monitor.
+	 */
+	private abstract static class HistogramFamily {
+		private final String name;
+		private final String type;
+		private final String help;
+
+		private HistogramFamily(String name, String type, String help) {
+			this.name = name;
+			this.type = type;
+			this.help = help;
+		}
+
+		abstract LifetimeHistogram histogram(ClassMetrics metrics);
+	}
+}
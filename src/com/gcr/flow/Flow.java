@@ -0,0 +1,117 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.flow;
+
+/**
+ * The Class Flow holds the interfaces of a publisher that delivers items to
+ * its subscribers only as fast as they ask for them. The interfaces have the
+ * same shape as the ones of <code>java.util.concurrent.Flow</code> & of the
+ * Reactive Streams, which are not available before Java 9, so that an
+ * adapter to either of them is a one line delegation per method.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class Flow {
+
+	private Flow() {
+	}
+
+	/**
+	 * A producer of items that are received by its subscribers.
+	 * 
+	 * @param <T>
+	 *            the type of the published items
+	 */
+	public interface Publisher<T> {
+
+		/**
+		 * Adds the subscriber. The publisher calls
+		 * {@link Subscriber#onSubscribe(Subscription)} before any other
+		 * method of the subscriber.
+		 * 
+		 * @param subscriber
+		 *            the subscriber
+		 * @throws NullPointerException
+		 *             if subscriber is null
+		 */
+		void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	/**
+	 * A receiver of items. The methods of a subscriber are called one at a
+	 * time & never for more items than have been requested.
+	 * 
+	 * @param <T>
+	 *            the type of the received items
+	 */
+	public interface Subscriber<T> {
+
+		/**
+		 * Called before any other method, no item is delivered until items
+		 * are requested through the subscription.
+		 * 
+		 * @param subscription
+		 *            the subscription
+		 */
+		void onSubscribe(Subscription subscription);
+
+		/**
+		 * Called with the next item.
+		 * 
+		 * @param item
+		 *            the item
+		 */
+		void onNext(T item);
+
+		/**
+		 * Called when the subscription fails, no other method is called
+		 * afterwards.
+		 * 
+		 * @param throwable
+		 *            the cause of the failure
+		 */
+		void onError(Throwable throwable);
+
+		/**
+		 * Called when no more items will be delivered, no other method is
+		 * called afterwards.
+		 */
+		void onComplete();
+	}
+
+	/**
+	 * The link between a publisher & one of its subscribers.
+	 */
+	public interface Subscription {
+
+		/**
+		 * Adds the number of items to the demand of the subscriber. A
+		 * non-positive number fails the subscription.
+		 * 
+		 * @param n
+		 *            the number of items, {@link Long#MAX_VALUE} for no limit
+		 */
+		void request(long n);
+
+		/**
+		 * Stops the delivery of items, the items not yet delivered are
+		 * discarded.
+		 */
+		void cancel();
+	}
+}
@@ -0,0 +1,495 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gcr.agent.GcRadarAgent;
+import com.gcr.callbacks.GcRadarCallback;
+import com.gcr.monitors.modules.monitoring.impl.ClassLoaderRetentionScanner;
+import com.gcr.monitors.modules.monitoring.structs.ClassLoaderLeakReport;
+import com.gcr.monitors.modules.monitoring.structs.ClassLoaderStateEnum;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+import com.gcr.structs.GcCycleInfo;
+
+/**
+ * The Class ClassLoaderLeakMonitor tracks the class loaders of the modules an
+ * application server deploys, with the classes & thread locals they define,
+ * to report whether a loader is reclaimed after its module is undeployed.
+ *
+ * The objects are monitored by a {@link SimpleObjectMonitor} of its own,
+ * tagged with the name of their deployment. Once {@link #undeploy(String)}
+ * marks a deployment, its loader is allowed to survive a number of full
+ * collections, the collections able to unload classes; a loader still alive
+ * after them is reported as {@link ClassLoaderStateEnum#LEAKED leaked}, with
+ * the retention suspects found by a {@link ClassLoaderRetentionScanner}: the
+ * threads, thread locals & static fields still referring to the loader.
+ *
+ * The full collections are counted from the collectors that are not young
+ * only, by the names of the collectors of HotSpot; the concurrent cycles of a
+ * collector that does not report them, e.g. G1 before Java 20, are not
+ * counted.
+ *
+ * The monitor keeps the class of each object it tracks, so the thread locals
+ * of a class defined by the loader of their deployment are kept weakly by the
+ * deployment only, not by the monitor, which would delay the reclaim of the
+ * loader.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class ClassLoaderLeakMonitor {
+
+	/** The default number of full collections a loader is allowed to survive. */
+	public static final int DEFAULT_COLLECTION_LIMIT = 3;
+
+	private static final AtomicLong DEPLOYMENT_SEQUENCE = new AtomicLong();
+
+	private final SimpleObjectMonitor<Object> monitor = new SimpleObjectMonitor<Object>();
+	private final ClassLoaderRetentionScanner scanner;
+	private final int collectionLimit;
+
+	private final Map<String, Deployment> deployments = new ConcurrentHashMap<String, Deployment>();
+	private final List<Class<?>> suspectClasses = new CopyOnWriteArrayList<Class<?>>();
+
+	/**
+	 * Instantiates a new monitor allowing
+	 * {@value #DEFAULT_COLLECTION_LIMIT} full collections after an
+	 * undeployment.
+	 */
+	public ClassLoaderLeakMonitor() {
+		this(DEFAULT_COLLECTION_LIMIT, new ClassLoaderRetentionScanner());
+	}
+
+	/**
+	 * Instantiates a new monitor.
+	 *
+	 * @param collectionLimit
+	 *            the number of full collections a loader is allowed to survive
+	 *            after its undeployment
+	 * @param scanner
+	 *            the scanner of the retention suspects of a leaked loader
+	 * @throws IllegalArgumentException
+	 *             if collectionLimit is less than 1
+	 */
+	public ClassLoaderLeakMonitor(int collectionLimit,
+			ClassLoaderRetentionScanner scanner) {
+		if (collectionLimit < 1) {
+			throw new IllegalArgumentException(
+					"collectionLimit must be greater than 0");
+		}
+		if (scanner == null) {
+			throw new NullPointerException("scanner can not be null");
+		}
+
+		this.collectionLimit = collectionLimit;
+		this.scanner = scanner;
+		monitor.setDaemon(true);
+	}
+
+	/**
+	 * Starts tracking a deployment & its class loader.
+	 *
+	 * @param deploymentName
+	 *            the name of the deployment
+	 * @param loader
+	 *            the class loader of the deployment
+	 * @throws IllegalStateException
+	 *             if a deployment of this name is already tracked
+	 */
+	public void trackClassLoader(String deploymentName, ClassLoader loader) {
+		if (loader == null) {
+			throw new NullPointerException("loader can not be null");
+		}
+
+		Deployment deployment = new Deployment(deploymentName, loader);
+		synchronized (deployments) {
+			if (deployments.containsKey(deploymentName)) {
+				throw new IllegalStateException("The deployment "
+						+ deploymentName + " is already tracked");
+			}
+			deployments.put(deploymentName, deployment);
+		}
+		track(loader, deployment.loaderKey, deployment);
+	}
+
+	/**
+	 * Tracks a class defined by the loader of a deployment.
+	 *
+	 * @param deploymentName
+	 *            the name of the deployment
+	 * @param clazz
+	 *            the class
+	 * @throws IllegalArgumentException
+	 *             if the deployment is not tracked
+	 */
+	public void trackClass(String deploymentName, Class<?> clazz) {
+		Deployment deployment = getDeployment(deploymentName);
+		if (deployment.addClass(clazz)) {
+			track(clazz, null, deployment);
+		}
+	}
+
+	/**
+	 * Tracks a thread local of a deployment, a thread local whose values are
+	 * expected to be removed when the deployment is undeployed.
+	 *
+	 * @param deploymentName
+	 *            the name of the deployment
+	 * @param threadLocal
+	 *            the thread local
+	 * @throws IllegalArgumentException
+	 *             if the deployment is not tracked
+	 */
+	public void trackThreadLocal(String deploymentName,
+			ThreadLocal<?> threadLocal) {
+		Deployment deployment = getDeployment(deploymentName);
+		if (deployment.addThreadLocal(threadLocal)
+				&& !deployment.defines(threadLocal.getClass())) {
+			track(threadLocal, null, deployment);
+		}
+	}
+
+	/**
+	 * Registers a class whose static fields are scanned for the retention
+	 * suspects of the leaked loaders, e.g. a registry or a cache of a library
+	 * shared by the deployments.
+	 *
+	 * @param suspectClass
+	 *            the class
+	 */
+	public void addRetentionSuspect(Class<?> suspectClass) {
+		if (suspectClass == null) {
+			throw new NullPointerException("suspectClass can not be null");
+		}
+		suspectClasses.add(suspectClass);
+	}
+
+	/**
+	 * Marks a deployment as undeployed, from then on its loader is expected
+	 * to be reclaimed within the collection limit. With the gcRadar agent
+	 * installed the classes the loader has defined are tracked too.
+	 *
+	 * @param deploymentName
+	 *            the name of the deployment
+	 * @throws IllegalArgumentException
+	 *             if the deployment is not tracked
+	 */
+	public void undeploy(String deploymentName) {
+		Deployment deployment = getDeployment(deploymentName);
+
+		Instrumentation instrumentation = GcRadarAgent.getInstrumentation();
+		ClassLoader loader = deployment.loader.get();
+		if (instrumentation != null && loader != null) {
+			for (Class<?> clazz : instrumentation.getInitiatedClasses(loader)) {
+				if (clazz.getClassLoader() == loader
+						&& deployment.addClass(clazz)) {
+					track(clazz, null, deployment);
+				}
+			}
+		}
+
+		deployment.undeploy(countFullCollections());
+	}
+
+	/**
+	 * Stops tracking a deployment, e.g. once its leak has been reported. The
+	 * objects of the deployment still monitored are reported to the monitor
+	 * only.
+	 *
+	 * @param deploymentName
+	 *            the name of the deployment
+	 * @return true, if the deployment was tracked
+	 */
+	public boolean forget(String deploymentName) {
+		return deployments.remove(deploymentName) != null;
+	}
+
+	/**
+	 * Gets the names of the deployments tracked.
+	 *
+	 * @return the deployment names, sorted
+	 */
+	public Set<String> getDeploymentNames() {
+		return Collections.unmodifiableSet(new TreeSet<String>(deployments
+				.keySet()));
+	}
+
+	/**
+	 * Gets the report of a deployment. The retention suspects are scanned
+	 * once, by the first report finding the loader leaked.
+	 *
+	 * @param deploymentName
+	 *            the name of the deployment
+	 * @return the report
+	 * @throws IllegalArgumentException
+	 *             if the deployment is not tracked
+	 */
+	public ClassLoaderLeakReport getReport(String deploymentName) {
+		return getDeployment(deploymentName).report(countFullCollections());
+	}
+
+	/**
+	 * Waits for the verdict on an undeployed deployment, the reclaim of its
+	 * loader or its leak. The wait does not trigger any collection.
+	 *
+	 * @param deploymentName
+	 *            the name of the deployment
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the time unit of the timeout
+	 * @return the report, still in the state
+	 *         {@link ClassLoaderStateEnum#UNDEPLOYED} if the timeout elapsed
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 * @throws IllegalArgumentException
+	 *             if the deployment is not tracked
+	 */
+	public ClassLoaderLeakReport awaitVerdict(String deploymentName,
+			long timeout, TimeUnit unit) throws InterruptedException {
+		Deployment deployment = getDeployment(deploymentName);
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (true) {
+			ClassLoaderLeakReport report = deployment
+					.report(countFullCollections());
+			ClassLoaderStateEnum state = report.getState();
+			if (state == ClassLoaderStateEnum.RECLAIMED
+					|| state == ClassLoaderStateEnum.LEAKED) {
+				return report;
+			}
+
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return report;
+			}
+			TimeUnit.NANOSECONDS.sleep(Math.min(remaining,
+					TimeUnit.MILLISECONDS.toNanos(100)));
+		}
+	}
+
+	/**
+	 * Gets the monitor the objects are tracked with, for its metrics or its
+	 * MBean.
+	 *
+	 * @return the monitor
+	 */
+	public SimpleObjectMonitor<Object> getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * Stops the monitoring, no object can be tracked afterwards.
+	 *
+	 * @return true, if the monitoring was stopped
+	 */
+	public boolean stopMonitoring() {
+		return monitor.stopMonitoring();
+	}
+
+	/**
+	 * Gets the number of full collections since the start of the JVM.
+	 *
+	 * @return the full collection count
+	 */
+	public static long countFullCollections() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			if (isFullCollector(collector.getName())
+					&& collector.getCollectionCount() > 0) {
+				count += collector.getCollectionCount();
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * The young collectors of HotSpot, & the pauses of ZGC & Shenandoah, whose
+	 * cycles are counted, do not unload classes.
+	 */
+	private static boolean isFullCollector(String name) {
+		return name.indexOf("Young") < 0 && name.indexOf("Scavenge") < 0
+				&& name.indexOf("Minor") < 0 && name.indexOf("Pauses") < 0
+				&& !"Copy".equals(name) && !"ParNew".equals(name);
+	}
+
+	private Deployment getDeployment(String deploymentName) {
+		Deployment deployment = deployments.get(deploymentName);
+		if (deployment == null) {
+			throw new IllegalArgumentException("The deployment "
+					+ deploymentName + " is not tracked");
+		}
+		return deployment;
+	}
+
+	/*
+	 * The worker thread of the monitor is started, or restarted, by the thread
+	 * adding the object & inherits its context class loader, often the loader
+	 * of a deployment, which the worker thread would then keep.
+	 */
+	private void track(Object object, String identifier, Deployment deployment) {
+		Thread current = Thread.currentThread();
+		ClassLoader contextLoader = current.getContextClassLoader();
+		current.setContextClassLoader(ClassLoaderLeakMonitor.class
+				.getClassLoader());
+		try {
+			if (identifier == null) {
+				monitor.addTaggedObject(object, deployment, deployment.name);
+			} else {
+				monitor.addTaggedObject(object, identifier, deployment,
+						deployment.name);
+			}
+		} finally {
+			current.setContextClassLoader(contextLoader);
+		}
+	}
+
+	private class Deployment implements GcRadarCallback {
+
+		private final String name;
+		private final String loaderKey;
+		private final String loaderDescription;
+		private final WeakReference<ClassLoader> loader;
+
+		// guarded by this
+		private final Map<Class<?>, Boolean> classes = new WeakHashMap<Class<?>, Boolean>();
+		private final Map<ThreadLocal<?>, Boolean> threadLocals = new WeakHashMap<ThreadLocal<?>, Boolean>();
+		private long undeployTimeMillis;
+		private long collectionsAtUndeploy;
+		private boolean reclaimed;
+		private long collectionsAtReclaim;
+		private GcCycleInfo reclaimedGcCycle;
+		private List<String> retentionSuspects;
+
+		Deployment(String name, ClassLoader loader) {
+			this.name = name;
+			this.loaderKey = "ClassLoaderLeakMonitor-"
+					+ DEPLOYMENT_SEQUENCE.incrementAndGet() + "-" + name;
+			this.loaderDescription = ClassLoaderRetentionScanner
+					.describe(loader);
+			this.loader = new WeakReference<ClassLoader>(loader);
+		}
+
+		synchronized boolean addClass(Class<?> clazz) {
+			return classes.put(clazz, Boolean.TRUE) == null;
+		}
+
+		synchronized boolean addThreadLocal(ThreadLocal<?> threadLocal) {
+			return threadLocals.put(threadLocal, Boolean.TRUE) == null;
+		}
+
+		boolean defines(Class<?> clazz) {
+			ClassLoader target = loader.get();
+			for (ClassLoader current = clazz.getClassLoader(); current != null; current = current
+					.getParent()) {
+				if (current == target) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		synchronized void undeploy(long collections) {
+			if (undeployTimeMillis == 0) {
+				undeployTimeMillis = System.currentTimeMillis();
+				collectionsAtUndeploy = collections;
+			}
+		}
+
+		synchronized ClassLoaderLeakReport report(long collections) {
+			if (!reclaimed && loader.get() == null) {
+				// reclaimed, not notified by the monitor yet
+				markReclaimed(null, collections);
+			}
+
+			ClassLoaderStateEnum state;
+			long since = 0;
+			if (reclaimed) {
+				state = ClassLoaderStateEnum.RECLAIMED;
+				if (undeployTimeMillis != 0) {
+					since = collectionsAtReclaim - collectionsAtUndeploy;
+				}
+			} else if (undeployTimeMillis == 0) {
+				state = ClassLoaderStateEnum.DEPLOYED;
+			} else {
+				since = collections - collectionsAtUndeploy;
+				state = since >= collectionLimit ? ClassLoaderStateEnum.LEAKED
+						: ClassLoaderStateEnum.UNDEPLOYED;
+			}
+
+			if (state == ClassLoaderStateEnum.LEAKED
+					&& retentionSuspects == null) {
+				retentionSuspects = scan();
+			}
+
+			return new ClassLoaderLeakReport(name, loaderDescription, state,
+					undeployTimeMillis, since, collectionLimit,
+					reclaimedGcCycle, classes.size(), threadLocals.size(),
+					state == ClassLoaderStateEnum.LEAKED ? retentionSuspects
+							: Collections.<String> emptyList());
+		}
+
+		private List<String> scan() {
+			ClassLoader target = loader.get();
+			if (target == null) {
+				return Collections.emptyList();
+			}
+			return scanner.scan(target,
+					new ArrayList<ThreadLocal<?>>(threadLocals.keySet()),
+					suspectClasses);
+		}
+
+		private void markReclaimed(GcCycleInfo gcCycle, long collections) {
+			reclaimed = true;
+			collectionsAtReclaim = collections;
+			reclaimedGcCycle = gcCycle;
+			retentionSuspects = null;
+		}
+
+		@Override
+		public <T> void objectReclaimedByGC(AbstractObjectRefrenceKey<T> objWrapper) {
+			if (loaderKey.equals(objWrapper.getObjRefrenceKey())) {
+				long collections = countFullCollections();
+				synchronized (this) {
+					if (!reclaimed || reclaimedGcCycle == null) {
+						markReclaimed(objWrapper.getReclaimedGcCycle(),
+								reclaimed ? collectionsAtReclaim : collections);
+					}
+				}
+			}
+		}
+
+		@Override
+		public <T> void noSurvivingRefrence(AbstractObjectRefrenceKey<T> objWrapper) {
+			// the reclaim is what ends the tracking of the loader
+		}
+	}
+}
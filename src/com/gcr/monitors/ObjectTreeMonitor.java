@@ -15,18 +15,34 @@ along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
 
 package com.gcr.monitors;
 
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import com.gcr.callbacks.GcRadarCallback;
 import com.gcr.monitors.modules.in.impl.TreeInputModule;
+import com.gcr.monitors.modules.in.structs.HeapPressureAdmission;
 import com.gcr.monitors.modules.in.structs.annotation.GcRadarNotToInclude;
 import com.gcr.monitors.modules.in.structs.annotation.GcRadarToInclude;
 import com.gcr.monitors.modules.monitoring.impl.MonitoringModule;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
 import com.gcr.monitors.modules.monitoring.structs.MonitorStateEnum;
 import com.gcr.monitors.modules.monitoring.structs.MonitorThreadYieldController;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.impl.AsyncNotificationModule;
+import com.gcr.monitors.modules.notification.impl.CompositeNotificationModule;
+import com.gcr.monitors.modules.notification.impl.JournalNotificationModule;
 import com.gcr.monitors.modules.notification.impl.NotificationModule;
+import com.gcr.monitors.modules.notification.structs.NotificationOverflowPolicyEnum;
 import com.gcr.structs.AbstractObjectRefrenceKey;
 
 /**
@@ -66,6 +82,12 @@ import com.gcr.structs.AbstractObjectRefrenceKey;
  * <li>The member is annotated by using the {@link GcRadarToInclude} annotation</li>
  * <ul>
  * 
+ * The fields are scanned at the time the object is added, fields assigned
+ * later are only picked up if the incremental re-scan is enabled using
+ * {@link #enableIncrementalRescan(long, TimeUnit, int)} or a pass is triggered
+ * manually using {@link #rescan(int)}. Only the objects added while the
+ * re-scan is enabled, see {@link #setRescanEnabled(boolean)}, are re-walked.
+ * 
  * @param <I>
  *            the generic type is the type object that can be used to make the
  *            monitor type specific. However this is not advisable, If such use
@@ -77,10 +99,16 @@ import com.gcr.structs.AbstractObjectRefrenceKey;
 public class ObjectTreeMonitor<I> {
 	private TreeInputModule_Impl treeInputMod;
 	private MonitoringModule monitoringMod;
-	private NotificationModule notificationMod;
+	private NotificationModuleInterface notificationMod;
 
 	private MonitorStateEnum state = MonitorStateEnum.NEW;
 
+	private final MonitorMetrics metrics = new MonitorMetrics();
+	private ObjectName mBeanName;
+
+	private ScheduledExecutorService rescanExecutor;
+	private ScheduledFuture<?> rescanTask;
+
 	/**
 	 * Instantiates a new object tree monitor.
 	 * 
@@ -91,7 +119,14 @@ public class ObjectTreeMonitor<I> {
 		this.treeInputMod = new TreeInputModule_Impl(isOptimistic);
 		this.monitoringMod = new SingleThreadedMonitor_Impl(
 				((TreeInputModule_Impl) treeInputMod).getWatchList());
-		this.notificationMod = new CallbackNotificationModule_Impl();
+		CallbackNotificationModule_Impl callbackNotificationModule_Impl = new CallbackNotificationModule_Impl();
+		this.notificationMod = callbackNotificationModule_Impl;
+
+		treeInputMod.setMetrics(metrics);
+		monitoringMod.setMetrics(metrics);
+		callbackNotificationModule_Impl.setMetrics(metrics);
+		metrics.setInputModule(treeInputMod);
+		metrics.setNotificationModule(notificationMod);
 	}
 
 	/**
@@ -192,6 +227,8 @@ public class ObjectTreeMonitor<I> {
 	 *         <code>false</code> if monitoring could not be stopped.
 	 */
 	public boolean stopMonitoring() {
+		disableIncrementalRescan();
+
 		notificationMod.notifyStopMonitoring();
 		state = MonitorStateEnum.HELD;
 
@@ -310,6 +347,289 @@ public class ObjectTreeMonitor<I> {
 		monitoringMod.setMonitorThreadYieldController(yeildController);
 	}
 
+	/**
+	 * Makes the monitor apply the admission to the objects added while the
+	 * heap is under pressure, an object that is not admitted is not monitored
+	 * & the add method returns <code>false</code>. The admission is started
+	 * if it is not already, it can be shared by several monitors & is
+	 * stopped by its owner. The objects added to this monitor carry no tags,
+	 * so while only the tagged objects are admitted only the roots & nodes of
+	 * the classes added with
+	 * {@link HeapPressureAdmission#addTrackedClass(Class)} are monitored.
+	 * 
+	 * @param heapPressureAdmission
+	 *            the admission, null to monitor every object added
+	 * @see MonitorMetrics#getAdmissionDeniedCount()
+	 * @since 0.5
+	 */
+	public void setHeapPressureAdmission(
+			HeapPressureAdmission heapPressureAdmission) {
+		if (heapPressureAdmission != null) {
+			heapPressureAdmission.start();
+		}
+		treeInputMod.setHeapPressureAdmission(heapPressureAdmission);
+	}
+
+	/**
+	 * Re-walks at most <code>rootBudget</code> of the added objects and adds
+	 * the comprising objects that have been assigned to them since they were
+	 * last walked. Fields whose value has not changed identity are skipped and
+	 * objects that are already being monitored are not added again. Only the
+	 * objects added while the re-scan is enabled are re-walked.
+	 * 
+	 * @param rootBudget
+	 *            the maximum number of added objects to be re-walked
+	 * @return the number of objects newly added to the monitoring
+	 * @throws IllegalArgumentException
+	 *             if rootBudget is less than 1
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has been explicitly stopped by calling the
+	 *             {@link stopMonitoring()} method.
+	 * @since 0.5
+	 */
+	public int rescan(int rootBudget) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be rescanned after the moter has been stopped");
+		}
+
+		return treeInputMod.rescan(rootBudget);
+	}
+
+	/**
+	 * Sets whether the objects added from now on are remembered to be
+	 * re-walked by {@link #rescan(int)}. The objects are not remembered by
+	 * default, as each of them then costs a map of its last seen field values
+	 * for as long as it is monitored. Enabling the incremental re-scan enables
+	 * it. Disabling it forgets the objects remembered so far.
+	 * 
+	 * @param rescanEnabled
+	 *            whether the objects added are remembered for the re-scan
+	 * @since 0.5
+	 */
+	public void setRescanEnabled(boolean rescanEnabled) {
+		treeInputMod.setRescanEnabled(rescanEnabled);
+	}
+
+	/**
+	 * Enables the periodic incremental re-scan of the added objects. Every
+	 * period a low priority daemon thread performs a {@link #rescan(int)} pass
+	 * of at most <code>rootBudget</code> objects, so that the whole set of
+	 * added objects is covered over successive periods. Calling the method
+	 * again replaces the previous schedule. The re-scan is enabled, so only the
+	 * objects added from now on are re-walked unless
+	 * {@link #setRescanEnabled(boolean)} was called before they were added.
+	 * 
+	 * @param period
+	 *            the period between 2 passes
+	 * @param unit
+	 *            the unit of the period
+	 * @param rootBudget
+	 *            the maximum number of added objects to be re-walked per pass
+	 * @throws IllegalArgumentException
+	 *             if period or rootBudget is less than 1
+	 * @since 0.5
+	 */
+	public synchronized void enableIncrementalRescan(long period,
+			TimeUnit unit, final int rootBudget) {
+		if (period < 1 || rootBudget < 1) {
+			throw new IllegalArgumentException(
+					"Period and root budget must be greater than 0");
+		}
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Rescan can not be enabled after the moter has been stopped");
+		}
+		treeInputMod.setRescanEnabled(true);
+
+		if (rescanExecutor == null) {
+			rescanExecutor = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "gcRadar-rescan");
+							thread.setDaemon(true);
+							thread.setPriority(Thread.MIN_PRIORITY);
+							return thread;
+						}
+					});
+		}
+		if (rescanTask != null) {
+			rescanTask.cancel(false);
+		}
+
+		rescanTask = rescanExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				treeInputMod.rescan(rootBudget);
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Disables the periodic incremental re-scan, if enabled.
+	 * 
+	 * @since 0.5
+	 */
+	public synchronized void disableIncrementalRescan() {
+		if (rescanExecutor != null) {
+			rescanExecutor.shutdown();
+			rescanExecutor = null;
+			rescanTask = null;
+		}
+	}
+
+	/**
+	 * Makes the monitor deliver the GC events asynchronously using an
+	 * {@link AsyncNotificationModule} with the default batch size, callback
+	 * timeout and executor. The monitoring thread & the registration of
+	 * objects are then not held up by the callbacks. The method can only be
+	 * called before the monitoring is started.
+	 * 
+	 * @param queueCapacity
+	 *            the maximum number of events waiting to be delivered
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has already been started
+	 * @since 0.5
+	 */
+	public void enableAsyncNotification(int queueCapacity,
+			NotificationOverflowPolicyEnum overflowPolicy) {
+		enableAsyncNotification(queueCapacity, overflowPolicy,
+				AsyncNotificationModule.DEFAULT_BATCH_SIZE,
+				AsyncNotificationModule.DEFAULT_CALLBACK_TIMEOUT_MILLIS,
+				TimeUnit.MILLISECONDS, null);
+	}
+
+	/**
+	 * Makes the monitor deliver the GC events asynchronously using an
+	 * {@link AsyncNotificationModule}. The monitoring thread & the
+	 * registration of objects are then not held up by the callbacks. The
+	 * method can only be called before the monitoring is started.
+	 * 
+	 * @param queueCapacity
+	 *            the maximum number of events waiting to be delivered
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full
+	 * @param batchSize
+	 *            the maximum number of events delivered in one task
+	 * @param callbackTimeout
+	 *            the time a single callback is allowed to take, 0 for no limit
+	 * @param unit
+	 *            the unit of the callback timeout
+	 * @param executor
+	 *            the executor that will run the callbacks, <code>null</code>
+	 *            for the default
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has already been started
+	 * @since 0.5
+	 */
+	public void enableAsyncNotification(int queueCapacity,
+			NotificationOverflowPolicyEnum overflowPolicy, int batchSize,
+			long callbackTimeout, TimeUnit unit, ExecutorService executor) {
+		if (state != MonitorStateEnum.NEW) {
+			throw new UnsupportedOperationException(
+					"Asynchronous notification can only be enabled before the monitoring is started");
+		}
+
+		this.notificationMod = new AsyncNotificationModule(notificationMod,
+				queueCapacity, overflowPolicy, batchSize, callbackTimeout,
+				unit, executor);
+		metrics.setNotificationModule(notificationMod);
+	}
+
+	/**
+	 * Adds a notification module that will be notified of the GC events along
+	 * with the callbacks, for example a {@link JournalNotificationModule}. The
+	 * method can only be called before the monitoring is started.
+	 * 
+	 * @param module
+	 *            the notification module to be added
+	 * @throws NullPointerException
+	 *             if module is null
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has already been started
+	 * @since 0.5
+	 */
+	public void addNotificationModule(NotificationModuleInterface module) {
+		if (state != MonitorStateEnum.NEW) {
+			throw new UnsupportedOperationException(
+					"Notification modules can only be added before the monitoring is started");
+		}
+
+		if (notificationMod instanceof CompositeNotificationModule) {
+			((CompositeNotificationModule) notificationMod).addModule(module);
+		} else {
+			this.notificationMod = new CompositeNotificationModule(
+					notificationMod, module);
+		}
+		metrics.setNotificationModule(notificationMod);
+	}
+
+	/**
+	 * Gets the metrics of the monitor, the registrations, GC events, passes
+	 * of the monitor thread, queue depth, callback latency & the statistics
+	 * per class.
+	 * 
+	 * @return the metrics
+	 * @since 0.5
+	 */
+	public MonitorMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Publishes the metrics of the monitor as an MBean on the platform MBean
+	 * server, under the name
+	 * <code>com.gcr:type=ObjectTreeMonitor,name=<i>name</i></code>.
+	 * 
+	 * @param name
+	 *            the name of the monitor
+	 * @return the object name of the MBean
+	 * @throws JMException
+	 *             if the MBean could not be registered, e.g. the name is
+	 *             already taken
+	 * @throws IllegalStateException
+	 *             if the MBean of the monitor is already registered
+	 * @since 0.5
+	 */
+	public synchronized ObjectName registerMBean(String name)
+			throws JMException {
+		if (mBeanName != null) {
+			throw new IllegalStateException(
+					"The metrics MBean is already registered as " + mBeanName);
+		}
+
+		ObjectName objectName = new ObjectName("com.gcr:type="
+				+ getClass().getSimpleName() + ",name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+				objectName);
+		mBeanName = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Removes the MBean of the monitor from the platform MBean server, if it
+	 * is registered.
+	 * 
+	 * @throws JMException
+	 *             if the MBean could not be unregistered
+	 * @since 0.5
+	 */
+	public synchronized void unregisterMBean() throws JMException {
+		if (mBeanName == null) {
+			return;
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					mBeanName);
+		} finally {
+			mBeanName = null;
+		}
+	}
+
 	// --------------- INNER-CLASSES ---------------------
 
 	private class TreeInputModule_Impl extends TreeInputModule {
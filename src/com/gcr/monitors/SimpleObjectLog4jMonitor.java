@@ -15,18 +15,37 @@ along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
 
 package com.gcr.monitors;
 
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import org.apache.log4j.Logger;
 
 import com.gcr.monitors.modules.in.impl.InputModule;
+import com.gcr.monitors.modules.in.structs.HeapPressureAdmission;
 import com.gcr.monitors.modules.monitoring.impl.MonitoringModule;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
 import com.gcr.monitors.modules.monitoring.structs.MonitorStateEnum;
 import com.gcr.monitors.modules.monitoring.structs.MonitorThreadYieldController;
+import com.gcr.monitors.modules.monitoring.structs.TagMetrics;
 import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.impl.AsyncNotificationModule;
+import com.gcr.monitors.modules.notification.impl.CompositeNotificationModule;
+import com.gcr.monitors.modules.notification.impl.JournalNotificationModule;
+import com.gcr.monitors.modules.notification.impl.Log4jStructuredLogSink;
+import com.gcr.monitors.modules.notification.impl.StructuredLogNotificationModule;
+import com.gcr.monitors.modules.notification.structs.NotificationOverflowPolicyEnum;
+import com.gcr.monitors.modules.notification.structs.StructuredLogFormatEnum;
 import com.gcr.structs.AbstractObjectRefrenceKey;
+import com.gcr.structs.DeadlineTimerWheel;
+import com.gcr.structs.ReclamationFuture;
+import com.gcr.structs.ReclamationFutureGroup;
+import com.gcr.structs.TrackingReservoir;
 
 /**
  * This Object monitor runs on a worker thread and captures GC events on the
@@ -35,9 +54,13 @@ import com.gcr.structs.AbstractObjectRefrenceKey;
  * <ul>
  * <li>Individual object feed</li>
  * <li>Single worker threaded monitor</li>
- * <li>Log4j logger to log GC events</li>
+ * <li>Structured logging of GC events to a log4j logger</li>
  * </ul>
  * 
+ * The events are formatted and logged by a background writer thread, see
+ * {@link StructuredLogNotificationModule}, the monitoring thread does not
+ * create any garbage to log an event.
+ * 
  * @param <I>
  *            the generic type is the type object that can be used to make the
  *            monitor type specific. However this is not advisable, If such use
@@ -54,6 +77,9 @@ public class SimpleObjectLog4jMonitor<I> {
 
 	private MonitorStateEnum state = MonitorStateEnum.NEW;
 
+	private final MonitorMetrics metrics = new MonitorMetrics();
+	private ObjectName mBeanName;
+
 	/**
 	 * The constructor for creating the
 	 * {@link SimpleObjectMonitor} object. The constructor will
@@ -67,14 +93,34 @@ public class SimpleObjectLog4jMonitor<I> {
 	 * stopped).
 	 */
 	public SimpleObjectLog4jMonitor() {
+		this(StructuredLogFormatEnum.KEY_VALUE);
+	}
+
+	/**
+	 * The constructor for creating the {@link SimpleObjectLog4jMonitor} object
+	 * that logs the events in the given format.
+	 * 
+	 * @param format
+	 *            the format in which the events are logged
+	 * @since 0.5
+	 */
+	public SimpleObjectLog4jMonitor(StructuredLogFormatEnum format) {
 
 		IndividualObjectFeed_Impl individualObjectFeed_Impl = new IndividualObjectFeed_Impl();
 		this.inMod = individualObjectFeed_Impl;
 
 		this.monitoringMod = new SingleThreadedMonitor_Impl(
-				individualObjectFeed_Impl.getWatchList());
-		this.notificationMod = new Log4jNotification_Impl(this.getClass()
-				.getName());
+				individualObjectFeed_Impl.getWatchList(),
+				individualObjectFeed_Impl.getLeakDeadlines(),
+				individualObjectFeed_Impl.getTrackingReservoir());
+		this.notificationMod = new StructuredLogNotificationModule(
+				new Log4jStructuredLogSink(Logger.getLogger(this.getClass()
+						.getName())), format);
+
+		individualObjectFeed_Impl.setMetrics(metrics);
+		monitoringMod.setMetrics(metrics);
+		metrics.setInputModule(inMod);
+		metrics.setNotificationModule(notificationMod);
 	}
 
 	/**
@@ -150,6 +196,255 @@ public class SimpleObjectLog4jMonitor<I> {
 		}
 	}
 
+	/**
+	 * The method will add the object to the monitoring list with the lifetime
+	 * it is expected to have & start or restart the worker thread for the
+	 * monitoring. If the object has not been orphaned once the lifetime has
+	 * passed it is logged as a leak suspect.
+	 * 
+	 * If the monitor declaration has been defined with a type parameter then
+	 * the method will only accept objects that are of the type or a sub-type.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param identifier
+	 *            - The key that will be used as a key for the object to be
+	 *            added for the monitoring purposes.
+	 * @param expectedLifetime
+	 *            - The time the object is expected to be orphaned in
+	 * @param unit
+	 *            - The unit of the expected lifetime
+	 * @return <code>true</code> if the object was added successfully<br>
+	 *         <code>false</code> if the object was not added as the identifier
+	 *         used to add the object has already been used.
+	 * @throws IllegalArgumentException
+	 *             if expectedLifetime is not positive
+	 * @since 0.5
+	 */
+	public <T extends I> boolean addObject(T object, String identifier,
+			long expectedLifetime, TimeUnit unit) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		if (inMod.addObject(object, identifier, null, expectedLifetime, unit)) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * The method will add the object to the monitoring list with the lifetime
+	 * it is expected to have & start or restart the worker thread for the
+	 * monitoring. Assigns an auto generated identifier to the object.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param expectedLifetime
+	 *            - The time the object is expected to be orphaned in
+	 * @param unit
+	 *            - The unit of the expected lifetime
+	 * @return <code>true</code> if the object was added successfully<br>
+	 *         <code>false</code> if the object was not added
+	 * @throws IllegalArgumentException
+	 *             if expectedLifetime is not positive
+	 * @see #addObject(Object, String, long, TimeUnit)
+	 * @since 0.5
+	 */
+	public <T extends I> boolean addObject(T object, long expectedLifetime,
+			TimeUnit unit) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		if (inMod.addObject(object, null, expectedLifetime, unit)) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * The method will add the object to the monitoring list & start or restart
+	 * the worker thread for the monitoring. The future returned is completed
+	 * once the object has been reclaimed, its orphaned future once the object
+	 * has been orphaned, so the caller can wait for this object alone rather
+	 * than for the whole watch list. The futures of several objects can be
+	 * waited for together with a {@link ReclamationFutureGroup}.
+	 * 
+	 * If the monitor declaration has been defined with a type parameter then
+	 * the method will only accept objects that are of the type or a sub-type.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param identifier
+	 *            - The key that will be used as a key for the object to be
+	 *            added for the monitoring purposes.
+	 * @return the reclamation future<br>
+	 *         <code>null</code> if the object was not added as the identifier
+	 *         used to add the object has already been used.
+	 * @since 0.5
+	 */
+	public <T extends I> ReclamationFuture addObjectWithFuture(T object,
+			String identifier) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		ReclamationFuture future = inMod.addObjectWithFuture(object, identifier,
+				null);
+		if (future != null) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+		}
+
+		return future;
+	}
+
+	/**
+	 * The method will add the object to the monitoring list & start or restart
+	 * the worker thread for the monitoring. Assigns an auto generated
+	 * identifier to the object.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @return the reclamation future, <code>null</code> if the object was
+	 *         not added
+	 * @see #addObjectWithFuture(Object, String)
+	 * @since 0.5
+	 */
+	public <T extends I> ReclamationFuture addObjectWithFuture(T object) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		ReclamationFuture future = inMod.addObjectWithFuture(object, null);
+		if (future != null) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+		}
+
+		return future;
+	}
+
+	/**
+	 * The method will add the object to the monitoring list with tags & start
+	 * or restart the worker thread for the monitoring. The statistics of the
+	 * objects are also kept per tag, see {@link MonitorMetrics#getTagMetrics()},
+	 * and the objects of a tag can be waited for with
+	 * {@link #awaitTagDrained(String, long, TimeUnit)}.
+	 * 
+	 * The statistics of a tag are created by the first object added with it
+	 * & kept, at a few hundred bytes, till the tag is released with
+	 * {@link #releaseTag(String)}, even once every object of the tag has been
+	 * reclaimed. A tag used once, such as a request, has thus to be released
+	 * once drained. The lifetime histogram of a tag is only created when it
+	 * is first read, see {@link TagMetrics#getLifetimeHistogram()}.
+	 * 
+	 * If the monitor declaration has been defined with a type parameter then
+	 * the method will only accept objects that are of the type or a sub-type.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param identifier
+	 *            - The key that will be used as a key for the object to be
+	 *            added for the monitoring purposes.
+	 * @param tags
+	 *            - The tags of the object
+	 * @return <code>true</code> if the object was added successfully<br>
+	 *         <code>false</code> if the object was not added as the identifier
+	 *         used to add the object has already been used.
+	 * @throws NullPointerException
+	 *             if any of the tags is null
+	 * @since 0.5
+	 */
+	public <T extends I> boolean addTaggedObject(T object, String identifier,
+			String... tags) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		if (inMod.addTaggedObject(object, identifier, null, tags)) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * This method will hold the execution of the calling thread till the time
+	 * all the objects added with the tag have been claimed by the garbage
+	 * collector or removed, unlike {@link #lock(long, TimeUnit)} which waits
+	 * for the whole watch list.
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return <code>true</code> if no object with the tag is being monitored,
+	 *         which includes a tag no object has been added with<br>
+	 *         <code>false</code> if the timeout ran out
+	 * @throws InterruptedException
+	 *             in case the waiting thread is interrupted
+	 * @since 0.5
+	 */
+	public boolean awaitTagDrained(String tag, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		TagMetrics tagMetrics = metrics.getTagMetrics(tag);
+		return tagMetrics == null || tagMetrics.awaitDrained(timeout, unit);
+	}
+
+	/**
+	 * This method will release the statistics kept for the tag, see
+	 * {@link MonitorMetrics#releaseTag(String)}. The objects added with the
+	 * tag are still monitored.
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @return <code>true</code> if statistics were kept for the tag
+	 * @since 0.5
+	 */
+	public boolean releaseTag(String tag) {
+		return metrics.releaseTag(tag) != null;
+	}
+
 	/**
 	 * This method will remove the object from monitoring
 	 * 
@@ -306,66 +601,226 @@ public class SimpleObjectLog4jMonitor<I> {
 		monitoringMod.setMonitorThreadYieldController(yeildController);
 	}
 
-	// --------------- INNER-CLASSES ---------------------
+	/**
+	 * Caps the number of objects the monitor tracks, so that its memory & the
+	 * cost of its passes are bounded. At the cap the objects added are
+	 * admitted by reservoir sampling, each one in place of a tracked object
+	 * picked at random, so the tracked objects stay a uniform sample of all
+	 * the objects added. The objects that are not admitted are counted by
+	 * class, see {@link MonitorMetrics#getEstimatedRegistrationCount(String)},
+	 * & the add method returns <code>false</code> for them.
+	 * 
+	 * @param maxTrackedCount
+	 *            the cap, 0 for no cap
+	 * @throws IllegalArgumentException
+	 *             if maxTrackedCount is negative
+	 * @throws IllegalStateException
+	 *             if objects have already been added
+	 * @since 0.5
+	 */
+	public void setMaxTrackedCount(int maxTrackedCount) {
+		inMod.setMaxTrackedCount(maxTrackedCount);
+	}
 
-	private class IndividualObjectFeed_Impl extends InputModule {
-		@Override
-		protected List<AbstractObjectRefrenceKey<Object>> getWatchList() {
-			return super.getWatchList();
+	/**
+	 * Makes the monitor apply the admission to the objects added while the
+	 * heap is under pressure, an object that is not admitted is not monitored
+	 * & the add method returns <code>false</code>. The admission is started
+	 * if it is not already, it can be shared by several monitors & is
+	 * stopped by its owner.
+	 * 
+	 * @param heapPressureAdmission
+	 *            the admission, null to monitor every object added
+	 * @see MonitorMetrics#getAdmissionDeniedCount()
+	 * @since 0.5
+	 */
+	public void setHeapPressureAdmission(
+			HeapPressureAdmission heapPressureAdmission) {
+		if (heapPressureAdmission != null) {
+			heapPressureAdmission.start();
 		}
+		inMod.setHeapPressureAdmission(heapPressureAdmission);
 	}
 
-	private class SingleThreadedMonitor_Impl extends MonitoringModule {
+	/**
+	 * Makes the monitor deliver the GC events asynchronously using an
+	 * {@link AsyncNotificationModule} with the default batch size, callback
+	 * timeout and executor. The monitoring thread & the registration of
+	 * objects are then not held up by the logging. The method can only be
+	 * called before the monitoring is started.
+	 * 
+	 * @param queueCapacity
+	 *            the maximum number of events waiting to be delivered
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has already been started
+	 * @since 0.5
+	 */
+	public void enableAsyncNotification(int queueCapacity,
+			NotificationOverflowPolicyEnum overflowPolicy) {
+		enableAsyncNotification(queueCapacity, overflowPolicy,
+				AsyncNotificationModule.DEFAULT_BATCH_SIZE,
+				AsyncNotificationModule.DEFAULT_CALLBACK_TIMEOUT_MILLIS,
+				TimeUnit.MILLISECONDS, null);
+	}
 
-		protected SingleThreadedMonitor_Impl(
-				List<AbstractObjectRefrenceKey<Object>> keyCollection) {
-			super(keyCollection);
+	/**
+	 * Makes the monitor deliver the GC events asynchronously using an
+	 * {@link AsyncNotificationModule}. The monitoring thread & the
+	 * registration of objects are then not held up by the logging. The
+	 * method can only be called before the monitoring is started.
+	 * 
+	 * @param queueCapacity
+	 *            the maximum number of events waiting to be delivered
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full
+	 * @param batchSize
+	 *            the maximum number of events delivered in one task
+	 * @param callbackTimeout
+	 *            the time a single logging call is allowed to take, 0 for no limit
+	 * @param unit
+	 *            the unit of the callback timeout
+	 * @param executor
+	 *            the executor that will run the logging calls, <code>null</code>
+	 *            for the default
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has already been started
+	 * @since 0.5
+	 */
+	public void enableAsyncNotification(int queueCapacity,
+			NotificationOverflowPolicyEnum overflowPolicy, int batchSize,
+			long callbackTimeout, TimeUnit unit, ExecutorService executor) {
+		if (state != MonitorStateEnum.NEW) {
+			throw new UnsupportedOperationException(
+					"Asynchronous notification can only be enabled before the monitoring is started");
 		}
-		// Full implementation in super as functionality used as is
+
+		this.notificationMod = new AsyncNotificationModule(notificationMod,
+				queueCapacity, overflowPolicy, batchSize, callbackTimeout,
+				unit, executor);
+		metrics.setNotificationModule(notificationMod);
 	}
 
-	private class Log4jNotification_Impl implements NotificationModuleInterface {
+	/**
+	 * Adds a notification module that will be notified of the GC events along
+	 * with the logging, for example a {@link JournalNotificationModule}. The
+	 * method can only be called before the monitoring is started.
+	 * 
+	 * @param module
+	 *            the notification module to be added
+	 * @throws NullPointerException
+	 *             if module is null
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has already been started
+	 * @since 0.5
+	 */
+	public void addNotificationModule(NotificationModuleInterface module) {
+		if (state != MonitorStateEnum.NEW) {
+			throw new UnsupportedOperationException(
+					"Notification modules can only be added before the monitoring is started");
+		}
 
-		Logger log = null;
+		if (notificationMod instanceof CompositeNotificationModule) {
+			((CompositeNotificationModule) notificationMod).addModule(module);
+		} else {
+			this.notificationMod = new CompositeNotificationModule(
+					notificationMod, module);
+		}
+		metrics.setNotificationModule(notificationMod);
+	}
 
-		public Log4jNotification_Impl(String loggerName) {
-			if (loggerName.isEmpty()) {
-				throw new UnsupportedOperationException("Logger Name not Found");
-			}
-			log = Logger.getLogger(loggerName);
-			if (log == null || !(log instanceof Logger)) {
-				throw new UnsupportedOperationException(loggerName
-						+ " : Logger not found");
-			}
+	/**
+	 * Gets the metrics of the monitor, the registrations, GC events, passes
+	 * of the monitor thread, queue depth, callback latency & the statistics
+	 * per class.
+	 * 
+	 * @return the metrics
+	 * @since 0.5
+	 */
+	public MonitorMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Publishes the metrics of the monitor as an MBean on the platform MBean
+	 * server, under the name
+	 * <code>com.gcr:type=SimpleObjectLog4jMonitor,name=<i>name</i></code>.
+	 * 
+	 * @param name
+	 *            the name of the monitor
+	 * @return the object name of the MBean
+	 * @throws JMException
+	 *             if the MBean could not be registered, e.g. the name is
+	 *             already taken
+	 * @throws IllegalStateException
+	 *             if the MBean of the monitor is already registered
+	 * @since 0.5
+	 */
+	public synchronized ObjectName registerMBean(String name)
+			throws JMException {
+		if (mBeanName != null) {
+			throw new IllegalStateException(
+					"The metrics MBean is already registered as " + mBeanName);
 		}
 
-		@Override
-		public boolean notifyStartMonitoring() {
-			log.info("Monitoring start..");
-			return false;
+		ObjectName objectName = new ObjectName("com.gcr:type="
+				+ getClass().getSimpleName() + ",name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+				objectName);
+		mBeanName = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Removes the MBean of the monitor from the platform MBean server, if it
+	 * is registered.
+	 * 
+	 * @throws JMException
+	 *             if the MBean could not be unregistered
+	 * @since 0.5
+	 */
+	public synchronized void unregisterMBean() throws JMException {
+		if (mBeanName == null) {
+			return;
 		}
 
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					mBeanName);
+		} finally {
+			mBeanName = null;
+		}
+	}
+
+	// --------------- INNER-CLASSES ---------------------
+
+	private class IndividualObjectFeed_Impl extends InputModule {
 		@Override
-		public boolean notifyStopMonitoring() {
-			log.info("Monitoring end..");
-			return false;
+		protected List<AbstractObjectRefrenceKey<Object>> getWatchList() {
+			return super.getWatchList();
 		}
 
 		@Override
-		public boolean notifyPreGcEvent(
-				AbstractObjectRefrenceKey<Object> refrenceKey) {
-			log.info(refrenceKey.getObjRefrenceKey()
-					+ " : refrence key object is about to be garbage collection.");
-			return false;
+		protected DeadlineTimerWheel getLeakDeadlines() {
+			return super.getLeakDeadlines();
 		}
 
 		@Override
-		public boolean notifyPostGcEvent(
-				AbstractObjectRefrenceKey<Object> refrenceKey) {
-			log.info(refrenceKey.getObjRefrenceKey()
-					+ " : refrence key object is garbage collected.");
-			return false;
+		protected TrackingReservoir getTrackingReservoir() {
+			return super.getTrackingReservoir();
 		}
 	}
 
+	private class SingleThreadedMonitor_Impl extends MonitoringModule {
+
+		protected SingleThreadedMonitor_Impl(
+				List<AbstractObjectRefrenceKey<Object>> keyCollection,
+				DeadlineTimerWheel leakDeadlines,
+				TrackingReservoir trackingReservoir) {
+			super(keyCollection, leakDeadlines, trackingReservoir);
+		}
+		// Full implementation in super as functionality used as is
+	}
+
 }
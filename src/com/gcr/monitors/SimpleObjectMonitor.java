@@ -15,17 +15,37 @@ along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
 
 package com.gcr.monitors;
 
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import com.gcr.callbacks.GcRadarCallback;
+import com.gcr.callbacks.GcRadarLeakCallback;
 import com.gcr.monitors.modules.in.impl.InputModule;
+import com.gcr.monitors.modules.in.structs.CreationTraceSampler;
+import com.gcr.monitors.modules.in.structs.HeapPressureAdmission;
 import com.gcr.monitors.modules.monitoring.impl.MonitoringModule;
+import com.gcr.monitors.modules.monitoring.structs.CreationSiteReport;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
 import com.gcr.monitors.modules.monitoring.structs.MonitorStateEnum;
 import com.gcr.monitors.modules.monitoring.structs.MonitorThreadYieldController;
+import com.gcr.monitors.modules.monitoring.structs.TagMetrics;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.impl.AsyncNotificationModule;
+import com.gcr.monitors.modules.notification.impl.CompositeNotificationModule;
+import com.gcr.monitors.modules.notification.impl.JournalNotificationModule;
 import com.gcr.monitors.modules.notification.impl.NotificationModule;
+import com.gcr.monitors.modules.notification.structs.NotificationOverflowPolicyEnum;
 import com.gcr.structs.AbstractObjectRefrenceKey;
+import com.gcr.structs.DeadlineTimerWheel;
+import com.gcr.structs.ReclamationFuture;
+import com.gcr.structs.ReclamationFutureGroup;
+import com.gcr.structs.TrackingReservoir;
 
 /**
  * This Object monitor runs on a worker thread and captures GC events on the
@@ -48,10 +68,13 @@ import com.gcr.structs.AbstractObjectRefrenceKey;
 public class SimpleObjectMonitor<I> {
 	private InputModule inMod;
 	private MonitoringModule monitoringMod;
-	private NotificationModule notificationMod;
+	private NotificationModuleInterface notificationMod;
 
 	private MonitorStateEnum state = MonitorStateEnum.NEW;
 
+	private final MonitorMetrics metrics = new MonitorMetrics();
+	private ObjectName mBeanName;
+
 	/**
 	 * The constructor for creating the
 	 * {@link SimpleObjectMonitor} object. The constructor will
@@ -69,8 +92,15 @@ public class SimpleObjectMonitor<I> {
 		this.inMod = individualObjectFeed_Impl;
 
 		this.monitoringMod = new SingleThreadedMonitor_Impl(
-				individualObjectFeed_Impl.getWatchList());
-		this.notificationMod = new CallbackNotificationModule_Impl();
+				individualObjectFeed_Impl);
+		CallbackNotificationModule_Impl callbackNotificationModule_Impl = new CallbackNotificationModule_Impl();
+		this.notificationMod = callbackNotificationModule_Impl;
+
+		individualObjectFeed_Impl.setMetrics(metrics);
+		monitoringMod.setMetrics(metrics);
+		callbackNotificationModule_Impl.setMetrics(metrics);
+		metrics.setInputModule(inMod);
+		metrics.setNotificationModule(notificationMod);
 	}
 
 	/**
@@ -152,6 +182,356 @@ public class SimpleObjectMonitor<I> {
 		}
 	}
 
+	/**
+	 * The method will add the object to the monitoring list with the lifetime
+	 * it is expected to have & start or restart the worker thread for the
+	 * monitoring. If the object has not been orphaned once the lifetime has
+	 * passed it is reported as a leak suspect to the callback, provided the
+	 * callback implements {@link GcRadarLeakCallback}.
+	 * 
+	 * If the monitor declaration has been defined with a type parameter then
+	 * the method will only accept objects that are of the type or a sub-type.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param identifier
+	 *            - The key that will be used as a key for the object to be
+	 *            added for the monitoring purposes.
+	 * @param callback
+	 *            - {@link GcRadarCallback} is used when a GC event needs to be
+	 *            reported
+	 * @param expectedLifetime
+	 *            - The time the object is expected to be orphaned in
+	 * @param unit
+	 *            - The unit of the expected lifetime
+	 * @return <code>true</code> if the object was added successfully<br>
+	 *         <code>false</code> if the object was not added as the identifier
+	 *         used to add the object has already been used.
+	 * @throws IllegalArgumentException
+	 *             if expectedLifetime is not positive
+	 * @since 0.5
+	 */
+	public <T extends I> boolean addObject(T object, String identifier,
+			GcRadarCallback callback, long expectedLifetime, TimeUnit unit) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		if (inMod.addObject(object, identifier, callback, expectedLifetime,
+				unit)) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * The method will add the object to the monitoring list with the lifetime
+	 * it is expected to have & start or restart the worker thread for the
+	 * monitoring. Assigns an auto generated identifier to the object.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param callback
+	 *            - {@link GcRadarCallback} is used when a GC event needs to be
+	 *            reported
+	 * @param expectedLifetime
+	 *            - The time the object is expected to be orphaned in
+	 * @param unit
+	 *            - The unit of the expected lifetime
+	 * @return <code>true</code> if the object was added successfully<br>
+	 *         <code>false</code> if the object was not added
+	 * @throws IllegalArgumentException
+	 *             if expectedLifetime is not positive
+	 * @see #addObject(Object, String, GcRadarCallback, long, TimeUnit)
+	 * @since 0.5
+	 */
+	public <T extends I> boolean addObject(T object, GcRadarCallback callback,
+			long expectedLifetime, TimeUnit unit) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		if (inMod.addObject(object, callback, expectedLifetime, unit)) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * The method will add the object to the monitoring list & start or restart
+	 * the worker thread for the monitoring. The future returned is completed
+	 * once the object has been reclaimed, its orphaned future once the object
+	 * has been orphaned, so the caller can wait for this object alone rather
+	 * than for the whole watch list. The futures of several objects can be
+	 * waited for together with a {@link ReclamationFutureGroup}.
+	 * 
+	 * If the monitor declaration has been defined with a type parameter then
+	 * the method will only accept objects that are of the type or a sub-type.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param identifier
+	 *            - The key that will be used as a key for the object to be
+	 *            added for the monitoring purposes.
+	 * @param callback
+	 *            - {@link GcRadarCallback} is used when a GC event needs to be
+	 *            reported
+	 * @return the reclamation future<br>
+	 *         <code>null</code> if the object was not added as the identifier
+	 *         used to add the object has already been used.
+	 * @since 0.5
+	 */
+	public <T extends I> ReclamationFuture addObjectWithFuture(T object,
+			String identifier, GcRadarCallback callback) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		ReclamationFuture future = inMod.addObjectWithFuture(object, identifier,
+				callback);
+		if (future != null) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+		}
+
+		return future;
+	}
+
+	/**
+	 * The method will add the object to the monitoring list & start or restart
+	 * the worker thread for the monitoring. Assigns an auto generated
+	 * identifier to the object.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param callback
+	 *            - {@link GcRadarCallback} is used when a GC event needs to be
+	 *            reported
+	 * @return the reclamation future, <code>null</code> if the object was
+	 *         not added
+	 * @see #addObjectWithFuture(Object, String, GcRadarCallback)
+	 * @since 0.5
+	 */
+	public <T extends I> ReclamationFuture addObjectWithFuture(T object,
+			GcRadarCallback callback) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		ReclamationFuture future = inMod.addObjectWithFuture(object, callback);
+		if (future != null) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+		}
+
+		return future;
+	}
+
+	/**
+	 * The method will add the object to the monitoring list with tags & start
+	 * or restart the worker thread for the monitoring. The statistics of the
+	 * objects are also kept per tag, see {@link MonitorMetrics#getTagMetrics()},
+	 * and the objects of a tag can be waited for with
+	 * {@link #awaitTagDrained(String, long, TimeUnit)}.
+	 * 
+	 * The statistics of a tag are created by the first object added with it
+	 * & kept, at a few hundred bytes, till the tag is released with
+	 * {@link #releaseTag(String)}, even once every object of the tag has been
+	 * reclaimed. A tag used once, such as a request, has thus to be released
+	 * once drained. The lifetime histogram of a tag is only created when it
+	 * is first read, see {@link TagMetrics#getLifetimeHistogram()}.
+	 * 
+	 * If the monitor declaration has been defined with a type parameter then
+	 * the method will only accept objects that are of the type or a sub-type.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param identifier
+	 *            - The key that will be used as a key for the object to be
+	 *            added for the monitoring purposes.
+	 * @param callback
+	 *            - {@link GcRadarCallback} is used when a GC event needs to be
+	 *            reported
+	 * @param tags
+	 *            - The tags of the object
+	 * @return <code>true</code> if the object was added successfully<br>
+	 *         <code>false</code> if the object was not added as the identifier
+	 *         used to add the object has already been used.
+	 * @throws NullPointerException
+	 *             if any of the tags is null
+	 * @since 0.5
+	 */
+	public <T extends I> boolean addTaggedObject(T object, String identifier,
+			GcRadarCallback callback, String... tags) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		if (inMod.addTaggedObject(object, identifier, callback, tags)) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * The method will add the object to the monitoring list with tags & start
+	 * or restart the worker thread for the monitoring. Assigns an auto
+	 * generated identifier to the object.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param callback
+	 *            - {@link GcRadarCallback} is used when a GC event needs to be
+	 *            reported
+	 * @param tags
+	 *            - The tags of the object
+	 * @return <code>true</code> if the object was added successfully<br>
+	 *         <code>false</code> if the object was not added
+	 * @throws NullPointerException
+	 *             if any of the tags is null
+	 * @see #addTaggedObject(Object, String, GcRadarCallback, String...)
+	 * @since 0.5
+	 */
+	public <T extends I> boolean addTaggedObject(T object,
+			GcRadarCallback callback, String... tags) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		if (inMod.addTaggedObject(object, callback, tags)) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Adds the object to the monitoring without waiting for the lock of the
+	 * watch list, for the threads that must not be held up by a pass of the
+	 * monitor thread, e.g. code instrumented to register the objects it
+	 * creates. The object is moved to the watch list by the monitor thread
+	 * before its next pass, it is only counted in
+	 * {@link #getPendingObjectsCount()} & sampled at the cap from then on.
+	 * Assigns an auto generated identifier to the object & starts or restarts
+	 * the worker thread for the monitoring.
+	 * 
+	 * @param object
+	 *            - The object to be monitored
+	 * @param callback
+	 *            - {@link GcRadarCallback} is used when a GC event needs to be
+	 *            reported
+	 * @return <code>true</code> if the object was offered successfully<br>
+	 *         <code>false</code> if the object was not admitted under heap
+	 *         pressure
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has been explicitly stopped by calling the
+	 *             {@link stopMonitoring()} method.
+	 * @since 0.5
+	 */
+	public <T extends I> boolean offerObject(T object, GcRadarCallback callback) {
+		if (!isMonitorReady()) {
+			throw new UnsupportedOperationException(
+					"Objects can not be added after the moter has been stopped");
+		}
+
+		if (inMod.offerObject(object, callback)) {
+			MonitorStateEnum monitoringModuleStatus = monitoringMod
+					.getMonitoringModuleStatus();
+
+			if (monitoringModuleStatus == MonitorStateEnum.TERMINATED) {
+				startMonitoring();
+			}
+
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * This method will hold the execution of the calling thread till the time
+	 * all the objects added with the tag have been claimed by the garbage
+	 * collector or removed, unlike {@link #lock(long, TimeUnit)} which waits
+	 * for the whole watch list.
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return <code>true</code> if no object with the tag is being monitored,
+	 *         which includes a tag no object has been added with<br>
+	 *         <code>false</code> if the timeout ran out
+	 * @throws InterruptedException
+	 *             in case the waiting thread is interrupted
+	 * @since 0.5
+	 */
+	public boolean awaitTagDrained(String tag, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		TagMetrics tagMetrics = metrics.getTagMetrics(tag);
+		return tagMetrics == null || tagMetrics.awaitDrained(timeout, unit);
+	}
+
+	/**
+	 * This method will release the statistics kept for the tag, see
+	 * {@link MonitorMetrics#releaseTag(String)}. The objects added with the
+	 * tag are still monitored.
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @return <code>true</code> if statistics were kept for the tag
+	 * @since 0.5
+	 */
+	public boolean releaseTag(String tag) {
+		return metrics.releaseTag(tag) != null;
+	}
+
 	/**
 	 * This method will remove the object from monitoring
 	 * 
@@ -307,6 +687,242 @@ public class SimpleObjectMonitor<I> {
 		monitoringMod.setMonitorThreadYieldController(yeildController);
 	}
 
+	/**
+	 * Marks the worker threads of the monitor as daemon threads, so that the
+	 * objects still being monitored do not keep the JVM from exiting.
+	 * 
+	 * @param daemon
+	 *            true, for daemon threads
+	 * @since 0.5
+	 */
+	public void setDaemon(boolean daemon) {
+		monitoringMod.setDaemon(daemon);
+	}
+
+	/**
+	 * Caps the number of objects the monitor tracks, so that its memory & the
+	 * cost of its passes are bounded. At the cap the objects added are
+	 * admitted by reservoir sampling, each one in place of a tracked object
+	 * picked at random, so the tracked objects stay a uniform sample of all
+	 * the objects added. The objects that are not admitted are counted by
+	 * class, see {@link MonitorMetrics#getEstimatedRegistrationCount(String)},
+	 * & the add method returns <code>false</code> for them.
+	 * 
+	 * @param maxTrackedCount
+	 *            the cap, 0 for no cap
+	 * @throws IllegalArgumentException
+	 *             if maxTrackedCount is negative
+	 * @throws IllegalStateException
+	 *             if objects have already been added
+	 * @since 0.5
+	 */
+	public void setMaxTrackedCount(int maxTrackedCount) {
+		inMod.setMaxTrackedCount(maxTrackedCount);
+	}
+
+	/**
+	 * Makes the monitor apply the admission to the objects added while the
+	 * heap is under pressure, an object that is not admitted is not monitored
+	 * & the add method returns <code>false</code>. The admission is started
+	 * if it is not already, it can be shared by several monitors & is
+	 * stopped by its owner.
+	 * 
+	 * @param heapPressureAdmission
+	 *            the admission, null to monitor every object added
+	 * @see MonitorMetrics#getAdmissionDeniedCount()
+	 * @since 0.5
+	 */
+	public void setHeapPressureAdmission(
+			HeapPressureAdmission heapPressureAdmission) {
+		if (heapPressureAdmission != null) {
+			heapPressureAdmission.start();
+		}
+		inMod.setHeapPressureAdmission(heapPressureAdmission);
+	}
+
+	/**
+	 * Makes the monitor capture the stack the objects are added from, for the
+	 * objects sampled by the sampler, so that the survivors can be traced
+	 * back to where they were created, see
+	 * {@link #getCreationSiteReport(int)}. The objects that are not sampled
+	 * only cost the increment of a counter.
+	 * 
+	 * @param creationTraceSampler
+	 *            the sampler, null to capture no stack
+	 * @see AbstractObjectRefrenceKey#getCreationTrace()
+	 * @since 0.5
+	 */
+	public void setCreationTraceSampler(
+			CreationTraceSampler creationTraceSampler) {
+		inMod.setCreationTraceSampler(creationTraceSampler);
+	}
+
+	/**
+	 * Aggregates the objects still monitored by the site they were created at,
+	 * for the objects whose creation trace was sampled.
+	 * 
+	 * @param topK
+	 *            the number of sites reported, the ones with the most
+	 *            survivors
+	 * @return the report
+	 * @see #setCreationTraceSampler(CreationTraceSampler)
+	 * @since 0.5
+	 */
+	public CreationSiteReport getCreationSiteReport(int topK) {
+		return inMod.getCreationSiteReport(topK);
+	}
+
+	/**
+	 * Makes the monitor deliver the GC events asynchronously using an
+	 * {@link AsyncNotificationModule} with the default batch size, callback
+	 * timeout and executor. The monitoring thread & the registration of
+	 * objects are then not held up by the callbacks. The method can only be
+	 * called before the monitoring is started.
+	 * 
+	 * @param queueCapacity
+	 *            the maximum number of events waiting to be delivered
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has already been started
+	 * @since 0.5
+	 */
+	public void enableAsyncNotification(int queueCapacity,
+			NotificationOverflowPolicyEnum overflowPolicy) {
+		enableAsyncNotification(queueCapacity, overflowPolicy,
+				AsyncNotificationModule.DEFAULT_BATCH_SIZE,
+				AsyncNotificationModule.DEFAULT_CALLBACK_TIMEOUT_MILLIS,
+				TimeUnit.MILLISECONDS, null);
+	}
+
+	/**
+	 * Makes the monitor deliver the GC events asynchronously using an
+	 * {@link AsyncNotificationModule}. The monitoring thread & the
+	 * registration of objects are then not held up by the callbacks. The
+	 * method can only be called before the monitoring is started.
+	 * 
+	 * @param queueCapacity
+	 *            the maximum number of events waiting to be delivered
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full
+	 * @param batchSize
+	 *            the maximum number of events delivered in one task
+	 * @param callbackTimeout
+	 *            the time a single callback is allowed to take, 0 for no limit
+	 * @param unit
+	 *            the unit of the callback timeout
+	 * @param executor
+	 *            the executor that will run the callbacks, <code>null</code>
+	 *            for the default
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has already been started
+	 * @since 0.5
+	 */
+	public void enableAsyncNotification(int queueCapacity,
+			NotificationOverflowPolicyEnum overflowPolicy, int batchSize,
+			long callbackTimeout, TimeUnit unit, ExecutorService executor) {
+		if (state != MonitorStateEnum.NEW) {
+			throw new UnsupportedOperationException(
+					"Asynchronous notification can only be enabled before the monitoring is started");
+		}
+
+		this.notificationMod = new AsyncNotificationModule(notificationMod,
+				queueCapacity, overflowPolicy, batchSize, callbackTimeout,
+				unit, executor);
+		metrics.setNotificationModule(notificationMod);
+	}
+
+	/**
+	 * Adds a notification module that will be notified of the GC events along
+	 * with the callbacks, for example a {@link JournalNotificationModule}. The
+	 * method can only be called before the monitoring is started.
+	 * 
+	 * @param module
+	 *            the notification module to be added
+	 * @throws NullPointerException
+	 *             if module is null
+	 * @throws UnsupportedOperationException
+	 *             if the monitoring has already been started
+	 * @since 0.5
+	 */
+	public void addNotificationModule(NotificationModuleInterface module) {
+		if (state != MonitorStateEnum.NEW) {
+			throw new UnsupportedOperationException(
+					"Notification modules can only be added before the monitoring is started");
+		}
+
+		if (notificationMod instanceof CompositeNotificationModule) {
+			((CompositeNotificationModule) notificationMod).addModule(module);
+		} else {
+			this.notificationMod = new CompositeNotificationModule(
+					notificationMod, module);
+		}
+		metrics.setNotificationModule(notificationMod);
+	}
+
+	/**
+	 * Gets the metrics of the monitor, the registrations, GC events, passes
+	 * of the monitor thread, queue depth, callback latency & the statistics
+	 * per class.
+	 * 
+	 * @return the metrics
+	 * @since 0.5
+	 */
+	public MonitorMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Publishes the metrics of the monitor as an MBean on the platform MBean
+	 * server, under the name
+	 * <code>com.gcr:type=SimpleObjectMonitor,name=<i>name</i></code>.
+	 * 
+	 * @param name
+	 *            the name of the monitor
+	 * @return the object name of the MBean
+	 * @throws JMException
+	 *             if the MBean could not be registered, e.g. the name is
+	 *             already taken
+	 * @throws IllegalStateException
+	 *             if the MBean of the monitor is already registered
+	 * @since 0.5
+	 */
+	public synchronized ObjectName registerMBean(String name)
+			throws JMException {
+		if (mBeanName != null) {
+			throw new IllegalStateException(
+					"The metrics MBean is already registered as " + mBeanName);
+		}
+
+		ObjectName objectName = new ObjectName("com.gcr:type="
+				+ getClass().getSimpleName() + ",name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+				objectName);
+		mBeanName = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Removes the MBean of the monitor from the platform MBean server, if it
+	 * is registered.
+	 * 
+	 * @throws JMException
+	 *             if the MBean could not be unregistered
+	 * @since 0.5
+	 */
+	public synchronized void unregisterMBean() throws JMException {
+		if (mBeanName == null) {
+			return;
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					mBeanName);
+		} finally {
+			mBeanName = null;
+		}
+	}
+
 	// --------------- INNER-CLASSES ---------------------
 
 	private class IndividualObjectFeed_Impl extends InputModule {
@@ -314,14 +930,36 @@ public class SimpleObjectMonitor<I> {
 		protected List<AbstractObjectRefrenceKey<Object>> getWatchList() {
 			return super.getWatchList();
 		}
+
+		@Override
+		protected DeadlineTimerWheel getLeakDeadlines() {
+			return super.getLeakDeadlines();
+		}
+
+		@Override
+		protected TrackingReservoir getTrackingReservoir() {
+			return super.getTrackingReservoir();
+		}
+
+		@Override
+		protected int drainOfferedObjects() {
+			return super.drainOfferedObjects();
+		}
 	}
 
 	private class SingleThreadedMonitor_Impl extends MonitoringModule {
-		protected SingleThreadedMonitor_Impl(
-				List<AbstractObjectRefrenceKey<Object>> keyCollection) {
-			super(keyCollection);
+		private final IndividualObjectFeed_Impl feed;
+
+		protected SingleThreadedMonitor_Impl(IndividualObjectFeed_Impl feed) {
+			super(feed.getWatchList(), feed.getLeakDeadlines(), feed
+					.getTrackingReservoir());
+			this.feed = feed;
+		}
+
+		@Override
+		protected void beforePass() {
+			feed.drainOfferedObjects();
 		}
-		// Full implementation in super as functionality used as is
 	}
 
 	private class CallbackNotificationModule_Impl extends NotificationModule {
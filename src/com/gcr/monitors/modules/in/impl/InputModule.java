@@ -16,6 +16,7 @@ along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
 package com.gcr.monitors.modules.in.impl;
 
 import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -23,11 +24,23 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.gcr.callbacks.GcRadarCallback;
 import com.gcr.monitors.modules.in.InputModuleInterface;
+import com.gcr.monitors.modules.in.structs.CreationTraceSampler;
+import com.gcr.monitors.modules.in.structs.HeapPressureAdmission;
+import com.gcr.monitors.modules.monitoring.impl.FlightRecorderEvents;
+import com.gcr.monitors.modules.monitoring.structs.CreationSiteReport;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
 import com.gcr.structs.AbstractObjectRefrenceKey;
 import com.gcr.structs.AbstractObjectRefrenceKeyComparator;
+import com.gcr.structs.CreationTrace;
+import com.gcr.structs.DeadlineTimerWheel;
+import com.gcr.structs.ReclamationFuture;
+import com.gcr.structs.TrackingReservoir;
 
 /**
  * The Class InputModule is the implementation of {@link InputModuleInterface}
@@ -47,6 +60,18 @@ public abstract class InputModule implements InputModuleInterface {
 	/** The watch list of objects being monitored. */
 	private List<AbstractObjectRefrenceKey<Object>> watchList = new LinkedList<AbstractObjectRefrenceKey<Object>>();
 
+	/**
+	 * The leak deadlines of the objects added with an expected lifetime,
+	 * guarded by the lock of the watch list.
+	 */
+	private final DeadlineTimerWheel leakDeadlines = new DeadlineTimerWheel();
+
+	/**
+	 * The cap on the objects being monitored, guarded by the lock of the watch
+	 * list.
+	 */
+	private final TrackingReservoir trackingReservoir = new TrackingReservoir();
+
 	/** The weak reference queue. */
 	private ReferenceQueue<Object> weakReferenceQueue = new ReferenceQueue<Object>();
 
@@ -59,6 +84,24 @@ public abstract class InputModule implements InputModuleInterface {
 	 */
 	private HashMap<Object, AbstractObjectRefrenceKey<Object>> historyMap = new HashMap<Object, AbstractObjectRefrenceKey<Object>>();
 
+	/**
+	 * The keys of the objects offered without taking the lock of the watch
+	 * list, moved to the watch list by {@link #drainOfferedObjects()}.
+	 */
+	private final ConcurrentLinkedQueue<AbstractObjectRefrenceKey<Object>> offeredKeys = new ConcurrentLinkedQueue<AbstractObjectRefrenceKey<Object>>();
+
+	/** The counter the identifiers of the offered objects are generated from. */
+	private final AtomicLong offerCounter = new AtomicLong();
+
+	/** The metrics of the monitor, null if not collected. */
+	private volatile MonitorMetrics metrics;
+
+	/** The admission under heap pressure, null if every object is admitted. */
+	private volatile HeapPressureAdmission heapPressureAdmission;
+
+	/** The sampler of the creation traces, null if none is captured. */
+	private volatile CreationTraceSampler creationTraceSampler;
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -68,23 +111,211 @@ public abstract class InputModule implements InputModuleInterface {
 	@Override
 	public <I> boolean addObject(I object, String identifier,
 			GcRadarCallback callback) {
+		return add(object, identifier, callback, 0, null, null);
+	}
+
+	/**
+	 * Adds the object and returns a future completed once the object has
+	 * been reclaimed.
+	 * 
+	 * @param <I>
+	 *            the generic type of the object being monitored
+	 * @param object
+	 *            the object to be added to monitoring
+	 * @param identifier
+	 *            the identifier object that will be used as an alias for the
+	 *            object being monitored
+	 * @param callback
+	 *            the callback that will be notified about the GC events
+	 * @return the reclamation future, null if the identifier has already been
+	 *         used
+	 * @since 0.5
+	 */
+	public <I> ReclamationFuture addObjectWithFuture(I object,
+			String identifier, GcRadarCallback callback) {
+		ReclamationFuture future = new ReclamationFuture();
+		return add(object, identifier, callback, 0, future, null) ? future
+				: null;
+	}
+
+	/**
+	 * Adds the object and returns a future completed once the object has
+	 * been reclaimed. Assigns an auto generated identifier to the object.
+	 * 
+	 * @param <I>
+	 *            the generic type of the object being monitored
+	 * @param object
+	 *            the object to be added to monitoring
+	 * @param callback
+	 *            the callback that will be notified about the GC events
+	 * @return the reclamation future, null if the object was not added
+	 * @since 0.5
+	 */
+	public <I> ReclamationFuture addObjectWithFuture(I object,
+			GcRadarCallback callback) {
+		if (object == null) {
+			throw new NullPointerException("Can not add null to monitoring");
+		}
+
+		String autoGenKey = object.getClass().getName() + " - "
+				+ incrementEntryCounter();
+
+		return addObjectWithFuture(object, autoGenKey, callback);
+	}
+
+	/**
+	 * Adds the object with the lifetime it is expected to have. A leak
+	 * suspect is raised if the object has not been orphaned once the lifetime
+	 * has passed.
+	 * 
+	 * @param <I>
+	 *            the generic type of the object being monitored
+	 * @param object
+	 *            the object to be added to monitoring
+	 * @param identifier
+	 *            the identifier object that will be used as an alias for the
+	 *            object being monitored
+	 * @param callback
+	 *            the callback that will be notified about the GC events
+	 * @param expectedLifetime
+	 *            the time the object is expected to be orphaned in
+	 * @param unit
+	 *            the unit of the expected lifetime
+	 * @return true, if successful
+	 * @throws IllegalArgumentException
+	 *             if expectedLifetime is not positive
+	 * @since 0.5
+	 */
+	public <I> boolean addObject(I object, String identifier,
+			GcRadarCallback callback, long expectedLifetime, TimeUnit unit) {
+		return add(object, identifier, callback,
+				toMillis(expectedLifetime, unit), null, null);
+	}
+
+	/**
+	 * Adds the object with the lifetime it is expected to have. Assigns an
+	 * auto generated identifier to the object.
+	 * 
+	 * @param <I>
+	 *            the generic type of the object being monitored
+	 * @param object
+	 *            the object to be added to monitoring
+	 * @param callback
+	 *            the callback that will be notified about the GC events
+	 * @param expectedLifetime
+	 *            the time the object is expected to be orphaned in
+	 * @param unit
+	 *            the unit of the expected lifetime
+	 * @return true, if successful
+	 * @throws IllegalArgumentException
+	 *             if expectedLifetime is not positive
+	 * @since 0.5
+	 */
+	public <I> boolean addObject(I object, GcRadarCallback callback,
+			long expectedLifetime, TimeUnit unit) {
+		long expectedLifetimeMillis = toMillis(expectedLifetime, unit);
+		if (object == null) {
+			throw new NullPointerException("Can not add null to monitoring");
+		}
+
+		String autoGenKey = object.getClass().getName() + " - "
+				+ incrementEntryCounter();
+
+		return add(object, autoGenKey, callback, expectedLifetimeMillis, null,
+				null);
+	}
+
+	/**
+	 * Adds the object with tags, the statistics of the objects are then also
+	 * kept per tag in the metrics of the monitor.
+	 * 
+	 * @param <I>
+	 *            the generic type of the object being monitored
+	 * @param object
+	 *            the object to be added to monitoring
+	 * @param identifier
+	 *            the identifier object that will be used as an alias for the
+	 *            object being monitored
+	 * @param callback
+	 *            the callback that will be notified about the GC events
+	 * @param tags
+	 *            the tags of the object
+	 * @return true, if successful
+	 * @throws NullPointerException
+	 *             if any of the tags is null
+	 * @since 0.5
+	 */
+	public <I> boolean addTaggedObject(I object, String identifier,
+			GcRadarCallback callback, String... tags) {
+		return add(object, identifier, callback, 0, null, tags);
+	}
+
+	/**
+	 * Adds the object with tags. Assigns an auto generated identifier to the
+	 * object.
+	 * 
+	 * @param <I>
+	 *            the generic type of the object being monitored
+	 * @param object
+	 *            the object to be added to monitoring
+	 * @param callback
+	 *            the callback that will be notified about the GC events
+	 * @param tags
+	 *            the tags of the object
+	 * @return true, if successful
+	 * @throws NullPointerException
+	 *             if any of the tags is null
+	 * @since 0.5
+	 */
+	public <I> boolean addTaggedObject(I object, GcRadarCallback callback,
+			String... tags) {
+		if (object == null) {
+			throw new NullPointerException("Can not add null to monitoring");
+		}
+
+		String autoGenKey = object.getClass().getName() + " - "
+				+ incrementEntryCounter();
+
+		return add(object, autoGenKey, callback, 0, null, tags);
+	}
+
+	private <I> boolean add(I object, String identifier,
+			GcRadarCallback callback, long expectedLifetimeMillis,
+			ReclamationFuture future, String[] tags) {
 		if (object == null) {
 			throw new NullPointerException("Can not add null to monitoring");
 		}
 		if (identifier == null) {
 			throw new NullPointerException("identifier can not be null");
 		}
+		// decided before anything is allocated for the object
+		if (!isAdmitted(object, tags == null ? 0 : tags.length)) {
+			return false;
+		}
+		// captured by the adding thread, outside of the lock
+		CreationTrace creationTrace = sampleCreationTrace();
 
 		synchronized (watchList) {
 
 			if (!historyMap.containsKey(identifier)) {
+				int slot = TrackingReservoir.NOT_ADMITTED;
+				if (trackingReservoir.isCapped()) {
+					slot = trackingReservoir.admit();
+					if (slot == TrackingReservoir.NOT_ADMITTED) {
+						countSampledOut(object.getClass());
+						return false;
+					}
+				}
+
 				AbstractObjectRefrenceKey<Object> refrenceKey = new SequentialObjectRefrenceKey<Object>(
 						object, identifier, weakReferenceQueue,
 						phantomReferenceQueue, callback);
 
-				watchList.add(refrenceKey);
-
-				historyMap.put(identifier, refrenceKey);
+				// set before the monitor thread can see the key
+				refrenceKey.setTags(tags);
+				refrenceKey.setReclamationFuture(future);
+				refrenceKey.setCreationTrace(creationTrace);
+				track(refrenceKey, expectedLifetimeMillis, slot);
 
 				incrementEntryCounter();
 
@@ -95,6 +326,99 @@ public abstract class InputModule implements InputModuleInterface {
 		}
 	}
 
+	/*
+	 * Puts the key in the watch list & the structures that go with it. Called
+	 * with the lock of the watch list held.
+	 */
+	private void track(AbstractObjectRefrenceKey<Object> refrenceKey,
+			long expectedLifetimeMillis, int slot) {
+		watchList.add(refrenceKey);
+		if (expectedLifetimeMillis > 0) {
+			long added = refrenceKey.getDateAddedMillis();
+			refrenceKey.setLeakDeadlineMillis(added
+					+ Math.min(expectedLifetimeMillis, Long.MAX_VALUE - added));
+			leakDeadlines.schedule(refrenceKey);
+		}
+
+		historyMap.put(refrenceKey.getObjRefrenceKey(), refrenceKey);
+		FlightRecorderEvents.objectRegistered(refrenceKey);
+		countRegistration(refrenceKey);
+		if (slot != TrackingReservoir.NOT_ADMITTED) {
+			AbstractObjectRefrenceKey<?> evicted = trackingReservoir.place(
+					refrenceKey, slot);
+			if (evicted != null) {
+				forgetEvicted(evicted);
+			}
+		}
+	}
+
+	/**
+	 * Offers the object for monitoring without taking the lock of the watch
+	 * list, so the calling thread is never held up by a pass of the monitor
+	 * thread. The key of the object is created right away, the object is only
+	 * moved to the watch list, & counted as registered, by the next
+	 * {@link #drainOfferedObjects()}. Assigns an auto generated identifier to
+	 * the object.
+	 * 
+	 * @param <I>
+	 *            the generic type of the object being monitored
+	 * @param object
+	 *            the object to be added to monitoring
+	 * @param callback
+	 *            the callback that will be notified about the GC events
+	 * @return true, if the object was offered; false if it was not admitted
+	 *         under heap pressure
+	 * @since 0.5
+	 */
+	public <I> boolean offerObject(I object, GcRadarCallback callback) {
+		if (object == null) {
+			throw new NullPointerException("Can not add null to monitoring");
+		}
+		if (!isAdmitted(object, 0)) {
+			return false;
+		}
+
+		// a separate sequence, so the identifiers never clash with the ones
+		// generated by addObject
+		String autoGenKey = object.getClass().getName() + " # "
+				+ offerCounter.incrementAndGet();
+
+		AbstractObjectRefrenceKey<Object> refrenceKey = new SequentialObjectRefrenceKey<Object>(
+				object, autoGenKey, weakReferenceQueue, phantomReferenceQueue,
+				callback);
+		refrenceKey.setCreationTrace(sampleCreationTrace());
+		offeredKeys.offer(refrenceKey);
+		return true;
+	}
+
+	/**
+	 * Moves the objects offered since the last call to the watch list. At the
+	 * cap the objects are sampled like the ones added. Must be called while
+	 * holding the watch list lock, by the monitor thread before each pass.
+	 * 
+	 * @return the number of objects moved to the watch list
+	 * @since 0.5
+	 */
+	protected int drainOfferedObjects() {
+		int drained = 0;
+		AbstractObjectRefrenceKey<Object> refrenceKey;
+		while ((refrenceKey = offeredKeys.poll()) != null) {
+			int slot = TrackingReservoir.NOT_ADMITTED;
+			if (trackingReservoir.isCapped()) {
+				slot = trackingReservoir.admit();
+				if (slot == TrackingReservoir.NOT_ADMITTED) {
+					countSampledOut(refrenceKey.getClazz());
+					continue;
+				}
+			}
+
+			track(refrenceKey, 0, slot);
+			drained++;
+		}
+
+		return drained;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -128,7 +452,17 @@ public abstract class InputModule implements InputModuleInterface {
 			if (historyMap.containsKey(objectKey)) {
 				AbstractObjectRefrenceKey<Object> abstractObjectRefrenceKey = historyMap
 						.get(objectKey);
-				watchList.remove(abstractObjectRefrenceKey);
+				if (watchList.remove(abstractObjectRefrenceKey)
+						&& !abstractObjectRefrenceKey.isEvicted()) {
+					countRemoval(abstractObjectRefrenceKey);
+				}
+				trackingReservoir.remove(abstractObjectRefrenceKey);
+				leakDeadlines.cancel(abstractObjectRefrenceKey);
+				ReclamationFuture future = abstractObjectRefrenceKey
+						.getReclamationFuture();
+				if (future != null) {
+					future.cancelAll();
+				}
 				historyMap.remove(objectKey);
 
 				return true;
@@ -142,6 +476,181 @@ public abstract class InputModule implements InputModuleInterface {
 		return watchList;
 	}
 
+	/**
+	 * Gets the leak deadlines of the objects in the watch list, guarded by the
+	 * lock of the watch list.
+	 * 
+	 * @return the leak deadlines
+	 * @since 0.5
+	 */
+	protected DeadlineTimerWheel getLeakDeadlines() {
+		return leakDeadlines;
+	}
+
+	/**
+	 * Gets the cap on the objects being monitored, guarded by the lock of the
+	 * watch list.
+	 * 
+	 * @return the tracking reservoir
+	 * @since 0.5
+	 */
+	protected TrackingReservoir getTrackingReservoir() {
+		return trackingReservoir;
+	}
+
+	/**
+	 * Caps the number of objects being monitored. At the cap the objects added
+	 * are sampled, see {@link TrackingReservoir}, an object that is not
+	 * sampled is counted by class in the metrics & not monitored.
+	 * 
+	 * @param maxTrackedCount
+	 *            the cap, 0 for no cap
+	 * @throws IllegalArgumentException
+	 *             if maxTrackedCount is negative
+	 * @throws IllegalStateException
+	 *             if objects are being monitored
+	 * @since 0.5
+	 */
+	public void setMaxTrackedCount(int maxTrackedCount) {
+		synchronized (watchList) {
+			if (!watchList.isEmpty()) {
+				throw new IllegalStateException(
+						"The cap can only be set while no object is monitored");
+			}
+			trackingReservoir.setCapacity(maxTrackedCount);
+		}
+	}
+
+	/*
+	 * Forgets an object evicted by the reservoir, the monitor thread drops its
+	 * key from the watch list. Called with the lock of the watch list held.
+	 */
+	private void forgetEvicted(AbstractObjectRefrenceKey<?> evicted) {
+		historyMap.remove(evicted.getObjRefrenceKey());
+		leakDeadlines.cancel(evicted);
+		ReclamationFuture future = evicted.getReclamationFuture();
+		if (future != null) {
+			future.cancelAll();
+		}
+
+		MonitorMetrics current = metrics;
+		if (current != null) {
+			current.recordRemoval(evicted);
+		}
+	}
+
+	private void countSampledOut(Class<?> clazz) {
+		MonitorMetrics current = metrics;
+		if (current != null) {
+			current.recordSampledOut(clazz);
+		}
+	}
+
+	/**
+	 * Sets the metrics the registrations are counted in.
+	 * 
+	 * @param metrics
+	 *            the metrics, null to stop counting
+	 * @since 0.5
+	 */
+	public void setMetrics(MonitorMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sets the admission that decides whether the objects added are monitored
+	 * while the heap is under pressure.
+	 * 
+	 * @param heapPressureAdmission
+	 *            the admission, null to admit every object
+	 * @since 0.5
+	 */
+	public void setHeapPressureAdmission(
+			HeapPressureAdmission heapPressureAdmission) {
+		this.heapPressureAdmission = heapPressureAdmission;
+	}
+
+	/**
+	 * Sets the sampler capturing the stack the objects are added from.
+	 * 
+	 * @param creationTraceSampler
+	 *            the sampler, null to capture none
+	 * @since 0.5
+	 */
+	public void setCreationTraceSampler(
+			CreationTraceSampler creationTraceSampler) {
+		this.creationTraceSampler = creationTraceSampler;
+	}
+
+	/**
+	 * Gets the sampler capturing the stack the objects are added from.
+	 * 
+	 * @return the sampler, null if none is captured
+	 * @since 0.5
+	 */
+	public CreationTraceSampler getCreationTraceSampler() {
+		return creationTraceSampler;
+	}
+
+	/**
+	 * Aggregates the objects being monitored by the site they were created
+	 * at, for the objects whose creation trace was sampled.
+	 * 
+	 * @param topK
+	 *            the number of sites reported
+	 * @return the report
+	 * @since 0.5
+	 */
+	public CreationSiteReport getCreationSiteReport(int topK) {
+		List<AbstractObjectRefrenceKey<Object>> survivors;
+		synchronized (watchList) {
+			survivors = new ArrayList<AbstractObjectRefrenceKey<Object>>(
+					watchList.size());
+			for (AbstractObjectRefrenceKey<Object> refrenceKey : watchList) {
+				if (!refrenceKey.isEvicted()) {
+					survivors.add(refrenceKey);
+				}
+			}
+		}
+
+		// aggregated outside of the lock
+		return CreationSiteReport.build(survivors, topK);
+	}
+
+	private CreationTrace sampleCreationTrace() {
+		CreationTraceSampler sampler = creationTraceSampler;
+		return sampler == null ? null : sampler.sample();
+	}
+
+	private boolean isAdmitted(Object object, int tagCount) {
+		HeapPressureAdmission admission = heapPressureAdmission;
+		if (admission == null
+				|| admission.admit(object.getClass(), tagCount)) {
+			return true;
+		}
+
+		MonitorMetrics current = metrics;
+		if (current != null) {
+			current.recordAdmissionDenied();
+		}
+		return false;
+	}
+
+	private void countRegistration(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		MonitorMetrics current = metrics;
+		if (current != null) {
+			current.recordRegistration(refrenceKey);
+		}
+	}
+
+	private void countRemoval(AbstractObjectRefrenceKey<Object> refrenceKey) {
+		MonitorMetrics current = metrics;
+		if (current != null) {
+			current.recordRemoval(refrenceKey);
+		}
+	}
+
 	/**
 	 * Returns a sorted set containing all the objects monitored that have not
 	 * been garbage collected.
@@ -154,7 +663,11 @@ public abstract class InputModule implements InputModuleInterface {
 		TreeSet<AbstractObjectRefrenceKey<Object>> treeSet = new TreeSet<AbstractObjectRefrenceKey<Object>>(
 				new AbstractObjectRefrenceKeyComparator());
 		synchronized (watchList) {
-			treeSet.addAll(watchList);
+			for (AbstractObjectRefrenceKey<Object> refrenceKey : watchList) {
+				if (!refrenceKey.isEvicted()) {
+					treeSet.add(refrenceKey);
+				}
+			}
 		}
 
 		return treeSet;
@@ -166,6 +679,11 @@ public abstract class InputModule implements InputModuleInterface {
 	 * @see com.gcr.monitors.modules.in.InputModuleInterface#getPendingObjectsCount()
 	 */
 	public int getPendingObjectsCount() {
+		// the keys evicted by the reservoir stay in the watch list till the
+		// next pass, the reservoir only holds the ones still monitored
+		if (trackingReservoir.isCapped()) {
+			return trackingReservoir.size();
+		}
 		return watchList.size();
 	}
 
@@ -272,6 +790,19 @@ public abstract class InputModule implements InputModuleInterface {
 		}
 	}
 
+	private static long toMillis(long expectedLifetime, TimeUnit unit) {
+		if (unit == null) {
+			throw new NullPointerException("Time unit can not be null");
+		}
+		if (expectedLifetime <= 0) {
+			throw new IllegalArgumentException(
+					"Expected lifetime must be greater than 0");
+		}
+
+		// at least 1 millisecond, 0 stands for no deadline
+		return Math.max(1, unit.toMillis(expectedLifetime));
+	}
+
 	/**
 	 * Increment entry counter.
 	 * 
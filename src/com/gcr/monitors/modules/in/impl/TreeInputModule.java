@@ -16,7 +16,10 @@ along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
 package com.gcr.monitors.modules.in.impl;
 
 import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -25,7 +28,10 @@ import java.util.TreeSet;
 import com.gcr.callbacks.GcRadarCallback;
 import com.gcr.monitors.ObjectTreeMonitor;
 import com.gcr.monitors.modules.in.InputModuleInterface;
+import com.gcr.monitors.modules.in.structs.HeapPressureAdmission;
 import com.gcr.monitors.modules.in.structs.annotation.GcRadarAnnotationScannerInterface;
+import com.gcr.monitors.modules.monitoring.impl.FlightRecorderEvents;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
 import com.gcr.structs.AbstractObjectRefrenceKey;
 import com.gcr.structs.AbstractObjectRefrenceKeyComparator;
 import com.gcr.structs.FieldNameValuePair;
@@ -56,6 +62,42 @@ public abstract class TreeInputModule implements InputModuleInterface {
 	 */
 	private HashMap<Object, AbstractObjectRefrenceKey<Object>> historyMap = new HashMap<Object, AbstractObjectRefrenceKey<Object>>();
 
+	/**
+	 * The roots that were added to the monitoring while the re-scan is
+	 * enabled, these are re-walked by {@link #rescan(int)} to find the nodes
+	 * that were assigned after the addition.
+	 */
+	private List<RootEntry> roots = new ArrayList<RootEntry>();
+
+	/** The roots by identifier, to drop a root when it is removed. */
+	private HashMap<String, RootEntry> rootsByIdentifier = new HashMap<String, RootEntry>();
+
+	/** Whether the roots added are remembered for the re-scan. */
+	private boolean rescanEnabled;
+
+	/** The position in roots from where the next re-scan pass will start. */
+	private int rescanCursor;
+
+	/** The position in roots of the next root checked for its reclaim. */
+	private int pruneCursor;
+
+	/**
+	 * The identity index of the objects tracked while the re-scan is enabled.
+	 * The index is keyed on the identity hash code of the tracked object and
+	 * only holds the keys, so it does not keep any of the monitored objects
+	 * reachable.
+	 */
+	private HashMap<Integer, List<AbstractObjectRefrenceKey<Object>>> identityIndex = new HashMap<Integer, List<AbstractObjectRefrenceKey<Object>>>();
+
+	/** The number of keys in the identity index. */
+	private int identityIndexSize;
+
+	/** The metrics of the monitor, null if not collected. */
+	private volatile MonitorMetrics metrics;
+
+	/** The admission under heap pressure, null if every object is admitted. */
+	private volatile HeapPressureAdmission heapPressureAdmission;
+
 	/**
 	 * Instantiates a new tree input module.
 	 * 
@@ -105,6 +147,11 @@ public abstract class TreeInputModule implements InputModuleInterface {
 			throw new NullPointerException("identifier can not be null");
 		}
 
+		// the tree is not walked for a root that is not admitted
+		if (!isAdmitted(object)) {
+			return false;
+		}
+
 		if (!historyMap.containsKey(identifier)) {
 			// get all the non primitive fields from the object.
 			List<? extends FieldNameValuePair<? extends Object>> allFields = annotationSacnner
@@ -117,30 +164,328 @@ public abstract class TreeInputModule implements InputModuleInterface {
 						phantomReferenceQueue, callback);
 				watchList.add(refrenceKey);
 				historyMap.put(identifier, refrenceKey);
+				if (rescanEnabled) {
+					indexKey(refrenceKey, object);
+				}
+				FlightRecorderEvents.objectRegistered(refrenceKey);
+				countRegistration(refrenceKey);
+
+				// the nodes registered below add up to the size of the tree
+				refrenceKey.setTreeSizeBytes(refrenceKey.getSizeBytes());
+				RootEntry rootEntry = new RootEntry(identifier, callback,
+						refrenceKey);
+				if (rescanEnabled) {
+					// the roots reclaimed meanwhile are dropped as they are
+					// added
+					pruneRoots(2);
+					rootEntry.setRoot(object);
+					rootEntry.setIndex(roots.size());
+					roots.add(rootEntry);
+					rootsByIdentifier.put(identifier, rootEntry);
+				}
 
 				// then add all its comprising fields
-				int counter = 1;
 				for (FieldNameValuePair<? extends Object> fnPair : allFields) {
-					refrenceKey = new TreeObjectRefrenceKey<Object>(
-							fnPair.getRefrenceValue(), fnPair.getFieldName(),
-							weakReferenceQueue, phantomReferenceQueue, callback);
+					if (rescanEnabled) {
+						registerNode(rootEntry, fnPair);
+					} else {
+						registerField(rootEntry, fnPair);
+					}
+				}
+			}
 
-					watchList.add(refrenceKey);
+			// help GC
+			allFields = null;
 
-					historyMap.put(identifier + "[" + counter + "]",
-							refrenceKey);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Re-walks at most <code>rootBudget</code> of the roots added to the
+	 * monitoring, continuing from where the previous pass stopped. Only the
+	 * fields whose value has changed identity since the last walk of the root
+	 * are considered, and of those only the values that are not already
+	 * tracked are registered. The registration work done by a pass is thus
+	 * proportional to the rate at which the roots are mutated rather than to
+	 * the number of objects being monitored.
+	 * 
+	 * Only the roots added while the re-scan is enabled are re-walked, see
+	 * {@link #setRescanEnabled(boolean)}. Roots that have been reclaimed or
+	 * removed from the monitoring are dropped from the re-scan rotation.
+	 * 
+	 * @param rootBudget
+	 *            the maximum number of roots to be re-walked in this pass
+	 * @return the number of newly registered objects
+	 * @throws IllegalArgumentException
+	 *             if rootBudget is less than 1
+	 * @since 0.5
+	 */
+	public int rescan(int rootBudget) {
+		if (rootBudget < 1) {
+			throw new IllegalArgumentException(
+					"Root budget must be greater than 0");
+		}
 
-					counter++;
+		int registered = 0;
+		int visited = 0;
+		while (visited < rootBudget) {
+			RootEntry rootEntry = null;
+			Object root = null;
+			synchronized (watchList) {
+				if (roots.isEmpty() || visited >= roots.size()) {
+					break;
+				}
+				if (rescanCursor >= roots.size()) {
+					rescanCursor = 0;
+				}
+
+				rootEntry = roots.get(rescanCursor);
+				root = rootEntry.getRoot();
+				if (root == null
+						|| !historyMap.containsKey(rootEntry.getIdentifier())) {
+					// the root is gone, so will be any node only reachable
+					// from it
+					removeRoot(rootEntry);
+					continue;
+				}
+				rescanCursor++;
+			}
+			visited++;
+
+			// the reflection is done outside the lock, like addObject
+			List<? extends FieldNameValuePair<? extends Object>> allFields = annotationSacnner
+					.getAllFields(root, rootEntry.getIdentifier(),
+							isOptimistic);
+
+			synchronized (watchList) {
+				for (FieldNameValuePair<? extends Object> fnPair : allFields) {
+					// skip the fields whose identity has not changed
+					if (rootEntry.hasChanged(fnPair)
+							&& registerNode(rootEntry, fnPair)) {
+						registered++;
+					}
 				}
 			}
 
 			// help GC
 			allFields = null;
+			root = null;
+		}
 
-			return true;
-		} else {
+		return registered;
+	}
+
+	/**
+	 * Sets whether the roots added from now on are remembered to be re-walked
+	 * by {@link #rescan(int)}. A remembered root costs a map of the last seen
+	 * field values, so the roots are not remembered unless the re-scan is
+	 * enabled. The nodes of the remembered roots are registered only once
+	 * even if reachable from several roots, which needs an identity index of
+	 * the tracked objects; without the re-scan every field of a root is
+	 * registered under that root as before. Disabling the re-scan forgets the
+	 * roots remembered so far along with the identity index.
+	 * 
+	 * @param rescanEnabled
+	 *            whether the roots added are remembered
+	 * @since 0.5
+	 */
+	public void setRescanEnabled(boolean rescanEnabled) {
+		synchronized (watchList) {
+			this.rescanEnabled = rescanEnabled;
+			if (!rescanEnabled) {
+				roots.clear();
+				rootsByIdentifier.clear();
+				rescanCursor = 0;
+				pruneCursor = 0;
+				identityIndex.clear();
+				identityIndexSize = 0;
+			}
+		}
+	}
+
+	/**
+	 * Checks at most <code>count</code> of the remembered roots & drops the
+	 * ones that are gone. Must be called while holding the watch list lock.
+	 */
+	private void pruneRoots(int count) {
+		for (int i = 0; i < count && !roots.isEmpty(); i++) {
+			if (pruneCursor >= roots.size()) {
+				pruneCursor = 0;
+			}
+
+			RootEntry rootEntry = roots.get(pruneCursor);
+			if (rootEntry.getRoot() == null
+					|| !historyMap.containsKey(rootEntry.getIdentifier())) {
+				removeRoot(rootEntry);
+			} else {
+				pruneCursor++;
+			}
+		}
+	}
+
+	/**
+	 * Drops a remembered root, the last root takes its place in the rotation.
+	 * Must be called while holding the watch list lock.
+	 */
+	private void removeRoot(RootEntry rootEntry) {
+		int index = rootEntry.getIndex();
+		RootEntry last = roots.remove(roots.size() - 1);
+		if (last != rootEntry) {
+			last.setIndex(index);
+			roots.set(index, last);
+		}
+		if (rootsByIdentifier.get(rootEntry.getIdentifier()) == rootEntry) {
+			rootsByIdentifier.remove(rootEntry.getIdentifier());
+		}
+	}
+
+	/**
+	 * Registers a node discovered under a remembered root, unless the node is
+	 * already being tracked. The field is remembered once its value is
+	 * tracked, a value that is not admitted is left for a later re-scan to
+	 * retry. Must be called while holding the watch list lock.
+	 * 
+	 * @return true, if the node was registered
+	 */
+	private boolean registerNode(RootEntry rootEntry,
+			FieldNameValuePair<? extends Object> fnPair) {
+		Object value = fnPair.getRefrenceValue();
+		if (isTracked(value)) {
+			rootEntry.remember(fnPair);
+			return false;
+		}
+		if (!isAdmitted(value)) {
+			return false;
+		}
+
+		AbstractObjectRefrenceKey<Object> refrenceKey = addNode(rootEntry,
+				fnPair, rootEntry.nextNodeIdentifier());
+		indexKey(refrenceKey, value);
+		rootEntry.remember(fnPair);
+
+		return true;
+	}
+
+	/**
+	 * Registers a field of a root that is not remembered for the re-scan.
+	 * The field is registered under the root even if its value is already
+	 * tracked, and takes the next node identifier even if not admitted so
+	 * that the n-th field is always known as <code>identifier[n]</code>. Must
+	 * be called while holding the watch list lock.
+	 */
+	private void registerField(RootEntry rootEntry,
+			FieldNameValuePair<? extends Object> fnPair) {
+		String nodeIdentifier = rootEntry.nextNodeIdentifier();
+		if (isAdmitted(fnPair.getRefrenceValue())) {
+			addNode(rootEntry, fnPair, nodeIdentifier);
+		}
+	}
+
+	private AbstractObjectRefrenceKey<Object> addNode(RootEntry rootEntry,
+			FieldNameValuePair<? extends Object> fnPair, String nodeIdentifier) {
+		AbstractObjectRefrenceKey<Object> refrenceKey = new TreeObjectRefrenceKey<Object>(
+				fnPair.getRefrenceValue(), fnPair.getFieldName(),
+				weakReferenceQueue, phantomReferenceQueue,
+				rootEntry.getCallback());
+
+		watchList.add(refrenceKey);
+		historyMap.put(nodeIdentifier, refrenceKey);
+		FlightRecorderEvents.objectRegistered(refrenceKey);
+		countRegistration(refrenceKey);
+		rootEntry.addToTreeSize(refrenceKey.getSizeBytes());
+
+		return refrenceKey;
+	}
+
+	/**
+	 * Checks by identity if the object is already being tracked. Must be
+	 * called while holding the watch list lock.
+	 */
+	private boolean isTracked(Object object) {
+		List<AbstractObjectRefrenceKey<Object>> bucket = identityIndex
+				.get(System.identityHashCode(object));
+		if (bucket == null) {
 			return false;
 		}
+
+		boolean found = false;
+		Iterator<AbstractObjectRefrenceKey<Object>> iterator = bucket
+				.iterator();
+		while (iterator.hasNext()) {
+			Object tracked = iterator.next().getwRef().get();
+			if (tracked == null) {
+				// the key has been cleared by the GC, prune it
+				iterator.remove();
+				identityIndexSize--;
+			} else if (tracked == object) {
+				found = true;
+			}
+		}
+		if (bucket.isEmpty()) {
+			identityIndex.remove(System.identityHashCode(object));
+		}
+
+		return found;
+	}
+
+	private void indexKey(AbstractObjectRefrenceKey<Object> refrenceKey,
+			Object object) {
+		Integer hash = System.identityHashCode(object);
+		List<AbstractObjectRefrenceKey<Object>> bucket = identityIndex
+				.get(hash);
+		if (bucket == null) {
+			bucket = new ArrayList<AbstractObjectRefrenceKey<Object>>(1);
+			identityIndex.put(hash, bucket);
+		}
+		bucket.add(refrenceKey);
+		identityIndexSize++;
+
+		// Keys of reclaimed objects are pruned lazily when their bucket is
+		// hit, sweep the whole index once the stale keys outnumber the live
+		// ones so that the sweep cost is amortized over the removals.
+		if (identityIndexSize > 2 * watchList.size() + 64) {
+			pruneIdentityIndex();
+		}
+	}
+
+	private void unindexKey(AbstractObjectRefrenceKey<Object> refrenceKey) {
+		Object object = refrenceKey.getwRef().get();
+		if (object == null) {
+			// will be pruned lazily
+			return;
+		}
+
+		Integer hash = System.identityHashCode(object);
+		List<AbstractObjectRefrenceKey<Object>> bucket = identityIndex
+				.get(hash);
+		if (bucket != null && bucket.remove(refrenceKey)) {
+			identityIndexSize--;
+			if (bucket.isEmpty()) {
+				identityIndex.remove(hash);
+			}
+		}
+	}
+
+	private void pruneIdentityIndex() {
+		Iterator<List<AbstractObjectRefrenceKey<Object>>> buckets = identityIndex
+				.values().iterator();
+		while (buckets.hasNext()) {
+			List<AbstractObjectRefrenceKey<Object>> bucket = buckets.next();
+			Iterator<AbstractObjectRefrenceKey<Object>> iterator = bucket
+					.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().getwRef().get() == null) {
+					iterator.remove();
+					identityIndexSize--;
+				}
+			}
+			if (bucket.isEmpty()) {
+				buckets.remove();
+			}
+		}
 	}
 
 	/**
@@ -167,8 +512,16 @@ public abstract class TreeInputModule implements InputModuleInterface {
 			if (historyMap.containsKey(objectKey)) {
 				AbstractObjectRefrenceKey<Object> abstractObjectRefrenceKey = historyMap
 						.get(objectKey);
-				watchList.remove(abstractObjectRefrenceKey);
+				if (watchList.remove(abstractObjectRefrenceKey)) {
+					countRemoval(abstractObjectRefrenceKey);
+				}
 				historyMap.remove(objectKey);
+				unindexKey(abstractObjectRefrenceKey);
+
+				RootEntry rootEntry = rootsByIdentifier.get(objectKey);
+				if (rootEntry != null) {
+					removeRoot(rootEntry);
+				}
 
 				return true;
 			} else {
@@ -208,6 +561,60 @@ public abstract class TreeInputModule implements InputModuleInterface {
 		return watchList;
 	}
 
+	/**
+	 * Sets the metrics the registrations are counted in.
+	 * 
+	 * @param metrics
+	 *            the metrics, null to stop counting
+	 * @since 0.5
+	 */
+	public void setMetrics(MonitorMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sets the admission that decides whether the roots & the nodes found
+	 * under them are monitored while the heap is under pressure. The roots &
+	 * nodes carry no tags, so while only the tagged objects are admitted only
+	 * the ones of the tracked classes of the admission are.
+	 * 
+	 * @param heapPressureAdmission
+	 *            the admission, null to admit every object
+	 * @since 0.5
+	 */
+	public void setHeapPressureAdmission(
+			HeapPressureAdmission heapPressureAdmission) {
+		this.heapPressureAdmission = heapPressureAdmission;
+	}
+
+	private boolean isAdmitted(Object object) {
+		HeapPressureAdmission admission = heapPressureAdmission;
+		if (admission == null || admission.admit(object.getClass(), 0)) {
+			return true;
+		}
+
+		MonitorMetrics current = metrics;
+		if (current != null) {
+			current.recordAdmissionDenied();
+		}
+		return false;
+	}
+
+	private void countRegistration(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		MonitorMetrics current = metrics;
+		if (current != null) {
+			current.recordRegistration(refrenceKey);
+		}
+	}
+
+	private void countRemoval(AbstractObjectRefrenceKey<Object> refrenceKey) {
+		MonitorMetrics current = metrics;
+		if (current != null) {
+			current.recordRemoval(refrenceKey);
+		}
+	}
+
 	/**
 	 * The Class TreeObjectRefrenceKey is an implementation of the
 	 * AbstractObjectRefrenceKey.
@@ -243,4 +650,94 @@ public abstract class TreeInputModule implements InputModuleInterface {
 					phantomReferenceQueue, callback);
 		}
 	}
+
+	/**
+	 * The Class RootEntry holds a root being added to the monitoring and,
+	 * once remembered for the re-scan, the identity of the values its fields
+	 * held at the last walk.
+	 */
+	private static class RootEntry {
+		private final String identifier;
+		private final GcRadarCallback callback;
+		private final AbstractObjectRefrenceKey<Object> rootKey;
+
+		/** The root, null unless remembered for the re-scan. */
+		private WeakReference<Object> root;
+
+		/** The position of the entry in the remembered roots. */
+		private int index;
+
+		/** The last seen values of the fields, by field name. */
+		private HashMap<String, WeakReference<Object>> lastSeen;
+
+		/** Used to derive the identifiers of the nodes under the root. */
+		private int nodeCounter;
+
+		private RootEntry(String identifier, GcRadarCallback callback,
+				AbstractObjectRefrenceKey<Object> rootKey) {
+			this.identifier = identifier;
+			this.callback = callback;
+			this.rootKey = rootKey;
+		}
+
+		private void setRoot(Object root) {
+			this.root = new WeakReference<Object>(root);
+			this.lastSeen = new HashMap<String, WeakReference<Object>>();
+		}
+
+		private Object getRoot() {
+			return root.get();
+		}
+
+		private int getIndex() {
+			return index;
+		}
+
+		private void setIndex(int index) {
+			this.index = index;
+		}
+
+		private String getIdentifier() {
+			return identifier;
+		}
+
+		private GcRadarCallback getCallback() {
+			return callback;
+		}
+
+		/**
+		 * Adds the size of a node registered under the root to the size of
+		 * the tree, unless the sizes are not known.
+		 */
+		private void addToTreeSize(long size) {
+			long treeSize = rootKey.getTreeSizeBytes();
+			if (treeSize >= 0 && size >= 0) {
+				rootKey.setTreeSizeBytes(treeSize + size);
+			}
+		}
+
+		private String nextNodeIdentifier() {
+			nodeCounter++;
+			return identifier + "[" + nodeCounter + "]";
+		}
+
+		/**
+		 * Checks the current value of the field against the remembered one.
+		 * 
+		 * @return true, if the identity of the field value has changed since
+		 *         it was last remembered
+		 */
+		private boolean hasChanged(FieldNameValuePair<? extends Object> fnPair) {
+			WeakReference<Object> seen = lastSeen.get(fnPair.getFieldName());
+			return seen == null || seen.get() != fnPair.getRefrenceValue();
+		}
+
+		/**
+		 * Remembers the current value of the field.
+		 */
+		private void remember(FieldNameValuePair<? extends Object> fnPair) {
+			lastSeen.put(fnPair.getFieldName(), new WeakReference<Object>(
+					fnPair.getRefrenceValue()));
+		}
+	}
 }
@@ -0,0 +1,318 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors.modules.in.structs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gcr.structs.CreationTrace;
+import com.gcr.structs.CreationTraceTrie;
+
+/**
+ * The Class CreationTraceSampler captures the stack an object is added to a
+ * monitor from, for one object in every sample interval, & interns it in a
+ * {@link CreationTraceTrie}. The objects that are not sampled only cost the
+ * increment of a counter. The frames of gcRadar the object was added through
+ * are left out, the first frame of a trace is the creation site.
+ *
+ * The stack is walked with <code>java.lang.StackWalker</code>, which stops
+ * after the frames kept, through reflection as the library is built for JVMs
+ * without it; on such JVMs the whole stack is captured with a
+ * {@link Throwable} instead.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class CreationTraceSampler {
+
+	/** The default sample interval. */
+	public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+	/** The default number of frames kept. */
+	public static final int DEFAULT_MAX_DEPTH = 16;
+
+	// the packages of the frames the objects are added through
+	private static final String[] LIBRARY_PACKAGES = { "com.gcr.monitors.",
+			"com.gcr.structs.", "com.gcr.agent." };
+
+	private static final Object STACK_WALKER;
+	private static final Class<?> FUNCTION_CLASS;
+	private static final Method WALK;
+	private static final Method STREAM_ITERATOR;
+	private static final Method TO_STACK_TRACE_ELEMENT;
+
+	static {
+		Object stackWalker = null;
+		Class<?> functionClass = null;
+		Method walk = null;
+		Method streamIterator = null;
+		Method toStackTraceElement = null;
+		try {
+			Class<?> stackWalkerClass = Class.forName("java.lang.StackWalker");
+			functionClass = Class.forName("java.util.function.Function");
+			stackWalker = stackWalkerClass.getMethod("getInstance").invoke(
+					null);
+			walk = stackWalkerClass.getMethod("walk", functionClass);
+			streamIterator = Class.forName("java.util.stream.BaseStream")
+					.getMethod("iterator");
+			toStackTraceElement = Class.forName(
+					"java.lang.StackWalker$StackFrame").getMethod(
+					"toStackTraceElement");
+		} catch (Throwable e) {
+			// no StackWalker on this JVM, the stacks are captured whole
+			stackWalker = null;
+		}
+
+		STACK_WALKER = stackWalker;
+		FUNCTION_CLASS = functionClass;
+		WALK = walk;
+		STREAM_ITERATOR = streamIterator;
+		TO_STACK_TRACE_ELEMENT = toStackTraceElement;
+	}
+
+	private final int sampleInterval;
+	private final int maxDepth;
+	private final CreationTraceTrie trie;
+
+	// the function walking the stream of frames into the frames of the
+	// current capture, null without StackWalker
+	private final Object walkFunction;
+	private final ThreadLocal<String[]> frames = new ThreadLocal<String[]>();
+
+	private final AtomicLong sampleCounter = new AtomicLong();
+	private final AtomicLong capturedCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new sampler with the default sample interval & depth &
+	 * a trie of its own.
+	 */
+	public CreationTraceSampler() {
+		this(DEFAULT_SAMPLE_INTERVAL, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * Instantiates a new sampler with a trie of its own.
+	 *
+	 * @param sampleInterval
+	 *            one object in this many is traced, 1 to trace every object
+	 * @param maxDepth
+	 *            the number of frames kept
+	 */
+	public CreationTraceSampler(int sampleInterval, int maxDepth) {
+		this(sampleInterval, maxDepth, new CreationTraceTrie());
+	}
+
+	/**
+	 * Instantiates a new sampler.
+	 *
+	 * @param sampleInterval
+	 *            one object in this many is traced, 1 to trace every object
+	 * @param maxDepth
+	 *            the number of frames kept
+	 * @param trie
+	 *            the trie the traces are interned in, may be shared by
+	 *            several samplers
+	 * @throws IllegalArgumentException
+	 *             if sampleInterval or maxDepth is less than 1
+	 */
+	public CreationTraceSampler(int sampleInterval, int maxDepth,
+			CreationTraceTrie trie) {
+		if (sampleInterval < 1) {
+			throw new IllegalArgumentException(
+					"sampleInterval must be greater than 0");
+		}
+		if (maxDepth < 1) {
+			throw new IllegalArgumentException("maxDepth must be greater than 0");
+		}
+		if (trie == null) {
+			throw new NullPointerException("trie can not be null");
+		}
+
+		this.sampleInterval = sampleInterval;
+		this.maxDepth = maxDepth;
+		this.trie = trie;
+		this.walkFunction = STACK_WALKER == null ? null : Proxy
+				.newProxyInstance(CreationTraceSampler.class.getClassLoader(),
+						new Class<?>[] { FUNCTION_CLASS }, new WalkHandler());
+	}
+
+	/**
+	 * Captures the trace of the calling thread if the object being added is
+	 * sampled.
+	 *
+	 * @return the trace, null if the object is not sampled or the trie is
+	 *         full
+	 */
+	public CreationTrace sample() {
+		if (sampleInterval > 1
+				&& sampleCounter.getAndIncrement() % sampleInterval != 0) {
+			return null;
+		}
+		return capture();
+	}
+
+	/**
+	 * Captures the trace of the calling thread.
+	 *
+	 * @return the trace, null if the trie is full
+	 */
+	public CreationTrace capture() {
+		String[] captured = frames.get();
+		if (captured == null) {
+			captured = new String[maxDepth];
+			frames.set(captured);
+		}
+
+		CreationTrace trace = null;
+		try {
+			int count;
+			if (walkFunction != null) {
+				count = ((Integer) WALK.invoke(STACK_WALKER, walkFunction))
+						.intValue();
+			} else {
+				count = collect(Arrays.asList(new Throwable().getStackTrace())
+						.iterator(), captured);
+			}
+
+			capturedCount.incrementAndGet();
+			trace = trie.intern(captured, count);
+		} catch (Exception e) {
+			// the stack could not be walked, the trace is not known
+		} finally {
+			Arrays.fill(captured, null);
+		}
+		return trace;
+	}
+
+	/**
+	 * Gets the trie the traces are interned in.
+	 *
+	 * @return the trie
+	 */
+	public CreationTraceTrie getTrie() {
+		return trie;
+	}
+
+	/**
+	 * Gets the sample interval, one object in this many is traced.
+	 *
+	 * @return the sample interval
+	 */
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Gets the number of frames kept.
+	 *
+	 * @return the max depth
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Gets the number of traces captured.
+	 *
+	 * @return the captured count
+	 */
+	public long getCapturedCount() {
+		return capturedCount.get();
+	}
+
+	/**
+	 * Checks if the stacks are walked with <code>java.lang.StackWalker</code>.
+	 *
+	 * @return true, if StackWalker is available
+	 */
+	public static boolean isStackWalkerAvailable() {
+		return STACK_WALKER != null;
+	}
+
+	/*
+	 * Collects the frames after the ones of gcRadar into the array, either
+	 * StackTraceElements or StackWalker frames, stopping once it is full.
+	 */
+	private static int collect(Iterator<?> stack, String[] captured)
+			throws Exception {
+		int count = 0;
+		boolean inLibrary = true;
+		while (count < captured.length && stack.hasNext()) {
+			Object frame = stack.next();
+			StackTraceElement element = frame instanceof StackTraceElement ? (StackTraceElement) frame
+					: (StackTraceElement) TO_STACK_TRACE_ELEMENT.invoke(frame);
+
+			if (inLibrary) {
+				if (isLibraryFrame(element.getClassName())) {
+					continue;
+				}
+				inLibrary = false;
+			}
+			captured[count++] = format(element);
+		}
+		return count;
+	}
+
+	private static boolean isLibraryFrame(String className) {
+		for (String libraryPackage : LIBRARY_PACKAGES) {
+			if (className.startsWith(libraryPackage)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// the format of StackTraceElement.toString() before the module names
+	private static String format(StackTraceElement element) {
+		String location;
+		if (element.isNativeMethod()) {
+			location = "Native Method";
+		} else if (element.getFileName() == null) {
+			location = "Unknown Source";
+		} else if (element.getLineNumber() >= 0) {
+			location = element.getFileName() + ":" + element.getLineNumber();
+		} else {
+			location = element.getFileName();
+		}
+		return element.getClassName() + "." + element.getMethodName() + "("
+				+ location + ")";
+	}
+
+	private class WalkHandler implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+				throws Throwable {
+			if ("apply".equals(method.getName()) && args != null
+					&& args.length == 1) {
+				// the stream is lazy, the walk stops with the iteration
+				Iterator<?> stack = (Iterator<?>) STREAM_ITERATOR
+						.invoke(args[0]);
+				return Integer.valueOf(collect(stack, frames.get()));
+			} else if ("equals".equals(method.getName())) {
+				return Boolean.valueOf(proxy == args[0]);
+			} else if ("hashCode".equals(method.getName())) {
+				return Integer.valueOf(System.identityHashCode(proxy));
+			} else if ("toString".equals(method.getName())) {
+				return "CreationTraceSampler walk";
+			}
+			throw new UnsupportedOperationException(method.getName());
+		}
+	}
+}
@@ -0,0 +1,371 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors.modules.in.structs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * The Class HeapPressureAdmission decides whether an object added to a
+ * monitor is admitted to the monitoring, depending on how full the heap is.
+ * Every object tracked costs an entry & two references, which the monitor
+ * should not be adding when the heap is about to run out.
+ *
+ * The pressure is the highest occupancy of the heap pools that support usage
+ * thresholds, the tenured pools in practice. It is measured after the last
+ * collection of the pool, the occupancy at the moment only counts once it is
+ * beyond the highest level, as the heap may run out before the next
+ * collection. Each level is given a {@link HeapPressurePolicyEnum policy},
+ * the policy of the highest level reached is applied.
+ *
+ * Once started, the collection usage thresholds of the pools are set to the
+ * lowest level & their usage thresholds to the highest, the notifications of
+ * the memory MXBean then wake the admission up. The thresholds are shared by
+ * the whole JVM though, another admission or the application may move them &
+ * the previous ones are restored by {@link #stop()}, so the notifications only
+ * speed the admission up. The pressure is also measured again by the
+ * admissions at most every {@link #REEVALUATION_INTERVAL_MILLIS}, under
+ * pressure or not, so that the monitoring is throttled & recovers on its own
+ * whatever the thresholds.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class HeapPressureAdmission implements NotificationListener {
+
+	/** The interval at which the pressure is measured by the admissions. */
+	public static final long REEVALUATION_INTERVAL_MILLIS = 100;
+
+	/** The default sampling interval of {@link HeapPressurePolicyEnum#SAMPLE}. */
+	public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+	private final List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+
+	/** The levels by used fraction, guarded by this. */
+	private final TreeMap<Double, HeapPressurePolicyEnum> levels = new TreeMap<Double, HeapPressurePolicyEnum>();
+
+	/** The thresholds of the pools before the start, guarded by this. */
+	private long[] previousUsageThresholds;
+	private long[] previousCollectionUsageThresholds;
+
+	private final AtomicLong sampleCounter = new AtomicLong();
+
+	/**
+	 * The classes admitted by {@link HeapPressurePolicyEnum#TAGGED_ONLY}, the
+	 * array is replaced on addition so that reading it takes no lock.
+	 */
+	private volatile Class<?>[] trackedClasses = new Class<?>[0];
+
+	private volatile int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+	/** The policy in force, null if the heap is not under pressure. */
+	private volatile HeapPressurePolicyEnum policy;
+
+	private volatile double pressure;
+
+	/** The time the pressure is due to be measured again, claimed by CAS. */
+	private final AtomicLong nextEvaluationNanos = new AtomicLong(
+			System.nanoTime());
+
+	/**
+	 * Instantiates a new heap pressure admission over the heap pools of the
+	 * JVM, it has no levels until they are added.
+	 */
+	public HeapPressureAdmission() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP
+					&& pool.isUsageThresholdSupported()
+					&& pool.isCollectionUsageThresholdSupported()) {
+				pools.add(pool);
+			}
+		}
+	}
+
+	/**
+	 * Adds a level of pressure & the policy applied once it is reached,
+	 * replacing the policy of the level if it has already been added.
+	 *
+	 * @param usedFraction
+	 *            the fraction of the pool in use, in (0, 1]
+	 * @param levelPolicy
+	 *            the policy
+	 * @throws IllegalArgumentException
+	 *             if usedFraction is not in (0, 1]
+	 * @throws NullPointerException
+	 *             if levelPolicy is null
+	 */
+	public synchronized void addLevel(double usedFraction,
+			HeapPressurePolicyEnum levelPolicy) {
+		if (!(usedFraction > 0 && usedFraction <= 1)) {
+			throw new IllegalArgumentException(
+					"usedFraction must be greater than 0 and at most 1");
+		}
+		if (levelPolicy == null) {
+			throw new NullPointerException("policy can not be null");
+		}
+
+		levels.put(Double.valueOf(usedFraction), levelPolicy);
+		if (isStarted()) {
+			applyThresholds();
+			evaluate();
+		}
+	}
+
+	/**
+	 * Sets the sampling interval of {@link HeapPressurePolicyEnum#SAMPLE}.
+	 *
+	 * @param sampleInterval
+	 *            one object in this many is admitted
+	 * @throws IllegalArgumentException
+	 *             if sampleInterval is not positive
+	 */
+	public void setSampleInterval(int sampleInterval) {
+		if (sampleInterval <= 0) {
+			throw new IllegalArgumentException(
+					"sampleInterval must be greater than 0");
+		}
+		this.sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * Adds a class whose objects, & the objects of its sub-classes, are
+	 * admitted by {@link HeapPressurePolicyEnum#TAGGED_ONLY} even when added
+	 * without a tag. This is how the nodes found by the
+	 * {@link com.gcr.monitors.ObjectTreeMonitor}, which carry no tags, are
+	 * admitted under that policy.
+	 *
+	 * @param clazz
+	 *            the class
+	 * @throws NullPointerException
+	 *             if clazz is null
+	 */
+	public synchronized void addTrackedClass(Class<?> clazz) {
+		if (clazz == null) {
+			throw new NullPointerException("class can not be null");
+		}
+
+		for (Class<?> trackedClass : trackedClasses) {
+			if (trackedClass == clazz) {
+				return;
+			}
+		}
+		Class<?>[] added = new Class<?>[trackedClasses.length + 1];
+		System.arraycopy(trackedClasses, 0, added, 0, trackedClasses.length);
+		added[trackedClasses.length] = clazz;
+		trackedClasses = added;
+	}
+
+	/**
+	 * Sets the thresholds of the pools & subscribes to the notifications of
+	 * the memory MXBean. Does nothing if already started.
+	 */
+	public synchronized void start() {
+		if (isStarted()) {
+			return;
+		}
+
+		previousUsageThresholds = new long[pools.size()];
+		previousCollectionUsageThresholds = new long[pools.size()];
+		for (int i = 0; i < pools.size(); i++) {
+			previousUsageThresholds[i] = pools.get(i).getUsageThreshold();
+			previousCollectionUsageThresholds[i] = pools.get(i)
+					.getCollectionUsageThreshold();
+		}
+		applyThresholds();
+
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+				.addNotificationListener(this, null, null);
+		evaluate();
+	}
+
+	/**
+	 * Unsubscribes from the notifications & restores the thresholds of the
+	 * pools, every object is admitted from then on.
+	 */
+	public synchronized void stop() {
+		if (!isStarted()) {
+			return;
+		}
+
+		try {
+			((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+					.removeNotificationListener(this);
+		} catch (ListenerNotFoundException e) {
+			// already removed
+		}
+		for (int i = 0; i < pools.size(); i++) {
+			pools.get(i).setUsageThreshold(previousUsageThresholds[i]);
+			pools.get(i).setCollectionUsageThreshold(
+					previousCollectionUsageThresholds[i]);
+		}
+		previousUsageThresholds = null;
+		previousCollectionUsageThresholds = null;
+		policy = null;
+	}
+
+	/**
+	 * Decides whether an object is admitted to the monitoring, does not
+	 * allocate unless the pressure is due to be measured again.
+	 *
+	 * @param clazz
+	 *            the class of the object
+	 * @param tagCount
+	 *            the number of tags the object is added with
+	 * @return true, if the object is admitted
+	 */
+	public boolean admit(Class<?> clazz, int tagCount) {
+		HeapPressurePolicyEnum current = policy;
+
+		// only the admission that claims the measurement takes the lock
+		long now = System.nanoTime();
+		long next = nextEvaluationNanos.get();
+		if (now - next >= 0
+				&& nextEvaluationNanos.compareAndSet(next, now
+						+ TimeUnit.MILLISECONDS
+								.toNanos(REEVALUATION_INTERVAL_MILLIS))) {
+			current = evaluate();
+		}
+		if (current == null) {
+			return true;
+		}
+
+		switch (current) {
+		case SAMPLE:
+			return sampleCounter.getAndIncrement() % sampleInterval == 0;
+		case TAGGED_ONLY:
+			return tagCount > 0 || isTracked(clazz);
+		default:
+			return false;
+		}
+	}
+
+	private boolean isTracked(Class<?> clazz) {
+		for (Class<?> trackedClass : trackedClasses) {
+			if (trackedClass.isAssignableFrom(clazz)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the policy in force.
+	 *
+	 * @return the policy, null if the heap is not under pressure
+	 */
+	public HeapPressurePolicyEnum getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Gets the pressure as last measured.
+	 *
+	 * @return the used fraction of the fullest pool
+	 */
+	public double getPressure() {
+		return pressure;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see javax.management.NotificationListener#handleNotification(javax.management.Notification,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		String type = notification.getType();
+		if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+				|| MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED
+						.equals(type)) {
+			evaluate();
+		}
+	}
+
+	/*
+	 * Measures the pressure & sets the policy, returns the policy.
+	 */
+	private synchronized HeapPressurePolicyEnum evaluate() {
+		nextEvaluationNanos.set(System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(REEVALUATION_INTERVAL_MILLIS));
+		if (!isStarted() || levels.isEmpty()) {
+			policy = null;
+			return null;
+		}
+
+		double highestLevel = levels.lastKey().doubleValue();
+		double measured = 0;
+		for (MemoryPoolMXBean pool : pools) {
+			measured = Math.max(measured,
+					usedFraction(pool.getCollectionUsage()));
+			double now = usedFraction(pool.getUsage());
+			if (now >= highestLevel) {
+				measured = Math.max(measured, now);
+			}
+		}
+		pressure = measured;
+
+		Map.Entry<Double, HeapPressurePolicyEnum> level = levels
+				.floorEntry(Double.valueOf(measured));
+		policy = level == null ? null : level.getValue();
+		return policy;
+	}
+
+	/*
+	 * Sets the thresholds of the pools from the levels.
+	 */
+	private void applyThresholds() {
+		if (levels.isEmpty()) {
+			return;
+		}
+
+		double lowestLevel = levels.firstKey().doubleValue();
+		double highestLevel = levels.lastKey().doubleValue();
+		for (MemoryPoolMXBean pool : pools) {
+			long max = pool.getUsage().getMax();
+			if (max <= 0) {
+				continue;
+			}
+			pool.setCollectionUsageThreshold((long) (max * lowestLevel));
+			pool.setUsageThreshold((long) (max * highestLevel));
+		}
+	}
+
+	private boolean isStarted() {
+		return previousUsageThresholds != null;
+	}
+
+	private static double usedFraction(MemoryUsage usage) {
+		if (usage == null || usage.getMax() <= 0) {
+			return 0;
+		}
+		return (double) usage.getUsed() / usage.getMax();
+	}
+}
@@ -0,0 +1,37 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors.modules.in.structs;
+
+/**
+ * The Enum HeapPressurePolicyEnum is the way the objects added to a monitor
+ * are admitted to the monitoring while the heap is under pressure, see
+ * {@link HeapPressureAdmission}.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public enum HeapPressurePolicyEnum {
+
+	/** One object in every sampling interval is admitted. */
+	SAMPLE,
+	/**
+	 * Only the objects added with at least one tag, or of a class added with
+	 * {@link HeapPressureAdmission#addTrackedClass(Class)}, are admitted.
+	 */
+	TAGGED_ONLY,
+	/** No object is admitted. */
+	REJECT;
+}
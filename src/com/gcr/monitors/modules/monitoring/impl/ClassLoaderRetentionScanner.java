@@ -0,0 +1,450 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors.modules.monitoring.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The Class ClassLoaderRetentionScanner looks for what keeps a class loader
+ * from being reclaimed, among a bounded set of known retention suspects:
+ * <ul>
+ * <li>the live threads, of a class defined by the loader or with the loader
+ * as their context class loader</li>
+ * <li>the values of the thread locals of the live threads</li>
+ * <li>the tracked thread locals still reachable</li>
+ * <li>the security providers & the platform MBeans</li>
+ * <li>the static fields of the classes registered as suspects, with the
+ * elements of the arrays, collections & maps they hold, one level deep</li>
+ * </ul>
+ * A suspect refers to the loader, to a loader it is the parent of, to a class
+ * they define or to an object of such a class. The scan is best effort: the
+ * thread locals are read by reflection, which the JVM may deny, & the suspects
+ * it could not inspect are reported as such.
+ *
+ * The scanner does not keep the loader, nor anything it found, once the scan
+ * is over.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class ClassLoaderRetentionScanner {
+
+	/** The default number of suspects reported. */
+	public static final int DEFAULT_MAX_SUSPECTS = 32;
+
+	/** The default number of elements of an array, collection or map read. */
+	public static final int DEFAULT_MAX_ELEMENTS = 1024;
+
+	private static final Field THREAD_LOCALS;
+	private static final Field INHERITABLE_THREAD_LOCALS;
+	private static final Field MAP_TABLE;
+	private static final Field ENTRY_VALUE;
+	private static final String THREAD_LOCALS_FAILURE;
+
+	static {
+		Field threadLocals = null;
+		Field inheritableThreadLocals = null;
+		Field mapTable = null;
+		Field entryValue = null;
+		String failure = null;
+		try {
+			threadLocals = Thread.class.getDeclaredField("threadLocals");
+			inheritableThreadLocals = Thread.class
+					.getDeclaredField("inheritableThreadLocals");
+			mapTable = Class.forName("java.lang.ThreadLocal$ThreadLocalMap")
+					.getDeclaredField("table");
+			entryValue = Class.forName(
+					"java.lang.ThreadLocal$ThreadLocalMap$Entry")
+					.getDeclaredField("value");
+
+			threadLocals.setAccessible(true);
+			inheritableThreadLocals.setAccessible(true);
+			mapTable.setAccessible(true);
+			entryValue.setAccessible(true);
+		} catch (Throwable e) {
+			// e.g. java.base not opened to gcRadar from Java 9
+			failure = e.toString();
+		}
+
+		if (failure == null) {
+			THREAD_LOCALS = threadLocals;
+			INHERITABLE_THREAD_LOCALS = inheritableThreadLocals;
+			MAP_TABLE = mapTable;
+			ENTRY_VALUE = entryValue;
+		} else {
+			THREAD_LOCALS = null;
+			INHERITABLE_THREAD_LOCALS = null;
+			MAP_TABLE = null;
+			ENTRY_VALUE = null;
+		}
+		THREAD_LOCALS_FAILURE = failure;
+	}
+
+	private final int maxSuspects;
+	private final int maxElements;
+
+	/**
+	 * Instantiates a new scanner with the default bounds.
+	 */
+	public ClassLoaderRetentionScanner() {
+		this(DEFAULT_MAX_SUSPECTS, DEFAULT_MAX_ELEMENTS);
+	}
+
+	/**
+	 * Instantiates a new scanner.
+	 *
+	 * @param maxSuspects
+	 *            the number of suspects reported
+	 * @param maxElements
+	 *            the number of elements of an array, collection or map read
+	 * @throws IllegalArgumentException
+	 *             if maxSuspects or maxElements is less than 1
+	 */
+	public ClassLoaderRetentionScanner(int maxSuspects, int maxElements) {
+		if (maxSuspects < 1) {
+			throw new IllegalArgumentException(
+					"maxSuspects must be greater than 0");
+		}
+		if (maxElements < 1) {
+			throw new IllegalArgumentException(
+					"maxElements must be greater than 0");
+		}
+		this.maxSuspects = maxSuspects;
+		this.maxElements = maxElements;
+	}
+
+	/**
+	 * Scans the known retention suspects of a loader.
+	 *
+	 * @param loader
+	 *            the loader
+	 * @param threadLocals
+	 *            the tracked thread locals still reachable
+	 * @param suspectClasses
+	 *            the classes whose static fields are scanned
+	 * @return the suspects found, at most the max suspects & a last line
+	 *         counting the ones left out
+	 */
+	public List<String> scan(ClassLoader loader,
+			Collection<ThreadLocal<?>> threadLocals,
+			Collection<Class<?>> suspectClasses) {
+		Suspects suspects = new Suspects();
+
+		for (ThreadLocal<?> threadLocal : threadLocals) {
+			suspects.add("thread local " + describe(threadLocal)
+					+ " is still reachable");
+		}
+		scanThreads(loader, suspects);
+		scanSecurityProviders(loader, suspects);
+		scanMBeans(loader, suspects);
+		for (Class<?> suspectClass : suspectClasses) {
+			scanStatics(suspectClass, loader, suspects);
+		}
+
+		return suspects.toList();
+	}
+
+	private void scanThreads(ClassLoader loader, Suspects suspects) {
+		boolean threadLocalsScanned = THREAD_LOCALS_FAILURE == null;
+		if (!threadLocalsScanned) {
+			suspects.add("thread locals not scanned, "
+					+ THREAD_LOCALS_FAILURE
+					+ ", open java.base/java.lang to gcRadar to scan them");
+		}
+
+		for (Thread thread : liveThreads()) {
+			String name = "thread \"" + thread.getName() + "\"";
+			if (isDefinedBy(thread.getClass(), loader)) {
+				suspects.add(name + " is an instance of "
+						+ thread.getClass().getName()
+						+ ", a class of the loader");
+			}
+
+			try {
+				if (isSameOrChild(thread.getContextClassLoader(), loader)) {
+					suspects.add(name + " has the loader as its context class loader");
+				}
+			} catch (SecurityException e) {
+				suspects.add(name + ", context class loader not scanned, " + e);
+			}
+
+			if (threadLocalsScanned) {
+				try {
+					scanThreadLocalMap(THREAD_LOCALS.get(thread), name,
+							loader, suspects);
+					scanThreadLocalMap(INHERITABLE_THREAD_LOCALS.get(thread),
+							name, loader, suspects);
+				} catch (Exception e) {
+					suspects.add(name + ", thread locals not scanned, " + e);
+				}
+			}
+		}
+	}
+
+	/*
+	 * The map of another thread is read without synchronisation, an entry set
+	 * or removed meanwhile may be missed.
+	 */
+	private void scanThreadLocalMap(Object map, String threadName,
+			ClassLoader loader, Suspects suspects) throws Exception {
+		if (map == null) {
+			return;
+		}
+
+		Object[] table = (Object[]) MAP_TABLE.get(map);
+		if (table == null) {
+			return;
+		}
+		for (Object entry : table) {
+			if (entry == null) {
+				continue;
+			}
+
+			Object threadLocal = ((Reference<?>) entry).get();
+			Object value = ENTRY_VALUE.get(entry);
+			String found = find(value, loader);
+			if (found == null && threadLocal != null
+					&& isDefinedBy(threadLocal.getClass(), loader)) {
+				found = describe(threadLocal);
+			}
+			if (found != null) {
+				suspects.add(threadName + " holds " + found
+						+ " in thread local "
+						+ (threadLocal == null ? "(stale)" : describe(threadLocal)));
+			}
+		}
+	}
+
+	private void scanSecurityProviders(ClassLoader loader, Suspects suspects) {
+		try {
+			for (Provider provider : Security.getProviders()) {
+				if (isDefinedBy(provider.getClass(), loader)) {
+					suspects.add("security provider " + provider.getName()
+							+ " is an instance of "
+							+ provider.getClass().getName()
+							+ ", a class of the loader");
+				}
+			}
+		} catch (SecurityException e) {
+			suspects.add("security providers not scanned, " + e);
+		}
+	}
+
+	private void scanMBeans(ClassLoader loader, Suspects suspects) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		int scanned = 0;
+		for (ObjectName name : server.queryNames(null, null)) {
+			if (scanned++ >= maxElements) {
+				break;
+			}
+			try {
+				if (isSameOrChild(server.getClassLoaderFor(name), loader)) {
+					suspects.add("MBean " + name
+							+ " is registered with the loader");
+				}
+			} catch (JMException e) {
+				// unregistered meanwhile
+			} catch (SecurityException e) {
+				suspects.add("MBean " + name + " not scanned, " + e);
+			}
+		}
+	}
+
+	private void scanStatics(Class<?> suspectClass, ClassLoader loader,
+			Suspects suspects) {
+		if (isDefinedBy(suspectClass, loader)) {
+			// reclaimed with the loader, not a root
+			return;
+		}
+
+		Field[] fields;
+		try {
+			fields = suspectClass.getDeclaredFields();
+		} catch (SecurityException e) {
+			suspects.add("statics of " + suspectClass.getName()
+					+ " not scanned, " + e);
+			return;
+		}
+
+		for (Field field : fields) {
+			if (!Modifier.isStatic(field.getModifiers())
+					|| field.getType().isPrimitive()) {
+				continue;
+			}
+
+			String name = "static field " + suspectClass.getName() + "."
+					+ field.getName();
+			try {
+				field.setAccessible(true);
+				String found = findDeep(field.get(null), loader);
+				if (found != null) {
+					suspects.add(name + " holds " + found);
+				}
+			} catch (Exception e) {
+				// setAccessible throws an unchecked exception from Java 9
+				suspects.add(name + " not scanned, " + e);
+			}
+		}
+	}
+
+	/*
+	 * Finds the object, or the first of the elements it holds, one level deep,
+	 * that keeps the loader.
+	 */
+	private String findDeep(Object value, ClassLoader loader) {
+		String found = find(value, loader);
+		if (found != null || value == null) {
+			return found;
+		}
+
+		try {
+			if (value instanceof Object[]) {
+				int length = Math.min(Array.getLength(value), maxElements);
+				for (int i = 0; i < length; i++) {
+					found = find(Array.get(value, i), loader);
+					if (found != null) {
+						return found + " at index " + i;
+					}
+				}
+			} else if (value instanceof Collection<?>) {
+				Iterator<?> iterator = ((Collection<?>) value).iterator();
+				for (int i = 0; i < maxElements && iterator.hasNext(); i++) {
+					found = find(iterator.next(), loader);
+					if (found != null) {
+						return found + " as an element";
+					}
+				}
+			} else if (value instanceof Map<?, ?>) {
+				Iterator<? extends Map.Entry<?, ?>> iterator = ((Map<?, ?>) value)
+						.entrySet().iterator();
+				for (int i = 0; i < maxElements && iterator.hasNext(); i++) {
+					Map.Entry<?, ?> entry = iterator.next();
+					found = find(entry.getKey(), loader);
+					if (found != null) {
+						return found + " as a key";
+					}
+					found = find(entry.getValue(), loader);
+					if (found != null) {
+						return found + " as a value";
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			// modified meanwhile, the elements read are all that is scanned
+		}
+		return null;
+	}
+
+	private static String find(Object value, ClassLoader loader) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof ClassLoader) {
+			return isSameOrChild((ClassLoader) value, loader) ? describe(value)
+					: null;
+		}
+		if (value instanceof Class<?>) {
+			return isDefinedBy((Class<?>) value, loader) ? describe(value)
+					: null;
+		}
+		return isDefinedBy(value.getClass(), loader) ? describe(value) : null;
+	}
+
+	private static boolean isDefinedBy(Class<?> clazz, ClassLoader loader) {
+		return isSameOrChild(clazz.getClassLoader(), loader);
+	}
+
+	private static boolean isSameOrChild(ClassLoader candidate,
+			ClassLoader loader) {
+		for (ClassLoader current = candidate; current != null; current = current
+				.getParent()) {
+			if (current == loader) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Describes an object by its class & identity, not with its toString
+	 * method, which is not called on the objects scanned.
+	 *
+	 * @param value
+	 *            the object
+	 * @return the description
+	 */
+	public static String describe(Object value) {
+		if (value instanceof Class<?>) {
+			return "class " + ((Class<?>) value).getName();
+		}
+		return value.getClass().getName() + "@"
+				+ Integer.toHexString(System.identityHashCode(value));
+	}
+
+	private static List<Thread> liveThreads() {
+		ThreadGroup root = Thread.currentThread().getThreadGroup();
+		while (root.getParent() != null) {
+			root = root.getParent();
+		}
+
+		Thread[] threads = new Thread[root.activeCount() + 16];
+		int count;
+		while ((count = root.enumerate(threads, true)) == threads.length) {
+			threads = new Thread[threads.length * 2];
+		}
+
+		List<Thread> live = new ArrayList<Thread>(count);
+		for (int i = 0; i < count; i++) {
+			live.add(threads[i]);
+		}
+		return live;
+	}
+
+	private class Suspects {
+		private final List<String> found = new ArrayList<String>();
+		private int omitted;
+
+		void add(String suspect) {
+			if (found.size() < maxSuspects) {
+				found.add(suspect);
+			} else {
+				omitted++;
+			}
+		}
+
+		List<String> toList() {
+			if (omitted > 0) {
+				found.add(omitted + " more suspects not listed");
+			}
+			return found;
+		}
+	}
+}
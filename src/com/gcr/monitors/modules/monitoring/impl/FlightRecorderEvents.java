@@ -0,0 +1,364 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.monitoring.impl;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class FlightRecorderEvents emits the gcRadar events to the Java Flight
+ * Recorder, so the registration & reclamation of the monitored objects can be
+ * lined up with the GC, allocation & safepoint events of a recording.
+ * 
+ * The events are defined at runtime through <code>jdk.jfr.EventFactory</code>
+ * as the library is built for JVMs without JFR, on such JVMs nothing is
+ * emitted. The events are disabled by default and are only emitted while a
+ * recording enables them, e.g.
+ * <code>-XX:StartFlightRecording:+com.gcr.ObjectReclaimed#enabled=true</code>
+ * or through a settings file. The enabled state is re-read by the monitor
+ * threads at most every {@value #REFRESH_INTERVAL_MILLIS} ms, so a disabled
+ * event only costs the check of a flag.
+ * <ul>
+ * <li><code>com.gcr.ObjectRegistered</code>: an object has been added</li>
+ * <li><code>com.gcr.ObjectOrphaned</code>: the weak reference of an object has
+ * been enqueued (pre GC)</li>
+ * <li><code>com.gcr.ObjectReclaimed</code>: the phantom reference of an object
+ * has been enqueued (post GC)</li>
+ * <li><code>com.gcr.MonitorPass</code>: a pass of a monitor thread over its
+ * watch list</li>
+ * </ul>
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class FlightRecorderEvents {
+
+	/** The interval at which the enabled state of the events is re-read. */
+	public static final long REFRESH_INTERVAL_MILLIS = 1000;
+
+	private static final EventDefinition REGISTERED;
+	private static final EventDefinition ORPHANED;
+	private static final EventDefinition RECLAIMED;
+	private static final EventDefinition PASS;
+
+	private static Method eventBegin;
+	private static Method eventEnd;
+	private static Method eventShouldCommit;
+	private static Method eventCommit;
+	private static Method eventSet;
+
+	private static volatile boolean available;
+	private static volatile long lastRefreshTime;
+
+	static {
+		EventDefinition registered = null;
+		EventDefinition orphaned = null;
+		EventDefinition reclaimed = null;
+		EventDefinition pass = null;
+
+		try {
+			Class<?> eventClass = Class.forName("jdk.jfr.Event");
+			eventBegin = eventClass.getMethod("begin");
+			eventEnd = eventClass.getMethod("end");
+			eventShouldCommit = eventClass.getMethod("shouldCommit");
+			eventCommit = eventClass.getMethod("commit");
+			eventSet = eventClass.getMethod("set", int.class, Object.class);
+
+			registered = new EventDefinition("com.gcr.ObjectRegistered",
+					"Object Registered",
+					"An object has been added to a gcRadar monitor", true,
+					new Object[][] {
+							{ String.class, "identifier", "Identifier", null },
+							{ Class.class, "objectClass", "Object Class", null } });
+			orphaned = new EventDefinition("com.gcr.ObjectOrphaned",
+					"Object Orphaned",
+					"The weak reference of a monitored object has been enqueued",
+					false, new Object[][] {
+							{ String.class, "identifier", "Identifier", null },
+							{ Class.class, "objectClass", "Object Class", null },
+							{ long.class, "age", "Age", "MILLISECONDS" } });
+			reclaimed = new EventDefinition("com.gcr.ObjectReclaimed",
+					"Object Reclaimed",
+					"The phantom reference of a monitored object has been enqueued",
+					false, new Object[][] {
+							{ String.class, "identifier", "Identifier", null },
+							{ Class.class, "objectClass", "Object Class", null },
+							{ long.class, "age", "Age", "MILLISECONDS" },
+							{ long.class, "sinceOrphaned", "Since Orphaned",
+									"MILLISECONDS" } });
+			pass = new EventDefinition("com.gcr.MonitorPass", "Monitor Pass",
+					"A pass of a gcRadar monitor thread over its watch list",
+					false, new Object[][] {
+							{ long.class, "scanned", "Objects Scanned", null },
+							{ long.class, "yields", "Yields", null },
+							{ long.class, "orphaned", "Objects Orphaned", null },
+							{ long.class, "reclaimed", "Objects Reclaimed", null } });
+
+			available = true;
+		} catch (Throwable e) {
+			// no JFR on this JVM, the events are never emitted
+			available = false;
+		}
+
+		REGISTERED = registered;
+		ORPHANED = orphaned;
+		RECLAIMED = reclaimed;
+		PASS = pass;
+
+		refresh();
+	}
+
+	private FlightRecorderEvents() {
+		// static helpers only
+	}
+
+	/**
+	 * Checks if the events can be emitted on this JVM.
+	 * 
+	 * @return true, if JFR is available
+	 */
+	public static boolean isAvailable() {
+		return available;
+	}
+
+	/**
+	 * Re-reads the enabled state of the events.
+	 */
+	public static void refresh() {
+		lastRefreshTime = System.currentTimeMillis();
+		if (!available) {
+			return;
+		}
+
+		try {
+			REGISTERED.refresh();
+			ORPHANED.refresh();
+			RECLAIMED.refresh();
+			PASS.refresh();
+		} catch (Exception e) {
+			disable();
+		}
+	}
+
+	/**
+	 * Emits the registration event of an object.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public static void objectRegistered(
+			AbstractObjectRefrenceKey<? extends Object> refrenceKey) {
+		if (available && REGISTERED.enabled) {
+			commit(REGISTERED.newEvent(), refrenceKey.getObjRefrenceKey(),
+					refrenceKey.getClazz());
+		}
+	}
+
+	/**
+	 * Emits the pre GC event of an object, after its weak callback time has
+	 * been set.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public static void objectOrphaned(
+			AbstractObjectRefrenceKey<? extends Object> refrenceKey) {
+		if (available && ORPHANED.enabled) {
+			commit(ORPHANED.newEvent(), refrenceKey.getObjRefrenceKey(),
+					refrenceKey.getClazz(),
+					refrenceKey.getWeakCallbackTimeMillis()
+							- refrenceKey.getDateAddedMillis());
+		}
+	}
+
+	/**
+	 * Emits the post GC event of an object, after its phantom callback time
+	 * has been set.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public static void objectReclaimed(
+			AbstractObjectRefrenceKey<? extends Object> refrenceKey) {
+		if (available && RECLAIMED.enabled) {
+			long reclaimedTime = refrenceKey.getPhantomCallbackTimeMillis();
+			long orphanedTime = refrenceKey.getWeakCallbackTimeMillis();
+			commit(RECLAIMED.newEvent(), refrenceKey.getObjRefrenceKey(),
+					refrenceKey.getClazz(),
+					reclaimedTime - refrenceKey.getDateAddedMillis(),
+					orphanedTime == 0 ? -1L : reclaimedTime - orphanedTime);
+		}
+	}
+
+	/**
+	 * Starts the event of a monitor pass, re-reading the enabled state of the
+	 * events when due.
+	 * 
+	 * @return the event to pass to
+	 *         {@link #passCompleted(Object, long, long, long, long)}, null if
+	 *         the event is disabled
+	 */
+	public static Object passStarted() {
+		if (System.currentTimeMillis() - lastRefreshTime >= REFRESH_INTERVAL_MILLIS) {
+			refresh();
+		}
+
+		if (!available || !PASS.enabled) {
+			return null;
+		}
+
+		Object event = PASS.newEvent();
+		if (event != null) {
+			invoke(eventBegin, event);
+		}
+		return event;
+	}
+
+	/**
+	 * Completes the event of a monitor pass.
+	 * 
+	 * @param event
+	 *            the event returned by {@link #passStarted()}, may be null
+	 * @param scanned
+	 *            the number of objects scanned
+	 * @param yields
+	 *            the number of times the thread yielded
+	 * @param orphaned
+	 *            the number of pre GC events raised
+	 * @param reclaimed
+	 *            the number of post GC events raised
+	 */
+	public static void passCompleted(Object event, long scanned, long yields,
+			long orphaned, long reclaimed) {
+		if (event == null) {
+			return;
+		}
+
+		invoke(eventEnd, event);
+		commit(event, scanned, yields, orphaned, reclaimed);
+	}
+
+	private static void commit(Object event, Object... values) {
+		if (event == null) {
+			return;
+		}
+
+		try {
+			if (!Boolean.TRUE.equals(eventShouldCommit.invoke(event))) {
+				return;
+			}
+			for (int i = 0; i < values.length; i++) {
+				eventSet.invoke(event, i, values[i]);
+			}
+			eventCommit.invoke(event);
+		} catch (Exception e) {
+			disable();
+		}
+	}
+
+	private static void invoke(Method method, Object event) {
+		try {
+			method.invoke(event);
+		} catch (Exception e) {
+			disable();
+		}
+	}
+
+	private static void disable() {
+		// the JFR API did not behave as expected, stop trying
+		available = false;
+	}
+
+	/**
+	 * The definition of an event type created through the EventFactory.
+	 */
+	private static class EventDefinition {
+
+		private final Object factory;
+		private final Object eventType;
+		private final Method newEvent;
+		private final Method isEnabled;
+		private volatile boolean enabled;
+
+		private EventDefinition(String name, String label, String description,
+				boolean stackTrace, Object[][] fields) throws Exception {
+			Class<?> annotationElementClass = Class
+					.forName("jdk.jfr.AnnotationElement");
+			Constructor<?> annotationElement = annotationElementClass
+					.getConstructor(Class.class, Object.class);
+
+			List<Object> annotations = new ArrayList<Object>();
+			annotations.add(annotationElement.newInstance(
+					Class.forName("jdk.jfr.Name"), name));
+			annotations.add(annotationElement.newInstance(
+					Class.forName("jdk.jfr.Label"), label));
+			annotations.add(annotationElement.newInstance(
+					Class.forName("jdk.jfr.Description"), description));
+			annotations.add(annotationElement.newInstance(
+					Class.forName("jdk.jfr.Category"),
+					new String[] { "gcRadar" }));
+			annotations.add(annotationElement.newInstance(
+					Class.forName("jdk.jfr.StackTrace"), stackTrace));
+			annotations.add(annotationElement.newInstance(
+					Class.forName("jdk.jfr.Enabled"), false));
+
+			Class<?> valueDescriptorClass = Class
+					.forName("jdk.jfr.ValueDescriptor");
+			Constructor<?> valueDescriptor = valueDescriptorClass
+					.getConstructor(Class.class, String.class, List.class);
+
+			List<Object> descriptors = new ArrayList<Object>();
+			for (Object[] field : fields) {
+				List<Object> fieldAnnotations = new ArrayList<Object>();
+				fieldAnnotations.add(annotationElement.newInstance(
+						Class.forName("jdk.jfr.Label"), field[2]));
+				if (field[3] != null) {
+					fieldAnnotations.add(annotationElement.newInstance(
+							Class.forName("jdk.jfr.Timespan"), field[3]));
+				}
+				descriptors.add(valueDescriptor.newInstance(field[0],
+						field[1], fieldAnnotations));
+			}
+
+			Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+			this.factory = eventFactoryClass.getMethod("create", List.class,
+					List.class).invoke(null, annotations, descriptors);
+			this.eventType = eventFactoryClass.getMethod("getEventType")
+					.invoke(factory);
+			this.newEvent = eventFactoryClass.getMethod("newEvent");
+			this.isEnabled = Class.forName("jdk.jfr.EventType").getMethod(
+					"isEnabled");
+		}
+
+		private void refresh() throws Exception {
+			enabled = Boolean.TRUE.equals(isEnabled.invoke(eventType));
+		}
+
+		private Object newEvent() {
+			try {
+				return newEvent.invoke(factory);
+			} catch (Exception e) {
+				disable();
+				return null;
+			}
+		}
+	}
+}
@@ -15,7 +15,7 @@ along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
 
 package com.gcr.monitors.modules.monitoring.impl;
 
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -24,11 +24,16 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import com.gcr.monitors.ObjectTreeMonitor;
 import com.gcr.monitors.modules.monitoring.MonitoringModuleInterface;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
 import com.gcr.monitors.modules.monitoring.structs.MonitorStateEnum;
 import com.gcr.monitors.modules.monitoring.structs.MonitorThreadAggressionEnum;
 import com.gcr.monitors.modules.monitoring.structs.MonitorThreadYieldController;
+import com.gcr.monitors.modules.notification.BatchNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.LeakNotificationModuleInterface;
 import com.gcr.monitors.modules.notification.NotificationModuleInterface;
 import com.gcr.structs.AbstractObjectRefrenceKey;
+import com.gcr.structs.DeadlineTimerWheel;
+import com.gcr.structs.TrackingReservoir;
 
 /**
  * The Class MonitoringModule is the implementation of the interface. The module
@@ -43,7 +48,7 @@ import com.gcr.structs.AbstractObjectRefrenceKey;
 public abstract class MonitoringModule implements MonitoringModuleInterface {
 
 	/** The monitoring worker thread. */
-	private MonitorThread monitorThread;
+	private volatile MonitorThread monitorThread;
 
 	/** The notification module. */
 	private NotificationModuleInterface notificationMod;
@@ -54,10 +59,55 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 
 	private MonitorThreadYieldController yeildController = MonitorThreadAggressionEnum.HIGHEST_AGGRESSION;
 
+	/** The metrics of the monitor, null if not collected. */
+	private volatile MonitorMetrics metrics;
+
+	/** Whether the monitor threads are daemon threads. */
+	private volatile boolean daemon;
+
 	/** The stop flag that is set when the monitoring thread is stopped. */
 	protected MonitoringModule(
 			List<AbstractObjectRefrenceKey<Object>> keyCollection) {
-		monitorThread = new MonitorThread(keyCollection);
+		this(keyCollection, null);
+	}
+
+	/**
+	 * Instantiates a new monitoring module that also raises the leak suspects
+	 * of the objects added with an expected lifetime.
+	 * 
+	 * @param keyCollection
+	 *            the watch list
+	 * @param leakDeadlines
+	 *            the leak deadlines of the objects in the watch list, guarded
+	 *            by the lock of the watch list; null if not used
+	 * @since 0.5
+	 */
+	protected MonitoringModule(
+			List<AbstractObjectRefrenceKey<Object>> keyCollection,
+			DeadlineTimerWheel leakDeadlines) {
+		this(keyCollection, leakDeadlines, null);
+	}
+
+	/**
+	 * Instantiates a new monitoring module that also raises the leak suspects
+	 * & frees the reservoir slots of the reclaimed objects.
+	 * 
+	 * @param keyCollection
+	 *            the watch list
+	 * @param leakDeadlines
+	 *            the leak deadlines of the objects in the watch list, guarded
+	 *            by the lock of the watch list; null if not used
+	 * @param trackingReservoir
+	 *            the cap on the objects in the watch list, guarded by the lock
+	 *            of the watch list; null if not used
+	 * @since 0.5
+	 */
+	protected MonitoringModule(
+			List<AbstractObjectRefrenceKey<Object>> keyCollection,
+			DeadlineTimerWheel leakDeadlines,
+			TrackingReservoir trackingReservoir) {
+		monitorThread = new MonitorThread(keyCollection, leakDeadlines,
+				trackingReservoir);
 		lockTillFinish = lock.newCondition();
 	}
 
@@ -68,11 +118,19 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 	 *      com.gcr.monitors.modules.notification.NotificationModuleInterface)
 	 */
 	@Override
-	public boolean startMonitoring(NotificationModuleInterface notificationMod) {
+	public synchronized boolean startMonitoring(
+			NotificationModuleInterface notificationMod) {
 
 		this.notificationMod = notificationMod;
 
-		if (monitorThread.getState() != Thread.State.RUNNABLE) {
+		if (monitorThread.getState() == Thread.State.TERMINATED) {
+			// the thread ends once the watch list is empty, a new one takes
+			// over the watch list
+			monitorThread = new MonitorThread(monitorThread.getWatchList(),
+					monitorThread.leakDeadlines,
+					monitorThread.trackingReservoir);
+		}
+		if (monitorThread.getState() == Thread.State.NEW) {
 			monitorThread.start();
 		}
 		monitorThread.setStopFlag(false);
@@ -86,7 +144,8 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 	 * @see com.gcr.monitors.modules.monitoring.MonitoringModuleInterface#stopMonitoring(com.gcr.monitors.modules.notification.NotificationModuleInterface)
 	 */
 	@Override
-	public boolean stopMonitoring(NotificationModuleInterface notificationMod) {
+	public synchronized boolean stopMonitoring(
+			NotificationModuleInterface notificationMod) {
 		if (monitorThread.getState() != Thread.State.NEW) {
 
 			monitorThread.setStopFlag(true);
@@ -96,7 +155,8 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 			// monitoring thread and reuse the watch-list from the previous
 			// monitoring thread.
 			MonitorThread monitorThreadBuffer = new MonitorThread(
-					monitorThread.getWatchList());
+					monitorThread.getWatchList(), monitorThread.leakDeadlines,
+					monitorThread.trackingReservoir);
 
 			monitorThread = monitorThreadBuffer;
 
@@ -112,7 +172,8 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 	 * @see com.gcr.monitors.modules.monitoring.MonitoringModuleInterface#getMonitoringModuleStatus()
 	 */
 	public MonitorStateEnum getMonitoringModuleStatus() {
-		if (monitorThread == null) {
+		if (monitorThread == null
+				|| monitorThread.getState() == Thread.State.TERMINATED) {
 			return MonitorStateEnum.TERMINATED;
 		}
 
@@ -191,6 +252,43 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 		this.yeildController = yeildController;
 	}
 
+	/**
+	 * Sets the metrics the passes of the monitor thread are recorded in.
+	 * 
+	 * @param metrics
+	 *            the metrics, null to stop recording
+	 * @since 0.5
+	 */
+	public void setMetrics(MonitorMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Marks the monitor threads as daemon threads, which do not keep the JVM
+	 * from exiting while objects are being monitored. Applies to a thread that
+	 * has already been started from the next restart of the monitoring.
+	 * 
+	 * @param daemon
+	 *            true, for daemon threads
+	 * @since 0.5
+	 */
+	public synchronized void setDaemon(boolean daemon) {
+		this.daemon = daemon;
+		if (monitorThread.getState() == Thread.State.NEW) {
+			monitorThread.setDaemon(daemon);
+		}
+	}
+
+	/**
+	 * Called by the monitor thread before every pass, with the lock of the
+	 * watch list held. The objects registered without taking the lock are
+	 * moved to the watch list here.
+	 * 
+	 * @since 0.5
+	 */
+	protected void beforePass() {
+	}
+
 	// ===========INNER CLASSES==========
 
 	/*
@@ -201,16 +299,41 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 		/* The watch list. */
 		private final List<AbstractObjectRefrenceKey<Object>> watchList;
 
+		/* The leak deadlines, null if not used. */
+		private final DeadlineTimerWheel leakDeadlines;
+
+		/* The cap on the watch list, null if not used. */
+		private final TrackingReservoir trackingReservoir;
+
+		/* The deadlines expired in a pass, reused across the passes. */
+		private final List<AbstractObjectRefrenceKey<Object>> expiredDeadlines = new ArrayList<AbstractObjectRefrenceKey<Object>>();
+
+		/*
+		 * The keys whose futures are completed once the lock is released,
+		 * reused across the passes.
+		 */
+		private final List<AbstractObjectRefrenceKey<Object>> orphanedFutureKeys = new ArrayList<AbstractObjectRefrenceKey<Object>>();
+		private final List<AbstractObjectRefrenceKey<Object>> reclaimedFutureKeys = new ArrayList<AbstractObjectRefrenceKey<Object>>();
+
 		private boolean stopFlag_i;
 
 		/*
 		 * Instantiates a new monitor thread.
 		 * 
 		 * @param watchList the watch list
+		 * 
+		 * @param leakDeadlines the leak deadlines, may be null
+		 * 
+		 * @param trackingReservoir the cap on the watch list, may be null
 		 */
-		public MonitorThread(List<AbstractObjectRefrenceKey<Object>> watchList) {
+		public MonitorThread(List<AbstractObjectRefrenceKey<Object>> watchList,
+				DeadlineTimerWheel leakDeadlines,
+				TrackingReservoir trackingReservoir) {
 			setPriority(MIN_PRIORITY);
+			setDaemon(MonitoringModule.this.daemon);
 			this.watchList = watchList;
+			this.leakDeadlines = leakDeadlines;
+			this.trackingReservoir = trackingReservoir;
 		}
 
 		/*
@@ -222,11 +345,56 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 		public void run() {
 			super.run();
 
-			while (!getWatchList().isEmpty()) {
+			MonitorMetrics threadMetrics = metrics;
+			if (threadMetrics != null) {
+				threadMetrics.monitorThreadStarted();
+			}
+
+			try {
+				monitor();
+			} finally {
+				if (threadMetrics != null) {
+					threadMetrics.monitorThreadFinished();
+				}
+
+				try {
+					lock.lock();
+					// release locks if any
+					lockTillFinish.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+
+		/*
+		 * Runs the passes over the watch list until no object is left or the
+		 * monitoring is stopped.
+		 */
+		private void monitor() {
+			while (hasObjects()) {
 				if (isStopFlag()) {
 					break;
 				}
 
+				MonitorMetrics passMetrics = metrics;
+				long passStartNanos = System.nanoTime();
+				Object passEvent = FlightRecorderEvents.passStarted();
+				long scannedCount = 0;
+				long yieldCount = 0;
+				long orphanedCount = 0;
+				long reclaimedCount = 0;
+
+				BatchNotificationModuleInterface batchNotificationMod = null;
+				if (notificationMod instanceof BatchNotificationModuleInterface) {
+					batchNotificationMod = (BatchNotificationModuleInterface) notificationMod;
+					batchNotificationMod.notifyPassStarted();
+				}
+
+				// the collections the events of the pass are attributed to
+				// are waited for before the lock is taken
+				RecentGcCycles.awaitNotifications();
+
 				synchronized (getWatchList()) {
 					Iterator<AbstractObjectRefrenceKey<Object>> iterator = getWatchList()
 							.iterator();
@@ -241,8 +409,10 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 
 						// increment counter
 						counter++;
+						scannedCount++;
 						if (yeildController.shouldYield(counter)) {
 							Thread.yield();
+							yieldCount++;
 
 							// reset counter after thread resumes execution
 							// after yield
@@ -251,36 +421,156 @@ public abstract class MonitoringModule implements MonitoringModuleInterface {
 
 						loopBuffer = iterator.next();
 
+						// evicted by the reservoir, its references are cleared
+						if (loopBuffer.isEvicted()) {
+							iterator.remove();
+							continue;
+						}
+
 						if (loopBuffer.getwRef().isEnqueued()
-								&& loopBuffer.getWeakCallbackTime() == null) {
-							loopBuffer.setWeakCallbackTime(new Date());
+								&& loopBuffer.getWeakCallbackTimeMillis() == 0) {
+							long orphanedTime = System.currentTimeMillis();
+							loopBuffer.setWeakCallbackTimeMillis(orphanedTime);
+							loopBuffer.setOrphanedGcCycle(RecentGcCycles
+									.cycleBefore(orphanedTime,
+											loopBuffer.getDateAddedMillis()));
 							// loopBuffer.getCallback().noSurvivingRefrence(loopBuffer);
 							notificationMod.notifyPreGcEvent(loopBuffer);
-						} else if (loopBuffer.getpRef().isEnqueued()) {
-							loopBuffer.setPhantomCallbackTime(new Date());
+							FlightRecorderEvents.objectOrphaned(loopBuffer);
+							if (loopBuffer.getReclamationFuture() != null) {
+								orphanedFutureKeys.add(loopBuffer);
+							}
+							// an orphaned object is not leaking
+							if (leakDeadlines != null) {
+								leakDeadlines.cancel(loopBuffer);
+							}
+							orphanedCount++;
+							if (passMetrics != null) {
+								passMetrics.recordOrphaned(loopBuffer);
+							}
+						}
+						// the object may have been reclaimed already, in which
+						// case both the events are raised in the same pass
+						if (loopBuffer.getpRef().isEnqueued()) {
+							long reclaimedTime = System.currentTimeMillis();
+							loopBuffer.setPhantomCallbackTimeMillis(reclaimedTime);
+							loopBuffer.setReclaimedGcCycle(RecentGcCycles
+									.cycleBefore(reclaimedTime,
+											loopBuffer.getDateAddedMillis()));
 							// loopBuffer.getCallback().objectReclaimedByGC(loopBuffer);
 							notificationMod.notifyPostGcEvent(loopBuffer);
+							FlightRecorderEvents.objectReclaimed(loopBuffer);
+							if (loopBuffer.getReclamationFuture() != null) {
+								reclaimedFutureKeys.add(loopBuffer);
+							}
+							reclaimedCount++;
+							if (passMetrics != null) {
+								passMetrics.recordReclaimed(loopBuffer);
+							}
+							if (leakDeadlines != null) {
+								leakDeadlines.cancel(loopBuffer);
+							}
+							if (trackingReservoir != null) {
+								trackingReservoir.remove(loopBuffer);
+							}
 
 							iterator.remove();
 						}
 					}
 
-					if (isStopFlag()) {
-						break;
+					if (leakDeadlines != null && !isStopFlag()) {
+						raiseLeakSuspects(passMetrics);
 					}
 				}
+
+				// the held back events are delivered outside the lock so
+				// that the registration of objects is not held up
+				if (batchNotificationMod != null) {
+					batchNotificationMod.notifyPassCompleted();
+				}
+				// so are the futures, their listeners may be run directly
+				completeFutures();
+
+				FlightRecorderEvents.passCompleted(passEvent, scannedCount,
+						yieldCount, orphanedCount, reclaimedCount);
+				if (passMetrics != null) {
+					passMetrics.recordPass(System.nanoTime() - passStartNanos,
+							scannedCount);
+				}
+
+				if (isStopFlag()) {
+					break;
+				}
 				// Yield irrespective of aggression level
 				Thread.yield();
 
 			}
+		}
 
-			try {
-				lock.lock();
-				// release locks if any
-				lockTillFinish.signalAll();
-			} finally {
-				lock.unlock();
+		/*
+		 * Completes the futures of the objects orphaned & reclaimed in the
+		 * pass, called without the lock of the watch list held.
+		 */
+		private void completeFutures() {
+			for (int i = 0; i < orphanedFutureKeys.size(); i++) {
+				AbstractObjectRefrenceKey<Object> refrenceKey = orphanedFutureKeys
+						.get(i);
+				refrenceKey.getReclamationFuture().completeOrphaned(refrenceKey);
+			}
+			orphanedFutureKeys.clear();
+
+			for (int i = 0; i < reclaimedFutureKeys.size(); i++) {
+				AbstractObjectRefrenceKey<Object> refrenceKey = reclaimedFutureKeys
+						.get(i);
+				refrenceKey.getReclamationFuture().completeReclaimed(refrenceKey);
+			}
+			reclaimedFutureKeys.clear();
+		}
+
+		/*
+		 * Checks if any object is left to be monitored, after moving the
+		 * objects registered without the lock to the watch list.
+		 */
+		private boolean hasObjects() {
+			synchronized (getWatchList()) {
+				beforePass();
+				return !getWatchList().isEmpty();
+			}
+		}
+
+		/*
+		 * Raises the leak suspects of the objects whose deadline has passed
+		 * without them being orphaned, called with the lock of the watch list
+		 * held.
+		 */
+		private void raiseLeakSuspects(MonitorMetrics passMetrics) {
+			long now = System.currentTimeMillis();
+			if (leakDeadlines.expire(now, expiredDeadlines) == 0) {
+				return;
+			}
+
+			LeakNotificationModuleInterface leakNotificationMod = null;
+			if (notificationMod instanceof LeakNotificationModuleInterface) {
+				leakNotificationMod = (LeakNotificationModuleInterface) notificationMod;
+			}
+
+			for (int i = 0; i < expiredDeadlines.size(); i++) {
+				AbstractObjectRefrenceKey<Object> refrenceKey = expiredDeadlines
+						.get(i);
+				// orphaned by the scan of this pass, not a leak
+				if (refrenceKey.getWeakCallbackTimeMillis() != 0) {
+					continue;
+				}
+
+				refrenceKey.setLeakSuspectTimeMillis(now);
+				if (leakNotificationMod != null) {
+					leakNotificationMod.notifyLeakSuspect(refrenceKey);
+				}
+				if (passMetrics != null) {
+					passMetrics.recordLeakSuspect(refrenceKey);
+				}
 			}
+			expiredDeadlines.clear();
 		}
 
 		private List<AbstractObjectRefrenceKey<Object>> getWatchList() {
@@ -0,0 +1,208 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors.modules.monitoring.impl;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.gcr.structs.GcCycleInfo;
+
+/**
+ * The Class RecentGcCycles keeps the last {@value #CAPACITY} collections
+ * reported by the garbage collector MXBeans in a ring, so that the monitor
+ * threads can attribute a GC event to the collection that caused it without
+ * querying the MXBeans.
+ *
+ * The notifications are read as
+ * <code>com.sun.management.GarbageCollectionNotificationInfo</code> composite
+ * data, through the plain JMX types as the library is built for JVMs without
+ * them; on such JVMs no collection is ever known. The notifications are
+ * delivered shortly after the end of a collection, the monitor threads
+ * {@link #awaitNotifications() wait} for the ones of the collections already
+ * counted by the MXBeans before attributing their events.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class RecentGcCycles {
+
+	/** The number of collections kept. */
+	public static final int CAPACITY = 64;
+
+	/** The longest time waited for the notifications of the collections. */
+	public static final long NOTIFICATION_WAIT_MILLIS = 100;
+
+	private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+	private static final AtomicReferenceArray<GcCycleInfo> CYCLES = new AtomicReferenceArray<GcCycleInfo>(
+			CAPACITY);
+	private static final AtomicLong PUBLISHED = new AtomicLong();
+
+	private static final long JVM_START_TIME;
+
+	// the collectors listened to & the id of the last collection notified by
+	// each
+	private static final GarbageCollectorMXBean[] COLLECTORS;
+	private static final AtomicLongArray NOTIFIED_IDS;
+
+	static {
+		long jvmStartTime = 0;
+		List<GarbageCollectorMXBean> collectors = new ArrayList<GarbageCollectorMXBean>();
+		try {
+			jvmStartTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+			NotificationListener listener = new NotificationListener() {
+				@Override
+				public void handleNotification(Notification notification,
+						Object handback) {
+					if (GC_NOTIFICATION.equals(notification.getType())) {
+						record((CompositeData) notification.getUserData(),
+								((Integer) handback).intValue());
+					}
+				}
+			};
+			for (GarbageCollectorMXBean collector : ManagementFactory
+					.getGarbageCollectorMXBeans()) {
+				if (collector instanceof NotificationEmitter) {
+					((NotificationEmitter) collector).addNotificationListener(
+							listener, null,
+							Integer.valueOf(collectors.size()));
+					collectors.add(collector);
+				}
+			}
+		} catch (Throwable e) {
+			// no notifications on this JVM, no collection is ever known
+			collectors.clear();
+		}
+		JVM_START_TIME = jvmStartTime;
+		COLLECTORS = collectors.toArray(new GarbageCollectorMXBean[collectors
+				.size()]);
+		NOTIFIED_IDS = new AtomicLongArray(COLLECTORS.length);
+		// the collections run before the listener was added are never
+		// notified, they are not waited for
+		for (int i = 0; i < COLLECTORS.length; i++) {
+			long count = COLLECTORS[i].getCollectionCount();
+			long notified;
+			do {
+				notified = NOTIFIED_IDS.get(i);
+			} while (count > notified
+					&& !NOTIFIED_IDS.compareAndSet(i, notified, count));
+		}
+	}
+
+	private RecentGcCycles() {
+	}
+
+	/**
+	 * Waits, for up to {@value #NOTIFICATION_WAIT_MILLIS} milliseconds, until
+	 * the collections counted by the MXBeans have all been notified, so that
+	 * the events seen after them can be attributed to them. Called by a
+	 * monitor thread once a pass, before taking the lock of its watch list,
+	 * so that the registration of objects is not held up by the wait; returns
+	 * at once when no collection has run since the last call.
+	 * 
+	 * @return true, if all the collections counted have been notified
+	 */
+	public static boolean awaitNotifications() {
+		long deadline = 0;
+		for (int i = 0; i < COLLECTORS.length; i++) {
+			while (COLLECTORS[i].getCollectionCount() > NOTIFIED_IDS.get(i)) {
+				long now = System.nanoTime();
+				if (deadline == 0) {
+					deadline = now
+							+ TimeUnit.MILLISECONDS
+									.toNanos(NOTIFICATION_WAIT_MILLIS);
+				} else if (now - deadline >= 0) {
+					return false;
+				}
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the latest collection that ended at or before the time of an
+	 * event, provided it ended after the object was added.
+	 *
+	 * @param eventTimeMillis
+	 *            the time of the event in milliseconds since the epoch
+	 * @param addedTimeMillis
+	 *            the time the object was added in milliseconds since the
+	 *            epoch
+	 * @return the collection, null if none is known
+	 */
+	public static GcCycleInfo cycleBefore(long eventTimeMillis,
+			long addedTimeMillis) {
+		long published = PUBLISHED.get();
+		long oldest = Math.max(0, published - CAPACITY);
+		for (long sequence = published - 1; sequence >= oldest; sequence--) {
+			GcCycleInfo cycle = CYCLES.get((int) (sequence % CAPACITY));
+			if (cycle == null) {
+				// published but not written yet
+				continue;
+			}
+			if (cycle.getEndTimeMillis() <= eventTimeMillis) {
+				return cycle.getEndTimeMillis() >= addedTimeMillis ? cycle
+						: null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the latest collection known.
+	 *
+	 * @return the collection, null if none is known
+	 */
+	public static GcCycleInfo latest() {
+		long published = PUBLISHED.get();
+		return published == 0 ? null : CYCLES
+				.get((int) ((published - 1) % CAPACITY));
+	}
+
+	private static void record(CompositeData info, int collector) {
+		CompositeData gcInfo = (CompositeData) info.get("gcInfo");
+		GcCycleInfo cycle = new GcCycleInfo(
+				((Long) gcInfo.get("id")).longValue(),
+				(String) info.get("gcName"), (String) info.get("gcAction"),
+				(String) info.get("gcCause"), JVM_START_TIME
+						+ ((Long) gcInfo.get("startTime")).longValue(),
+				JVM_START_TIME + ((Long) gcInfo.get("endTime")).longValue(),
+				((Long) gcInfo.get("duration")).longValue());
+
+		long sequence = PUBLISHED.getAndIncrement();
+		CYCLES.set((int) (sequence % CAPACITY), cycle);
+		long notified;
+		do {
+			notified = NOTIFIED_IDS.get(collector);
+		} while (cycle.getId() > notified
+				&& !NOTIFIED_IDS.compareAndSet(collector, notified,
+						cycle.getId()));
+	}
+}
@@ -0,0 +1,530 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors.modules.monitoring.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.gcr.callbacks.GcRadarCallback;
+import com.gcr.monitors.modules.monitoring.MonitoringModuleInterface;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
+import com.gcr.monitors.modules.monitoring.structs.MonitorStateEnum;
+import com.gcr.monitors.modules.monitoring.structs.SimulatedReclaimOrderEnum;
+import com.gcr.monitors.modules.notification.BatchNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class SimulatedMonitoringModule is an implementation of
+ * {@link MonitoringModuleInterface} that does not wait for the garbage
+ * collector. Its worker thread raises the pre GC & the post GC events of the
+ * objects added to it at a set rate, so that the notification modules,
+ * callbacks & sinks can be load tested without creating garbage or forcing
+ * collections.
+ *
+ * The objects are reclaimed in batches, each batch stands for a collection:
+ * the pre GC events of all of its objects are raised first & then their post
+ * GC events, between {@link BatchNotificationModuleInterface#notifyPassStarted()}
+ * & {@link BatchNotificationModuleInterface#notifyPassCompleted()}. The
+ * objects of a batch are picked in the {@link SimulatedReclaimOrderEnum
+ * order} set. The module keeps the objects strongly reachable, the collector
+ * never reclaims them.
+ *
+ * With recycling turned on a reclaimed object is added back to the module,
+ * so that a small set of objects gives an endless stream of events. The
+ * lifetimes reported for a recycled object are then counted from the time it
+ * was first added.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class SimulatedMonitoringModule implements MonitoringModuleInterface {
+
+	/** The default number of objects reclaimed per batch. */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	/** The objects that have not been reclaimed yet, guarded by itself. */
+	private final List<AbstractObjectRefrenceKey<Object>> pendingKeys = new ArrayList<AbstractObjectRefrenceKey<Object>>();
+
+	/** The index of the oldest pending key, guarded by the pending keys. */
+	private int head;
+
+	/** The identifiers in use, guarded by the pending keys. */
+	private final Set<String> identifiers = new HashSet<String>();
+
+	private final Random random;
+
+	private final AtomicLong emittedEventCount = new AtomicLong();
+
+	private volatile long objectsPerSecond;
+
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+	private volatile SimulatedReclaimOrderEnum order = SimulatedReclaimOrderEnum.OLDEST_FIRST;
+
+	private volatile boolean recycle;
+
+	/** The metrics of the monitor, null if not collected. */
+	private volatile MonitorMetrics metrics;
+
+	private SimulatorThread simulatorThread;
+
+	private int entryCounter;
+
+	/**
+	 * Instantiates a new simulated monitoring module that reclaims the objects
+	 * as fast as the notification module takes the events.
+	 *
+	 * @param seed
+	 *            the seed of the random order, a run with the same seed,
+	 *            objects & settings raises the same events in the same order
+	 */
+	public SimulatedMonitoringModule(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * Adds an object whose GC events will be simulated. The object is kept
+	 * strongly reachable by the module.
+	 *
+	 * @param object
+	 *            the object, its class is reported with the events
+	 * @param identifier
+	 *            the identifier of the object
+	 * @param callback
+	 *            the callback that will be notified about the GC events
+	 * @return true, if successful; false if the identifier is in use
+	 */
+	public boolean addObject(Object object, String identifier,
+			GcRadarCallback callback) {
+		if (object == null) {
+			throw new NullPointerException("Can not add null to monitoring");
+		}
+		if (identifier == null) {
+			throw new NullPointerException("identifier can not be null");
+		}
+
+		synchronized (pendingKeys) {
+			if (!identifiers.add(identifier)) {
+				return false;
+			}
+
+			SimulatedObjectRefrenceKey refrenceKey = new SimulatedObjectRefrenceKey(
+					object, identifier, callback);
+			pendingKeys.add(refrenceKey);
+			entryCounter++;
+
+			MonitorMetrics current = metrics;
+			if (current != null) {
+				current.recordRegistration(refrenceKey);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Adds a number of new objects whose GC events will be simulated, with
+	 * auto generated identifiers.
+	 *
+	 * @param count
+	 *            the number of objects
+	 * @param callback
+	 *            the callback that will be notified about the GC events
+	 * @throws IllegalArgumentException
+	 *             if count is negative
+	 */
+	public void addObjects(int count, GcRadarCallback callback) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count can not be negative");
+		}
+
+		for (int i = 0; i < count; i++) {
+			Object object = new Object();
+			String identifier;
+			synchronized (pendingKeys) {
+				identifier = Object.class.getName() + " - " + entryCounter;
+			}
+			addObject(object, identifier, callback);
+		}
+	}
+
+	/**
+	 * Gets the number of objects that have not been reclaimed yet.
+	 *
+	 * @return the pending objects count
+	 */
+	public int getPendingObjectsCount() {
+		synchronized (pendingKeys) {
+			return pendingKeys.size() - head;
+		}
+	}
+
+	/**
+	 * Gets the number of pre GC & post GC events raised so far.
+	 *
+	 * @return the emitted event count
+	 */
+	public long getEmittedEventCount() {
+		return emittedEventCount.get();
+	}
+
+	/**
+	 * Sets the number of objects reclaimed per second, each of them raises a
+	 * pre GC & a post GC event. Can be changed while the simulation is
+	 * running.
+	 *
+	 * @param objectsPerSecond
+	 *            the rate, 0 for no limit
+	 * @throws IllegalArgumentException
+	 *             if objectsPerSecond is negative
+	 */
+	public void setObjectsPerSecond(long objectsPerSecond) {
+		if (objectsPerSecond < 0) {
+			throw new IllegalArgumentException(
+					"objectsPerSecond can not be negative");
+		}
+		this.objectsPerSecond = objectsPerSecond;
+	}
+
+	/**
+	 * Sets the number of objects reclaimed by one simulated collection.
+	 *
+	 * @param batchSize
+	 *            the batch size
+	 * @throws IllegalArgumentException
+	 *             if batchSize is not positive
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException(
+					"batchSize must be greater than 0");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the order the objects are reclaimed in.
+	 *
+	 * @param order
+	 *            the order
+	 * @throws NullPointerException
+	 *             if order is null
+	 */
+	public void setOrder(SimulatedReclaimOrderEnum order) {
+		if (order == null) {
+			throw new NullPointerException("order can not be null");
+		}
+		this.order = order;
+	}
+
+	/**
+	 * Sets whether a reclaimed object is added back to the module. With
+	 * recycling the simulation runs until it is stopped, without it it ends
+	 * once all the objects have been reclaimed.
+	 *
+	 * @param recycle
+	 *            true to recycle the objects
+	 */
+	public void setRecycle(boolean recycle) {
+		this.recycle = recycle;
+	}
+
+	/**
+	 * Sets the metrics the simulated events are recorded in.
+	 *
+	 * @param metrics
+	 *            the metrics, null to stop recording
+	 */
+	public void setMetrics(MonitorMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see com.gcr.monitors.modules.monitoring.MonitoringModuleInterface#startMonitoring(com.gcr.monitors.modules.notification.NotificationModuleInterface)
+	 */
+	@Override
+	public synchronized boolean startMonitoring(
+			NotificationModuleInterface notificationMod) {
+		if (notificationMod == null) {
+			throw new NullPointerException(
+					"Notification module can not be null");
+		}
+		if (simulatorThread != null && simulatorThread.isAlive()) {
+			return false;
+		}
+
+		simulatorThread = new SimulatorThread(notificationMod);
+		simulatorThread.start();
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see com.gcr.monitors.modules.monitoring.MonitoringModuleInterface#stopMonitoring(com.gcr.monitors.modules.notification.NotificationModuleInterface)
+	 */
+	@Override
+	public synchronized boolean stopMonitoring(
+			NotificationModuleInterface notificationMod) {
+		if (simulatorThread == null || !simulatorThread.isAlive()) {
+			return false;
+		}
+
+		simulatorThread.stopFlag = true;
+		LockSupport.unpark(simulatorThread);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see com.gcr.monitors.modules.monitoring.MonitoringModuleInterface#getMonitoringModuleStatus()
+	 */
+	@Override
+	public synchronized MonitorStateEnum getMonitoringModuleStatus() {
+		if (simulatorThread == null) {
+			return MonitorStateEnum.NEW;
+		}
+
+		return simulatorThread.isAlive() ? MonitorStateEnum.RUNNING
+				: MonitorStateEnum.TERMINATED;
+	}
+
+	/**
+	 * Waits for the simulation to end, either because all the objects have
+	 * been reclaimed or because it has been stopped.
+	 *
+	 * @param time
+	 *            the time to wait
+	 * @param unit
+	 *            the unit of the time
+	 * @return true if the simulation ended, false if the time ran out
+	 * @throws InterruptedException
+	 *             in case the waiting thread is interrupted
+	 */
+	public boolean awaitTermination(long time, TimeUnit unit)
+			throws InterruptedException {
+		SimulatorThread thread;
+		synchronized (this) {
+			thread = simulatorThread;
+		}
+		if (thread == null) {
+			return true;
+		}
+
+		thread.join(Math.max(1, unit.toMillis(time)));
+		return !thread.isAlive();
+	}
+
+	/*
+	 * Takes the keys of the next batch out of the pending keys, returns false
+	 * if there are none.
+	 */
+	private boolean takeBatch(List<AbstractObjectRefrenceKey<Object>> batch) {
+		int size = batchSize;
+		SimulatedReclaimOrderEnum currentOrder = order;
+
+		synchronized (pendingKeys) {
+			while (batch.size() < size && head < pendingKeys.size()) {
+				int last = pendingKeys.size() - 1;
+				switch (currentOrder) {
+				case OLDEST_FIRST:
+					batch.add(pendingKeys.get(head));
+					pendingKeys.set(head++, null);
+					break;
+				case NEWEST_FIRST:
+					batch.add(pendingKeys.remove(last));
+					break;
+				default:
+					int index = head + random.nextInt(last - head + 1);
+					batch.add(pendingKeys.get(index));
+					pendingKeys.set(index, pendingKeys.get(last));
+					pendingKeys.remove(last);
+					break;
+				}
+			}
+
+			// drop the taken oldest keys once they are half of the list
+			if (head > 0 && head * 2 >= pendingKeys.size()) {
+				pendingKeys.subList(0, head).clear();
+				head = 0;
+			}
+		}
+		return !batch.isEmpty();
+	}
+
+	private void returnBatch(List<AbstractObjectRefrenceKey<Object>> batch) {
+		synchronized (pendingKeys) {
+			for (int i = 0; i < batch.size(); i++) {
+				AbstractObjectRefrenceKey<Object> refrenceKey = batch.get(i);
+				refrenceKey.setWeakCallbackTimeMillis(0);
+				refrenceKey.setPhantomCallbackTimeMillis(0);
+				pendingKeys.add(refrenceKey);
+			}
+		}
+	}
+
+	private void forgetBatch(List<AbstractObjectRefrenceKey<Object>> batch) {
+		synchronized (pendingKeys) {
+			for (int i = 0; i < batch.size(); i++) {
+				identifiers.remove(batch.get(i).getObjRefrenceKey());
+			}
+		}
+	}
+
+	// ===========INNER CLASSES==========
+
+	/*
+	 * The thread that raises the events of the batches.
+	 */
+	private class SimulatorThread extends Thread {
+
+		private final NotificationModuleInterface notificationMod;
+
+		private volatile boolean stopFlag;
+
+		public SimulatorThread(NotificationModuleInterface notificationMod) {
+			super("gcRadar-simulator");
+			setDaemon(true);
+			this.notificationMod = notificationMod;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Thread#run()
+		 */
+		@Override
+		public void run() {
+			BatchNotificationModuleInterface batchNotificationMod = null;
+			if (notificationMod instanceof BatchNotificationModuleInterface) {
+				batchNotificationMod = (BatchNotificationModuleInterface) notificationMod;
+			}
+
+			MonitorMetrics threadMetrics = metrics;
+			if (threadMetrics != null) {
+				threadMetrics.monitorThreadStarted();
+			}
+
+			List<AbstractObjectRefrenceKey<Object>> batch = new ArrayList<AbstractObjectRefrenceKey<Object>>();
+			long rate = 0;
+			long rateStartNanos = 0;
+			long reclaimedAtRate = 0;
+
+			while (!stopFlag && takeBatch(batch)) {
+				MonitorMetrics passMetrics = metrics;
+				long passStartNanos = System.nanoTime();
+
+				if (batchNotificationMod != null) {
+					batchNotificationMod.notifyPassStarted();
+				}
+
+				long now = System.currentTimeMillis();
+				for (int i = 0; i < batch.size(); i++) {
+					AbstractObjectRefrenceKey<Object> refrenceKey = batch.get(i);
+					refrenceKey.setWeakCallbackTimeMillis(now);
+					notificationMod.notifyPreGcEvent(refrenceKey);
+					if (passMetrics != null) {
+						passMetrics.recordOrphaned(refrenceKey);
+					}
+				}
+				now = System.currentTimeMillis();
+				for (int i = 0; i < batch.size(); i++) {
+					AbstractObjectRefrenceKey<Object> refrenceKey = batch.get(i);
+					refrenceKey.setPhantomCallbackTimeMillis(now);
+					notificationMod.notifyPostGcEvent(refrenceKey);
+					if (passMetrics != null) {
+						passMetrics.recordReclaimed(refrenceKey);
+					}
+				}
+
+				if (batchNotificationMod != null) {
+					batchNotificationMod.notifyPassCompleted();
+				}
+				emittedEventCount.addAndGet(2L * batch.size());
+				if (passMetrics != null) {
+					passMetrics.recordPass(System.nanoTime() - passStartNanos,
+							batch.size());
+				}
+
+				if (recycle) {
+					if (passMetrics != null) {
+						for (int i = 0; i < batch.size(); i++) {
+							passMetrics.recordRegistration(batch.get(i));
+						}
+					}
+					returnBatch(batch);
+				} else {
+					forgetBatch(batch);
+				}
+
+				// the pace is measured from the last change of the rate
+				long currentRate = objectsPerSecond;
+				if (currentRate != rate) {
+					rate = currentRate;
+					rateStartNanos = System.nanoTime();
+					reclaimedAtRate = 0;
+				}
+				reclaimedAtRate += batch.size();
+				batch.clear();
+				if (rate > 0) {
+					pace(rateStartNanos
+							+ (long) (reclaimedAtRate * 1e9 / rate));
+				}
+			}
+
+			if (threadMetrics != null) {
+				threadMetrics.monitorThreadFinished();
+			}
+		}
+
+		/*
+		 * Parks the thread till the deadline, unless it is stopped.
+		 */
+		private void pace(long deadlineNanos) {
+			long remaining;
+			while (!stopFlag
+					&& (remaining = deadlineNanos - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(this, remaining);
+			}
+		}
+	}
+
+	/*
+	 * The key of a simulated object, holds the object strongly so that it is
+	 * never reclaimed & no reference queue is involved.
+	 */
+	private static class SimulatedObjectRefrenceKey extends
+			AbstractObjectRefrenceKey<Object> {
+
+		@SuppressWarnings("unused")
+		private final Object object;
+
+		public SimulatedObjectRefrenceKey(Object object, String identifier,
+				GcRadarCallback callback) {
+			super(object, identifier, null, null, callback);
+			this.object = object;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors.modules.monitoring.structs;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.gcr.structs.GcCycleInfo;
+
+/**
+ * The Class ClassLoaderLeakReport is the state of a deployment tracked by the
+ * {@link com.gcr.monitors.ClassLoaderLeakMonitor}: whether its class loader
+ * was reclaimed after the undeployment &, once it is considered leaked, the
+ * retention suspects found still referring to the loader.
+ *
+ * The report is a snapshot, it is not updated by the monitor.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class ClassLoaderLeakReport {
+
+	private final String deploymentName;
+	private final String loaderDescription;
+	private final ClassLoaderStateEnum state;
+	private final long undeployTimeMillis;
+	private final long collectionsSinceUndeploy;
+	private final int collectionLimit;
+	private final GcCycleInfo reclaimedGcCycle;
+	private final int liveClassCount;
+	private final int liveThreadLocalCount;
+	private final List<String> retentionSuspects;
+
+	/**
+	 * Instantiates a new report.
+	 *
+	 * @param deploymentName
+	 *            the name of the deployment
+	 * @param loaderDescription
+	 *            the class & identity of the loader
+	 * @param state
+	 *            the state of the deployment
+	 * @param undeployTimeMillis
+	 *            the time of the undeployment, 0 if not undeployed
+	 * @param collectionsSinceUndeploy
+	 *            the number of full collections since the undeployment, up to
+	 *            the reclaim of the loader
+	 * @param collectionLimit
+	 *            the number of full collections the loader is allowed to
+	 *            survive
+	 * @param reclaimedGcCycle
+	 *            the collection that reclaimed the loader, null if not known
+	 * @param liveClassCount
+	 *            the number of tracked classes not reclaimed
+	 * @param liveThreadLocalCount
+	 *            the number of tracked thread locals not reclaimed
+	 * @param retentionSuspects
+	 *            the retention suspects, empty unless leaked
+	 */
+	public ClassLoaderLeakReport(String deploymentName,
+			String loaderDescription, ClassLoaderStateEnum state,
+			long undeployTimeMillis, long collectionsSinceUndeploy,
+			int collectionLimit, GcCycleInfo reclaimedGcCycle,
+			int liveClassCount, int liveThreadLocalCount,
+			List<String> retentionSuspects) {
+		this.deploymentName = deploymentName;
+		this.loaderDescription = loaderDescription;
+		this.state = state;
+		this.undeployTimeMillis = undeployTimeMillis;
+		this.collectionsSinceUndeploy = collectionsSinceUndeploy;
+		this.collectionLimit = collectionLimit;
+		this.reclaimedGcCycle = reclaimedGcCycle;
+		this.liveClassCount = liveClassCount;
+		this.liveThreadLocalCount = liveThreadLocalCount;
+		this.retentionSuspects = Collections.unmodifiableList(retentionSuspects);
+	}
+
+	/**
+	 * Gets the name of the deployment.
+	 *
+	 * @return the deployment name
+	 */
+	public String getDeploymentName() {
+		return deploymentName;
+	}
+
+	/**
+	 * Gets the class & identity of the class loader of the deployment.
+	 *
+	 * @return the loader description
+	 */
+	public String getLoaderDescription() {
+		return loaderDescription;
+	}
+
+	/**
+	 * Gets the state of the deployment.
+	 *
+	 * @return the state
+	 */
+	public ClassLoaderStateEnum getState() {
+		return state;
+	}
+
+	/**
+	 * Gets the time of the undeployment.
+	 *
+	 * @return the undeploy time, 0 if not undeployed
+	 */
+	public long getUndeployTimeMillis() {
+		return undeployTimeMillis;
+	}
+
+	/**
+	 * Gets the number of full collections since the undeployment, up to the
+	 * reclaim of the loader once it is reclaimed.
+	 *
+	 * @return the collections since undeploy, 0 if not undeployed
+	 */
+	public long getCollectionsSinceUndeploy() {
+		return collectionsSinceUndeploy;
+	}
+
+	/**
+	 * Gets the number of full collections the loader is allowed to survive
+	 * after the undeployment.
+	 *
+	 * @return the collection limit
+	 */
+	public int getCollectionLimit() {
+		return collectionLimit;
+	}
+
+	/**
+	 * Gets the collection that reclaimed the loader.
+	 *
+	 * @return the collection, null if not reclaimed or not known
+	 */
+	public GcCycleInfo getReclaimedGcCycle() {
+		return reclaimedGcCycle;
+	}
+
+	/**
+	 * Gets the number of tracked classes not reclaimed.
+	 *
+	 * @return the live class count
+	 */
+	public int getLiveClassCount() {
+		return liveClassCount;
+	}
+
+	/**
+	 * Gets the number of tracked thread locals not reclaimed.
+	 *
+	 * @return the live thread local count
+	 */
+	public int getLiveThreadLocalCount() {
+		return liveThreadLocalCount;
+	}
+
+	/**
+	 * Gets the retention suspects, the references to the loader or to its
+	 * classes & objects found from the known roots.
+	 *
+	 * @return the retention suspects, empty unless the loader leaked
+	 */
+	public List<String> getRetentionSuspects() {
+		return retentionSuspects;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(deploymentName).append(" (").append(loaderDescription)
+				.append("): ").append(state);
+		if (undeployTimeMillis != 0) {
+			builder.append(", ").append(collectionsSinceUndeploy)
+					.append(" of ").append(collectionLimit)
+					.append(" full collections since undeploy");
+		}
+		if (reclaimedGcCycle != null) {
+			builder.append(", reclaimed by ").append(reclaimedGcCycle);
+		}
+		builder.append(", live classes: ").append(liveClassCount)
+				.append(", live thread locals: ").append(liveThreadLocalCount);
+		for (String suspect : retentionSuspects) {
+			builder.append("\n  ").append(suspect);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,41 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors.modules.monitoring.structs;
+
+/**
+ * The Enum ClassLoaderStateEnum reflects the state of a deployment tracked by
+ * the {@link com.gcr.monitors.ClassLoaderLeakMonitor}.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public enum ClassLoaderStateEnum {
+
+	/** The deployment is tracked & has not been undeployed. */
+	DEPLOYED,
+	/**
+	 * The deployment has been undeployed & its class loader has not been
+	 * reclaimed yet, within the number of collections allowed.
+	 */
+	UNDEPLOYED,
+	/** The class loader of the deployment has been reclaimed. */
+	RECLAIMED,
+	/**
+	 * The class loader of the deployment has survived the number of
+	 * collections allowed after the undeployment.
+	 */
+	LEAKED;
+}
@@ -0,0 +1,291 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.monitoring.structs;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gcr.structs.GcCycleInfo;
+import com.gcr.structs.LifetimeHistogram;
+import com.gcr.structs.StripedCounter;
+
+/**
+ * The Class ClassMetrics holds the statistics of the monitored objects of one
+ * class. The classes are identified by name so that the metrics do not keep
+ * the classes, and their class loaders, from being unloaded.
+ * 
+ * The sizes of the objects are only counted while the
+ * {@link com.gcr.agent.GcRadarAgent} is installed.
+ * 
+ * The times between the addition of an object, its pre GC event & its post GC
+ * event are kept in log bucketed histograms, recorded by the monitor thread
+ * without allocating, so the percentiles of how long the objects of the class
+ * are retained can be queried without storing every event.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class ClassMetrics {
+
+	private final String className;
+
+	private final StripedCounter registeredCount = new StripedCounter();
+	private final AtomicLong orphanedCount = new AtomicLong();
+	private final AtomicLong reclaimedCount = new AtomicLong();
+	private final AtomicLong minorReclaimedCount = new AtomicLong();
+	private final AtomicLong majorReclaimedCount = new AtomicLong();
+	private final AtomicLong removedCount = new AtomicLong();
+	private final AtomicLong leakSuspectCount = new AtomicLong();
+	private final StripedCounter registeredBytes = new StripedCounter();
+	private final AtomicLong reclaimedBytes = new AtomicLong();
+	private final AtomicLong removedBytes = new AtomicLong();
+	private final LifetimeHistogram lifetimeMillis = new LifetimeHistogram();
+	private final LifetimeHistogram orphanAgeMillis = new LifetimeHistogram();
+	private final LifetimeHistogram reclaimDelayMillis = new LifetimeHistogram();
+
+	/**
+	 * Instantiates new class metrics.
+	 * 
+	 * @param className
+	 *            the name of the class
+	 */
+	public ClassMetrics(String className) {
+		this.className = className;
+	}
+
+	/**
+	 * Gets the name of the class.
+	 * 
+	 * @return the class name
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * Gets the number of objects of the class being monitored.
+	 * 
+	 * @return the live count
+	 */
+	public long getLiveCount() {
+		// read the decrements first so a concurrent event can only overcount
+		long gone = reclaimedCount.get() + removedCount.get();
+		return Math.max(0, registeredCount.sum() - gone);
+	}
+
+	/**
+	 * Gets the number of objects of the class added.
+	 * 
+	 * @return the registered count
+	 */
+	public long getRegisteredCount() {
+		return registeredCount.sum();
+	}
+
+	/**
+	 * Gets the number of pre GC events raised for the class.
+	 * 
+	 * @return the orphaned count
+	 */
+	public long getOrphanedCount() {
+		return orphanedCount.get();
+	}
+
+	/**
+	 * Gets the number of post GC events raised for the class.
+	 * 
+	 * @return the reclaimed count
+	 */
+	public long getReclaimedCount() {
+		return reclaimedCount.get();
+	}
+
+	/**
+	 * Gets the number of objects of the class reclaimed in a collection of
+	 * the young generation only.
+	 * 
+	 * @return the minor reclaimed count
+	 */
+	public long getMinorReclaimedCount() {
+		return minorReclaimedCount.get();
+	}
+
+	/**
+	 * Gets the number of objects of the class reclaimed in a collection of
+	 * the old generation or of the whole heap. The objects reclaimed in a
+	 * collection not known are counted in neither this nor the minor count.
+	 * 
+	 * @return the major reclaimed count
+	 */
+	public long getMajorReclaimedCount() {
+		return majorReclaimedCount.get();
+	}
+
+	/**
+	 * Gets the number of objects of the class removed from the monitoring
+	 * before being reclaimed.
+	 * 
+	 * @return the removed count
+	 */
+	public long getRemovedCount() {
+		return removedCount.get();
+	}
+
+	/**
+	 * Gets the number of objects of the class that outlived their expected
+	 * lifetime.
+	 * 
+	 * @return the leak suspect count
+	 */
+	public long getLeakSuspectCount() {
+		return leakSuspectCount.get();
+	}
+
+	/**
+	 * Gets the summed size of the objects of the class added.
+	 * 
+	 * @return the registered bytes
+	 */
+	public long getRegisteredBytes() {
+		return registeredBytes.sum();
+	}
+
+	/**
+	 * Gets the summed size of the objects of the class reclaimed.
+	 * 
+	 * @return the reclaimed bytes
+	 */
+	public long getReclaimedBytes() {
+		return reclaimedBytes.get();
+	}
+
+	/**
+	 * Gets the summed size of the objects of the class being monitored.
+	 * 
+	 * @return the pending bytes
+	 */
+	public long getPendingBytes() {
+		// read the decrements first so a concurrent event can only overcount
+		long gone = reclaimedBytes.get() + removedBytes.get();
+		return Math.max(0, registeredBytes.sum() - gone);
+	}
+
+	/**
+	 * Gets the histogram of the time from adding an object to its post GC
+	 * event.
+	 * 
+	 * @return the lifetime histogram in milliseconds
+	 */
+	public LifetimeHistogram getLifetimeHistogram() {
+		return lifetimeMillis;
+	}
+
+	/**
+	 * Gets the histogram of the time from adding an object to its pre GC
+	 * event, when its weak reference was found enqueued.
+	 * 
+	 * @return the orphan age histogram in milliseconds
+	 */
+	public LifetimeHistogram getOrphanAgeHistogram() {
+		return orphanAgeMillis;
+	}
+
+	/**
+	 * Gets the histogram of the time from the pre GC event of an object to its
+	 * post GC event.
+	 * 
+	 * @return the reclaim delay histogram in milliseconds
+	 */
+	public LifetimeHistogram getReclaimDelayHistogram() {
+		return reclaimDelayMillis;
+	}
+
+	/**
+	 * Gets the time from adding an object to its post GC event below which
+	 * the given percentage of the reclaimed objects of the class fall.
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return the lifetime in milliseconds
+	 */
+	public long getLifetimePercentile(double percentile) {
+		return lifetimeMillis.getValueAtPercentile(percentile);
+	}
+
+	/**
+	 * Gets the time from adding an object to its pre GC event below which the
+	 * given percentage of the orphaned objects of the class fall.
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return the orphan age in milliseconds
+	 */
+	public long getOrphanAgePercentile(double percentile) {
+		return orphanAgeMillis.getValueAtPercentile(percentile);
+	}
+
+	/**
+	 * Gets the time from the pre GC event of an object to its post GC event
+	 * below which the given percentage of the reclaimed objects of the class
+	 * fall.
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return the reclaim delay in milliseconds
+	 */
+	public long getReclaimDelayPercentile(double percentile) {
+		return reclaimDelayMillis.getValueAtPercentile(percentile);
+	}
+
+	void recordRegistration(long size) {
+		registeredCount.increment();
+		if (size > 0) {
+			registeredBytes.add(size);
+		}
+	}
+
+	void recordOrphaned(long orphanAge) {
+		orphanedCount.incrementAndGet();
+		orphanAgeMillis.record(Math.max(0, orphanAge));
+	}
+
+	void recordReclaimed(long lifetime, long reclaimDelay, long size,
+			GcCycleInfo cycle) {
+		reclaimedCount.incrementAndGet();
+		if (size > 0) {
+			reclaimedBytes.addAndGet(size);
+		}
+		if (cycle != null) {
+			(cycle.isMinor() ? minorReclaimedCount : majorReclaimedCount)
+					.incrementAndGet();
+		}
+		lifetimeMillis.record(Math.max(0, lifetime));
+		if (reclaimDelay >= 0) {
+			reclaimDelayMillis.record(reclaimDelay);
+		}
+	}
+
+	void recordLeakSuspect() {
+		leakSuspectCount.incrementAndGet();
+	}
+
+	void recordRemoval(long size) {
+		removedCount.incrementAndGet();
+		if (size > 0) {
+			removedBytes.addAndGet(size);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.monitoring.structs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.gcr.structs.AbstractObjectRefrenceKey;
+import com.gcr.structs.CreationTrace;
+
+/**
+ * The Class CreationSiteReport aggregates the objects still monitored, the
+ * survivors, by the site they were created at, so that a leak can be traced
+ * back to the code adding the objects. Only the objects whose
+ * {@link AbstractObjectRefrenceKey#getCreationTrace() creation trace} was
+ * sampled are attributed to a site, the sites with the most survivors are
+ * reported first.
+ *
+ * The report is a snapshot, it is not updated by the monitor.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class CreationSiteReport {
+
+	private final int survivorCount;
+	private final int tracedCount;
+	private final List<Site> sites;
+
+	private CreationSiteReport(int survivorCount, int tracedCount,
+			List<Site> sites) {
+		this.survivorCount = survivorCount;
+		this.tracedCount = tracedCount;
+		this.sites = Collections.unmodifiableList(sites);
+	}
+
+	/**
+	 * Aggregates the survivors by creation site.
+	 *
+	 * @param survivors
+	 *            the keys of the objects still monitored
+	 * @param topK
+	 *            the number of sites kept, the ones with the most survivors
+	 * @return the report
+	 */
+	public static CreationSiteReport build(
+			Collection<? extends AbstractObjectRefrenceKey<?>> survivors,
+			int topK) {
+		Map<CreationTrace, Site> bySite = new IdentityHashMap<CreationTrace, Site>();
+		int tracedCount = 0;
+		for (AbstractObjectRefrenceKey<?> key : survivors) {
+			CreationTrace trace = key.getCreationTrace();
+			if (trace == null) {
+				continue;
+			}
+			tracedCount++;
+
+			CreationTrace siteTrace = trace.getSite();
+			Site site = bySite.get(siteTrace);
+			if (site == null) {
+				site = new Site(siteTrace);
+				bySite.put(siteTrace, site);
+			}
+			site.add(key, trace);
+		}
+
+		List<Site> sites = new ArrayList<Site>(bySite.values());
+		Collections.sort(sites, new Comparator<Site>() {
+			@Override
+			public int compare(Site o1, Site o2) {
+				return o1.count > o2.count ? -1 : (o1.count == o2.count ? 0
+						: 1);
+			}
+		});
+		if (sites.size() > topK) {
+			sites = new ArrayList<Site>(sites.subList(0, Math.max(0, topK)));
+		}
+		for (Site site : sites) {
+			site.pickTopTrace();
+		}
+
+		return new CreationSiteReport(survivors.size(), tracedCount, sites);
+	}
+
+	/**
+	 * Gets the number of survivors.
+	 *
+	 * @return the survivor count
+	 */
+	public int getSurvivorCount() {
+		return survivorCount;
+	}
+
+	/**
+	 * Gets the number of survivors whose creation trace was sampled.
+	 *
+	 * @return the traced count
+	 */
+	public int getTracedCount() {
+		return tracedCount;
+	}
+
+	/**
+	 * Gets the sites with the most survivors.
+	 *
+	 * @return the sites, the most survivors first
+	 */
+	public List<Site> getSites() {
+		return sites;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("Survivors: ").append(survivorCount)
+				.append(", traced: ").append(tracedCount);
+		for (Site site : sites) {
+			builder.append('\n').append(site.count).append(" survivors (")
+					.append(site.orphanedCount).append(" orphaned, ")
+					.append(site.leakSuspectCount).append(" leak suspects) at ")
+					.append(site.site.getFrame());
+			builder.append("\n  most frequent trace, ")
+					.append(site.topTraceCount).append(" survivors:\n")
+					.append(site.topTrace);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * The survivors of one creation site.
+	 */
+	public static final class Site {
+
+		private final CreationTrace site;
+		private int count;
+		private int orphanedCount;
+		private int leakSuspectCount;
+		private long bytes;
+		private Map<CreationTrace, int[]> traceCounts = new IdentityHashMap<CreationTrace, int[]>();
+		private CreationTrace topTrace;
+		private int topTraceCount;
+
+		private Site(CreationTrace site) {
+			this.site = site;
+		}
+
+		private void add(AbstractObjectRefrenceKey<?> key, CreationTrace trace) {
+			count++;
+			if (key.getWeakCallbackTimeMillis() != 0) {
+				orphanedCount++;
+			}
+			if (key.getLeakSuspectTimeMillis() != 0) {
+				leakSuspectCount++;
+			}
+			if (key.getSizeBytes() > 0) {
+				bytes += key.getSizeBytes();
+			}
+
+			int[] traceCount = traceCounts.get(trace);
+			if (traceCount == null) {
+				traceCount = new int[1];
+				traceCounts.put(trace, traceCount);
+			}
+			traceCount[0]++;
+		}
+
+		private void pickTopTrace() {
+			for (Map.Entry<CreationTrace, int[]> entry : traceCounts.entrySet()) {
+				if (entry.getValue()[0] > topTraceCount) {
+					topTrace = entry.getKey();
+					topTraceCount = entry.getValue()[0];
+				}
+			}
+			traceCounts = null;
+		}
+
+		/**
+		 * Gets the creation site, the trace of its frame only.
+		 *
+		 * @return the site
+		 */
+		public CreationTrace getSite() {
+			return site;
+		}
+
+		/**
+		 * Gets the number of survivors created at the site.
+		 *
+		 * @return the count
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * Gets the number of survivors orphaned but not reclaimed yet.
+		 *
+		 * @return the orphaned count
+		 */
+		public int getOrphanedCount() {
+			return orphanedCount;
+		}
+
+		/**
+		 * Gets the number of survivors suspected of leaking.
+		 *
+		 * @return the leak suspect count
+		 */
+		public int getLeakSuspectCount() {
+			return leakSuspectCount;
+		}
+
+		/**
+		 * Gets the summed shallow size of the survivors, known with the agent
+		 * only.
+		 *
+		 * @return the bytes, 0 if not known
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Gets the trace most of the survivors of the site were created with.
+		 *
+		 * @return the top trace
+		 */
+		public CreationTrace getTopTrace() {
+			return topTrace;
+		}
+
+		/**
+		 * Gets the number of survivors created with the top trace.
+		 *
+		 * @return the top trace count
+		 */
+		public int getTopTraceCount() {
+			return topTraceCount;
+		}
+	}
+}
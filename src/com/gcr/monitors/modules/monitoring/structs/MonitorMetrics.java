@@ -0,0 +1,618 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.monitoring.structs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gcr.monitors.modules.in.InputModuleInterface;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+import com.gcr.structs.CountMinSketch;
+import com.gcr.structs.EstimatedCount;
+import com.gcr.structs.LifetimeHistogram;
+import com.gcr.structs.StripedCounter;
+
+/**
+ * The Class MonitorMetrics collects the statistics of a monitor, overall &
+ * per class, it is shared by the modules of the monitor and published as an
+ * MBean. The counters updated by the registering & callback threads are
+ * striped so that they do not contend with each other, the pass statistics are
+ * only updated by the monitor thread. Reading the metrics takes no lock.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class MonitorMetrics implements MonitorMetricsMBean {
+
+	/** The interval over which the rates are measured. */
+	public static final long RATE_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * The error bound of the estimated counts of sampled out objects, relative
+	 * to all the sampled out objects.
+	 */
+	public static final double SAMPLED_OUT_EPSILON = 0.001;
+
+	/** The confidence of the estimated counts of sampled out objects. */
+	public static final double SAMPLED_OUT_CONFIDENCE = 0.99;
+
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final StripedCounter registrationCount = new StripedCounter();
+	private final StripedCounter orphanedCount = new StripedCounter();
+	private final StripedCounter reclaimedCount = new StripedCounter();
+	private final StripedCounter leakSuspectCount = new StripedCounter();
+	private final StripedCounter admissionDeniedCount = new StripedCounter();
+	private final StripedCounter sampledOutCount = new StripedCounter();
+	private final StripedCounter registeredBytes = new StripedCounter();
+	private final StripedCounter reclaimedBytes = new StripedCounter();
+	private final StripedCounter removedBytes = new StripedCounter();
+	private final StripedCounter passCount = new StripedCounter();
+	private final StripedCounter passNanos = new StripedCounter();
+	private final StripedCounter scannedCount = new StripedCounter();
+	private final LifetimeHistogram callbackNanos = new LifetimeHistogram();
+	private final ConcurrentMap<String, ClassMetrics> classMetrics = new ConcurrentHashMap<String, ClassMetrics>();
+	private final ConcurrentMap<String, TagMetrics> tagMetrics = new ConcurrentHashMap<String, TagMetrics>();
+
+	private final AtomicLong monitorThreadId = new AtomicLong(-1);
+	private final AtomicLong finishedMonitorThreadCpuNanos = new AtomicLong();
+
+	/** The counts of the sampled out objects by class, created when needed. */
+	private volatile CountMinSketch sampledOutSketch;
+
+	private volatile long lastPassNanos;
+	private volatile long maxPassNanos;
+	private volatile long lastPassScannedCount;
+
+	private volatile InputModuleInterface inputModule;
+	private volatile NotificationModuleInterface notificationModule;
+
+	// guarded by this
+	private long sampleTime = System.currentTimeMillis();
+	private long sampleRegistrationCount;
+	private long sampleReclaimedCount;
+	private double registrationsPerSecond;
+	private double reclaimsPerSecond;
+
+	/**
+	 * Sets the input module the tracked objects are counted from.
+	 * 
+	 * @param inputModule
+	 *            the input module
+	 */
+	public void setInputModule(InputModuleInterface inputModule) {
+		this.inputModule = inputModule;
+	}
+
+	/**
+	 * Sets the notification module the queue depth is read from, it has to be
+	 * set again when the monitor replaces its notification module.
+	 * 
+	 * @param notificationModule
+	 *            the notification module
+	 */
+	public void setNotificationModule(
+			NotificationModuleInterface notificationModule) {
+		this.notificationModule = notificationModule;
+	}
+
+	/**
+	 * Records the addition of an object.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public void recordRegistration(
+			AbstractObjectRefrenceKey<? extends Object> refrenceKey) {
+		registrationCount.increment();
+		long size = refrenceKey.getSizeBytes();
+		if (size > 0) {
+			registeredBytes.add(size);
+		}
+		getOrCreateClassMetrics(refrenceKey).recordRegistration(size);
+		for (int i = 0; i < refrenceKey.getTagCount(); i++) {
+			getOrCreateTagMetrics(refrenceKey.getTag(i)).recordRegistration(
+					size);
+		}
+	}
+
+	/**
+	 * Records the removal of an object from the monitoring before it has been
+	 * reclaimed.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public void recordRemoval(
+			AbstractObjectRefrenceKey<? extends Object> refrenceKey) {
+		long size = refrenceKey.getSizeBytes();
+		if (size > 0) {
+			removedBytes.add(size);
+		}
+		getOrCreateClassMetrics(refrenceKey).recordRemoval(size);
+		for (int i = 0; i < refrenceKey.getTagCount(); i++) {
+			TagMetrics metrics = tagMetrics.get(refrenceKey.getTag(i));
+			if (metrics != null) {
+				metrics.recordRemoval(size);
+			}
+		}
+	}
+
+	/**
+	 * Records the pre GC event of an object, after its weak callback time has
+	 * been set.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public void recordOrphaned(
+			AbstractObjectRefrenceKey<? extends Object> refrenceKey) {
+		orphanedCount.increment();
+		getOrCreateClassMetrics(refrenceKey).recordOrphaned(
+				refrenceKey.getWeakCallbackTimeMillis()
+						- refrenceKey.getDateAddedMillis());
+		for (int i = 0; i < refrenceKey.getTagCount(); i++) {
+			TagMetrics metrics = tagMetrics.get(refrenceKey.getTag(i));
+			if (metrics != null) {
+				metrics.recordOrphaned();
+			}
+		}
+	}
+
+	/**
+	 * Records the post GC event of an object, after its phantom callback time
+	 * has been set.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public void recordReclaimed(
+			AbstractObjectRefrenceKey<? extends Object> refrenceKey) {
+		reclaimedCount.increment();
+		long size = refrenceKey.getSizeBytes();
+		if (size > 0) {
+			reclaimedBytes.add(size);
+		}
+		long weakTime = refrenceKey.getWeakCallbackTimeMillis();
+		long phantomTime = refrenceKey.getPhantomCallbackTimeMillis();
+		getOrCreateClassMetrics(refrenceKey).recordReclaimed(
+				phantomTime - refrenceKey.getDateAddedMillis(),
+				weakTime == 0 ? -1 : Math.max(0, phantomTime - weakTime),
+				size, refrenceKey.getReclaimedGcCycle());
+		for (int i = 0; i < refrenceKey.getTagCount(); i++) {
+			TagMetrics metrics = tagMetrics.get(refrenceKey.getTag(i));
+			if (metrics != null) {
+				metrics.recordReclaimed(
+						phantomTime - refrenceKey.getDateAddedMillis(), size);
+			}
+		}
+	}
+
+	/**
+	 * Records an object that outlived its expected lifetime, after its leak
+	 * suspect time has been set.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public void recordLeakSuspect(
+			AbstractObjectRefrenceKey<? extends Object> refrenceKey) {
+		leakSuspectCount.increment();
+		getOrCreateClassMetrics(refrenceKey).recordLeakSuspect();
+	}
+
+	/**
+	 * Records an object that was not admitted to the monitoring because of
+	 * the heap pressure.
+	 */
+	public void recordAdmissionDenied() {
+		admissionDeniedCount.increment();
+	}
+
+	/**
+	 * Records an object that was not admitted to the monitoring because the
+	 * monitor was at its cap, its class is counted in a count-min sketch.
+	 * 
+	 * @param clazz
+	 *            the class of the object
+	 */
+	public void recordSampledOut(Class<?> clazz) {
+		sampledOutCount.increment();
+		getOrCreateSampledOutSketch().add(clazz.getName());
+	}
+
+	/**
+	 * Records a pass of the monitor thread, only called by the monitor thread.
+	 * 
+	 * @param durationNanos
+	 *            the duration of the pass
+	 * @param scanned
+	 *            the number of objects scanned
+	 */
+	public void recordPass(long durationNanos, long scanned) {
+		passCount.increment();
+		passNanos.add(durationNanos);
+		scannedCount.add(scanned);
+
+		lastPassNanos = durationNanos;
+		lastPassScannedCount = scanned;
+		if (durationNanos > maxPassNanos) {
+			maxPassNanos = durationNanos;
+		}
+	}
+
+	/**
+	 * Marks the calling thread as the monitor thread, for its CPU time to be
+	 * measured.
+	 */
+	public void monitorThreadStarted() {
+		monitorThreadId.set(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Adds the CPU time of the calling monitor thread to the total before it
+	 * ends.
+	 */
+	public void monitorThreadFinished() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+			long cpuNanos = threadMXBean.getCurrentThreadCpuTime();
+			if (cpuNanos > 0) {
+				finishedMonitorThreadCpuNanos.addAndGet(cpuNanos);
+			}
+		}
+
+		// a replacement thread may have started already
+		monitorThreadId.compareAndSet(Thread.currentThread().getId(), -1);
+	}
+
+	/**
+	 * Gets the CPU time used by the monitor threads of the monitor.
+	 * 
+	 * @return the CPU time in nanoseconds, 0 if the JVM does not measure it
+	 */
+	public long getMonitorThreadCpuNanos() {
+		long cpuNanos = finishedMonitorThreadCpuNanos.get();
+
+		long threadId = monitorThreadId.get();
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (threadId != -1 && threadMXBean.isThreadCpuTimeSupported()) {
+			long threadCpuNanos = threadMXBean.getThreadCpuTime(threadId);
+			if (threadCpuNanos > 0) {
+				cpuNanos += threadCpuNanos;
+			}
+		}
+		return cpuNanos;
+	}
+
+	/**
+	 * Gets the total time spent in the passes of the monitor thread.
+	 * 
+	 * @return the duration in nanoseconds
+	 */
+	public long getTotalPassNanos() {
+		return passNanos.sum();
+	}
+
+	/**
+	 * Gets the total number of objects scanned by the passes.
+	 * 
+	 * @return the scanned count
+	 */
+	public long getTotalScannedCount() {
+		return scannedCount.sum();
+	}
+
+	/**
+	 * Gets the total time spent in the callbacks.
+	 * 
+	 * @return the duration in nanoseconds
+	 */
+	public long getTotalCallbackNanos() {
+		return callbackNanos.getSum();
+	}
+
+	/**
+	 * Gets the metrics of the classes of the objects added so far.
+	 * 
+	 * @return an unmodifiable, weakly consistent view of the class metrics
+	 */
+	public Collection<ClassMetrics> getClassMetrics() {
+		return Collections.unmodifiableCollection(classMetrics.values());
+	}
+
+	/**
+	 * Gets the metrics of a class.
+	 * 
+	 * @param className
+	 *            the name of the class
+	 * @return the class metrics, null if no object of the class has been added
+	 */
+	public ClassMetrics getClassMetrics(String className) {
+		return classMetrics.get(className);
+	}
+
+	/**
+	 * Gets the estimated number of objects of a class added to the monitor,
+	 * tracked or sampled out. The tracked ones are counted exactly, the
+	 * sampled out ones are estimated with the bound of
+	 * {@link #SAMPLED_OUT_EPSILON} times all the sampled out objects, at the
+	 * confidence {@link #SAMPLED_OUT_CONFIDENCE}.
+	 * 
+	 * @param className
+	 *            the name of the class
+	 * @return the estimated registration count
+	 */
+	public EstimatedCount getEstimatedRegistrationCount(String className) {
+		ClassMetrics metrics = classMetrics.get(className);
+		long tracked = metrics == null ? 0 : metrics.getRegisteredCount();
+
+		CountMinSketch sketch = sampledOutSketch;
+		if (sketch == null) {
+			return new EstimatedCount(tracked, 0, 1);
+		}
+		return sketch.estimateCount(className).plus(tracked);
+	}
+
+	/**
+	 * Gets the metrics of the tags the objects were added with so far, except
+	 * the released ones.
+	 * 
+	 * @return the tag metrics
+	 */
+	public Collection<TagMetrics> getTagMetrics() {
+		return Collections.unmodifiableCollection(tagMetrics.values());
+	}
+
+	/**
+	 * Gets the metrics of a tag.
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @return the tag metrics, null if no object has been added with the tag
+	 *         since it was last released
+	 */
+	public TagMetrics getTagMetrics(String tag) {
+		return tagMetrics.get(tag);
+	}
+
+	/**
+	 * Releases the metrics of a tag, so that a tag used once, such as a
+	 * request, is not kept for the life of the monitor. The tag is no longer
+	 * reported, by the MBean nor by the
+	 * {@link com.gcr.exporters.PrometheusExporter}, & the events of the
+	 * objects still monitored with the tag are no longer counted for it.
+	 * Adding an object with the tag again starts new metrics, so the tag is
+	 * best released once drained.
+	 * 
+	 * @param tag
+	 *            the tag
+	 * @return the released metrics, null if there were none
+	 */
+	public TagMetrics releaseTag(String tag) {
+		return tagMetrics.remove(tag);
+	}
+
+	/**
+	 * Records the time taken by a callback.
+	 * 
+	 * @param durationNanos
+	 *            the duration of the callback
+	 */
+	public void recordCallback(long durationNanos) {
+		callbackNanos.record(durationNanos);
+	}
+
+	@Override
+	public int getTrackedCount() {
+		InputModuleInterface module = inputModule;
+		return module == null ? 0 : module.getPendingObjectsCount();
+	}
+
+	@Override
+	public long getRegistrationCount() {
+		return registrationCount.sum();
+	}
+
+	@Override
+	public long getOrphanedCount() {
+		return orphanedCount.sum();
+	}
+
+	@Override
+	public long getReclaimedCount() {
+		return reclaimedCount.sum();
+	}
+
+	@Override
+	public long getLeakSuspectCount() {
+		return leakSuspectCount.sum();
+	}
+
+	@Override
+	public long getReclaimedBytes() {
+		return reclaimedBytes.sum();
+	}
+
+	@Override
+	public long getPendingBytes() {
+		// read the decrements first so a concurrent event can only overcount
+		long gone = reclaimedBytes.sum() + removedBytes.sum();
+		return Math.max(0, registeredBytes.sum() - gone);
+	}
+
+	@Override
+	public long getAdmissionDeniedCount() {
+		return admissionDeniedCount.sum();
+	}
+
+	@Override
+	public long getSampledOutCount() {
+		return sampledOutCount.sum();
+	}
+
+	@Override
+	public synchronized double getRegistrationsPerSecond() {
+		sampleRates();
+		return registrationsPerSecond;
+	}
+
+	@Override
+	public synchronized double getReclaimsPerSecond() {
+		sampleRates();
+		return reclaimsPerSecond;
+	}
+
+	@Override
+	public long getPassCount() {
+		return passCount.sum();
+	}
+
+	@Override
+	public double getLastPassDurationMillis() {
+		return lastPassNanos / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getMeanPassDurationMillis() {
+		long passes = passCount.sum();
+		return passes == 0 ? 0 : passNanos.sum() / NANOS_PER_MILLI / passes;
+	}
+
+	@Override
+	public double getMaxPassDurationMillis() {
+		return maxPassNanos / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public long getLastPassScannedCount() {
+		return lastPassScannedCount;
+	}
+
+	@Override
+	public double getMeanPassScannedCount() {
+		long passes = passCount.sum();
+		return passes == 0 ? 0 : (double) scannedCount.sum() / passes;
+	}
+
+	@Override
+	public double getMonitorThreadCpuTimeMillis() {
+		return getMonitorThreadCpuNanos() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		NotificationModuleInterface module = notificationModule;
+		if (module instanceof QueuedNotificationModuleInterface) {
+			return ((QueuedNotificationModuleInterface) module)
+					.getQueueDepth();
+		}
+		return 0;
+	}
+
+	@Override
+	public long getCallbackCount() {
+		return callbackNanos.getCount();
+	}
+
+	@Override
+	public double getMeanCallbackLatencyMicros() {
+		return callbackNanos.getMean() / 1000;
+	}
+
+	@Override
+	public long getCallbackLatencyMicros99thPercentile() {
+		return callbackNanos.getValueAtPercentile(99) / 1000;
+	}
+
+	@Override
+	public long getMaxCallbackLatencyMicros() {
+		return callbackNanos.getMax() / 1000;
+	}
+
+	private TagMetrics getOrCreateTagMetrics(String tag) {
+		TagMetrics metrics = tagMetrics.get(tag);
+		if (metrics == null) {
+			metrics = new TagMetrics(tag);
+			TagMetrics existing = tagMetrics.putIfAbsent(tag, metrics);
+			if (existing != null) {
+				metrics = existing;
+			}
+		}
+		return metrics;
+	}
+
+	private CountMinSketch getOrCreateSampledOutSketch() {
+		CountMinSketch sketch = sampledOutSketch;
+		if (sketch == null) {
+			synchronized (this) {
+				sketch = sampledOutSketch;
+				if (sketch == null) {
+					sketch = new CountMinSketch(SAMPLED_OUT_EPSILON,
+							SAMPLED_OUT_CONFIDENCE);
+					sampledOutSketch = sketch;
+				}
+			}
+		}
+		return sketch;
+	}
+
+	private ClassMetrics getOrCreateClassMetrics(
+			AbstractObjectRefrenceKey<? extends Object> refrenceKey) {
+		String className = refrenceKey.getClazz().getName();
+		ClassMetrics metrics = classMetrics.get(className);
+		if (metrics == null) {
+			metrics = new ClassMetrics(className);
+			ClassMetrics existing = classMetrics.putIfAbsent(className,
+					metrics);
+			if (existing != null) {
+				metrics = existing;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Computes the rates once the sampling interval has elapsed, so that
+	 * several readers see the same rates.
+	 */
+	private void sampleRates() {
+		long now = System.currentTimeMillis();
+		long elapsed = now - sampleTime;
+		if (elapsed < RATE_INTERVAL_MILLIS) {
+			return;
+		}
+
+		long registrations = registrationCount.sum();
+		long reclaims = reclaimedCount.sum();
+		registrationsPerSecond = (registrations - sampleRegistrationCount)
+				* 1000.0 / elapsed;
+		reclaimsPerSecond = (reclaims - sampleReclaimedCount) * 1000.0
+				/ elapsed;
+
+		sampleTime = now;
+		sampleRegistrationCount = registrations;
+		sampleReclaimedCount = reclaims;
+	}
+}
@@ -0,0 +1,195 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.monitoring.structs;
+
+/**
+ * The management interface of {@link MonitorMetrics}, published over JMX by
+ * the monitors.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public interface MonitorMetricsMBean {
+
+	/**
+	 * Gets the number of objects being monitored.
+	 * 
+	 * @return the tracked count
+	 */
+	int getTrackedCount();
+
+	/**
+	 * Gets the number of objects added since the monitor was created.
+	 * 
+	 * @return the registration count
+	 */
+	long getRegistrationCount();
+
+	/**
+	 * Gets the number of pre GC events raised.
+	 * 
+	 * @return the orphaned count
+	 */
+	long getOrphanedCount();
+
+	/**
+	 * Gets the number of post GC events raised.
+	 * 
+	 * @return the reclaimed count
+	 */
+	long getReclaimedCount();
+
+	/**
+	 * Gets the number of objects that outlived their expected lifetime.
+	 * 
+	 * @return the leak suspect count
+	 */
+	long getLeakSuspectCount();
+
+	/**
+	 * Gets the summed size of the objects reclaimed, counted while the
+	 * {@link com.gcr.agent.GcRadarAgent} is installed.
+	 * 
+	 * @return the reclaimed bytes
+	 */
+	long getReclaimedBytes();
+
+	/**
+	 * Gets the summed size of the objects being monitored, counted while the
+	 * {@link com.gcr.agent.GcRadarAgent} is installed.
+	 * 
+	 * @return the pending bytes
+	 */
+	long getPendingBytes();
+
+	/**
+	 * Gets the number of objects not admitted to the monitoring because of the
+	 * heap pressure.
+	 * 
+	 * @return the admission denied count
+	 */
+	long getAdmissionDeniedCount();
+
+	/**
+	 * Gets the number of objects not admitted to the monitoring because the
+	 * monitor was at its cap.
+	 * 
+	 * @return the sampled out count
+	 */
+	long getSampledOutCount();
+
+	/**
+	 * Gets the rate at which objects were added over the last sampling
+	 * interval.
+	 * 
+	 * @return the registrations per second
+	 */
+	double getRegistrationsPerSecond();
+
+	/**
+	 * Gets the rate at which objects were reclaimed over the last sampling
+	 * interval.
+	 * 
+	 * @return the reclaims per second
+	 */
+	double getReclaimsPerSecond();
+
+	/**
+	 * Gets the number of passes made by the monitor thread over the objects.
+	 * 
+	 * @return the pass count
+	 */
+	long getPassCount();
+
+	/**
+	 * Gets the duration of the last pass.
+	 * 
+	 * @return the duration in milliseconds
+	 */
+	double getLastPassDurationMillis();
+
+	/**
+	 * Gets the mean duration of the passes.
+	 * 
+	 * @return the duration in milliseconds
+	 */
+	double getMeanPassDurationMillis();
+
+	/**
+	 * Gets the longest duration of a pass.
+	 * 
+	 * @return the duration in milliseconds
+	 */
+	double getMaxPassDurationMillis();
+
+	/**
+	 * Gets the number of objects scanned by the last pass.
+	 * 
+	 * @return the scanned count
+	 */
+	long getLastPassScannedCount();
+
+	/**
+	 * Gets the mean number of objects scanned per pass.
+	 * 
+	 * @return the scanned count
+	 */
+	double getMeanPassScannedCount();
+
+	/**
+	 * Gets the CPU time used by the monitor threads.
+	 * 
+	 * @return the CPU time in milliseconds, 0 if the JVM does not measure it
+	 */
+	double getMonitorThreadCpuTimeMillis();
+
+	/**
+	 * Gets the number of events waiting in the queues of the notification
+	 * modules.
+	 * 
+	 * @return the queue depth, 0 if the events are not queued
+	 */
+	int getQueueDepth();
+
+	/**
+	 * Gets the number of callbacks made.
+	 * 
+	 * @return the callback count
+	 */
+	long getCallbackCount();
+
+	/**
+	 * Gets the mean time taken by a callback.
+	 * 
+	 * @return the latency in microseconds
+	 */
+	double getMeanCallbackLatencyMicros();
+
+	/**
+	 * Gets the time under which 99% of the callbacks returned.
+	 * 
+	 * @return the latency in microseconds
+	 */
+	long getCallbackLatencyMicros99thPercentile();
+
+	/**
+	 * Gets the longest time taken by a callback.
+	 * 
+	 * @return the latency in microseconds
+	 */
+	long getMaxCallbackLatencyMicros();
+}
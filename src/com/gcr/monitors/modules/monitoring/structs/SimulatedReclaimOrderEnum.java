@@ -0,0 +1,42 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.gcr.monitors.modules.monitoring.structs;
+
+import com.gcr.monitors.modules.monitoring.impl.SimulatedMonitoringModule;
+
+/**
+ * The Enum SimulatedReclaimOrderEnum is the order in which the
+ * {@link SimulatedMonitoringModule} picks the objects it raises the GC events
+ * of.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public enum SimulatedReclaimOrderEnum {
+
+	/** The objects are reclaimed in the order they were added. */
+	OLDEST_FIRST,
+	/**
+	 * The last added objects are reclaimed first, the way most short lived
+	 * objects die young.
+	 */
+	NEWEST_FIRST,
+	/**
+	 * The objects are picked at random, from a seeded generator so that a run
+	 * can be repeated.
+	 */
+	RANDOM;
+}
@@ -0,0 +1,256 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.monitoring.structs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gcr.structs.LifetimeHistogram;
+
+/**
+ * The Class TagMetrics holds the statistics of the monitored objects that
+ * were added with one tag, for example a request, a tenant or a cache region.
+ * There is one instance per tag name and monitor, kept till the tag is
+ * released with {@link MonitorMetrics#releaseTag(String)}.
+ * 
+ * As a monitor may see a great many tags, the counters are plain atomics
+ * rather than striped ones & the lifetime histogram is only created once it is
+ * read, so an instance costs a few hundred bytes. No lock is taken unless a
+ * thread is waiting for the tag to be drained.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class TagMetrics {
+
+	private final String tag;
+
+	private final AtomicLong registeredCount = new AtomicLong();
+	private final AtomicLong orphanedCount = new AtomicLong();
+	private final AtomicLong reclaimedCount = new AtomicLong();
+	private final AtomicLong removedCount = new AtomicLong();
+	private final AtomicLong registeredBytes = new AtomicLong();
+	private final AtomicLong reclaimedBytes = new AtomicLong();
+	private final AtomicLong removedBytes = new AtomicLong();
+
+	/** The lifetime histogram, null until it is first read. */
+	private volatile LifetimeHistogram lifetimeMillis;
+
+	/**
+	 * The lock the threads waiting for the tag to be drained wait on, also
+	 * taken to create the lifetime histogram.
+	 */
+	private final Object drainLock = new Object();
+	private final AtomicInteger drainWaiterCount = new AtomicInteger();
+
+	/**
+	 * Instantiates new tag metrics.
+	 * 
+	 * @param tag
+	 *            the name of the tag
+	 */
+	public TagMetrics(String tag) {
+		this.tag = tag;
+	}
+
+	/**
+	 * Gets the name of the tag.
+	 * 
+	 * @return the tag
+	 */
+	public String getTag() {
+		return tag;
+	}
+
+	/**
+	 * Gets the number of objects with the tag being monitored.
+	 * 
+	 * @return the live count
+	 */
+	public long getLiveCount() {
+		// read the decrements first so a concurrent event can only overcount
+		long gone = reclaimedCount.get() + removedCount.get();
+		return Math.max(0, registeredCount.get() - gone);
+	}
+
+	/**
+	 * Gets the number of objects with the tag added.
+	 * 
+	 * @return the registered count
+	 */
+	public long getRegisteredCount() {
+		return registeredCount.get();
+	}
+
+	/**
+	 * Gets the number of pre GC events raised for the tag.
+	 * 
+	 * @return the orphaned count
+	 */
+	public long getOrphanedCount() {
+		return orphanedCount.get();
+	}
+
+	/**
+	 * Gets the number of post GC events raised for the tag.
+	 * 
+	 * @return the reclaimed count
+	 */
+	public long getReclaimedCount() {
+		return reclaimedCount.get();
+	}
+
+	/**
+	 * Gets the number of objects with the tag removed from the monitoring
+	 * before being reclaimed.
+	 * 
+	 * @return the removed count
+	 */
+	public long getRemovedCount() {
+		return removedCount.get();
+	}
+
+	/**
+	 * Gets the summed size of the objects with the tag added, counted while
+	 * the {@link com.gcr.agent.GcRadarAgent} is installed.
+	 * 
+	 * @return the registered bytes
+	 */
+	public long getRegisteredBytes() {
+		return registeredBytes.get();
+	}
+
+	/**
+	 * Gets the summed size of the objects with the tag reclaimed.
+	 * 
+	 * @return the reclaimed bytes
+	 */
+	public long getReclaimedBytes() {
+		return reclaimedBytes.get();
+	}
+
+	/**
+	 * Gets the summed size of the objects with the tag being monitored.
+	 * 
+	 * @return the pending bytes
+	 */
+	public long getPendingBytes() {
+		// read the decrements first so a concurrent event can only overcount
+		long gone = reclaimedBytes.get() + removedBytes.get();
+		return Math.max(0, registeredBytes.get() - gone);
+	}
+
+	/**
+	 * Gets the histogram of the time from adding an object with the tag to its
+	 * post GC event. The histogram is created by the first call, so it only
+	 * holds the lifetimes of the objects reclaimed from then on.
+	 * 
+	 * @return the lifetime histogram in milliseconds
+	 */
+	public LifetimeHistogram getLifetimeHistogram() {
+		LifetimeHistogram histogram = lifetimeMillis;
+		if (histogram == null) {
+			synchronized (drainLock) {
+				histogram = lifetimeMillis;
+				if (histogram == null) {
+					histogram = new LifetimeHistogram();
+					lifetimeMillis = histogram;
+				}
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Waits till no object with the tag is being monitored, that is till all
+	 * of them have been reclaimed or removed.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return true, if the tag was drained; false if the timeout ran out
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	public boolean awaitDrained(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		synchronized (drainLock) {
+			// announced before the check, so an event that drains the tag
+			// after the check sees the waiter and wakes it up
+			drainWaiterCount.incrementAndGet();
+			try {
+				while (getLiveCount() > 0) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return false;
+					}
+					TimeUnit.NANOSECONDS.timedWait(drainLock, remaining);
+				}
+				return true;
+			} finally {
+				drainWaiterCount.decrementAndGet();
+			}
+		}
+	}
+
+	void recordRegistration(long size) {
+		registeredCount.incrementAndGet();
+		if (size > 0) {
+			registeredBytes.addAndGet(size);
+		}
+	}
+
+	void recordOrphaned() {
+		orphanedCount.incrementAndGet();
+	}
+
+	void recordReclaimed(long lifetime, long size) {
+		reclaimedCount.incrementAndGet();
+		if (size > 0) {
+			reclaimedBytes.addAndGet(size);
+		}
+		LifetimeHistogram histogram = lifetimeMillis;
+		if (histogram != null) {
+			histogram.record(Math.max(0, lifetime));
+		}
+		signalIfDrained();
+	}
+
+	void recordRemoval(long size) {
+		removedCount.incrementAndGet();
+		if (size > 0) {
+			removedBytes.addAndGet(size);
+		}
+		signalIfDrained();
+	}
+
+	private void signalIfDrained() {
+		if (drainWaiterCount.get() == 0) {
+			return;
+		}
+
+		synchronized (drainLock) {
+			if (getLiveCount() == 0) {
+				drainLock.notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification;
+
+/**
+ * The Interface BatchNotificationModuleInterface. This interface can be
+ * implemented by a notification module that wants to know where a pass of the
+ * monitoring module over the objects being monitored begins and ends, for
+ * example to hand over the events of a pass in one go.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public interface BatchNotificationModuleInterface extends NotificationModuleInterface
+{
+
+    /**
+     * Notify that a pass over the objects being monitored is about to begin.
+     */
+    void notifyPassStarted();
+
+    /**
+     * Notify that a pass over the objects being monitored has ended. The events
+     * held back by the module should be delivered.
+     */
+    void notifyPassCompleted();
+}
@@ -0,0 +1,42 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification;
+
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Interface LeakNotificationModuleInterface. This interface can be
+ * implemented by a notification module that wants to be notified of the
+ * objects that have outlived the lifetime they were expected to have.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public interface LeakNotificationModuleInterface extends NotificationModuleInterface
+{
+
+    /**
+     * Notify that the object being monitored has passed its expected lifetime
+     * without being orphaned.
+     * 
+     * @param refrenceKey
+     *            the refrence key used as the alias to the object being
+     *            monitored
+     * @return true, if successful
+     */
+    boolean notifyLeakSuspect(AbstractObjectRefrenceKey<Object> refrenceKey);
+}
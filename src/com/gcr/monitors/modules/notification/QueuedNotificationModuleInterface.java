@@ -0,0 +1,35 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification;
+
+/**
+ * The Interface QueuedNotificationModuleInterface is implemented by the
+ * notification modules that hold the events in a queue before delivering them.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public interface QueuedNotificationModuleInterface extends NotificationModuleInterface
+{
+
+    /**
+     * Gets the number of events waiting to be delivered.
+     * 
+     * @return the queue depth
+     */
+    int getQueueDepth();
+}
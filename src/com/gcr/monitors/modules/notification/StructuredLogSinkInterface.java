@@ -0,0 +1,61 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification;
+
+import java.io.IOException;
+
+/**
+ * The Interface StructuredLogSinkInterface. This interface needs to be
+ * implemented by the destinations the structured log notification module
+ * writes the formatted events to.
+ * 
+ * The sink is only ever called from the writer thread of the module.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public interface StructuredLogSinkInterface
+{
+
+    /**
+     * Writes a batch of formatted events.
+     * 
+     * @param lines
+     *            one or more complete lines, each terminated by a
+     *            <code>'\n'</code>. The buffer is reused by the module once the
+     *            method returns, so it should not be retained.
+     * @throws IOException
+     *             if the lines could not be written
+     */
+    void write(CharSequence lines) throws IOException;
+
+    /**
+     * Flushes the lines written so far.
+     * 
+     * @throws IOException
+     *             if the lines could not be flushed
+     */
+    void flush() throws IOException;
+
+    /**
+     * Closes the sink, it will not be written to anymore.
+     * 
+     * @throws IOException
+     *             if the sink could not be closed
+     */
+    void close() throws IOException;
+}
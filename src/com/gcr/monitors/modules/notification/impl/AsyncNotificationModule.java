@@ -0,0 +1,813 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.impl;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.gcr.monitors.modules.notification.BatchNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.LeakNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.structs.NotificationEvent;
+import com.gcr.monitors.modules.notification.structs.NotificationEventTypeEnum;
+import com.gcr.monitors.modules.notification.structs.NotificationOverflowPolicyEnum;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class AsyncNotificationModule is an implementation of the
+ * {@link NotificationModuleInterface} that decouples the monitoring thread from
+ * the notification module doing the actual notification. The events are put
+ * in a bounded queue by the monitoring thread and a dispatcher thread hands
+ * them over in batches to an executor which invokes the delegate module.
+ * 
+ * A callback that does not return within the callback timeout is interrupted
+ * & abandoned and the dispatch resumes from the next event, so a slow or hung
+ * callback can only delay the delivery of the other events but not the
+ * detection of GC events or the registration of objects. What happens when the
+ * queue is full is decided by the {@link NotificationOverflowPolicyEnum}.
+ * 
+ * With the {@link NotificationOverflowPolicyEnum#BLOCK} policy the monitoring
+ * thread waits for space while holding the lock of the watch list, so the
+ * wait is bounded by the block timeout, it ends when the monitoring is
+ * stopped or the thread is interrupted, & the event that could not be queued
+ * is then dropped. Once a wait has timed out the dispatcher is considered
+ * stalled & the events that do not fit are dropped without waiting till the
+ * dispatcher takes events again.
+ * 
+ * The events are delivered in the order they were raised. If the delegate is a
+ * {@link BatchNotificationModuleInterface} every batch is delivered to it as
+ * one pass. An abandoned callback may still be running while the next events
+ * are delivered, so the delegate must be thread safe, as the
+ * {@link NotificationModule} is.
+ * 
+ * The dispatcher thread, & the executor when the module creates it, are
+ * started when the monitoring is started & stopped once the events up to the
+ * stop of the monitoring are delivered; the events raised while they are
+ * stopped wait in the queue. The start & stop events are never dropped by the
+ * {@link NotificationOverflowPolicyEnum#DROP_OLDEST} policy.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class AsyncNotificationModule implements
+		QueuedNotificationModuleInterface, LeakNotificationModuleInterface {
+
+	/** The default capacity of the queue. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+	/** The default maximum number of events handed over in one batch. */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	/** The default callback timeout in milliseconds. */
+	public static final long DEFAULT_CALLBACK_TIMEOUT_MILLIS = 5000;
+
+	/** The default maximum time the monitoring thread waits for space. */
+	public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 10000;
+
+	private final NotificationModuleInterface delegate;
+	private final NotificationOverflowPolicyEnum overflowPolicy;
+	private final int batchSize;
+	private final long callbackTimeoutNanos;
+	private final long blockTimeoutNanos;
+
+	/** The executor given, null if the module creates its own. */
+	private final ExecutorService executor;
+
+	/** The dispatcher thread, null while stopped, guarded by the lock. */
+	private Thread dispatcherThread;
+	/** Whether the dispatcher stops once the queue is drained. */
+	private boolean stopPending;
+	/** Set once the monitoring is stopped, ends the wait for space. */
+	private boolean stopping;
+	/** Set once a wait for space timed out, cleared when events are taken. */
+	private boolean dispatcherStalled;
+	private volatile boolean running = true;
+
+	// the queue is a ring buffer guarded by the lock
+	private final NotificationEvent[] queue;
+	private int head;
+	private int count;
+	private final ReentrantLock queueLock = new ReentrantLock();
+	private final Condition notEmpty = queueLock.newCondition();
+	private final Condition notFull = queueLock.newCondition();
+
+	/**
+	 * The queued pre-GC events by refrence key, only used by the
+	 * {@link NotificationOverflowPolicyEnum#COALESCE} policy.
+	 */
+	private final IdentityHashMap<AbstractObjectRefrenceKey<Object>, NotificationEvent> queuedPreGcEvents;
+
+	private final AtomicLong droppedEventCount = new AtomicLong();
+	private final AtomicLong coalescedEventCount = new AtomicLong();
+	private final AtomicLong timedOutCallbackCount = new AtomicLong();
+	private final AtomicLong failedCallbackCount = new AtomicLong();
+	private final AtomicLong rejectedBatchCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new asynchronous notification module with the default
+	 * batch size, callback timeout and executor.
+	 * 
+	 * @param delegate
+	 *            the notification module that will do the actual notification
+	 * @param queueCapacity
+	 *            the maximum number of events that can be queued
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full
+	 */
+	public AsyncNotificationModule(NotificationModuleInterface delegate,
+			int queueCapacity, NotificationOverflowPolicyEnum overflowPolicy) {
+		this(delegate, queueCapacity, overflowPolicy, DEFAULT_BATCH_SIZE,
+				DEFAULT_CALLBACK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, null);
+	}
+
+	/**
+	 * Instantiates a new asynchronous notification module.
+	 * 
+	 * @param delegate
+	 *            the notification module that will do the actual notification
+	 * @param queueCapacity
+	 *            the maximum number of events that can be queued
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full
+	 * @param batchSize
+	 *            the maximum number of events handed over to the executor in
+	 *            one task
+	 * @param callbackTimeout
+	 *            the time a single notification is allowed to take, 0 for no
+	 *            limit
+	 * @param unit
+	 *            the unit of the callback timeout
+	 * @param executor
+	 *            the executor that will run the notifications, if
+	 *            <code>null</code> a pool of daemon threads is used. The
+	 *            executor must be able to start a new thread when one of its
+	 *            threads is stuck in an abandoned callback.
+	 * @throws NullPointerException
+	 *             if delegate, overflowPolicy or unit is null
+	 * @throws IllegalArgumentException
+	 *             if queueCapacity or batchSize is less than 1 or the
+	 *             callbackTimeout is negative
+	 */
+	public AsyncNotificationModule(NotificationModuleInterface delegate,
+			int queueCapacity, NotificationOverflowPolicyEnum overflowPolicy,
+			int batchSize, long callbackTimeout, TimeUnit unit,
+			ExecutorService executor) {
+		this(delegate, queueCapacity, overflowPolicy, batchSize,
+				callbackTimeout, unit, DEFAULT_BLOCK_TIMEOUT_MILLIS,
+				TimeUnit.MILLISECONDS, executor);
+	}
+
+	/**
+	 * Instantiates a new asynchronous notification module.
+	 * 
+	 * @param delegate
+	 *            the notification module that will do the actual notification
+	 * @param queueCapacity
+	 *            the maximum number of events that can be queued
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full
+	 * @param batchSize
+	 *            the maximum number of events handed over to the executor in
+	 *            one task
+	 * @param callbackTimeout
+	 *            the time a single notification is allowed to take, 0 for no
+	 *            limit
+	 * @param unit
+	 *            the unit of the callback timeout
+	 * @param blockTimeout
+	 *            the maximum time the monitoring thread waits for space with
+	 *            the {@link NotificationOverflowPolicyEnum#BLOCK} policy
+	 * @param blockUnit
+	 *            the unit of the block timeout
+	 * @param executor
+	 *            the executor that will run the notifications, if
+	 *            <code>null</code> a pool of daemon threads is used. The
+	 *            executor must be able to start a new thread when one of its
+	 *            threads is stuck in an abandoned callback.
+	 * @throws NullPointerException
+	 *             if delegate, overflowPolicy, unit or blockUnit is null
+	 * @throws IllegalArgumentException
+	 *             if queueCapacity, batchSize or blockTimeout is less than 1 or
+	 *             the callbackTimeout is negative
+	 */
+	public AsyncNotificationModule(NotificationModuleInterface delegate,
+			int queueCapacity, NotificationOverflowPolicyEnum overflowPolicy,
+			int batchSize, long callbackTimeout, TimeUnit unit,
+			long blockTimeout, TimeUnit blockUnit, ExecutorService executor) {
+		if (delegate == null || overflowPolicy == null || unit == null
+				|| blockUnit == null) {
+			throw new NullPointerException(
+					"Delegate, overflow policy and units can not be null");
+		}
+		if (queueCapacity < 1 || batchSize < 1 || callbackTimeout < 0
+				|| blockTimeout < 1) {
+			throw new IllegalArgumentException(
+					"Queue capacity, batch size and block timeout must be greater than 0 and the callback timeout can not be negative");
+		}
+
+		this.delegate = delegate;
+		this.overflowPolicy = overflowPolicy;
+		this.batchSize = batchSize;
+		this.callbackTimeoutNanos = unit.toNanos(callbackTimeout);
+		this.blockTimeoutNanos = blockUnit.toNanos(blockTimeout);
+
+		this.queue = new NotificationEvent[queueCapacity];
+		if (overflowPolicy == NotificationOverflowPolicyEnum.COALESCE) {
+			queuedPreGcEvents = new IdentityHashMap<AbstractObjectRefrenceKey<Object>, NotificationEvent>();
+		} else {
+			queuedPreGcEvents = null;
+		}
+
+		this.executor = executor;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStartMonitoring()
+	 */
+	@Override
+	public boolean notifyStartMonitoring() {
+		return enqueue(NotificationEventTypeEnum.START_MONITORING, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStopMonitoring()
+	 */
+	@Override
+	public boolean notifyStopMonitoring() {
+		return enqueue(NotificationEventTypeEnum.STOP_MONITORING, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPreGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPreGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return enqueue(NotificationEventTypeEnum.PRE_GC, refrenceKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPostGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPostGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return enqueue(NotificationEventTypeEnum.POST_GC, refrenceKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.LeakNotificationModuleInterface#notifyLeakSuspect(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyLeakSuspect(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		if (!(delegate instanceof LeakNotificationModuleInterface)) {
+			return false;
+		}
+		return enqueue(NotificationEventTypeEnum.LEAK_SUSPECT, refrenceKey);
+	}
+
+	/**
+	 * Stops the dispatcher thread, the events still in the queue are not
+	 * delivered. The executor is shut down only if it was created by the
+	 * module.
+	 */
+	public void shutdown() {
+		running = false;
+		Thread dispatcher;
+		queueLock.lock();
+		try {
+			dispatcher = dispatcherThread;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			queueLock.unlock();
+		}
+		if (dispatcher != null) {
+			dispatcher.interrupt();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		queueLock.lock();
+		try {
+			return count;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of events dropped because the queue was full, including
+	 * the events the monitoring thread gave up waiting to queue & the events
+	 * of the batches the executor rejected.
+	 * 
+	 * @return the dropped event count
+	 */
+	public long getDroppedEventCount() {
+		return droppedEventCount.get();
+	}
+
+	/**
+	 * Gets the number of post-GC events merged into a queued pre-GC event.
+	 * 
+	 * @return the coalesced event count
+	 */
+	public long getCoalescedEventCount() {
+		return coalescedEventCount.get();
+	}
+
+	/**
+	 * Gets the number of notifications abandoned because they did not return
+	 * within the callback timeout.
+	 * 
+	 * @return the timed out callback count
+	 */
+	public long getTimedOutCallbackCount() {
+		return timedOutCallbackCount.get();
+	}
+
+	/**
+	 * Gets the number of notifications that ended with an exception.
+	 * 
+	 * @return the failed callback count
+	 */
+	public long getFailedCallbackCount() {
+		return failedCallbackCount.get();
+	}
+
+	/**
+	 * Gets the number of batches the executor rejected, for example because
+	 * it was saturated or shut down. The events of a rejected batch are
+	 * dropped.
+	 * 
+	 * @return the rejected batch count
+	 */
+	public long getRejectedBatchCount() {
+		return rejectedBatchCount.get();
+	}
+
+	private boolean enqueue(NotificationEventTypeEnum type,
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		if (!running) {
+			return false;
+		}
+
+		queueLock.lock();
+		try {
+			if (type == NotificationEventTypeEnum.START_MONITORING) {
+				stopping = false;
+			} else if (type == NotificationEventTypeEnum.STOP_MONITORING) {
+				// a monitoring thread waiting for space gives up
+				stopping = true;
+				notFull.signalAll();
+			}
+
+			if (queuedPreGcEvents != null) {
+				if (type == NotificationEventTypeEnum.POST_GC) {
+					NotificationEvent preGcEvent = queuedPreGcEvents
+							.remove(refrenceKey);
+					if (preGcEvent != null) {
+						preGcEvent.mergePostGcEvent();
+						coalescedEventCount.incrementAndGet();
+						return true;
+					}
+				}
+			}
+
+			long remainingNanos = blockTimeoutNanos;
+			while (count == queue.length) {
+				// the stop is queued without waiting, like with DROP_OLDEST
+				if (overflowPolicy == NotificationOverflowPolicyEnum.BLOCK
+						&& type != NotificationEventTypeEnum.STOP_MONITORING) {
+					if (!running) {
+						return false;
+					}
+					if (stopping || dispatcherStalled) {
+						droppedEventCount.incrementAndGet();
+						return false;
+					}
+					if (remainingNanos <= 0) {
+						dispatcherStalled = true;
+						droppedEventCount.incrementAndGet();
+						return false;
+					}
+					try {
+						remainingNanos = notFull.awaitNanos(remainingNanos);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						droppedEventCount.incrementAndGet();
+						return false;
+					}
+				} else if (!dropOldest()) {
+					// only start & stop events queued, the last one given
+					// replaces the newest so the monitor ends up in its state
+					droppedEventCount.incrementAndGet();
+					if (type != NotificationEventTypeEnum.START_MONITORING
+							&& type != NotificationEventTypeEnum.STOP_MONITORING) {
+						return false;
+					}
+					count--;
+					queue[(head + count) % queue.length] = null;
+				}
+			}
+
+			NotificationEvent event = new NotificationEvent(type, refrenceKey);
+			queue[(head + count) % queue.length] = event;
+			count++;
+			if (queuedPreGcEvents != null
+					&& type == NotificationEventTypeEnum.PRE_GC) {
+				queuedPreGcEvents.put(refrenceKey, event);
+			}
+
+			if (type == NotificationEventTypeEnum.START_MONITORING) {
+				stopPending = false;
+				if (dispatcherThread == null) {
+					startDispatcher();
+				}
+			} else if (type == NotificationEventTypeEnum.STOP_MONITORING) {
+				stopPending = true;
+			}
+
+			notEmpty.signal();
+			return true;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	/*
+	 * Drops the oldest event other than a start or stop event, the start &
+	 * stop events ahead of it move up by one. Called with the lock held.
+	 */
+	private boolean dropOldest() {
+		for (int i = 0; i < count; i++) {
+			NotificationEvent dropped = queue[(head + i) % queue.length];
+			if (dropped.getType() == NotificationEventTypeEnum.START_MONITORING
+					|| dropped.getType() == NotificationEventTypeEnum.STOP_MONITORING) {
+				continue;
+			}
+
+			for (int j = i; j > 0; j--) {
+				queue[(head + j) % queue.length] = queue[(head + j - 1)
+						% queue.length];
+			}
+			removeHead();
+
+			if (queuedPreGcEvents != null
+					&& dropped.getType() == NotificationEventTypeEnum.PRE_GC) {
+				queuedPreGcEvents.remove(dropped.getRefrenceKey());
+			}
+			droppedEventCount.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Starts the dispatcher & the executor it owns, if the module creates it.
+	 * Called with the lock held.
+	 */
+	private void startDispatcher() {
+		ExecutorService dispatcherExecutor = executor;
+		boolean ownsExecutor = dispatcherExecutor == null;
+		if (ownsExecutor) {
+			dispatcherExecutor = Executors
+					.newCachedThreadPool(new DaemonThreadFactory(
+							"gcRadar-notification"));
+		}
+
+		dispatcherThread = new DaemonThreadFactory("gcRadar-dispatcher")
+				.newThread(new Dispatcher(dispatcherExecutor, ownsExecutor));
+		dispatcherThread.start();
+	}
+
+	private NotificationEvent removeHead() {
+		NotificationEvent event = queue[head];
+		queue[head] = null;
+		head = (head + 1) % queue.length;
+		count--;
+		return event;
+	}
+
+	/*
+	 * Waits for at least one event and moves up to batch size events to the
+	 * batch.
+	 */
+	private int drainTo(NotificationEvent[] batch)
+			throws InterruptedException {
+		queueLock.lock();
+		try {
+			while (count == 0) {
+				if (!running || stopPending) {
+					// the dispatcher stops, the next start creates a new one
+					dispatcherThread = null;
+					return 0;
+				}
+				notEmpty.await();
+			}
+
+			int drained = 0;
+			while (count > 0 && drained < batch.length) {
+				NotificationEvent event = removeHead();
+				if (queuedPreGcEvents != null
+						&& event.getType() == NotificationEventTypeEnum.PRE_GC) {
+					queuedPreGcEvents.remove(event.getRefrenceKey());
+				}
+				batch[drained++] = event;
+			}
+
+			dispatcherStalled = false;
+			notFull.signalAll();
+			return drained;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	private void deliver(NotificationEvent event) {
+		switch (event.getType()) {
+		case START_MONITORING:
+			delegate.notifyStartMonitoring();
+			break;
+		case STOP_MONITORING:
+			delegate.notifyStopMonitoring();
+			break;
+		case PRE_GC:
+			delegate.notifyPreGcEvent(event.getRefrenceKey());
+			break;
+		case POST_GC:
+			delegate.notifyPostGcEvent(event.getRefrenceKey());
+			break;
+		case PRE_AND_POST_GC:
+			delegate.notifyPreGcEvent(event.getRefrenceKey());
+			delegate.notifyPostGcEvent(event.getRefrenceKey());
+			break;
+		case LEAK_SUSPECT:
+			((LeakNotificationModuleInterface) delegate)
+					.notifyLeakSuspect(event.getRefrenceKey());
+			break;
+		}
+	}
+
+	// ===========INNER CLASSES==========
+
+	/*
+	 * The Dispatcher takes the batches out of the queue and watches over their
+	 * delivery.
+	 */
+	private class Dispatcher implements Runnable {
+
+		private final ExecutorService executor;
+		private final boolean ownsExecutor;
+
+		private Dispatcher(ExecutorService executor, boolean ownsExecutor) {
+			this.executor = executor;
+			this.ownsExecutor = ownsExecutor;
+		}
+
+		@Override
+		public void run() {
+			try {
+				dispatchAll();
+			} finally {
+				// the next start creates a new dispatcher, whichever way this
+				// one ended
+				queueLock.lock();
+				try {
+					if (dispatcherThread == Thread.currentThread()) {
+						dispatcherThread = null;
+					}
+				} finally {
+					queueLock.unlock();
+				}
+
+				if (ownsExecutor) {
+					if (running) {
+						executor.shutdown();
+					} else {
+						executor.shutdownNow();
+					}
+				}
+			}
+		}
+
+		private void dispatchAll() {
+			NotificationEvent[] batch = new NotificationEvent[batchSize];
+
+			while (running) {
+				int size;
+				try {
+					size = drainTo(batch);
+				} catch (InterruptedException e) {
+					break;
+				}
+				if (size == 0) {
+					break;
+				}
+
+				int from = 0;
+				while (from < size && running) {
+					from = dispatch(batch, from, size);
+				}
+
+				// help GC
+				for (int i = 0; i < size; i++) {
+					batch[i] = null;
+				}
+			}
+		}
+
+		/*
+		 * Runs the batch from the given index and returns the index from which
+		 * the dispatch should resume.
+		 */
+		private int dispatch(NotificationEvent[] batch, int from, int to) {
+			BatchTask task = new BatchTask(batch, from, to);
+			Future<?> future;
+			try {
+				future = executor.submit(task);
+			} catch (RejectedExecutionException e) {
+				// the events are dropped rather than run on the dispatcher,
+				// where a hung callback could not be abandoned
+				rejectedBatchCount.incrementAndGet();
+				droppedEventCount.addAndGet(to - from);
+				return to;
+			}
+
+			while (true) {
+				try {
+					if (callbackTimeoutNanos == 0) {
+						future.get();
+						return to;
+					}
+
+					// the clock only runs once the task has started, not while
+					// it waits in the executor
+					long startTime = task.getCallbackStartTime();
+					long elapsed = startTime == 0 ? 0 : System.nanoTime()
+							- startTime;
+					future.get(Math.max(callbackTimeoutNanos - elapsed, 1),
+							TimeUnit.NANOSECONDS);
+					return to;
+				} catch (TimeoutException e) {
+					int current = task.getCurrent();
+					long startTime = task.getCallbackStartTime();
+					if (startTime == 0) {
+						continue;
+					}
+					long elapsed = System.nanoTime() - startTime;
+					if (elapsed >= callbackTimeoutNanos
+							&& current == task.getCurrent()) {
+						// abandon the callback & resume after it
+						task.abandon();
+						future.cancel(true);
+						timedOutCallbackCount.incrementAndGet();
+						return current + 1;
+					}
+				} catch (ExecutionException e) {
+					// an Error escaped the callback
+					failedCallbackCount.incrementAndGet();
+					return task.getCurrent() + 1;
+				} catch (InterruptedException e) {
+					future.cancel(true);
+					running = false;
+					return to;
+				}
+			}
+		}
+	}
+
+	/*
+	 * The BatchTask delivers a part of a batch and publishes its progress for
+	 * the dispatcher to check on.
+	 */
+	private class BatchTask implements Runnable {
+		private final NotificationEvent[] batch;
+		private final int to;
+
+		private volatile int current;
+		/** The start of the current callback, 0 till the task runs. */
+		private volatile long callbackStartTime;
+		private volatile boolean abandoned;
+
+		private BatchTask(NotificationEvent[] batch, int from, int to) {
+			this.batch = batch;
+			this.to = to;
+			this.current = from;
+		}
+
+		@Override
+		public void run() {
+			callbackStartTime = System.nanoTime();
+			BatchNotificationModuleInterface batchDelegate = null;
+			if (delegate instanceof BatchNotificationModuleInterface) {
+				batchDelegate = (BatchNotificationModuleInterface) delegate;
+				batchDelegate.notifyPassStarted();
+			}
+
+			for (int i = current; i < to; i++) {
+				callbackStartTime = System.nanoTime();
+				current = i;
+
+				// the callback may swallow the interrupt, so check the flag as
+				// well to not deliver the rest of the batch a second time
+				if (abandoned || Thread.currentThread().isInterrupted()) {
+					return;
+				}
+
+				try {
+					deliver(batch[i]);
+				} catch (RuntimeException e) {
+					failedCallbackCount.incrementAndGet();
+				}
+			}
+
+			if (batchDelegate != null && !abandoned) {
+				// the held back events are delivered here, a timeout is
+				// accounted to the last event of the batch
+				callbackStartTime = System.nanoTime();
+				current = to - 1;
+				try {
+					batchDelegate.notifyPassCompleted();
+				} catch (RuntimeException e) {
+					failedCallbackCount.incrementAndGet();
+				}
+			}
+		}
+
+		private int getCurrent() {
+			return current;
+		}
+
+		private void abandon() {
+			abandoned = true;
+		}
+
+		private long getCallbackStartTime() {
+			return callbackStartTime;
+		}
+	}
+
+	/*
+	 * Creates low priority daemon threads so that the notification does not
+	 * keep the JVM alive.
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicLong counter = new AtomicLong();
+
+		private DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name + "-"
+					+ counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import com.gcr.monitors.modules.notification.StructuredLogSinkInterface;
+
+/**
+ * The Class ChannelStructuredLogSink is an implementation of the
+ * {@link StructuredLogSinkInterface} that encodes the lines in UTF-8 into a
+ * reused buffer and writes them to a channel, so writing the events does not
+ * create any garbage.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class ChannelStructuredLogSink implements StructuredLogSinkInterface {
+
+	/** The default size of the encoding buffer in bytes. */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private final OutputStream outputStream;
+	private final ByteBuffer byteBuffer;
+
+	/**
+	 * Instantiates a new channel structured log sink.
+	 * 
+	 * @param channel
+	 *            the channel the lines are written to
+	 * @throws NullPointerException
+	 *             if channel is null
+	 */
+	public ChannelStructuredLogSink(WritableByteChannel channel) {
+		this(channel, null, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Instantiates a new channel structured log sink that writes to a stream.
+	 * 
+	 * @param outputStream
+	 *            the stream the lines are written to
+	 * @throws NullPointerException
+	 *             if outputStream is null
+	 */
+	public ChannelStructuredLogSink(OutputStream outputStream) {
+		this(Channels.newChannel(outputStream), outputStream,
+				DEFAULT_BUFFER_SIZE);
+	}
+
+	private ChannelStructuredLogSink(WritableByteChannel channel,
+			OutputStream outputStream, int bufferSize) {
+		if (channel == null) {
+			throw new NullPointerException("Channel can not be null");
+		}
+
+		this.channel = channel;
+		this.outputStream = outputStream;
+		this.byteBuffer = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.StructuredLogSinkInterface#write(java.lang.CharSequence)
+	 */
+	@Override
+	public void write(CharSequence lines) throws IOException {
+		int length = lines.length();
+		for (int i = 0; i < length; i++) {
+			// make sure a full code point fits
+			if (byteBuffer.remaining() < 4) {
+				drain();
+			}
+
+			char c = lines.charAt(i);
+			if (c < 0x80) {
+				byteBuffer.put((byte) c);
+			} else if (c < 0x800) {
+				byteBuffer.put((byte) (0xC0 | (c >> 6)));
+				byteBuffer.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(lines.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, lines.charAt(++i));
+				byteBuffer.put((byte) (0xF0 | (codePoint >> 18)));
+				byteBuffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				byteBuffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				byteBuffer.put((byte) (0x80 | (codePoint & 0x3F)));
+			} else if (Character.isHighSurrogate(c)
+					|| Character.isLowSurrogate(c)) {
+				// unpaired surrogate
+				byteBuffer.put((byte) '?');
+			} else {
+				byteBuffer.put((byte) (0xE0 | (c >> 12)));
+				byteBuffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				byteBuffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.StructuredLogSinkInterface#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+		if (outputStream != null) {
+			outputStream.flush();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.StructuredLogSinkInterface#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void drain() throws IOException {
+		byteBuffer.flip();
+		while (byteBuffer.hasRemaining()) {
+			channel.write(byteBuffer);
+		}
+		byteBuffer.clear();
+	}
+}
@@ -0,0 +1,247 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gcr.monitors.modules.notification.BatchNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.LeakNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class CompositeNotificationModule is an implementation of the
+ * {@link NotificationModuleInterface} that forwards every event to a number of
+ * notification modules, in the order they were added. It lets a monitor, for
+ * example, call back the client code and journal the events at the same time.
+ * 
+ * A module that throws does not keep the event from the modules after it, the
+ * failure is counted, see {@link #getFailedNotificationCount()}.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class CompositeNotificationModule implements
+		BatchNotificationModuleInterface, QueuedNotificationModuleInterface,
+		LeakNotificationModuleInterface {
+
+	/**
+	 * The modules, the array is replaced on addition so that iterating over it
+	 * does not allocate an iterator per event.
+	 */
+	private volatile NotificationModuleInterface[] modules = new NotificationModuleInterface[0];
+
+	private final AtomicLong failedNotificationCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new composite notification module.
+	 * 
+	 * @param modules
+	 *            the modules the events are forwarded to
+	 * @throws NullPointerException
+	 *             if any of the modules is null
+	 */
+	public CompositeNotificationModule(NotificationModuleInterface... modules) {
+		for (NotificationModuleInterface module : modules) {
+			addModule(module);
+		}
+	}
+
+	/**
+	 * Adds a module the events will be forwarded to.
+	 * 
+	 * @param module
+	 *            the module
+	 * @throws NullPointerException
+	 *             if module is null
+	 */
+	public void addModule(NotificationModuleInterface module) {
+		if (module == null) {
+			throw new NullPointerException("Module can not be null");
+		}
+
+		synchronized (this) {
+			NotificationModuleInterface[] added = new NotificationModuleInterface[modules.length + 1];
+			System.arraycopy(modules, 0, added, 0, modules.length);
+			added[modules.length] = module;
+			modules = added;
+		}
+	}
+
+	/**
+	 * Gets the number of times a module threw while being notified.
+	 * 
+	 * @return the failed notification count
+	 */
+	public long getFailedNotificationCount() {
+		return failedNotificationCount.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStartMonitoring()
+	 */
+	@Override
+	public boolean notifyStartMonitoring() {
+		boolean notified = false;
+		for (NotificationModuleInterface module : modules) {
+			try {
+				notified |= module.notifyStartMonitoring();
+			} catch (RuntimeException e) {
+				failedNotificationCount.incrementAndGet();
+			}
+		}
+		return notified;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStopMonitoring()
+	 */
+	@Override
+	public boolean notifyStopMonitoring() {
+		boolean notified = false;
+		for (NotificationModuleInterface module : modules) {
+			try {
+				notified |= module.notifyStopMonitoring();
+			} catch (RuntimeException e) {
+				failedNotificationCount.incrementAndGet();
+			}
+		}
+		return notified;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPreGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPreGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		boolean notified = false;
+		for (NotificationModuleInterface module : modules) {
+			try {
+				notified |= module.notifyPreGcEvent(refrenceKey);
+			} catch (RuntimeException e) {
+				failedNotificationCount.incrementAndGet();
+			}
+		}
+		return notified;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPostGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPostGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		boolean notified = false;
+		for (NotificationModuleInterface module : modules) {
+			try {
+				notified |= module.notifyPostGcEvent(refrenceKey);
+			} catch (RuntimeException e) {
+				failedNotificationCount.incrementAndGet();
+			}
+		}
+		return notified;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.LeakNotificationModuleInterface#notifyLeakSuspect(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyLeakSuspect(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		boolean notified = false;
+		for (NotificationModuleInterface module : modules) {
+			if (module instanceof LeakNotificationModuleInterface) {
+				try {
+					notified |= ((LeakNotificationModuleInterface) module)
+							.notifyLeakSuspect(refrenceKey);
+				} catch (RuntimeException e) {
+					failedNotificationCount.incrementAndGet();
+				}
+			}
+		}
+		return notified;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.BatchNotificationModuleInterface#notifyPassStarted()
+	 */
+	@Override
+	public void notifyPassStarted() {
+		for (NotificationModuleInterface module : modules) {
+			if (module instanceof BatchNotificationModuleInterface) {
+				try {
+					((BatchNotificationModuleInterface) module)
+							.notifyPassStarted();
+				} catch (RuntimeException e) {
+					failedNotificationCount.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.BatchNotificationModuleInterface#notifyPassCompleted()
+	 */
+	@Override
+	public void notifyPassCompleted() {
+		for (NotificationModuleInterface module : modules) {
+			if (module instanceof BatchNotificationModuleInterface) {
+				try {
+					((BatchNotificationModuleInterface) module)
+							.notifyPassCompleted();
+				} catch (RuntimeException e) {
+					failedNotificationCount.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of events waiting to be delivered by all the queued
+	 * modules.
+	 * 
+	 * @return the queue depth, 0 if none of the modules is queued
+	 * @see com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		int depth = 0;
+		for (NotificationModuleInterface module : modules) {
+			if (module instanceof QueuedNotificationModuleInterface) {
+				depth += ((QueuedNotificationModuleInterface) module)
+						.getQueueDepth();
+			}
+		}
+		return depth;
+	}
+}
@@ -0,0 +1,533 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gcr.monitors.modules.notification.BatchNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.structs.JournalRecordFormat;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+import com.gcr.structs.CreationTrace;
+
+/**
+ * The Class JournalNotificationModule is an implementation of the
+ * {@link NotificationModuleInterface} that appends every event to a journal of
+ * memory-mapped segment files, in the binary format described by
+ * {@link JournalRecordFormat}. Writing an event is a few puts into the mapped
+ * buffer, the data reaches the file through the page cache and so survives the
+ * death of the process.
+ * 
+ * The segments are named <code>&lt;prefix&gt;-&lt;sequence&gt;.gcrj</code> and
+ * a new one is started when the current one is full. An existing journal in
+ * the directory is never overwritten, the sequence continues after the last
+ * segment found.
+ * 
+ * The {@link AbstractObjectRefrenceKey#getCreationTrace() creation traces} of
+ * the objects sampled are written along with their keys, a trace too large
+ * for a quarter of a segment is left out.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class JournalNotificationModule implements BatchNotificationModuleInterface {
+
+	/** The default size of a segment in bytes. */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	/** The smallest segment size accepted in bytes. */
+	public static final int MIN_SEGMENT_SIZE = 64 * 1024;
+
+	/** The default prefix of the segment file names. */
+	public static final String DEFAULT_PREFIX = "gcradar";
+
+	private final File directory;
+	private final String prefix;
+	private final int segmentSize;
+	private final boolean forceOnPassCompleted;
+
+	private long segmentSequence;
+	private RandomAccessFile segmentFile;
+	private MappedByteBuffer buffer;
+	private boolean dirty;
+	private boolean closed;
+
+	/** The time the event times of the segment are relative to. */
+	private long lastTime;
+	private long baseTime;
+
+	// the interned ids, only valid for the current segment
+	private final IdentityHashMap<Class<?>, Integer> classIds = new IdentityHashMap<Class<?>, Integer>();
+	private final IdentityHashMap<AbstractObjectRefrenceKey<Object>, Integer> keyIds = new IdentityHashMap<AbstractObjectRefrenceKey<Object>, Integer>();
+	private final IdentityHashMap<CreationTrace, Integer> traceIds = new IdentityHashMap<CreationTrace, Integer>();
+	private int nextClassId;
+	private int nextKeyId;
+	private int nextTraceId;
+
+	private final AtomicLong recordCount = new AtomicLong();
+	private final AtomicLong segmentCount = new AtomicLong();
+	private final AtomicLong writeErrorCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new journal notification module with the default prefix &
+	 * segment size.
+	 * 
+	 * @param directory
+	 *            the directory the segments are written to
+	 * @throws IOException
+	 *             if the first segment could not be created
+	 */
+	public JournalNotificationModule(File directory) throws IOException {
+		this(directory, DEFAULT_PREFIX, DEFAULT_SEGMENT_SIZE, false);
+	}
+
+	/**
+	 * Instantiates a new journal notification module.
+	 * 
+	 * @param directory
+	 *            the directory the segments are written to, created if it does
+	 *            not exist
+	 * @param prefix
+	 *            the prefix of the segment file names
+	 * @param segmentSize
+	 *            the size of a segment in bytes
+	 * @param forceOnPassCompleted
+	 *            if the segment should be forced to the storage device at the
+	 *            end of every monitoring pass, needed only to survive the
+	 *            crash of the operating system
+	 * @throws IOException
+	 *             if the first segment could not be created
+	 * @throws NullPointerException
+	 *             if directory or prefix is null
+	 * @throws IllegalArgumentException
+	 *             if the segment size is less than {@link #MIN_SEGMENT_SIZE}
+	 */
+	public JournalNotificationModule(File directory, String prefix,
+			int segmentSize, boolean forceOnPassCompleted) throws IOException {
+		if (directory == null || prefix == null) {
+			throw new NullPointerException(
+					"Directory and prefix can not be null");
+		}
+		if (segmentSize < MIN_SEGMENT_SIZE) {
+			throw new IllegalArgumentException("Segment size must be at least "
+					+ MIN_SEGMENT_SIZE + " bytes");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create the directory "
+					+ directory);
+		}
+
+		this.directory = directory;
+		this.prefix = prefix;
+		this.segmentSize = segmentSize;
+		this.forceOnPassCompleted = forceOnPassCompleted;
+
+		this.segmentSequence = findLastSequence();
+		openNextSegment();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStartMonitoring()
+	 */
+	@Override
+	public boolean notifyStartMonitoring() {
+		return append(JournalRecordFormat.START_MONITORING,
+				System.currentTimeMillis(), null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStopMonitoring()
+	 */
+	@Override
+	public boolean notifyStopMonitoring() {
+		boolean appended = append(JournalRecordFormat.STOP_MONITORING,
+				System.currentTimeMillis(), null);
+		force();
+		return appended;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPreGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPreGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return append(JournalRecordFormat.PRE_GC,
+				eventTime(refrenceKey.getWeakCallbackTimeMillis()),
+				refrenceKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPostGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPostGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return append(JournalRecordFormat.POST_GC,
+				eventTime(refrenceKey.getPhantomCallbackTimeMillis()),
+				refrenceKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.BatchNotificationModuleInterface#notifyPassStarted()
+	 */
+	@Override
+	public void notifyPassStarted() {
+		// nothing to do
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.BatchNotificationModuleInterface#notifyPassCompleted()
+	 */
+	@Override
+	public void notifyPassCompleted() {
+		if (forceOnPassCompleted) {
+			force();
+		}
+	}
+
+	/**
+	 * Forces the current segment to the storage device.
+	 */
+	public synchronized void force() {
+		if (!closed && dirty && buffer != null) {
+			buffer.force();
+			dirty = false;
+		}
+	}
+
+	/**
+	 * Forces & closes the current segment, the events raised afterwards are
+	 * not journaled.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+
+		force();
+		closed = true;
+		closeSegment();
+	}
+
+	/**
+	 * Gets the number of event records written.
+	 * 
+	 * @return the record count
+	 */
+	public long getRecordCount() {
+		return recordCount.get();
+	}
+
+	/**
+	 * Gets the number of segments started by the module.
+	 * 
+	 * @return the segment count
+	 */
+	public long getSegmentCount() {
+		return segmentCount.get();
+	}
+
+	/**
+	 * Gets the number of events that could not be journaled.
+	 * 
+	 * @return the write error count
+	 */
+	public long getWriteErrorCount() {
+		return writeErrorCount.get();
+	}
+
+	private synchronized boolean append(byte type, long time,
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		if (closed) {
+			return false;
+		}
+
+		try {
+			if (buffer == null) {
+				// a previous roll failed
+				openNextSegment();
+			}
+
+			Integer keyId = null;
+			int keyLength = 0;
+			int classLength = 0;
+			CreationTrace trace = null;
+			int traceLength = 0;
+			if (refrenceKey != null) {
+				keyId = keyIds.get(refrenceKey);
+				if (keyId == null) {
+					keyLength = JournalRecordFormat.utf8Length(refrenceKey
+							.getObjRefrenceKey());
+					if (!classIds.containsKey(refrenceKey.getClazz())) {
+						classLength = JournalRecordFormat
+								.utf8Length(refrenceKey.getClazz().getName());
+					}
+					trace = refrenceKey.getCreationTrace();
+					traceLength = traceDefSize(trace);
+					if (traceLength > segmentSize / 4) {
+						trace = null;
+						traceLength = 0;
+					}
+				}
+			}
+
+			int needed = eventSize() + keyDefSize(keyId, keyLength)
+					+ classDefSize(classLength) + traceLength;
+			if (buffer.remaining() < needed) {
+				openNextSegment();
+
+				// the ids of the previous segment are not valid anymore, the
+				// key, its class & its trace are defined again
+				if (refrenceKey != null) {
+					keyId = null;
+					keyLength = JournalRecordFormat.utf8Length(refrenceKey
+							.getObjRefrenceKey());
+					classLength = JournalRecordFormat.utf8Length(refrenceKey
+							.getClazz().getName());
+					trace = refrenceKey.getCreationTrace();
+					traceLength = traceDefSize(trace);
+					if (traceLength > segmentSize / 4) {
+						trace = null;
+						traceLength = 0;
+					}
+				}
+
+				needed = eventSize() + keyDefSize(keyId, keyLength)
+						+ classDefSize(classLength) + traceLength;
+				if (buffer.remaining() < needed) {
+					// does not fit in an empty segment either
+					writeErrorCount.incrementAndGet();
+					return false;
+				}
+			}
+
+			if (refrenceKey != null && keyId == null) {
+				keyId = defineKey(refrenceKey, keyLength, classLength);
+				if (trace != null) {
+					int traceId = defineTrace(trace);
+					buffer.put(JournalRecordFormat.KEY_TRACE);
+					JournalRecordFormat.putVarLong(buffer, keyId.intValue());
+					JournalRecordFormat.putVarLong(buffer, traceId);
+				}
+			}
+
+			buffer.put(type);
+			JournalRecordFormat.putZigZagLong(buffer, time - lastTime);
+			lastTime = time;
+			if (keyId != null) {
+				JournalRecordFormat.putVarLong(buffer, keyId.intValue());
+			}
+
+			if (type == JournalRecordFormat.POST_GC) {
+				// the key will not be seen again
+				keyIds.remove(refrenceKey);
+			}
+
+			dirty = true;
+			recordCount.incrementAndGet();
+			return true;
+		} catch (IOException e) {
+			writeErrorCount.incrementAndGet();
+			return false;
+		}
+	}
+
+	private Integer defineKey(AbstractObjectRefrenceKey<Object> refrenceKey,
+			int keyLength, int classLength) {
+		Class<?> clazz = refrenceKey.getClazz();
+		Integer classId = classIds.get(clazz);
+		if (classId == null) {
+			classId = Integer.valueOf(nextClassId++);
+			classIds.put(clazz, classId);
+
+			buffer.put(JournalRecordFormat.CLASS_DEF);
+			JournalRecordFormat.putVarLong(buffer, classId.intValue());
+			JournalRecordFormat.putString(buffer, clazz.getName(), classLength);
+		}
+
+		Integer keyId = Integer.valueOf(nextKeyId++);
+		keyIds.put(refrenceKey, keyId);
+
+		buffer.put(JournalRecordFormat.KEY_DEF);
+		JournalRecordFormat.putVarLong(buffer, keyId.intValue());
+		JournalRecordFormat.putVarLong(buffer, classId.intValue());
+		JournalRecordFormat.putZigZagLong(buffer,
+				refrenceKey.getDateAddedMillis() - baseTime);
+		JournalRecordFormat.putString(buffer,
+				refrenceKey.getObjRefrenceKey(), keyLength);
+
+		return keyId;
+	}
+
+	/*
+	 * Defines the nodes of the trace not defined yet in the segment, the
+	 * parents first.
+	 */
+	private int defineTrace(CreationTrace trace) {
+		Integer traceId = traceIds.get(trace);
+		if (traceId != null) {
+			return traceId.intValue();
+		}
+
+		int parentId = trace.getParent() == null ? -1 : defineTrace(trace
+				.getParent());
+		traceId = Integer.valueOf(nextTraceId++);
+		traceIds.put(trace, traceId);
+
+		buffer.put(JournalRecordFormat.TRACE_DEF);
+		JournalRecordFormat.putVarLong(buffer, traceId.intValue());
+		JournalRecordFormat.putVarLong(buffer, parentId + 1);
+		JournalRecordFormat.putString(buffer, trace.getFrame(),
+				JournalRecordFormat.utf8Length(trace.getFrame()));
+		return traceId.intValue();
+	}
+
+	/*
+	 * The size of the definitions of the trace nodes not defined yet in the
+	 * segment & of the key trace record, 0 without a trace.
+	 */
+	private int traceDefSize(CreationTrace trace) {
+		if (trace == null) {
+			return 0;
+		}
+
+		int size = 1 + 2 * JournalRecordFormat.MAX_VARINT_BYTES;
+		for (CreationTrace node = trace; node != null
+				&& !traceIds.containsKey(node); node = node.getParent()) {
+			size += 1 + 2 * JournalRecordFormat.MAX_VARINT_BYTES
+					+ JournalRecordFormat.utf8Length(node.getFrame());
+		}
+		return size;
+	}
+
+	private static int eventSize() {
+		return 1 + 2 * JournalRecordFormat.MAX_VARINT_BYTES;
+	}
+
+	private static int keyDefSize(Integer keyId, int keyLength) {
+		if (keyId != null) {
+			return 0;
+		}
+		return 1 + 4 * JournalRecordFormat.MAX_VARINT_BYTES + keyLength;
+	}
+
+	private static int classDefSize(int classLength) {
+		return 1 + 2 * JournalRecordFormat.MAX_VARINT_BYTES + classLength;
+	}
+
+	private void openNextSegment() throws IOException {
+		closeSegment();
+
+		segmentSequence++;
+		File file = new File(directory, segmentName(segmentSequence));
+		segmentFile = new RandomAccessFile(file, "rw");
+		buffer = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+				0, segmentSize);
+
+		baseTime = System.currentTimeMillis();
+		lastTime = baseTime;
+		classIds.clear();
+		keyIds.clear();
+		traceIds.clear();
+		nextClassId = 0;
+		nextKeyId = 0;
+		nextTraceId = 0;
+
+		buffer.putInt(JournalRecordFormat.MAGIC);
+		buffer.put(JournalRecordFormat.VERSION);
+		buffer.putLong(segmentSequence);
+		buffer.putLong(baseTime);
+		dirty = true;
+
+		segmentCount.incrementAndGet();
+	}
+
+	private void closeSegment() {
+		if (segmentFile == null) {
+			return;
+		}
+
+		buffer.force();
+		try {
+			// the mapping stays valid till the buffer is collected
+			segmentFile.close();
+		} catch (IOException e) {
+			writeErrorCount.incrementAndGet();
+		}
+		segmentFile = null;
+		buffer = null;
+	}
+
+	private String segmentName(long sequence) {
+		// zero padded so that the names sort in the order of the sequence
+		String digits = Long.toString(sequence);
+		StringBuilder name = new StringBuilder(prefix).append('-');
+		for (int i = digits.length(); i < 12; i++) {
+			name.append('0');
+		}
+		return name.append(digits)
+				.append(JournalRecordFormat.SEGMENT_EXTENSION).toString();
+	}
+
+	private long findLastSequence() {
+		long last = 0;
+		String[] names = directory.list();
+		if (names == null) {
+			return last;
+		}
+
+		String start = prefix + "-";
+		for (String name : names) {
+			if (name.startsWith(start)
+					&& name.endsWith(JournalRecordFormat.SEGMENT_EXTENSION)) {
+				try {
+					long sequence = Long.parseLong(name.substring(
+							start.length(), name.length()
+									- JournalRecordFormat.SEGMENT_EXTENSION
+											.length()));
+					last = Math.max(last, sequence);
+				} catch (NumberFormatException e) {
+					// not a segment of ours
+				}
+			}
+		}
+		return last;
+	}
+
+	private static long eventTime(long time) {
+		return time != 0 ? time : System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,111 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.impl;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import com.gcr.monitors.modules.notification.StructuredLogSinkInterface;
+
+/**
+ * The Class Log4jStructuredLogSink is an implementation of the
+ * {@link StructuredLogSinkInterface} that logs every line using log4j. As log4j
+ * needs a message per line this sink creates a String per event, however this
+ * is done on the writer thread of the notification module and not on the
+ * monitoring thread.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class Log4jStructuredLogSink implements StructuredLogSinkInterface {
+
+	private final Logger log;
+	private final Level level;
+
+	/**
+	 * Instantiates a new log4j structured log sink that logs at the info
+	 * level.
+	 * 
+	 * @param log
+	 *            the logger
+	 * @throws NullPointerException
+	 *             if log is null
+	 */
+	public Log4jStructuredLogSink(Logger log) {
+		this(log, Level.INFO);
+	}
+
+	/**
+	 * Instantiates a new log4j structured log sink.
+	 * 
+	 * @param log
+	 *            the logger
+	 * @param level
+	 *            the level the events are logged at
+	 * @throws NullPointerException
+	 *             if log or level is null
+	 */
+	public Log4jStructuredLogSink(Logger log, Level level) {
+		if (log == null || level == null) {
+			throw new NullPointerException("Logger and level can not be null");
+		}
+
+		this.log = log;
+		this.level = level;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.StructuredLogSinkInterface#write(java.lang.CharSequence)
+	 */
+	@Override
+	public void write(CharSequence lines) {
+		if (!log.isEnabledFor(level)) {
+			return;
+		}
+
+		int start = 0;
+		int length = lines.length();
+		for (int i = 0; i < length; i++) {
+			if (lines.charAt(i) == '\n') {
+				log.log(level, lines.subSequence(start, i).toString());
+				start = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.StructuredLogSinkInterface#flush()
+	 */
+	@Override
+	public void flush() {
+		// log4j appenders flush on their own
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.StructuredLogSinkInterface#close()
+	 */
+	@Override
+	public void close() {
+		// the logger is not owned by the sink
+	}
+}
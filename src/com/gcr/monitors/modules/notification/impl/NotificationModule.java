@@ -13,22 +13,107 @@ You should have received a copy of the GNU Lesser General Public License
 along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+
 package com.gcr.monitors.modules.notification.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gcr.callbacks.GcRadarBatchCallback;
+import com.gcr.callbacks.GcRadarCallback;
+import com.gcr.callbacks.GcRadarLeakCallback;
+import com.gcr.monitors.modules.monitoring.structs.MonitorMetrics;
+import com.gcr.monitors.modules.notification.BatchNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.LeakNotificationModuleInterface;
 import com.gcr.monitors.modules.notification.NotificationModuleInterface;
 import com.gcr.structs.AbstractObjectRefrenceKey;
+import com.gcr.structs.GcEventBatch;
 
 /**
  * The Class NotificationModule is the implementation of the
  * {@link NotificationModuleInterface} the module notifies the listener of any GC events
  * that take place pertaining the objects being monitored.
  * 
+ * Callbacks that implement {@link GcRadarBatchCallback} are handed the events
+ * of a monitoring pass in chunks instead, one chunk being flushed whenever it
+ * is full and at the end of the pass.
+ * 
+ * Leak suspects are only reported to the callbacks that implement
+ * {@link GcRadarLeakCallback}, one call per object.
+ * 
+ * The module is thread safe, e.g. for an {@link AsyncNotificationModule}
+ * that delivers the next events while an abandoned callback still runs. No
+ * lock is held while a callback runs; a chunk being delivered is detached
+ * from its callback, the events raised meanwhile go to a new chunk.
+ * 
  * @author R.daneel.olivaw
  * @since 0.1
  */
-public abstract class NotificationModule implements NotificationModuleInterface
+public abstract class NotificationModule implements BatchNotificationModuleInterface, LeakNotificationModuleInterface
 {
 
+    /** The default maximum number of entries in a chunk of batched events. */
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 1024;
+
+    private final int batchChunkSize;
+
+    /**
+     * The batches of the batch callbacks seen so far, there is usually one
+     * callback per monitor so a linear search is the cheapest lookup. A batch
+     * is null while it is being delivered. Guarded by this.
+     */
+    private final List<GcRadarBatchCallback> batchCallbacks = new ArrayList<GcRadarBatchCallback>(1);
+    private final List<GcEventBatch> batches = new ArrayList<GcEventBatch>(1);
+
+    // the last looked up batch, saves the search for consecutive events
+    private GcRadarBatchCallback lastBatchCallback;
+    private GcEventBatch lastBatch;
+
+    private volatile boolean inPass;
+
+    /** The metrics of the monitor, null if not collected. */
+    private volatile MonitorMetrics metrics;
+
+    /**
+     * Instantiates a new notification module with the default chunk size.
+     */
+    protected NotificationModule()
+    {
+	this(DEFAULT_BATCH_CHUNK_SIZE);
+    }
+
+    /**
+     * Instantiates a new notification module.
+     * 
+     * @param batchChunkSize
+     *            the maximum number of entries handed over in one call to a
+     *            {@link GcRadarBatchCallback}
+     * @throws IllegalArgumentException
+     *             if batchChunkSize is less than 1
+     * @since 0.5
+     */
+    protected NotificationModule(int batchChunkSize)
+    {
+	if (batchChunkSize < 1)
+	{
+	    throw new IllegalArgumentException("Batch chunk size must be greater than 0");
+	}
+
+	this.batchChunkSize = batchChunkSize;
+    }
+
+    /**
+     * Sets the metrics the time taken by the callbacks is recorded in.
+     * 
+     * @param metrics
+     *            the metrics, null to stop recording
+     * @since 0.5
+     */
+    public void setMetrics(MonitorMetrics metrics)
+    {
+	this.metrics = metrics;
+    }
+
     /**{@inheritDoc}
      * 
      * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#
@@ -63,7 +148,20 @@ public abstract class NotificationModule implements NotificationModuleInterface
     @Override
     public boolean notifyPreGcEvent(AbstractObjectRefrenceKey<Object> refrenceKey)
     {
-	refrenceKey.getCallback().noSurvivingRefrence(refrenceKey);
+	GcRadarCallback callback = refrenceKey.getCallback();
+	if (callback instanceof GcRadarBatchCallback)
+	{
+	    addToBatch((GcRadarBatchCallback) callback, refrenceKey, GcEventBatch.PRE_GC);
+	    return true;
+	}
+
+	MonitorMetrics current = metrics;
+	long start = current == null ? 0 : System.nanoTime();
+	callback.noSurvivingRefrence(refrenceKey);
+	if (current != null)
+	{
+	    current.recordCallback(System.nanoTime() - start);
+	}
 	return false;
     }
 
@@ -76,8 +174,204 @@ public abstract class NotificationModule implements NotificationModuleInterface
     @Override
     public boolean notifyPostGcEvent(AbstractObjectRefrenceKey<Object> refrenceKey)
     {
-	refrenceKey.getCallback().objectReclaimedByGC(refrenceKey);
+	GcRadarCallback callback = refrenceKey.getCallback();
+	if (callback instanceof GcRadarBatchCallback)
+	{
+	    addToBatch((GcRadarBatchCallback) callback, refrenceKey, GcEventBatch.POST_GC);
+	    return true;
+	}
+
+	MonitorMetrics current = metrics;
+	long start = current == null ? 0 : System.nanoTime();
+	callback.objectReclaimedByGC(refrenceKey);
+	if (current != null)
+	{
+	    current.recordCallback(System.nanoTime() - start);
+	}
+	return true;
+    }
+
+    /**{@inheritDoc}
+     * 
+     * @see com.gcr.monitors.modules.notification.LeakNotificationModuleInterface#notifyLeakSuspect(com.gcr.structs.AbstractObjectRefrenceKey)
+     */
+    @Override
+    public boolean notifyLeakSuspect(AbstractObjectRefrenceKey<Object> refrenceKey)
+    {
+	GcRadarCallback callback = refrenceKey.getCallback();
+	if (!(callback instanceof GcRadarLeakCallback))
+	{
+	    return false;
+	}
+
+	MonitorMetrics current = metrics;
+	long start = current == null ? 0 : System.nanoTime();
+	((GcRadarLeakCallback) callback).leakSuspected(refrenceKey);
+	if (current != null)
+	{
+	    current.recordCallback(System.nanoTime() - start);
+	}
 	return true;
     }
 
+    /**{@inheritDoc}
+     * 
+     * @see com.gcr.monitors.modules.notification.BatchNotificationModuleInterface#notifyPassStarted()
+     */
+    @Override
+    public void notifyPassStarted()
+    {
+	inPass = true;
+    }
+
+    /**{@inheritDoc}
+     * 
+     * @see com.gcr.monitors.modules.notification.BatchNotificationModuleInterface#notifyPassCompleted()
+     */
+    @Override
+    public void notifyPassCompleted()
+    {
+	inPass = false;
+
+	GcRadarBatchCallback[] callbacks;
+	synchronized (this)
+	{
+	    if (batchCallbacks.isEmpty())
+	    {
+		return;
+	    }
+	    callbacks = batchCallbacks.toArray(new GcRadarBatchCallback[batchCallbacks.size()]);
+	}
+
+	for (GcRadarBatchCallback callback : callbacks)
+	{
+	    flush(callback);
+	}
+
+	synchronized (this)
+	{
+	    if (batches.size() > 8)
+	    {
+		// many distinct callbacks, do not hold on to all of them
+		batchCallbacks.clear();
+		batches.clear();
+		lastBatchCallback = null;
+		lastBatch = null;
+	    }
+	}
+    }
+
+    private void addToBatch(GcRadarBatchCallback callback, AbstractObjectRefrenceKey<Object> refrenceKey, byte event)
+    {
+	boolean full;
+	synchronized (this)
+	{
+	    full = !getBatch(callback).add(refrenceKey, event);
+	}
+	if (full)
+	{
+	    // chunk is full
+	    flush(callback);
+	    synchronized (this)
+	    {
+		getBatch(callback).add(refrenceKey, event);
+	    }
+	}
+
+	if (!inPass)
+	{
+	    // not driven by a pass aware monitoring module, deliver right away
+	    flush(callback);
+	}
+    }
+
+    // called with the lock of this held
+    private GcEventBatch getBatch(GcRadarBatchCallback callback)
+    {
+	if (callback == lastBatchCallback)
+	{
+	    return lastBatch;
+	}
+
+	int index = indexOf(callback);
+	GcEventBatch batch = index < 0 ? null : batches.get(index);
+	if (batch == null)
+	{
+	    // new callback, or its batch is being delivered
+	    batch = new GcEventBatch(batchChunkSize);
+	    if (index < 0)
+	    {
+		batchCallbacks.add(callback);
+		batches.add(batch);
+	    }
+	    else
+	    {
+		batches.set(index, batch);
+	    }
+	}
+
+	lastBatchCallback = callback;
+	lastBatch = batch;
+	return batch;
+    }
+
+    // called with the lock of this held
+    private int indexOf(GcRadarBatchCallback callback)
+    {
+	for (int i = 0; i < batchCallbacks.size(); i++)
+	{
+	    if (batchCallbacks.get(i) == callback)
+	    {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    private void flush(GcRadarBatchCallback callback)
+    {
+	GcEventBatch batch;
+	synchronized (this)
+	{
+	    int index = indexOf(callback);
+	    batch = index < 0 ? null : batches.get(index);
+	    if (batch == null || batch.isEmpty())
+	    {
+		return;
+	    }
+
+	    // detach the batch while the callback runs
+	    batches.set(index, null);
+	    if (lastBatch == batch)
+	    {
+		lastBatchCallback = null;
+		lastBatch = null;
+	    }
+	}
+
+	MonitorMetrics current = metrics;
+	long start = current == null ? 0 : System.nanoTime();
+	try
+	{
+	    callback.gcEventsDetected(batch);
+	}
+	finally
+	{
+	    batch.clear();
+	    if (current != null)
+	    {
+		current.recordCallback(System.nanoTime() - start);
+	    }
+
+	    synchronized (this)
+	    {
+		// reused unless a new batch was created meanwhile
+		int index = indexOf(callback);
+		if (index >= 0 && batches.get(index) == null)
+		{
+		    batches.set(index, batch);
+		}
+	    }
+	}
+    }
 }
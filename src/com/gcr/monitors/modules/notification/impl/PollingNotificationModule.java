@@ -0,0 +1,469 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.impl;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.gcr.monitors.modules.notification.LeakNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.structs.NotificationEvent;
+import com.gcr.monitors.modules.notification.structs.NotificationEventTypeEnum;
+import com.gcr.monitors.modules.notification.structs.NotificationOverflowPolicyEnum;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class PollingNotificationModule is an implementation of the
+ * {@link NotificationModuleInterface} that does not notify anyone, the events
+ * are put in a bounded queue from where the client code pulls them on its own
+ * threads using {@link #poll()}, {@link #take(long, TimeUnit)} or
+ * {@link #drainTo(Collection, int)}.
+ * 
+ * The queue is lock free, the monitoring thread & the consumers only take a
+ * lock when a consumer is waiting for an event or, with the
+ * {@link NotificationOverflowPolicyEnum#BLOCK} policy, when the monitoring
+ * thread is waiting for space in the queue. Blocking the monitoring thread
+ * gives the consumers backpressure on the detection of GC events, dropping
+ * the oldest event keeps the detection going when the consumers fall behind.
+ * 
+ * The monitoring thread waits while holding the lock of the watch list, so
+ * with the {@link NotificationOverflowPolicyEnum#BLOCK} policy a full queue
+ * also stalls the addition & removal of objects. The wait is bounded by the
+ * block timeout, it ends when the monitoring is stopped or the thread is
+ * interrupted, & the event that could not be queued is then dropped. Once a
+ * wait has timed out the consumers are considered stalled & the events that
+ * do not fit are dropped without waiting till a consumer takes an event.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class PollingNotificationModule implements
+		QueuedNotificationModuleInterface, LeakNotificationModuleInterface {
+
+	/** The default capacity of the queue. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+	/** The default maximum time the monitoring thread waits for space. */
+	public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 10000;
+
+	private final NotificationOverflowPolicyEnum overflowPolicy;
+	private final long blockTimeoutNanos;
+
+	/** Set once the monitoring is stopped, ends the wait for space. */
+	private volatile boolean stopping;
+
+	/** Set once a wait for space timed out, cleared when an event is taken. */
+	private volatile boolean consumerStalled;
+
+	// the queue is a ring of slots with a sequence number each, a slot can be
+	// written when its sequence is equal to the tail & read when it is one
+	// ahead of the head
+	private final int capacity;
+	private final AtomicReferenceArray<NotificationEvent> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	private final ReentrantLock waitLock = new ReentrantLock();
+	private final Condition notEmpty = waitLock.newCondition();
+	private final Condition notFull = waitLock.newCondition();
+	private final AtomicInteger consumerWaiterCount = new AtomicInteger();
+	private final AtomicInteger producerWaiterCount = new AtomicInteger();
+
+	private final AtomicLong droppedEventCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new polling notification module with the default queue
+	 * capacity that drops the oldest event when the queue is full.
+	 */
+	public PollingNotificationModule() {
+		this(DEFAULT_QUEUE_CAPACITY,
+				NotificationOverflowPolicyEnum.DROP_OLDEST);
+	}
+
+	/**
+	 * Instantiates a new polling notification module.
+	 * 
+	 * @param queueCapacity
+	 *            the maximum number of events that can be queued
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full, either
+	 *            {@link NotificationOverflowPolicyEnum#BLOCK} or
+	 *            {@link NotificationOverflowPolicyEnum#DROP_OLDEST}
+	 * @throws NullPointerException
+	 *             if overflowPolicy is null
+	 * @throws IllegalArgumentException
+	 *             if queueCapacity is less than 1 or the overflowPolicy is
+	 *             {@link NotificationOverflowPolicyEnum#COALESCE}
+	 */
+	public PollingNotificationModule(int queueCapacity,
+			NotificationOverflowPolicyEnum overflowPolicy) {
+		this(queueCapacity, overflowPolicy, DEFAULT_BLOCK_TIMEOUT_MILLIS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Instantiates a new polling notification module.
+	 * 
+	 * @param queueCapacity
+	 *            the maximum number of events that can be queued
+	 * @param overflowPolicy
+	 *            the policy applied when the queue is full, either
+	 *            {@link NotificationOverflowPolicyEnum#BLOCK} or
+	 *            {@link NotificationOverflowPolicyEnum#DROP_OLDEST}
+	 * @param blockTimeout
+	 *            the maximum time the monitoring thread waits for space with
+	 *            the {@link NotificationOverflowPolicyEnum#BLOCK} policy
+	 * @param unit
+	 *            the unit of the block timeout
+	 * @throws NullPointerException
+	 *             if overflowPolicy or unit is null
+	 * @throws IllegalArgumentException
+	 *             if queueCapacity or blockTimeout is less than 1 or the
+	 *             overflowPolicy is
+	 *             {@link NotificationOverflowPolicyEnum#COALESCE}
+	 */
+	public PollingNotificationModule(int queueCapacity,
+			NotificationOverflowPolicyEnum overflowPolicy, long blockTimeout,
+			TimeUnit unit) {
+		if (overflowPolicy == null || unit == null) {
+			throw new NullPointerException(
+					"Overflow policy & unit can not be null");
+		}
+		if (queueCapacity < 1 || blockTimeout < 1) {
+			throw new IllegalArgumentException(
+					"Queue capacity & block timeout must be greater than 0");
+		}
+		if (overflowPolicy == NotificationOverflowPolicyEnum.COALESCE) {
+			throw new IllegalArgumentException(
+					"The COALESCE policy needs a locked queue, use the AsyncNotificationModule");
+		}
+
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeoutNanos = unit.toNanos(blockTimeout);
+		this.capacity = queueCapacity;
+		this.slots = new AtomicReferenceArray<NotificationEvent>(queueCapacity);
+		this.sequences = new AtomicLongArray(queueCapacity);
+		for (int i = 0; i < queueCapacity; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStartMonitoring()
+	 */
+	@Override
+	public boolean notifyStartMonitoring() {
+		stopping = false;
+		return enqueue(new NotificationEvent(
+				NotificationEventTypeEnum.START_MONITORING, null));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStopMonitoring()
+	 */
+	@Override
+	public boolean notifyStopMonitoring() {
+		// a monitoring thread waiting for space gives up, the stop itself
+		// makes space by dropping the oldest event
+		stopping = true;
+		if (producerWaiterCount.get() > 0) {
+			signal(notFull);
+		}
+		return enqueue(new NotificationEvent(
+				NotificationEventTypeEnum.STOP_MONITORING, null));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPreGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPreGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return enqueue(new NotificationEvent(NotificationEventTypeEnum.PRE_GC,
+				refrenceKey));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPostGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPostGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return enqueue(new NotificationEvent(
+				NotificationEventTypeEnum.POST_GC, refrenceKey));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.LeakNotificationModuleInterface#notifyLeakSuspect(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyLeakSuspect(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return enqueue(new NotificationEvent(
+				NotificationEventTypeEnum.LEAK_SUSPECT, refrenceKey));
+	}
+
+	/**
+	 * Removes the oldest event from the queue without waiting.
+	 * 
+	 * @return the event, <code>null</code> if the queue is empty
+	 */
+	public NotificationEvent poll() {
+		NotificationEvent event = dequeue();
+		if (event != null) {
+			consumerStalled = false;
+			if (producerWaiterCount.get() > 0) {
+				signal(notFull);
+			}
+		}
+		return event;
+	}
+
+	/**
+	 * Removes the oldest event from the queue, waiting for one if the queue is
+	 * empty.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return the event, <code>null</code> if no event was queued within the
+	 *         timeout
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	public NotificationEvent take(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		NotificationEvent event = poll();
+		if (event != null) {
+			return event;
+		}
+
+		long remainingNanos = unit.toNanos(timeout);
+		consumerWaiterCount.incrementAndGet();
+		waitLock.lockInterruptibly();
+		try {
+			while ((event = poll()) == null) {
+				if (remainingNanos <= 0) {
+					return null;
+				}
+				remainingNanos = notEmpty.awaitNanos(remainingNanos);
+			}
+			return event;
+		} finally {
+			waitLock.unlock();
+			consumerWaiterCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes up to the given number of events from the queue without waiting
+	 * and adds them to the collection in the order they were raised.
+	 * 
+	 * @param events
+	 *            the collection the events are added to
+	 * @param maxEvents
+	 *            the maximum number of events to remove
+	 * @return the number of events added to the collection
+	 * @throws NullPointerException
+	 *             if events is null
+	 */
+	public int drainTo(Collection<? super NotificationEvent> events,
+			int maxEvents) {
+		if (events == null) {
+			throw new NullPointerException("Collection can not be null");
+		}
+
+		int drained = 0;
+		NotificationEvent event;
+		while (drained < maxEvents && (event = dequeue()) != null) {
+			events.add(event);
+			drained++;
+		}
+		if (drained > 0) {
+			consumerStalled = false;
+			if (producerWaiterCount.get() > 0) {
+				signal(notFull);
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		// the head is read first so that a concurrent poll can not make the
+		// depth negative
+		long currentHead = head.get();
+		long depth = tail.get() - currentHead;
+		return (int) Math.max(0, Math.min(depth, capacity));
+	}
+
+	/**
+	 * Gets the maximum number of events that can be queued.
+	 * 
+	 * @return the queue capacity
+	 */
+	public int getQueueCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the number of events dropped because the queue was full, including
+	 * the events the monitoring thread gave up waiting to queue.
+	 * 
+	 * @return the dropped event count
+	 */
+	public long getDroppedEventCount() {
+		return droppedEventCount.get();
+	}
+
+	private boolean enqueue(NotificationEvent event) {
+		if (offer(event)) {
+			signalConsumers();
+			return true;
+		}
+
+		// the stop is queued without waiting, the consumers may be gone
+		if (overflowPolicy == NotificationOverflowPolicyEnum.DROP_OLDEST
+				|| event.getType() == NotificationEventTypeEnum.STOP_MONITORING) {
+			do {
+				if (dequeue() != null) {
+					droppedEventCount.incrementAndGet();
+				}
+			} while (!offer(event));
+		} else if (!awaitSpace(event)) {
+			droppedEventCount.incrementAndGet();
+			return false;
+		}
+
+		signalConsumers();
+		return true;
+	}
+
+	/*
+	 * Waits till the event is queued, for at most the block timeout & only
+	 * while the monitoring is not stopped, the consumers are not stalled & the
+	 * thread is not interrupted.
+	 */
+	private boolean awaitSpace(NotificationEvent event) {
+		if (consumerStalled) {
+			return offer(event);
+		}
+
+		long remainingNanos = blockTimeoutNanos;
+		producerWaiterCount.incrementAndGet();
+		waitLock.lock();
+		try {
+			while (!offer(event)) {
+				if (stopping) {
+					return false;
+				}
+				if (remainingNanos <= 0) {
+					consumerStalled = true;
+					return false;
+				}
+				remainingNanos = notFull.awaitNanos(remainingNanos);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			waitLock.unlock();
+			producerWaiterCount.decrementAndGet();
+		}
+	}
+
+	private void signalConsumers() {
+		if (consumerWaiterCount.get() > 0) {
+			signal(notEmpty);
+		}
+	}
+
+	private void signal(Condition condition) {
+		waitLock.lock();
+		try {
+			condition.signalAll();
+		} finally {
+			waitLock.unlock();
+		}
+	}
+
+	private boolean offer(NotificationEvent event) {
+		long position = tail.get();
+		while (true) {
+			int index = (int) (position % capacity);
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					slots.set(index, event);
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	private NotificationEvent dequeue() {
+		long position = head.get();
+		while (true) {
+			int index = (int) (position % capacity);
+			long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					NotificationEvent event = slots.get(index);
+					slots.set(index, null);
+					sequences.set(index, position + capacity);
+					return event;
+				}
+				position = head.get();
+			} else if (difference < 0) {
+				return null;
+			} else {
+				position = head.get();
+			}
+		}
+	}
+}
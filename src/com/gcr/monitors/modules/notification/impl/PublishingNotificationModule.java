@@ -0,0 +1,503 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.impl;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.gcr.flow.Flow;
+import com.gcr.monitors.modules.notification.LeakNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.structs.NotificationEvent;
+import com.gcr.monitors.modules.notification.structs.NotificationEventTypeEnum;
+import com.gcr.monitors.modules.notification.structs.NotificationOverflowPolicyEnum;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class PublishingNotificationModule is an implementation of the
+ * {@link NotificationModuleInterface} that publishes the GC events to any
+ * number of {@link Flow.Subscriber}s. Every subscriber gets every event raised
+ * after it subscribed, but only as many as it has requested through its
+ * {@link Flow.Subscription}.
+ * 
+ * The events not yet requested are held in a bounded buffer per subscriber,
+ * the monitoring thread never waits for a subscriber. When the buffer of a
+ * slow subscriber is full its oldest event is dropped, with the
+ * {@link NotificationOverflowPolicyEnum#COALESCE} policy a post-GC event is
+ * first merged into the buffered pre-GC event of the same object. The
+ * subscribers are called on the threads of an executor, one call at a time
+ * per subscriber.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class PublishingNotificationModule implements
+		QueuedNotificationModuleInterface, LeakNotificationModuleInterface,
+		Flow.Publisher<NotificationEvent> {
+
+	/** The default number of events buffered per subscriber. */
+	public static final int DEFAULT_BUFFER_CAPACITY = 1024;
+
+	private final int bufferCapacity;
+	private final NotificationOverflowPolicyEnum overflowPolicy;
+	private final Executor executor;
+
+	private final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<EventSubscription>();
+	private volatile boolean closed;
+
+	private final AtomicLong droppedEventCount = new AtomicLong();
+	private final AtomicLong coalescedEventCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new publishing notification module with the default
+	 * buffer capacity that drops the oldest event of a slow subscriber and
+	 * calls the subscribers on a pool of daemon threads.
+	 */
+	public PublishingNotificationModule() {
+		this(DEFAULT_BUFFER_CAPACITY,
+				NotificationOverflowPolicyEnum.DROP_OLDEST, null);
+	}
+
+	/**
+	 * Instantiates a new publishing notification module.
+	 * 
+	 * @param bufferCapacity
+	 *            the maximum number of events buffered per subscriber
+	 * @param overflowPolicy
+	 *            the policy applied when the buffer of a subscriber is full,
+	 *            either {@link NotificationOverflowPolicyEnum#DROP_OLDEST} or
+	 *            {@link NotificationOverflowPolicyEnum#COALESCE}
+	 * @param executor
+	 *            the executor that will call the subscribers,
+	 *            <code>null</code> for a pool of daemon threads
+	 * @throws NullPointerException
+	 *             if overflowPolicy is null
+	 * @throws IllegalArgumentException
+	 *             if bufferCapacity is less than 1 or the overflowPolicy is
+	 *             {@link NotificationOverflowPolicyEnum#BLOCK}
+	 */
+	public PublishingNotificationModule(int bufferCapacity,
+			NotificationOverflowPolicyEnum overflowPolicy, Executor executor) {
+		if (overflowPolicy == null) {
+			throw new NullPointerException("Overflow policy can not be null");
+		}
+		if (bufferCapacity < 1) {
+			throw new IllegalArgumentException(
+					"Buffer capacity must be greater than 0");
+		}
+		if (overflowPolicy == NotificationOverflowPolicyEnum.BLOCK) {
+			throw new IllegalArgumentException(
+					"The BLOCK policy would hold up the monitoring thread on the slowest subscriber");
+		}
+
+		this.bufferCapacity = bufferCapacity;
+		this.overflowPolicy = overflowPolicy;
+		if (executor == null) {
+			this.executor = Executors
+					.newCachedThreadPool(new DaemonThreadFactory(
+							"gcRadar-publisher"));
+		} else {
+			this.executor = executor;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.flow.Flow.Publisher#subscribe(com.gcr.flow.Flow.Subscriber)
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super NotificationEvent> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("Subscriber can not be null");
+		}
+
+		EventSubscription subscription = new EventSubscription(subscriber);
+		subscriptions.add(subscription);
+		if (closed) {
+			subscription.complete();
+		} else {
+			subscription.schedule();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStartMonitoring()
+	 */
+	@Override
+	public boolean notifyStartMonitoring() {
+		return publish(NotificationEventTypeEnum.START_MONITORING, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStopMonitoring()
+	 */
+	@Override
+	public boolean notifyStopMonitoring() {
+		return publish(NotificationEventTypeEnum.STOP_MONITORING, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPreGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPreGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return publish(NotificationEventTypeEnum.PRE_GC, refrenceKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPostGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPostGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return publish(NotificationEventTypeEnum.POST_GC, refrenceKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.LeakNotificationModuleInterface#notifyLeakSuspect(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyLeakSuspect(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return publish(NotificationEventTypeEnum.LEAK_SUSPECT, refrenceKey);
+	}
+
+	/**
+	 * Stops the publishing, every subscriber is completed once it has
+	 * received the events already buffered for it. A subscriber added
+	 * afterwards is completed right away.
+	 */
+	public void close() {
+		closed = true;
+		for (EventSubscription subscription : subscriptions) {
+			subscription.complete();
+		}
+	}
+
+	/**
+	 * Gets the number of subscribers that have not cancelled or completed.
+	 * 
+	 * @return the subscriber count
+	 */
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Gets the number of events buffered for the slowest subscriber.
+	 * 
+	 * @return the queue depth
+	 * @see com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		int depth = 0;
+		for (EventSubscription subscription : subscriptions) {
+			depth = Math.max(depth, subscription.getBufferedCount());
+		}
+		return depth;
+	}
+
+	/**
+	 * Gets the number of events dropped, over all the subscribers, because
+	 * the buffer of a subscriber was full.
+	 * 
+	 * @return the dropped event count
+	 */
+	public long getDroppedEventCount() {
+		return droppedEventCount.get();
+	}
+
+	/**
+	 * Gets the number of post-GC events merged, over all the subscribers,
+	 * into a buffered pre-GC event.
+	 * 
+	 * @return the coalesced event count
+	 */
+	public long getCoalescedEventCount() {
+		return coalescedEventCount.get();
+	}
+
+	private boolean publish(NotificationEventTypeEnum type,
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		if (closed || subscriptions.isEmpty()) {
+			return false;
+		}
+
+		// a coalesced event is changed in place so it can not be shared
+		NotificationEvent sharedEvent = null;
+		if (overflowPolicy != NotificationOverflowPolicyEnum.COALESCE) {
+			sharedEvent = new NotificationEvent(type, refrenceKey);
+		}
+		for (EventSubscription subscription : subscriptions) {
+			subscription.offer(type, refrenceKey, sharedEvent);
+		}
+		return true;
+	}
+
+	/**
+	 * The subscription of one subscriber, holding the events it has not yet
+	 * requested. The delivery runs as a task on the executor, the work in
+	 * progress count makes sure that only one task runs at a time and that a
+	 * signal arriving while it runs is not missed.
+	 */
+	private class EventSubscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super NotificationEvent> subscriber;
+
+		// the buffer is a ring guarded by the lock
+		private final NotificationEvent[] buffer;
+		private int head;
+		private int count;
+		private final ReentrantLock bufferLock = new ReentrantLock();
+		private final IdentityHashMap<AbstractObjectRefrenceKey<Object>, NotificationEvent> bufferedPreGcEvents;
+
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger workInProgress = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile boolean completing;
+		private volatile Throwable failure;
+
+		// only used by the delivery task
+		private boolean subscribed;
+
+		private EventSubscription(
+				Flow.Subscriber<? super NotificationEvent> subscriber) {
+			this.subscriber = subscriber;
+			this.buffer = new NotificationEvent[bufferCapacity];
+			if (overflowPolicy == NotificationOverflowPolicyEnum.COALESCE) {
+				bufferedPreGcEvents = new IdentityHashMap<AbstractObjectRefrenceKey<Object>, NotificationEvent>();
+			} else {
+				bufferedPreGcEvents = null;
+			}
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				failure = new IllegalArgumentException(
+						"The number of requested events must be greater than 0");
+			} else {
+				long current;
+				long next;
+				do {
+					current = demand.get();
+					next = current + n;
+					if (next < 0) {
+						next = Long.MAX_VALUE;
+					}
+				} while (!demand.compareAndSet(current, next));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+			bufferLock.lock();
+			try {
+				while (count > 0) {
+					removeHead();
+				}
+			} finally {
+				bufferLock.unlock();
+			}
+		}
+
+		private void offer(NotificationEventTypeEnum type,
+				AbstractObjectRefrenceKey<Object> refrenceKey,
+				NotificationEvent sharedEvent) {
+			bufferLock.lock();
+			try {
+				if (cancelled) {
+					return;
+				}
+
+				if (bufferedPreGcEvents != null
+						&& type == NotificationEventTypeEnum.POST_GC) {
+					NotificationEvent preGcEvent = bufferedPreGcEvents
+							.remove(refrenceKey);
+					if (preGcEvent != null) {
+						preGcEvent.mergePostGcEvent();
+						coalescedEventCount.incrementAndGet();
+						return;
+					}
+				}
+
+				if (count == buffer.length) {
+					removeHead();
+					droppedEventCount.incrementAndGet();
+				}
+
+				NotificationEvent event = sharedEvent;
+				if (event == null) {
+					event = new NotificationEvent(type, refrenceKey);
+				}
+				buffer[(head + count) % buffer.length] = event;
+				count++;
+				if (bufferedPreGcEvents != null
+						&& type == NotificationEventTypeEnum.PRE_GC) {
+					bufferedPreGcEvents.put(refrenceKey, event);
+				}
+			} finally {
+				bufferLock.unlock();
+			}
+
+			if (demand.get() > 0) {
+				schedule();
+			}
+		}
+
+		private NotificationEvent poll() {
+			bufferLock.lock();
+			try {
+				if (count == 0) {
+					return null;
+				}
+				return removeHead();
+			} finally {
+				bufferLock.unlock();
+			}
+		}
+
+		private NotificationEvent removeHead() {
+			NotificationEvent event = buffer[head];
+			buffer[head] = null;
+			head = (head + 1) % buffer.length;
+			count--;
+			if (bufferedPreGcEvents != null
+					&& event.getType() == NotificationEventTypeEnum.PRE_GC) {
+				bufferedPreGcEvents.remove(event.getRefrenceKey());
+			}
+			return event;
+		}
+
+		private int getBufferedCount() {
+			bufferLock.lock();
+			try {
+				return count;
+			} finally {
+				bufferLock.unlock();
+			}
+		}
+
+		private void complete() {
+			completing = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if (workInProgress.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				} catch (RejectedExecutionException e) {
+					cancel();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (!subscribed) {
+					subscribed = true;
+					try {
+						subscriber.onSubscribe(this);
+					} catch (Throwable t) {
+						cancel();
+					}
+				}
+				if (cancelled) {
+					return;
+				}
+
+				Throwable requestFailure = failure;
+				if (requestFailure != null) {
+					cancel();
+					subscriber.onError(requestFailure);
+					return;
+				}
+
+				long requested = demand.get();
+				long delivered = 0;
+				while (delivered != requested && !cancelled) {
+					NotificationEvent event = poll();
+					if (event == null) {
+						break;
+					}
+					try {
+						subscriber.onNext(event);
+					} catch (Throwable t) {
+						cancel();
+						return;
+					}
+					delivered++;
+				}
+				if (delivered > 0 && requested != Long.MAX_VALUE) {
+					demand.addAndGet(-delivered);
+				}
+
+				if (completing && !cancelled && getBufferedCount() == 0) {
+					cancel();
+					subscriber.onComplete();
+					return;
+				}
+
+				missed = workInProgress.addAndGet(-missed);
+			} while (missed != 0);
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicLong counter = new AtomicLong();
+
+		private DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, name + "-"
+					+ counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
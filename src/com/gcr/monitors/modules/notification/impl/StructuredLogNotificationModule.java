@@ -0,0 +1,606 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.gcr.monitors.modules.notification.BatchNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.LeakNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.NotificationModuleInterface;
+import com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface;
+import com.gcr.monitors.modules.notification.StructuredLogSinkInterface;
+import com.gcr.monitors.modules.notification.structs.NotificationEventTypeEnum;
+import com.gcr.monitors.modules.notification.structs.StructuredLogFormatEnum;
+import com.gcr.structs.AbstractObjectRefrenceKey;
+import com.gcr.structs.GcCycleInfo;
+
+/**
+ * The Class StructuredLogNotificationModule is an implementation of the
+ * {@link NotificationModuleInterface} that logs the events in a structured
+ * format without creating garbage on the monitoring thread.
+ * 
+ * The monitoring thread only copies the event into a pre-allocated ring of
+ * slots, a background writer thread formats the events into a reused buffer,
+ * one line per event in the {@link StructuredLogFormatEnum} chosen, and hands
+ * the lines over to the {@link StructuredLogSinkInterface} a batch at a time.
+ * The writer is woken up at the end of every monitoring pass and otherwise
+ * polls the ring every flush interval. If the ring is full the event is dropped
+ * rather than making the monitoring thread wait.
+ * 
+ * The writer thread is started when the monitoring is started & stops, once
+ * the events published so far are written & the sink flushed, when the
+ * monitoring is stopped; the events published while it is stopped wait in
+ * the ring. {@link #shutdown(long, TimeUnit)} writes the events left & closes
+ * the sink.
+ * 
+ * The pre & post GC events carry the collection they are attributed to, its
+ * id, collector, cause & duration, when it is known. The events carry the
+ * size of the object, & of its tree for the roots, while the
+ * {@link com.gcr.agent.GcRadarAgent} is installed.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class StructuredLogNotificationModule implements
+		BatchNotificationModuleInterface, QueuedNotificationModuleInterface,
+		LeakNotificationModuleInterface {
+
+	/** The default number of slots in the ring. */
+	public static final int DEFAULT_CAPACITY = 65536;
+
+	/** The default maximum number of events written to the sink at a time. */
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	/** The default interval at which the writer checks for events. */
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef"
+			.toCharArray();
+
+	private final StructuredLogSinkInterface sink;
+	private final StructuredLogFormatEnum format;
+	private final int batchSize;
+	private final long flushIntervalNanos;
+
+	// the ring, the slots are reused and hold primitives & references only
+	private final int mask;
+	private final NotificationEventTypeEnum[] types;
+	private final long[] times;
+	private final AbstractObjectRefrenceKey<Object>[] keys;
+
+	/** The sequence of the next slot to be written, only the writer moves it. */
+	private volatile long head;
+
+	/** The sequence of the next slot to be filled, moved under the lock. */
+	private volatile long tail;
+
+	private final Object producerLock = new Object();
+
+	/** The writer thread, null while stopped, set under the lock of this. */
+	private volatile Thread writerThread;
+	/** Whether the writer keeps running once the ring is drained. */
+	private volatile boolean writing;
+	/** Whether the module is shut down, set under the lock of this. */
+	private volatile boolean closed;
+	private volatile boolean writerParked;
+
+	/** The buffer the events are formatted into, used by the writer only. */
+	private final StringBuilder buffer;
+
+	private final AtomicLong droppedEventCount = new AtomicLong();
+	private final AtomicLong writtenEventCount = new AtomicLong();
+	private final AtomicLong writeErrorCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new structured log notification module with the default
+	 * capacity, batch size and flush interval.
+	 * 
+	 * @param sink
+	 *            the sink the formatted events are written to
+	 * @param format
+	 *            the format of the events
+	 */
+	public StructuredLogNotificationModule(StructuredLogSinkInterface sink,
+			StructuredLogFormatEnum format) {
+		this(sink, format, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE,
+				DEFAULT_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Instantiates a new structured log notification module.
+	 * 
+	 * @param sink
+	 *            the sink the formatted events are written to
+	 * @param format
+	 *            the format of the events
+	 * @param capacity
+	 *            the number of events that can wait to be written, rounded up
+	 *            to a power of 2
+	 * @param batchSize
+	 *            the maximum number of events written to the sink at a time
+	 * @param flushInterval
+	 *            the interval at which the writer checks for events when it is
+	 *            not woken up
+	 * @param unit
+	 *            the unit of the flush interval
+	 * @throws NullPointerException
+	 *             if sink, format or unit is null
+	 * @throws IllegalArgumentException
+	 *             if capacity, batchSize or flushInterval is less than 1
+	 */
+	@SuppressWarnings("unchecked")
+	public StructuredLogNotificationModule(StructuredLogSinkInterface sink,
+			StructuredLogFormatEnum format, int capacity, int batchSize,
+			long flushInterval, TimeUnit unit) {
+		if (sink == null || format == null || unit == null) {
+			throw new NullPointerException(
+					"Sink, format and unit can not be null");
+		}
+		if (capacity < 1 || batchSize < 1 || flushInterval < 1) {
+			throw new IllegalArgumentException(
+					"Capacity, batch size and flush interval must be greater than 0");
+		}
+
+		this.sink = sink;
+		this.format = format;
+		this.batchSize = batchSize;
+		this.flushIntervalNanos = unit.toNanos(flushInterval);
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.types = new NotificationEventTypeEnum[size];
+		this.times = new long[size];
+		this.keys = (AbstractObjectRefrenceKey<Object>[]) new AbstractObjectRefrenceKey<?>[size];
+
+		// room for a batch of average sized lines, grows if needed
+		this.buffer = new StringBuilder(Math.min(batchSize, 4096) * 128);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStartMonitoring()
+	 */
+	@Override
+	public boolean notifyStartMonitoring() {
+		startWriter();
+		boolean published = publish(NotificationEventTypeEnum.START_MONITORING,
+				System.currentTimeMillis(), null);
+		wakeWriter();
+		return published;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyStopMonitoring()
+	 */
+	@Override
+	public boolean notifyStopMonitoring() {
+		boolean published = publish(NotificationEventTypeEnum.STOP_MONITORING,
+				System.currentTimeMillis(), null);
+		stopWriter();
+		return published;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPreGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPreGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return publish(NotificationEventTypeEnum.PRE_GC,
+				eventTime(refrenceKey.getWeakCallbackTimeMillis()),
+				refrenceKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.NotificationModuleInterface#notifyPostGcEvent(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyPostGcEvent(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return publish(NotificationEventTypeEnum.POST_GC,
+				eventTime(refrenceKey.getPhantomCallbackTimeMillis()),
+				refrenceKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.LeakNotificationModuleInterface#notifyLeakSuspect(com.gcr.structs.AbstractObjectRefrenceKey)
+	 */
+	@Override
+	public boolean notifyLeakSuspect(
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		return publish(NotificationEventTypeEnum.LEAK_SUSPECT,
+				eventTime(refrenceKey.getLeakSuspectTimeMillis()),
+				refrenceKey);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.BatchNotificationModuleInterface#notifyPassStarted()
+	 */
+	@Override
+	public void notifyPassStarted() {
+		// nothing to do, the events are written at the end of the pass
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see com.gcr.monitors.modules.notification.BatchNotificationModuleInterface#notifyPassCompleted()
+	 */
+	@Override
+	public void notifyPassCompleted() {
+		if (tail != head) {
+			wakeWriter();
+		}
+	}
+
+	/**
+	 * Stops the writer once the events published so far have been written and
+	 * closes the sink. Events published afterwards are dropped.
+	 * 
+	 * @param time
+	 *            the maximum time to wait for the writer
+	 * @param unit
+	 *            the unit of the time
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the writer
+	 */
+	public void shutdown(long time, TimeUnit unit)
+			throws InterruptedException {
+		Thread writer;
+		synchronized (this) {
+			closed = true;
+			writing = false;
+			writer = writerThread;
+			if (writer == null) {
+				// write the events left & close the sink
+				writer = newWriterThread();
+			}
+		}
+		LockSupport.unpark(writer);
+		writer.join(Math.max(unit.toMillis(time), 1));
+	}
+
+	/**
+	 * Gets the number of events dropped because the ring was full.
+	 * 
+	 * @return the dropped event count
+	 */
+	public long getDroppedEventCount() {
+		return droppedEventCount.get();
+	}
+
+	/**
+	 * Gets the number of events handed over to the sink.
+	 * 
+	 * @return the written event count
+	 */
+	public long getWrittenEventCount() {
+		return writtenEventCount.get();
+	}
+
+	/**
+	 * Gets the number of times the sink failed to write or flush.
+	 * 
+	 * @return the write error count
+	 */
+	public long getWriteErrorCount() {
+		return writeErrorCount.get();
+	}
+
+	/**
+	 * Gets the number of events waiting to be written.
+	 * 
+	 * @return the queue depth
+	 * @see com.gcr.monitors.modules.notification.QueuedNotificationModuleInterface#getQueueDepth()
+	 */
+	@Override
+	public int getQueueDepth() {
+		return (int) (tail - head);
+	}
+
+	private boolean publish(NotificationEventTypeEnum type, long time,
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		if (closed) {
+			droppedEventCount.incrementAndGet();
+			return false;
+		}
+
+		long sequence;
+		synchronized (producerLock) {
+			sequence = tail;
+			if (sequence - head > mask) {
+				droppedEventCount.incrementAndGet();
+				return false;
+			}
+
+			int slot = (int) (sequence & mask);
+			types[slot] = type;
+			times[slot] = time;
+			keys[slot] = refrenceKey;
+
+			// the volatile write publishes the slot to the writer
+			tail = sequence + 1;
+		}
+
+		// do not let the ring fill up waiting for the end of the pass
+		if (sequence - head > (mask >> 1)) {
+			wakeWriter();
+		}
+		return true;
+	}
+
+	private void wakeWriter() {
+		Thread writer = writerThread;
+		if (writerParked && writer != null) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	private synchronized void startWriter() {
+		if (closed) {
+			return;
+		}
+		writing = true;
+		if (writerThread == null) {
+			newWriterThread();
+		}
+	}
+
+	private synchronized void stopWriter() {
+		writing = false;
+		if (writerThread != null) {
+			LockSupport.unpark(writerThread);
+		}
+	}
+
+	// called with the lock of this held
+	private Thread newWriterThread() {
+		Thread writer = new Thread(new Writer(), "gcRadar-log-writer");
+		writer.setDaemon(true);
+		writerThread = writer;
+		writer.start();
+		return writer;
+	}
+
+	private static long eventTime(long time) {
+		return time != 0 ? time : System.currentTimeMillis();
+	}
+
+	// ===========FORMATTING==========
+
+	private void format(NotificationEventTypeEnum type, long time,
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		if (format == StructuredLogFormatEnum.JSON) {
+			buffer.append("{\"ts\":").append(time).append(",\"event\":\"")
+					.append(eventName(type)).append('"');
+			if (refrenceKey != null) {
+				buffer.append(",\"key\":\"");
+				appendEscaped(refrenceKey.getObjRefrenceKey());
+				buffer.append("\",\"class\":\"")
+						.append(refrenceKey.getClazz().getName())
+						.append("\",\"added\":")
+						.append(refrenceKey.getDateAddedMillis());
+				if (refrenceKey.getSizeBytes() >= 0) {
+					buffer.append(",\"bytes\":").append(
+							refrenceKey.getSizeBytes());
+				}
+				if (refrenceKey.getTreeSizeBytes() >= 0) {
+					buffer.append(",\"tree_bytes\":").append(
+							refrenceKey.getTreeSizeBytes());
+				}
+				GcCycleInfo cycle = gcCycle(type, refrenceKey);
+				if (cycle != null) {
+					buffer.append(",\"gc_id\":").append(cycle.getId())
+							.append(",\"gc\":\"");
+					appendEscaped(cycle.getCollectorName());
+					buffer.append("\",\"gc_cause\":\"");
+					appendEscaped(cycle.getCause());
+					buffer.append("\",\"gc_minor\":")
+							.append(cycle.isMinor())
+							.append(",\"gc_pause_ms\":")
+							.append(cycle.getDurationMillis());
+				}
+			}
+			buffer.append("}\n");
+		} else {
+			buffer.append("ts=").append(time).append(" event=")
+					.append(eventName(type));
+			if (refrenceKey != null) {
+				buffer.append(" key=\"");
+				appendEscaped(refrenceKey.getObjRefrenceKey());
+				buffer.append("\" class=")
+						.append(refrenceKey.getClazz().getName())
+						.append(" added=")
+						.append(refrenceKey.getDateAddedMillis());
+				if (refrenceKey.getSizeBytes() >= 0) {
+					buffer.append(" bytes=").append(refrenceKey.getSizeBytes());
+				}
+				if (refrenceKey.getTreeSizeBytes() >= 0) {
+					buffer.append(" tree_bytes=").append(
+							refrenceKey.getTreeSizeBytes());
+				}
+				GcCycleInfo cycle = gcCycle(type, refrenceKey);
+				if (cycle != null) {
+					buffer.append(" gc_id=").append(cycle.getId())
+							.append(" gc=\"");
+					appendEscaped(cycle.getCollectorName());
+					buffer.append("\" gc_cause=\"");
+					appendEscaped(cycle.getCause());
+					buffer.append("\" gc_minor=").append(cycle.isMinor())
+							.append(" gc_pause_ms=")
+							.append(cycle.getDurationMillis());
+				}
+			}
+			buffer.append('\n');
+		}
+	}
+
+	// the collection the GC event is attributed to, null for the other events
+	private static GcCycleInfo gcCycle(NotificationEventTypeEnum type,
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		switch (type) {
+		case PRE_GC:
+			return refrenceKey.getOrphanedGcCycle();
+		case POST_GC:
+			return refrenceKey.getReclaimedGcCycle();
+		default:
+			return null;
+		}
+	}
+
+	private static String eventName(NotificationEventTypeEnum type) {
+		switch (type) {
+		case START_MONITORING:
+			return "start";
+		case STOP_MONITORING:
+			return "stop";
+		case PRE_GC:
+			return "pre_gc";
+		case POST_GC:
+			return "post_gc";
+		case LEAK_SUSPECT:
+			return "leak_suspect";
+		default:
+			return "pre_and_post_gc";
+		}
+	}
+
+	/*
+	 * Escapes the quotes, back slashes & control characters, valid for both
+	 * the formats.
+	 */
+	private void appendEscaped(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				buffer.append('\\').append(c);
+			} else if (c < 0x20) {
+				buffer.append("\\u00").append(HEX_DIGITS[c >> 4])
+						.append(HEX_DIGITS[c & 0xF]);
+			} else {
+				buffer.append(c);
+			}
+		}
+	}
+
+	// ===========INNER CLASSES==========
+
+	/*
+	 * The Writer drains the ring into the sink.
+	 */
+	private class Writer implements Runnable {
+
+		@Override
+		public void run() {
+			boolean unflushed = false;
+
+			while (true) {
+				long from = head;
+				long to = tail;
+
+				if (from == to) {
+					if (unflushed) {
+						flushSink();
+						unflushed = false;
+					}
+					if (!writing && stopped()) {
+						break;
+					}
+
+					writerParked = true;
+					// re-check after announcing the park so that a wake-up is
+					// not missed
+					if (tail == head && writing) {
+						LockSupport.parkNanos(this, flushIntervalNanos);
+					}
+					writerParked = false;
+					continue;
+				}
+
+				long end = Math.min(to, from + batchSize);
+				for (long sequence = from; sequence < end; sequence++) {
+					int slot = (int) (sequence & mask);
+					format(types[slot], times[slot], keys[slot]);
+
+					// help GC
+					keys[slot] = null;
+				}
+				head = end;
+
+				try {
+					sink.write(buffer);
+					writtenEventCount.addAndGet(end - from);
+				} catch (IOException e) {
+					writeErrorCount.incrementAndGet();
+				} catch (RuntimeException e) {
+					writeErrorCount.incrementAndGet();
+				}
+				buffer.setLength(0);
+				unflushed = true;
+			}
+
+			if (closed) {
+				try {
+					sink.close();
+				} catch (IOException e) {
+					writeErrorCount.incrementAndGet();
+				}
+			}
+		}
+
+		/*
+		 * Decides under the lock whether the writer stops, so that a start
+		 * racing with the stop either keeps it running or starts a new one.
+		 */
+		private boolean stopped() {
+			synchronized (StructuredLogNotificationModule.this) {
+				if (writing || tail != head) {
+					return false;
+				}
+				writerThread = null;
+				return true;
+			}
+		}
+
+		private void flushSink() {
+			try {
+				sink.flush();
+			} catch (IOException e) {
+				writeErrorCount.incrementAndGet();
+			} catch (RuntimeException e) {
+				writeErrorCount.incrementAndGet();
+			}
+		}
+	}
+}
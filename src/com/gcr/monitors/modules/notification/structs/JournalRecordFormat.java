@@ -0,0 +1,228 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.structs;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The Class JournalRecordFormat defines the binary format of the segments
+ * written by the journal notification module and the encoding helpers shared by
+ * the writer and the readers.
+ * 
+ * A segment starts with a header,
+ * <ul>
+ * <li>the magic number, 4 bytes</li>
+ * <li>the format version, 1 byte</li>
+ * <li>the sequence number of the segment, 8 bytes</li>
+ * <li>the base time of the segment in milliseconds, 8 bytes</li>
+ * </ul>
+ * followed by records, each made of a 1 byte type and a type specific body,
+ * <ul>
+ * <li>{@link #CLASS_DEF}: class id, name</li>
+ * <li>{@link #KEY_DEF}: key id, class id, time added, identifier</li>
+ * <li>{@link #START_MONITORING} & {@link #STOP_MONITORING}: time</li>
+ * <li>{@link #PRE_GC} & {@link #POST_GC}: time, key id</li>
+ * <li>{@link #TRACE_DEF}: trace id, parent trace id + 1 (0 for a creation
+ * site), frame</li>
+ * <li>{@link #KEY_TRACE}: key id, trace id</li>
+ * </ul>
+ * The ids are unsigned varints, they are only valid inside a segment and are
+ * defined by a definition record before their first use, so every segment can
+ * be read on its own. The times are zig-zag encoded varints, the time added is
+ * relative to the base time of the segment and the event times are relative
+ * to the time of the previous event of the segment (initially the base time).
+ * The names, identifiers and frames are written as a varint length followed by as many
+ * UTF-8 bytes. A type of {@link #END_OF_SEGMENT} marks the end of the data.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class JournalRecordFormat {
+
+	/** The magic number at the start of every segment, "GCRJ". */
+	public static final int MAGIC = 0x4743524A;
+
+	/** The version of the format, 2 added the creation traces. */
+	public static final byte VERSION = 2;
+
+	/** The size of the segment header in bytes. */
+	public static final int HEADER_SIZE = 4 + 1 + 8 + 8;
+
+	/** The file name extension of the segments. */
+	public static final String SEGMENT_EXTENSION = ".gcrj";
+
+	/** Marks the end of the data in a segment, the rest is zero filled. */
+	public static final byte END_OF_SEGMENT = 0;
+
+	/** Defines a class id. */
+	public static final byte CLASS_DEF = 1;
+
+	/** Defines a key id. */
+	public static final byte KEY_DEF = 2;
+
+	/** The monitoring has been started. */
+	public static final byte START_MONITORING = 3;
+
+	/** The monitoring has been stopped. */
+	public static final byte STOP_MONITORING = 4;
+
+	/** The object has been orphaned. */
+	public static final byte PRE_GC = 5;
+
+	/** The object has been reclaimed. */
+	public static final byte POST_GC = 6;
+
+	/** Defines a node of a creation trace, the trace without the outer frames. */
+	public static final byte TRACE_DEF = 7;
+
+	/** The creation trace of the key defined just before. */
+	public static final byte KEY_TRACE = 8;
+
+	/** The maximum number of bytes of an identifier that are written. */
+	public static final int MAX_STRING_BYTES = 4096;
+
+	/** The maximum number of bytes a varint takes. */
+	public static final int MAX_VARINT_BYTES = 10;
+
+	private JournalRecordFormat() {
+		// constants & helpers only
+	}
+
+	/**
+	 * Writes an unsigned varint.
+	 * 
+	 * @param buffer
+	 *            the buffer to write to
+	 * @param value
+	 *            the value, treated as unsigned
+	 */
+	public static void putVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Writes a signed value as a zig-zag encoded varint.
+	 * 
+	 * @param buffer
+	 *            the buffer to write to
+	 * @param value
+	 *            the value
+	 */
+	public static void putZigZagLong(ByteBuffer buffer, long value) {
+		putVarLong(buffer, (value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Reads an unsigned varint.
+	 * 
+	 * @param buffer
+	 *            the buffer to read from
+	 * @return the value
+	 * @throws IllegalStateException
+	 *             if the varint is malformed
+	 */
+	public static long getVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalStateException("Malformed varint");
+	}
+
+	/**
+	 * Reads a zig-zag encoded varint.
+	 * 
+	 * @param buffer
+	 *            the buffer to read from
+	 * @return the value
+	 */
+	public static long getZigZagLong(ByteBuffer buffer) {
+		long value = getVarLong(buffer);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Gets the number of UTF-8 bytes the string will be written as, capped at
+	 * {@link #MAX_STRING_BYTES} without splitting a character.
+	 * 
+	 * @param value
+	 *            the string
+	 * @return the number of bytes
+	 */
+	public static int utf8Length(String value) {
+		int length = 0;
+		for (int i = 0; i < value.length(); i++) {
+			int charLength = utf8Length(value.charAt(i));
+			if (length + charLength > MAX_STRING_BYTES) {
+				break;
+			}
+			length += charLength;
+		}
+		return length;
+	}
+
+	/**
+	 * Writes the string as a varint length followed by the UTF-8 bytes,
+	 * truncated to {@link #MAX_STRING_BYTES}. Surrogates are written as 3 byte
+	 * sequences.
+	 * 
+	 * @param buffer
+	 *            the buffer to write to
+	 * @param value
+	 *            the string
+	 * @param utf8Length
+	 *            the length as returned by {@link #utf8Length(String)}
+	 */
+	public static void putString(ByteBuffer buffer, String value,
+			int utf8Length) {
+		putVarLong(buffer, utf8Length);
+
+		int written = 0;
+		for (int i = 0; i < value.length() && written < utf8Length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | (c >> 6)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else {
+				buffer.put((byte) (0xE0 | (c >> 12)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+			written += utf8Length(c);
+		}
+	}
+
+	private static int utf8Length(char c) {
+		if (c < 0x80) {
+			return 1;
+		} else if (c < 0x800) {
+			return 2;
+		} else {
+			return 3;
+		}
+	}
+}
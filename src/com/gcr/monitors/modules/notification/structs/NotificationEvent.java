@@ -0,0 +1,82 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.structs;
+
+import com.gcr.structs.AbstractObjectRefrenceKey;
+
+/**
+ * The Class NotificationEvent is used by the notification modules that do not
+ * deliver the events on the monitoring thread to hold an event till the time
+ * it is delivered.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class NotificationEvent {
+
+	private NotificationEventTypeEnum type;
+	private AbstractObjectRefrenceKey<Object> refrenceKey;
+
+	/**
+	 * Instantiates a new notification event.
+	 * 
+	 * @param type
+	 *            the type of the event
+	 * @param refrenceKey
+	 *            the refrence key of the object the event is about,
+	 *            <code>null</code> for the start & stop of the monitoring
+	 */
+	public NotificationEvent(NotificationEventTypeEnum type,
+			AbstractObjectRefrenceKey<Object> refrenceKey) {
+		this.type = type;
+		this.refrenceKey = refrenceKey;
+	}
+
+	/**
+	 * Gets the type of the event.
+	 * 
+	 * @return the type
+	 */
+	public NotificationEventTypeEnum getType() {
+		return type;
+	}
+
+	/**
+	 * Merges the post-GC event into this pre-GC event.
+	 * 
+	 * @throws IllegalStateException
+	 *             if this is not a pre-GC event
+	 */
+	public void mergePostGcEvent() {
+		if (type != NotificationEventTypeEnum.PRE_GC) {
+			throw new IllegalStateException(
+					"Only a pre-GC event can be merged with a post-GC event");
+		}
+
+		type = NotificationEventTypeEnum.PRE_AND_POST_GC;
+	}
+
+	/**
+	 * Gets the refrence key of the object the event is about.
+	 * 
+	 * @return the refrence key, <code>null</code> for the start & stop of the
+	 *         monitoring
+	 */
+	public AbstractObjectRefrenceKey<Object> getRefrenceKey() {
+		return refrenceKey;
+	}
+}
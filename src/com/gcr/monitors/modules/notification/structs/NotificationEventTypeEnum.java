@@ -0,0 +1,43 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.structs;
+
+/**
+ * The Enum NotificationEventTypeEnum represents the kind of event carried by a
+ * {@link NotificationEvent}.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public enum NotificationEventTypeEnum {
+
+	/** The monitoring has been started. */
+	START_MONITORING,
+	/** The monitoring has been stopped. */
+	STOP_MONITORING,
+	/** The object has been orphaned but not garbage collected yet. */
+	PRE_GC,
+	/** The object has been garbage collected. */
+	POST_GC,
+	/**
+	 * The object has been orphaned and garbage collected, both the events
+	 * have been merged into one.
+	 */
+	PRE_AND_POST_GC,
+	/** The object has outlived its expected lifetime. */
+	LEAK_SUSPECT;
+}
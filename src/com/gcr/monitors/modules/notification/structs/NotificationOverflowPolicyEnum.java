@@ -0,0 +1,47 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.structs;
+
+/**
+ * The Enum NotificationOverflowPolicyEnum is used to decide what happens to an
+ * event when the queue of an asynchronous notification module is full.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public enum NotificationOverflowPolicyEnum {
+
+	/**
+	 * The monitoring thread waits till the queue has space for the event. No
+	 * event is lost but a slow callback will slow down the detection and the
+	 * registration of objects, as the monitoring thread waits while holding
+	 * the lock of the watch list.
+	 */
+	BLOCK,
+	/**
+	 * The oldest queued event is dropped to make space for the new event. The
+	 * monitoring thread never waits.
+	 */
+	DROP_OLDEST,
+	/**
+	 * A post-GC event is merged into the queued pre-GC event of the same
+	 * object so that both are delivered together while taking a single slot
+	 * in the queue. If the queue is still full the oldest queued event is
+	 * dropped. The monitoring thread never waits.
+	 */
+	COALESCE;
+}
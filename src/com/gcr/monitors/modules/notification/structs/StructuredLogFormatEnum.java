@@ -0,0 +1,38 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.monitors.modules.notification.structs;
+
+/**
+ * The Enum StructuredLogFormatEnum is used to choose the format in which the
+ * structured log notification module writes the events, one event per line.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public enum StructuredLogFormatEnum {
+
+	/**
+	 * Every event is written as a JSON object, e.g.
+	 * <code>{"ts":1400000000000,"event":"post_gc","key":"k1","class":"java.lang.Object","added":1399999999000}</code>
+	 */
+	JSON,
+	/**
+	 * Every event is written as space separated key-value pairs, e.g.
+	 * <code>ts=1400000000000 event=post_gc key="k1" class=java.lang.Object added=1399999999000</code>
+	 */
+	KEY_VALUE;
+}
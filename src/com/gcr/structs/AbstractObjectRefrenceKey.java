@@ -20,6 +20,7 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Date;
 
+import com.gcr.agent.GcRadarAgent;
 import com.gcr.callbacks.GcRadarCallback;
 
 /**
@@ -59,8 +60,9 @@ public abstract class AbstractObjectRefrenceKey<T>
 	setpRef(new PhantomReference<T>(object, phantomReferenceQueue));
 
 	setClazz(object.getClass());
+	size = GcRadarAgent.getObjectSize(object);
 
-	setDateAdded(new Date());
+	setDateAdded(System.currentTimeMillis());
 	setObjRefrenceKey(identifier);
 
 	setCallback(callback);
@@ -68,13 +70,50 @@ public abstract class AbstractObjectRefrenceKey<T>
 
     private String objRefrenceKey;
 
-    private Date dateAdded;
+    // the times are kept in milliseconds, 0 when not set, so that the
+    // monitoring thread does not have to allocate a Date for every event
+    private long dateAdded;
 
     private WeakReference<T> wRef;
     private PhantomReference<T> pRef;
 
-    private Date weakCallbackTime;
-    private Date phantomCallbackTime;
+    private volatile long weakCallbackTime;
+    private volatile long phantomCallbackTime;
+
+    // the collections the object was orphaned & reclaimed in, null if unknown
+    private volatile GcCycleInfo orphanedGcCycle;
+    private volatile GcCycleInfo reclaimedGcCycle;
+
+    // the time by which the object is expected to be orphaned, 0 if none
+    private long leakDeadline;
+    private volatile long leakSuspectTime;
+
+    // the links of the deadline in a DeadlineTimerWheel, guarded by the lock
+    // of the watch list
+    AbstractObjectRefrenceKey<?> timerPrev;
+    AbstractObjectRefrenceKey<?> timerNext;
+    int timerSlot = -1;
+
+    // the slot of the key in a TrackingReservoir, guarded by the lock of the
+    // watch list
+    int reservoirSlot = -1;
+
+    private volatile boolean evicted;
+
+    private volatile ReclamationFuture reclamationFuture;
+
+    // the shallow size of the object, -1 if not known
+    private final long size;
+    // the summed size of the object & the nodes found under it when it is the
+    // root of a tree, -1 if not known or not a root
+    private volatile long treeSize = -1;
+
+    private static final String[] NO_TAGS = new String[0];
+
+    private String[] tags = NO_TAGS;
+
+    // the stack the object was added from, null if not sampled
+    private CreationTrace creationTrace;
 
     private Class<? extends Object> clazz;
 
@@ -103,17 +142,21 @@ public abstract class AbstractObjectRefrenceKey<T>
     public Date getDateAdded()
     {
 	// return defensive copy
-	if (dateAdded != null)
-	{
-	    return new Date(dateAdded.getTime());
-	}
-	else
-	{
-	    return null;
-	}
+	return toDate(dateAdded);
+    }
+
+    /**
+     * Gets the time at which the object was added in milliseconds.
+     * 
+     * @return the date added in milliseconds
+     * @since 0.5
+     */
+    public long getDateAddedMillis()
+    {
+	return dateAdded;
     }
 
-    private void setDateAdded(Date dateAdded)
+    private void setDateAdded(long dateAdded)
     {
 	this.dateAdded = dateAdded;
     }
@@ -182,17 +225,34 @@ public abstract class AbstractObjectRefrenceKey<T>
     public Date getWeakCallbackTime()
     {
 	// return defensive copy
-	if (weakCallbackTime != null)
-	{
-	    return new Date(weakCallbackTime.getTime());
-	}
-	else
-	{
-	    return null;
-	}
+	return toDate(weakCallbackTime);
+    }
+
+    /**
+     * Gets the time at which the object was orphaned in milliseconds.
+     * 
+     * @return the orphan time in milliseconds, 0 if the object has not been
+     *         orphaned yet
+     * @since 0.5
+     */
+    public long getWeakCallbackTimeMillis()
+    {
+	return weakCallbackTime;
     }
 
     public void setWeakCallbackTime(Date weakCallbackTime)
+    {
+	this.weakCallbackTime = toMillis(weakCallbackTime);
+    }
+
+    /**
+     * Sets the time at which the object was orphaned.
+     * 
+     * @param weakCallbackTime
+     *            the orphan time in milliseconds
+     * @since 0.5
+     */
+    public void setWeakCallbackTimeMillis(long weakCallbackTime)
     {
 	this.weakCallbackTime = weakCallbackTime;
     }
@@ -205,9 +265,314 @@ public abstract class AbstractObjectRefrenceKey<T>
     public Date getPhantomCallbackTime()
     {
 	// return defensive copy
-	if (phantomCallbackTime != null)
+	return toDate(phantomCallbackTime);
+    }
+
+    /**
+     * Gets the time at which the object was reclaimed in milliseconds.
+     * 
+     * @return the garbage collection time in milliseconds, 0 if the object has
+     *         not been reclaimed yet
+     * @since 0.5
+     */
+    public long getPhantomCallbackTimeMillis()
+    {
+	return phantomCallbackTime;
+    }
+
+    public void setPhantomCallbackTime(Date phantomCallbackTime)
+    {
+	this.phantomCallbackTime = toMillis(phantomCallbackTime);
+    }
+
+    /**
+     * Sets the time at which the object was reclaimed.
+     * 
+     * @param phantomCallbackTime
+     *            the garbage collection time in milliseconds
+     * @since 0.5
+     */
+    public void setPhantomCallbackTimeMillis(long phantomCallbackTime)
+    {
+	this.phantomCallbackTime = phantomCallbackTime;
+    }
+
+    /**
+     * Gets the collection the object was orphaned in, the one that cleared
+     * its weak reference.
+     * 
+     * @return the collection, null if the object has not been orphaned yet
+     *         or the collection is not known
+     * @since 0.5
+     */
+    public GcCycleInfo getOrphanedGcCycle()
+    {
+	return orphanedGcCycle;
+    }
+
+    /**
+     * Sets the collection the object was orphaned in.
+     * 
+     * @param orphanedGcCycle
+     *            the collection
+     * @since 0.5
+     */
+    public void setOrphanedGcCycle(GcCycleInfo orphanedGcCycle)
+    {
+	this.orphanedGcCycle = orphanedGcCycle;
+    }
+
+    /**
+     * Gets the collection the object was reclaimed in, the one that enqueued
+     * its phantom reference.
+     * 
+     * @return the collection, null if the object has not been reclaimed yet
+     *         or the collection is not known
+     * @since 0.5
+     */
+    public GcCycleInfo getReclaimedGcCycle()
+    {
+	return reclaimedGcCycle;
+    }
+
+    /**
+     * Sets the collection the object was reclaimed in.
+     * 
+     * @param reclaimedGcCycle
+     *            the collection
+     * @since 0.5
+     */
+    public void setReclaimedGcCycle(GcCycleInfo reclaimedGcCycle)
+    {
+	this.reclaimedGcCycle = reclaimedGcCycle;
+    }
+
+    /**
+     * Gets the time by which the object is expected to be orphaned.
+     * 
+     * @return the leak deadline in milliseconds, 0 if the object was added
+     *         without an expected lifetime
+     * @since 0.5
+     */
+    public long getLeakDeadlineMillis()
+    {
+	return leakDeadline;
+    }
+
+    /**
+     * Sets the time by which the object is expected to be orphaned.
+     * 
+     * @param leakDeadline
+     *            the leak deadline in milliseconds, 0 for none
+     * @since 0.5
+     */
+    public void setLeakDeadlineMillis(long leakDeadline)
+    {
+	this.leakDeadline = leakDeadline;
+    }
+
+    /**
+     * Gets the time at which the object was suspected of leaking.
+     * 
+     * @return the leak suspect time
+     * @since 0.5
+     */
+    public Date getLeakSuspectTime()
+    {
+	// return defensive copy
+	return toDate(leakSuspectTime);
+    }
+
+    /**
+     * Gets the time at which the object was suspected of leaking in
+     * milliseconds.
+     * 
+     * @return the leak suspect time in milliseconds, 0 if the object has not
+     *         been suspected
+     * @since 0.5
+     */
+    public long getLeakSuspectTimeMillis()
+    {
+	return leakSuspectTime;
+    }
+
+    /**
+     * Sets the time at which the object was suspected of leaking.
+     * 
+     * @param leakSuspectTime
+     *            the leak suspect time in milliseconds
+     * @since 0.5
+     */
+    public void setLeakSuspectTimeMillis(long leakSuspectTime)
+    {
+	this.leakSuspectTime = leakSuspectTime;
+    }
+
+    /**
+     * Gets the shallow size of the object, measured when it was added.
+     * 
+     * @return the size in bytes, -1 if the {@link GcRadarAgent} is not
+     *         installed
+     * @since 0.5
+     */
+    public long getSizeBytes()
+    {
+	return size;
+    }
+
+    /**
+     * Gets the summed shallow size of the object & of the objects found under
+     * it, when the object is the root of a tree being monitored.
+     * 
+     * @return the size in bytes, -1 if the object is not a root or the
+     *         {@link GcRadarAgent} is not installed
+     * @since 0.5
+     */
+    public long getTreeSizeBytes()
+    {
+	return treeSize;
+    }
+
+    /**
+     * Sets the summed shallow size of the object & of the objects found under
+     * it.
+     * 
+     * @param treeSize
+     *            the size in bytes
+     * @since 0.5
+     */
+    public void setTreeSizeBytes(long treeSize)
+    {
+	this.treeSize = treeSize;
+    }
+
+    /**
+     * Gets the future completed on the GC events of the object.
+     * 
+     * @return the reclamation future, null if the object was not added with
+     *         one
+     * @since 0.5
+     */
+    public ReclamationFuture getReclamationFuture()
+    {
+	return reclamationFuture;
+    }
+
+    /**
+     * Sets the future completed on the GC events of the object.
+     * 
+     * @param reclamationFuture
+     *            the reclamation future
+     * @since 0.5
+     */
+    public void setReclamationFuture(ReclamationFuture reclamationFuture)
+    {
+	this.reclamationFuture = reclamationFuture;
+    }
+
+    /**
+     * Checks if the object has been evicted from the monitoring to make room
+     * for a sampled one, its references are then cleared & no GC event will
+     * be raised for it.
+     * 
+     * @return true, if evicted
+     * @since 0.5
+     */
+    public boolean isEvicted()
+    {
+	return evicted;
+    }
+
+    void evict()
+    {
+	evicted = true;
+	// the collector has no references of the key left to process
+	wRef.clear();
+	pRef.clear();
+    }
+
+    /**
+     * Gets the number of tags the object was added with.
+     * 
+     * @return the tag count
+     * @since 0.5
+     */
+    public int getTagCount()
+    {
+	return tags.length;
+    }
+
+    /**
+     * Gets a tag the object was added with.
+     * 
+     * @param index
+     *            the index of the tag, less than {@link #getTagCount()}
+     * @return the tag
+     * @since 0.5
+     */
+    public String getTag(int index)
+    {
+	return tags[index];
+    }
+
+    /**
+     * Sets the tags of the object, before the object is added to the watch
+     * list.
+     * 
+     * @param tags
+     *            the tags, copied
+     * @throws NullPointerException
+     *             if any of the tags is null
+     * @since 0.5
+     */
+    public void setTags(String... tags)
+    {
+	if (tags == null || tags.length == 0)
+	{
+	    this.tags = NO_TAGS;
+	    return;
+	}
+
+	String[] copy = tags.clone();
+	for (String tag : copy)
 	{
-	    return new Date(phantomCallbackTime.getTime());
+	    if (tag == null)
+	    {
+		throw new NullPointerException("Tag can not be null");
+	    }
+	}
+	this.tags = copy;
+    }
+
+    /**
+     * Gets the stack the object was added to the monitor from.
+     * 
+     * @return the creation trace, null if the object was not sampled
+     * @since 0.5
+     */
+    public CreationTrace getCreationTrace()
+    {
+	return creationTrace;
+    }
+
+    /**
+     * Sets the stack the object was added to the monitor from, before the
+     * object is added to the watch list.
+     * 
+     * @param creationTrace
+     *            the creation trace
+     * @since 0.5
+     */
+    public void setCreationTrace(CreationTrace creationTrace)
+    {
+	this.creationTrace = creationTrace;
+    }
+
+    private static Date toDate(long millis)
+    {
+	if (millis != 0)
+	{
+	    return new Date(millis);
 	}
 	else
 	{
@@ -215,8 +580,15 @@ public abstract class AbstractObjectRefrenceKey<T>
 	}
     }
 
-    public void setPhantomCallbackTime(Date phantomCallbackTime)
+    private static long toMillis(Date date)
     {
-	this.phantomCallbackTime = phantomCallbackTime;
+	if (date != null)
+	{
+	    return date.getTime();
+	}
+	else
+	{
+	    return 0;
+	}
     }
 }
@@ -38,13 +38,15 @@ public class AbstractObjectRefrenceKeyComparator implements Comparator<AbstractO
     @Override
     public int compare(AbstractObjectRefrenceKey<?> o1, AbstractObjectRefrenceKey<?> o2)
     {
-	if (o1.getWeakCallbackTime() == null && o2.getWeakCallbackTime() == null)
+	// the millisecond accessors are used as the Date accessors return
+	// defensive copies
+	if (o1.getWeakCallbackTimeMillis() == 0 && o2.getWeakCallbackTimeMillis() == 0)
 	{
-	    if (o1.getDateAdded().before(o2.getDateAdded()))
+	    if (o1.getDateAddedMillis() < o2.getDateAddedMillis())
 	    {
 		return 1;
 	    }
-	    else if (o1.getDateAdded().after(o2.getDateAdded()))
+	    else if (o1.getDateAddedMillis() > o2.getDateAddedMillis())
 	    {
 		return -1;
 	    }
@@ -53,13 +55,13 @@ public class AbstractObjectRefrenceKeyComparator implements Comparator<AbstractO
 		return 0;
 	    }
 	}
-	else if (o1.getWeakCallbackTime() != null && o2.getWeakCallbackTime() != null)
+	else if (o1.getWeakCallbackTimeMillis() != 0 && o2.getWeakCallbackTimeMillis() != 0)
 	{
-	    if (o1.getWeakCallbackTime().before(o2.getWeakCallbackTime()))
+	    if (o1.getWeakCallbackTimeMillis() < o2.getWeakCallbackTimeMillis())
 	    {
 		return 1;
 	    }
-	    else if (o1.getWeakCallbackTime().after(o2.getWeakCallbackTime()))
+	    else if (o1.getWeakCallbackTimeMillis() > o2.getWeakCallbackTimeMillis())
 	    {
 		return -1;
 	    }
@@ -70,7 +72,7 @@ public class AbstractObjectRefrenceKeyComparator implements Comparator<AbstractO
 	}
 	else
 	{
-	    if (o1.getWeakCallbackTime() != null)
+	    if (o1.getWeakCallbackTimeMillis() != 0)
 	    {
 		return 1;
 	    }
@@ -0,0 +1,147 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Class CountMinSketch counts occurrences of keys in a fixed number of
+ * counters, however many keys there are. A count is never underestimated, it
+ * is overestimated by at most <code>epsilon</code> times the total count with
+ * the probability <code>confidence</code>.
+ *
+ * The counters are updated without locking and the estimates can be read
+ * while keys are being added from other threads.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class CountMinSketch {
+
+	private final double epsilon;
+	private final double confidence;
+	private final int width;
+	private final int depth;
+	private final AtomicLongArray counts;
+	private final AtomicLong totalCount = new AtomicLong();
+
+	/**
+	 * Instantiates a new count-min sketch, of
+	 * <code>ceil(e / epsilon)</code> counters in each of
+	 * <code>ceil(ln(1 / (1 - confidence)))</code> rows.
+	 *
+	 * @param epsilon
+	 *            the error bound relative to the total count, in (0, 1)
+	 * @param confidence
+	 *            the probability of an estimate being within the bound, in
+	 *            (0, 1)
+	 * @throws IllegalArgumentException
+	 *             if epsilon or confidence is out of range
+	 */
+	public CountMinSketch(double epsilon, double confidence) {
+		if (!(epsilon > 0 && epsilon < 1)) {
+			throw new IllegalArgumentException(
+					"epsilon must be between 0 and 1");
+		}
+		if (!(confidence > 0 && confidence < 1)) {
+			throw new IllegalArgumentException(
+					"confidence must be between 0 and 1");
+		}
+
+		this.epsilon = epsilon;
+		this.confidence = confidence;
+		this.width = (int) Math.ceil(Math.E / epsilon);
+		this.depth = Math.max(1,
+				(int) Math.ceil(Math.log(1 / (1 - confidence))));
+		this.counts = new AtomicLongArray(width * depth);
+	}
+
+	/**
+	 * Adds an occurrence of the key.
+	 *
+	 * @param key
+	 *            the key
+	 */
+	public void add(String key) {
+		int hash = key.hashCode();
+		for (int row = 0; row < depth; row++) {
+			counts.incrementAndGet(row * width + column(hash, row));
+		}
+		totalCount.incrementAndGet();
+	}
+
+	/**
+	 * Gets the estimated number of occurrences of the key.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the estimate, at least the actual count
+	 */
+	public long estimate(String key) {
+		int hash = key.hashCode();
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate,
+					counts.get(row * width + column(hash, row)));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Gets the estimated number of occurrences of the key along with its error
+	 * bound.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the estimated count
+	 */
+	public EstimatedCount estimateCount(String key) {
+		long estimate = estimate(key);
+		return new EstimatedCount(estimate, Math.min(estimate,
+				getErrorBound()), confidence);
+	}
+
+	/**
+	 * Gets the bound on the overestimation of any key at the current total
+	 * count.
+	 *
+	 * @return the error bound
+	 */
+	public long getErrorBound() {
+		return (long) Math.ceil(epsilon * totalCount.get());
+	}
+
+	/**
+	 * Gets the number of occurrences of all the keys.
+	 *
+	 * @return the total count
+	 */
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+
+	private int column(int hash, int row) {
+		// a differently seeded mix of the hash for every row
+		long mixed = (hash + (row + 1) * 0x9E3779B97F4A7C15L)
+				* 0xBF58476D1CE4E5B9L;
+		mixed ^= mixed >>> 31;
+		mixed *= 0x94D049BB133111EBL;
+		mixed ^= mixed >>> 29;
+		return (int) ((mixed >>> 1) % width);
+	}
+}
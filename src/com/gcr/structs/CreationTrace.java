@@ -0,0 +1,123 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Class CreationTrace is the stack an object was added to a monitor from,
+ * interned in a {@link CreationTraceTrie}. A trace is a node of the trie, the
+ * trace of its parent without the outermost frame: the nodes of the first
+ * level are the creation sites, the frames that called the monitor, & the
+ * traces from a site share the nodes of their common innermost frames.
+ *
+ * The traces are compared by identity, two traces of the same trie are equal
+ * only if they are the same node.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class CreationTrace {
+
+	private final String frame;
+	private final CreationTrace parent;
+	private final int depth;
+
+	// the traces one frame further out, guarded by the lock of the trie
+	Map<String, CreationTrace> children;
+
+	CreationTrace(String frame, CreationTrace parent) {
+		this.frame = frame;
+		this.parent = parent;
+		this.depth = parent == null ? 1 : parent.depth + 1;
+	}
+
+	/**
+	 * Gets the outermost frame of the trace.
+	 *
+	 * @return the frame, e.g. com.acme.Orders.place(Orders.java:42)
+	 */
+	public String getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Gets the trace without its outermost frame.
+	 *
+	 * @return the parent, null for a creation site
+	 */
+	public CreationTrace getParent() {
+		return parent;
+	}
+
+	/**
+	 * Gets the number of frames of the trace.
+	 *
+	 * @return the depth, 1 for a creation site
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Gets the creation site of the trace, the trace of its innermost frame
+	 * only.
+	 *
+	 * @return the site
+	 */
+	public CreationTrace getSite() {
+		CreationTrace site = this;
+		while (site.parent != null) {
+			site = site.parent;
+		}
+		return site;
+	}
+
+	/**
+	 * Gets the frames of the trace.
+	 *
+	 * @return the frames, the innermost first
+	 */
+	public String[] getFrames() {
+		String[] frames = new String[depth];
+		for (CreationTrace node = this; node != null; node = node.parent) {
+			frames[node.depth - 1] = node.frame;
+		}
+		return frames;
+	}
+
+	Map<String, CreationTrace> getOrCreateChildren() {
+		if (children == null) {
+			children = new HashMap<String, CreationTrace>(4);
+		}
+		return children;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		String[] frames = getFrames();
+		for (int i = 0; i < frames.length; i++) {
+			if (i > 0) {
+				builder.append('\n');
+			}
+			builder.append("\tat ").append(frames[i]);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,141 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Class CreationTraceTrie interns the {@link CreationTrace creation
+ * traces}, so that the objects added from the same stack share one trace &
+ * the traces share the nodes of their common innermost frames. The trie is
+ * keyed by the innermost frame first, the nodes of its first level are the
+ * creation sites.
+ *
+ * The number of nodes is capped, once at the cap a trace that needs new nodes
+ * is cut to the frames already in the trie & counted as truncated; a trace
+ * whose site is not in the trie is not interned at all. The trie is thread
+ * safe, the traces are immutable once interned.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class CreationTraceTrie {
+
+	/** The default cap of the number of nodes. */
+	public static final int DEFAULT_MAX_NODES = 65536;
+
+	private final int maxNodes;
+
+	/** The creation sites, guarded by this. */
+	private final Map<String, CreationTrace> sites = new HashMap<String, CreationTrace>();
+	private int nodeCount;
+	private long truncatedCount;
+
+	/**
+	 * Instantiates a new trie of at most {@value #DEFAULT_MAX_NODES} nodes.
+	 */
+	public CreationTraceTrie() {
+		this(DEFAULT_MAX_NODES);
+	}
+
+	/**
+	 * Instantiates a new trie.
+	 *
+	 * @param maxNodes
+	 *            the cap of the number of nodes
+	 * @throws IllegalArgumentException
+	 *             if maxNodes is less than 1
+	 */
+	public CreationTraceTrie(int maxNodes) {
+		if (maxNodes < 1) {
+			throw new IllegalArgumentException(
+					"maxNodes must be greater than 0");
+		}
+		this.maxNodes = maxNodes;
+	}
+
+	/**
+	 * Interns a trace.
+	 *
+	 * @param frames
+	 *            the frames, the innermost first
+	 * @param count
+	 *            the number of frames of the array used
+	 * @return the trace, null if count is 0 or the trie is full
+	 */
+	public synchronized CreationTrace intern(String[] frames, int count) {
+		CreationTrace trace = null;
+		Map<String, CreationTrace> level = sites;
+		for (int i = 0; i < count; i++) {
+			CreationTrace node = level.get(frames[i]);
+			if (node == null) {
+				if (nodeCount >= maxNodes) {
+					truncatedCount++;
+					break;
+				}
+				node = new CreationTrace(frames[i], trace);
+				level.put(frames[i], node);
+				nodeCount++;
+			}
+
+			trace = node;
+			if (i + 1 < count) {
+				level = node.getOrCreateChildren();
+			}
+		}
+		return trace;
+	}
+
+	/**
+	 * Gets the creation sites interned.
+	 *
+	 * @return a copy of the sites
+	 */
+	public synchronized List<CreationTrace> getSites() {
+		return new ArrayList<CreationTrace>(sites.values());
+	}
+
+	/**
+	 * Gets the number of nodes of the trie.
+	 *
+	 * @return the node count
+	 */
+	public synchronized int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Gets the cap of the number of nodes.
+	 *
+	 * @return the max nodes
+	 */
+	public int getMaxNodes() {
+		return maxNodes;
+	}
+
+	/**
+	 * Gets the number of traces cut because the trie was full.
+	 *
+	 * @return the truncated count
+	 */
+	public synchronized long getTruncatedCount() {
+		return truncatedCount;
+	}
+}
@@ -0,0 +1,255 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+import java.util.List;
+
+/**
+ * The Class DeadlineTimerWheel keeps the leak deadlines of the monitored
+ * objects in a hierarchical timer wheel, so that the deadlines that have
+ * passed are found in constant time per tick instead of scanning every object.
+ * 
+ * The wheel has 4 levels of 64 slots. The slots of the first level are one
+ * tick wide, the ones of every further level 64 times wider, so the wheel
+ * spans 64<sup>4</sup> ticks, about 19 days with the default tick of
+ * {@value #DEFAULT_TICK_MILLIS} ms; later deadlines wait in the last level
+ * and are placed again once they come within reach. When the first level has
+ * gone round, the next slot of the level above is cascaded down. A deadline
+ * never expires early, and expires within a tick of passing provided the
+ * wheel is advanced that often.
+ * 
+ * The slots are linked lists running through the keys themselves, so
+ * scheduling & cancelling a deadline does not allocate. The wheel is not
+ * thread safe, it is guarded by the lock of the watch list the keys are in.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class DeadlineTimerWheel {
+
+	/** The default width of a tick. */
+	public static final long DEFAULT_TICK_MILLIS = 100;
+
+	private static final int SLOT_BITS = 6;
+	private static final int SLOT_COUNT = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOT_COUNT - 1;
+	private static final int LEVEL_COUNT = 4;
+
+	/** The farthest a deadline can be placed from the next tick. */
+	private static final long MAX_TICK_DELTA = (1L << (SLOT_BITS * LEVEL_COUNT)) - 1;
+
+	private final long tickMillis;
+	private final long startMillis;
+
+	/** The heads of the slots, indexed by level * SLOT_COUNT + slot. */
+	private final AbstractObjectRefrenceKey<?>[] slots = new AbstractObjectRefrenceKey<?>[LEVEL_COUNT
+			* SLOT_COUNT];
+
+	/** The next tick to be processed. */
+	private long nextTick;
+	private int size;
+
+	/**
+	 * Instantiates a new deadline timer wheel with the default tick, starting
+	 * now.
+	 */
+	public DeadlineTimerWheel() {
+		this(DEFAULT_TICK_MILLIS, System.currentTimeMillis());
+	}
+
+	/**
+	 * Instantiates a new deadline timer wheel.
+	 * 
+	 * @param tickMillis
+	 *            the width of a tick in milliseconds
+	 * @param startMillis
+	 *            the time of the first tick in milliseconds
+	 * @throws IllegalArgumentException
+	 *             if tickMillis is less than 1
+	 */
+	public DeadlineTimerWheel(long tickMillis, long startMillis) {
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException(
+					"Tick must be at least 1 millisecond");
+		}
+
+		this.tickMillis = tickMillis;
+		this.startMillis = startMillis;
+	}
+
+	/**
+	 * Schedules the leak deadline of the key, replacing the one already
+	 * scheduled for it. Keys without a deadline are not scheduled.
+	 * 
+	 * @param refrenceKey
+	 *            the key
+	 * @return true, if the deadline was scheduled
+	 */
+	public boolean schedule(AbstractObjectRefrenceKey<?> refrenceKey) {
+		cancel(refrenceKey);
+		if (refrenceKey.getLeakDeadlineMillis() == 0) {
+			return false;
+		}
+
+		insert(refrenceKey);
+		size++;
+		return true;
+	}
+
+	/**
+	 * Cancels the leak deadline of the key.
+	 * 
+	 * @param refrenceKey
+	 *            the key
+	 * @return true, if the deadline was scheduled
+	 */
+	public boolean cancel(AbstractObjectRefrenceKey<?> refrenceKey) {
+		if (refrenceKey.timerSlot < 0) {
+			return false;
+		}
+
+		unlink(refrenceKey);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Checks if the leak deadline of the key is scheduled.
+	 * 
+	 * @param refrenceKey
+	 *            the key
+	 * @return true, if scheduled
+	 */
+	public boolean isScheduled(AbstractObjectRefrenceKey<?> refrenceKey) {
+		return refrenceKey.timerSlot >= 0;
+	}
+
+	/**
+	 * Gets the number of deadlines scheduled.
+	 * 
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Advances the wheel to the given time and moves the keys whose deadline
+	 * has passed out of the wheel.
+	 * 
+	 * @param nowMillis
+	 *            the current time in milliseconds
+	 * @param expired
+	 *            the list the expired keys are added to
+	 * @return the number of expired keys
+	 */
+	@SuppressWarnings("unchecked")
+	public int expire(long nowMillis,
+			List<AbstractObjectRefrenceKey<Object>> expired) {
+		long targetTick = (nowMillis - startMillis) / tickMillis;
+		if (size == 0) {
+			// nothing to cascade, skip the idle ticks
+			nextTick = Math.max(nextTick, targetTick + 1);
+			return 0;
+		}
+
+		int count = 0;
+		while (nextTick <= targetTick) {
+			int index = (int) (nextTick & SLOT_MASK);
+			if (index == 0) {
+				for (int level = 1; level < LEVEL_COUNT; level++) {
+					int levelIndex = (int) ((nextTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+					cascade(level * SLOT_COUNT + levelIndex);
+					if (levelIndex != 0) {
+						break;
+					}
+				}
+			}
+
+			AbstractObjectRefrenceKey<?> refrenceKey;
+			while ((refrenceKey = slots[index]) != null) {
+				unlink(refrenceKey);
+				size--;
+				expired.add((AbstractObjectRefrenceKey<Object>) refrenceKey);
+				count++;
+			}
+
+			nextTick++;
+		}
+		return count;
+	}
+
+	private void cascade(int slot) {
+		AbstractObjectRefrenceKey<?> refrenceKey = slots[slot];
+		slots[slot] = null;
+
+		while (refrenceKey != null) {
+			AbstractObjectRefrenceKey<?> next = refrenceKey.timerNext;
+			refrenceKey.timerPrev = null;
+			refrenceKey.timerNext = null;
+			refrenceKey.timerSlot = -1;
+			insert(refrenceKey);
+			refrenceKey = next;
+		}
+	}
+
+	private void insert(AbstractObjectRefrenceKey<?> refrenceKey) {
+		long sinceStart = refrenceKey.getLeakDeadlineMillis() - startMillis;
+		// round up so the deadline never fires early
+		long tick = sinceStart <= 0 ? 0 : (sinceStart + tickMillis - 1)
+				/ tickMillis;
+		if (tick < nextTick) {
+			tick = nextTick;
+		}
+		long delta = tick - nextTick;
+		if (delta > MAX_TICK_DELTA) {
+			// out of reach, placed again when its slot is cascaded
+			tick = nextTick + MAX_TICK_DELTA;
+			delta = MAX_TICK_DELTA;
+		}
+
+		int level = 0;
+		while (delta >= (1L << (SLOT_BITS * (level + 1)))) {
+			level++;
+		}
+		int slot = level * SLOT_COUNT
+				+ (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+		AbstractObjectRefrenceKey<?> head = slots[slot];
+		refrenceKey.timerNext = head;
+		if (head != null) {
+			head.timerPrev = refrenceKey;
+		}
+		slots[slot] = refrenceKey;
+		refrenceKey.timerSlot = slot;
+	}
+
+	private void unlink(AbstractObjectRefrenceKey<?> refrenceKey) {
+		if (refrenceKey.timerPrev != null) {
+			refrenceKey.timerPrev.timerNext = refrenceKey.timerNext;
+		} else {
+			slots[refrenceKey.timerSlot] = refrenceKey.timerNext;
+		}
+		if (refrenceKey.timerNext != null) {
+			refrenceKey.timerNext.timerPrev = refrenceKey.timerPrev;
+		}
+
+		refrenceKey.timerPrev = null;
+		refrenceKey.timerNext = null;
+		refrenceKey.timerSlot = -1;
+	}
+}
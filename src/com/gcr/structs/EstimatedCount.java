@@ -0,0 +1,101 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+/**
+ * The Class EstimatedCount is a count that is not known exactly. The actual
+ * count lies between <code>estimate - errorBound</code> and
+ * <code>estimate</code> with the probability <code>confidence</code>.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class EstimatedCount {
+
+	private final long estimate;
+	private final long errorBound;
+	private final double confidence;
+
+	/**
+	 * Instantiates a new estimated count.
+	 *
+	 * @param estimate
+	 *            the estimate, never below the actual count
+	 * @param errorBound
+	 *            the bound on the overestimation
+	 * @param confidence
+	 *            the probability of the actual count being within the bound
+	 */
+	public EstimatedCount(long estimate, long errorBound, double confidence) {
+		this.estimate = estimate;
+		this.errorBound = errorBound;
+		this.confidence = confidence;
+	}
+
+	/**
+	 * Gets the estimate.
+	 *
+	 * @return the estimate
+	 */
+	public long getEstimate() {
+		return estimate;
+	}
+
+	/**
+	 * Gets the bound on the overestimation.
+	 *
+	 * @return the error bound
+	 */
+	public long getErrorBound() {
+		return errorBound;
+	}
+
+	/**
+	 * Gets the lowest count the actual count can be, within the confidence.
+	 *
+	 * @return the lower bound
+	 */
+	public long getLowerBound() {
+		return estimate - errorBound;
+	}
+
+	/**
+	 * Gets the probability of the actual count being within the bound.
+	 *
+	 * @return the confidence
+	 */
+	public double getConfidence() {
+		return confidence;
+	}
+
+	/**
+	 * Adds an exactly known count to the estimate.
+	 *
+	 * @param exact
+	 *            the exact count
+	 * @return the sum
+	 */
+	public EstimatedCount plus(long exact) {
+		return new EstimatedCount(estimate + exact, errorBound, confidence);
+	}
+
+	@Override
+	public String toString() {
+		return estimate + " (-" + errorBound + " at " + confidence * 100
+				+ "%)";
+	}
+}
@@ -0,0 +1,147 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+/**
+ * The Class GcCycleInfo describes a garbage collection as reported by the
+ * notifications of the garbage collector MXBeans, the cycle a GC event of a
+ * monitored object is attributed to.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public final class GcCycleInfo {
+
+	private final long id;
+	private final String collectorName;
+	private final String action;
+	private final String cause;
+	private final long startTimeMillis;
+	private final long endTimeMillis;
+	private final long durationMillis;
+
+	/**
+	 * Instantiates a new GC cycle info.
+	 *
+	 * @param id
+	 *            the id of the collection, counted per collector
+	 * @param collectorName
+	 *            the name of the collector, e.g. "G1 Young Generation"
+	 * @param action
+	 *            the action, e.g. "end of minor GC"
+	 * @param cause
+	 *            the cause, e.g. "G1 Evacuation Pause"
+	 * @param startTimeMillis
+	 *            the start of the collection in milliseconds since the epoch
+	 * @param endTimeMillis
+	 *            the end of the collection in milliseconds since the epoch
+	 * @param durationMillis
+	 *            the duration reported by the collector
+	 */
+	public GcCycleInfo(long id, String collectorName, String action,
+			String cause, long startTimeMillis, long endTimeMillis,
+			long durationMillis) {
+		this.id = id;
+		this.collectorName = collectorName;
+		this.action = action;
+		this.cause = cause;
+		this.startTimeMillis = startTimeMillis;
+		this.endTimeMillis = endTimeMillis;
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * Gets the id of the collection, counted per collector.
+	 *
+	 * @return the id
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the name of the collector.
+	 *
+	 * @return the collector name
+	 */
+	public String getCollectorName() {
+		return collectorName;
+	}
+
+	/**
+	 * Gets the action of the collection, e.g. "end of minor GC" or "end of
+	 * major GC".
+	 *
+	 * @return the action
+	 */
+	public String getAction() {
+		return action;
+	}
+
+	/**
+	 * Gets the cause of the collection.
+	 *
+	 * @return the cause
+	 */
+	public String getCause() {
+		return cause;
+	}
+
+	/**
+	 * Gets the start of the collection.
+	 *
+	 * @return the start time in milliseconds since the epoch
+	 */
+	public long getStartTimeMillis() {
+		return startTimeMillis;
+	}
+
+	/**
+	 * Gets the end of the collection.
+	 *
+	 * @return the end time in milliseconds since the epoch
+	 */
+	public long getEndTimeMillis() {
+		return endTimeMillis;
+	}
+
+	/**
+	 * Gets the duration of the collection, the pause for the stop the world
+	 * collectors & the length of the cycle for the concurrent ones.
+	 *
+	 * @return the duration in milliseconds
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Checks if the collection was of the young generation only.
+	 *
+	 * @return true, if minor
+	 */
+	public boolean isMinor() {
+		return action.indexOf("minor") >= 0
+				|| collectorName.indexOf("Minor") >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return collectorName + " #" + id + " (" + action + ", " + cause + ", "
+				+ durationMillis + " ms)";
+	}
+}
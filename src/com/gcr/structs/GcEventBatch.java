@@ -0,0 +1,209 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+/**
+ * The Class GcEventBatch is a reusable chunk of GC events handed over to a
+ * {@link com.gcr.callbacks.GcRadarBatchCallback}. The events are stored in
+ * parallel arrays, the entry at an index is made of the key of the object and
+ * a bit mask of the events detected for it.
+ * 
+ * The entries can be read one at a time using the index based accessors or in
+ * bulk using {@link #getKeys()} and {@link #getEvents()}, in which case only the
+ * first {@link #size()} elements are valid.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class GcEventBatch
+{
+    /** The event bit set when the object has been orphaned. */
+    public static final byte PRE_GC = 1;
+
+    /** The event bit set when the object has been reclaimed. */
+    public static final byte POST_GC = 2;
+
+    private final AbstractObjectRefrenceKey<Object>[] keys;
+    private final byte[] events;
+    private int size;
+
+    /**
+     * Instantiates a new GC event batch.
+     * 
+     * @param capacity
+     *            the maximum number of entries in the batch
+     * @throws IllegalArgumentException
+     *             if capacity is less than 1
+     */
+    @SuppressWarnings("unchecked")
+    public GcEventBatch(int capacity)
+    {
+	if (capacity < 1)
+	{
+	    throw new IllegalArgumentException("Capacity must be greater than 0");
+	}
+
+	keys = (AbstractObjectRefrenceKey<Object>[]) new AbstractObjectRefrenceKey<?>[capacity];
+	events = new byte[capacity];
+    }
+
+    /**
+     * Adds the event for the object. If the last entry is for the same object
+     * the event is merged into it.
+     * 
+     * @param refrenceKey
+     *            the refrence key of the object
+     * @param event
+     *            {@link #PRE_GC} or {@link #POST_GC}
+     * @return true, if the event was added or merged, false if the batch is
+     *         full
+     */
+    public boolean add(AbstractObjectRefrenceKey<Object> refrenceKey, byte event)
+    {
+	if (size > 0 && keys[size - 1] == refrenceKey)
+	{
+	    events[size - 1] |= event;
+	    return true;
+	}
+	if (size == keys.length)
+	{
+	    return false;
+	}
+
+	keys[size] = refrenceKey;
+	events[size] = event;
+	size++;
+	return true;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear()
+    {
+	// help GC
+	for (int i = 0; i < size; i++)
+	{
+	    keys[i] = null;
+	}
+	size = 0;
+    }
+
+    /**
+     * Gets the number of entries.
+     * 
+     * @return the size
+     */
+    public int size()
+    {
+	return size;
+    }
+
+    /**
+     * Checks if the batch is empty.
+     * 
+     * @return true, if empty
+     */
+    public boolean isEmpty()
+    {
+	return size == 0;
+    }
+
+    /**
+     * Gets the refrence key of the entry.
+     * 
+     * @param index
+     *            the index of the entry
+     * @return the refrence key
+     * @throws IndexOutOfBoundsException
+     *             if the index is not less than the size
+     */
+    public AbstractObjectRefrenceKey<Object> getKey(int index)
+    {
+	checkIndex(index);
+	return keys[index];
+    }
+
+    /**
+     * Gets the event bit mask of the entry.
+     * 
+     * @param index
+     *            the index of the entry
+     * @return the events
+     * @throws IndexOutOfBoundsException
+     *             if the index is not less than the size
+     */
+    public byte getEvent(int index)
+    {
+	checkIndex(index);
+	return events[index];
+    }
+
+    /**
+     * Checks if the object of the entry has been orphaned.
+     * 
+     * @param index
+     *            the index of the entry
+     * @return true, if the pre GC event is present
+     */
+    public boolean isPreGc(int index)
+    {
+	return (getEvent(index) & PRE_GC) != 0;
+    }
+
+    /**
+     * Checks if the object of the entry has been reclaimed.
+     * 
+     * @param index
+     *            the index of the entry
+     * @return true, if the post GC event is present
+     */
+    public boolean isPostGc(int index)
+    {
+	return (getEvent(index) & POST_GC) != 0;
+    }
+
+    /**
+     * Gets the backing array of the keys, only the first {@link #size()}
+     * elements are valid.
+     * 
+     * @return the keys
+     */
+    public AbstractObjectRefrenceKey<Object>[] getKeys()
+    {
+	return keys;
+    }
+
+    /**
+     * Gets the backing array of the event bit masks, only the first
+     * {@link #size()} elements are valid.
+     * 
+     * @return the events
+     */
+    public byte[] getEvents()
+    {
+	return events;
+    }
+
+    private void checkIndex(int index)
+    {
+	if (index < 0 || index >= size)
+	{
+	    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	}
+    }
+}
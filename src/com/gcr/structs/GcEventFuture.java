@@ -0,0 +1,212 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Class GcEventFuture is a {@link Future} completed by gcRadar when a GC
+ * event is detected. Besides waiting on it, listeners can be added that are
+ * run once the future is done, which is how the futures are composed.
+ * 
+ * The futures are completed on the monitoring thread, after the lock of the
+ * watch list has been released. A listener run by a {@link #DIRECT_EXECUTOR}
+ * must still be short and must not block. A listener that throws does not
+ * keep the other listeners from being run, the failure is only counted, see
+ * {@link #getFailedListenerCount()}.
+ * 
+ * @param <V>
+ *            the type of the result
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class GcEventFuture<V> implements Future<V> {
+
+	/** The executor that runs the listeners on the completing thread. */
+	public static final Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private static final int PENDING = 0;
+	private static final int COMPLETING = 1;
+	private static final int COMPLETED = 2;
+	private static final int CANCELLED = 3;
+
+	/** The number of listeners that have thrown, across all the futures. */
+	private static final AtomicLong FAILED_LISTENER_COUNT = new AtomicLong();
+
+	private final AtomicInteger state = new AtomicInteger(PENDING);
+	private final CountDownLatch doneLatch = new CountDownLatch(1);
+
+	private volatile V value;
+
+	/** The listeners waiting for the future, null once it is done. */
+	private List<Runnable> listeners = new ArrayList<Runnable>(1);
+
+	/**
+	 * Adds a listener that is run once the future is done, right away if it
+	 * already is.
+	 * 
+	 * @param listener
+	 *            the listener
+	 * @param executor
+	 *            the executor the listener is run by
+	 * @throws NullPointerException
+	 *             if listener or executor is null
+	 */
+	public void addListener(final Runnable listener, final Executor executor) {
+		if (listener == null || executor == null) {
+			throw new NullPointerException(
+					"Listener & executor can not be null");
+		}
+
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				executor.execute(listener);
+			}
+		};
+
+		synchronized (this) {
+			if (listeners != null) {
+				listeners.add(task);
+				return;
+			}
+		}
+		task.run();
+	}
+
+	/**
+	 * Gets the number of listeners, across all the futures, that have thrown
+	 * when they were run or handed to their executor.
+	 * 
+	 * @return the failed listener count
+	 */
+	public static long getFailedListenerCount() {
+		return FAILED_LISTENER_COUNT.get();
+	}
+
+	/**
+	 * Cancels the future, threads waiting for it are released with a
+	 * {@link CancellationException}. The monitoring of the object is not
+	 * affected.
+	 * 
+	 * @param mayInterruptIfRunning
+	 *            ignored, there is no task to interrupt
+	 * @return true, if the future was cancelled by this call
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!state.compareAndSet(PENDING, CANCELLED)) {
+			return false;
+		}
+
+		done();
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return state.get() == CANCELLED;
+	}
+
+	@Override
+	public boolean isDone() {
+		int current = state.get();
+		return current == COMPLETED || current == CANCELLED;
+	}
+
+	@Override
+	public V get() throws InterruptedException, ExecutionException {
+		doneLatch.await();
+		return getDone();
+	}
+
+	@Override
+	public V get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!doneLatch.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return getDone();
+	}
+
+	/**
+	 * Completes the future with the value.
+	 * 
+	 * @param value
+	 *            the value
+	 * @return true, if the future was completed by this call
+	 */
+	protected boolean complete(V value) {
+		if (!state.compareAndSet(PENDING, COMPLETING)) {
+			return false;
+		}
+
+		this.value = value;
+		state.set(COMPLETED);
+		done();
+		return true;
+	}
+
+	/**
+	 * Gets the value of a completed future without waiting.
+	 * 
+	 * @return the value, null if the future is not completed
+	 */
+	V getNow() {
+		return state.get() == COMPLETED ? value : null;
+	}
+
+	private V getDone() {
+		if (state.get() == CANCELLED) {
+			throw new CancellationException();
+		}
+		return value;
+	}
+
+	private void done() {
+		doneLatch.countDown();
+
+		List<Runnable> waiting;
+		synchronized (this) {
+			waiting = listeners;
+			listeners = null;
+		}
+		for (Runnable listener : waiting) {
+			try {
+				listener.run();
+			} catch (Throwable t) {
+				// the other listeners & the completing thread are not affected
+				FAILED_LISTENER_COUNT.incrementAndGet();
+			}
+		}
+	}
+}
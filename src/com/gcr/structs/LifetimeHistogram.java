@@ -0,0 +1,268 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Class LifetimeHistogram is a log-linear bucketed histogram of
+ * non-negative values, in the manner of an HDR histogram. Every power of 2 is
+ * split into 2<sup>precisionBits</sup> linear sub-buckets, so the values are
+ * recorded with a relative error of at most 2<sup>-precisionBits</sup> over
+ * the whole range of <code>long</code> using a fixed number of counters.
+ * 
+ * Recording a value does not allocate and the queries can be made while values
+ * are being recorded from another thread.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class LifetimeHistogram {
+
+	/** The default number of precision bits, a relative error of 6.25%. */
+	public static final int DEFAULT_PRECISION_BITS = 4;
+
+	private final int precisionBits;
+	private final int subBucketCount;
+	private final AtomicLongArray counts;
+
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalValue = new AtomicLong();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	/**
+	 * Instantiates a new lifetime histogram with the default precision.
+	 */
+	public LifetimeHistogram() {
+		this(DEFAULT_PRECISION_BITS);
+	}
+
+	/**
+	 * Instantiates a new lifetime histogram.
+	 * 
+	 * @param precisionBits
+	 *            the number of bits of precision of the buckets, between 1
+	 *            and 10
+	 * @throws IllegalArgumentException
+	 *             if precisionBits is out of range
+	 */
+	public LifetimeHistogram(int precisionBits) {
+		if (precisionBits < 1 || precisionBits > 10) {
+			throw new IllegalArgumentException(
+					"Precision bits must be between 1 and 10");
+		}
+
+		this.precisionBits = precisionBits;
+		this.subBucketCount = 1 << precisionBits;
+		this.counts = new AtomicLongArray(subBucketCount * (64 - precisionBits));
+	}
+
+	/**
+	 * Records a value, negative values are recorded as 0.
+	 * 
+	 * @param value
+	 *            the value
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+
+		counts.incrementAndGet(bucketIndex(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+
+		long max;
+		while (value > (max = maxValue.get())) {
+			if (maxValue.compareAndSet(max, value)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Adds the values recorded by the other histogram to this one.
+	 * 
+	 * @param other
+	 *            the other histogram
+	 * @throws IllegalArgumentException
+	 *             if the precisions differ
+	 */
+	public void add(LifetimeHistogram other) {
+		if (other.precisionBits != precisionBits) {
+			throw new IllegalArgumentException(
+					"Histograms of different precision can not be added");
+		}
+
+		for (int i = 0; i < counts.length(); i++) {
+			long count = other.counts.get(i);
+			if (count != 0) {
+				counts.addAndGet(i, count);
+			}
+		}
+		totalCount.addAndGet(other.totalCount.get());
+		totalValue.addAndGet(other.totalValue.get());
+
+		long otherMax = other.maxValue.get();
+		long max;
+		while (otherMax > (max = maxValue.get())) {
+			if (maxValue.compareAndSet(max, otherMax)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of values recorded.
+	 * 
+	 * @return the count
+	 */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * Gets the sum of the values recorded.
+	 * 
+	 * @return the sum
+	 */
+	public long getSum() {
+		return totalValue.get();
+	}
+
+	/**
+	 * Gets the largest value recorded.
+	 * 
+	 * @return the max, 0 if nothing has been recorded
+	 */
+	public long getMax() {
+		return maxValue.get();
+	}
+
+	/**
+	 * Gets the mean of the values recorded.
+	 * 
+	 * @return the mean, 0 if nothing has been recorded
+	 */
+	public double getMean() {
+		long count = totalCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		return (double) totalValue.get() / count;
+	}
+
+	/**
+	 * Gets the value below which the given percentage of the recorded values
+	 * fall, within the precision of the histogram.
+	 * 
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return the value at the percentile, 0 if nothing has been recorded
+	 * @throws IllegalArgumentException
+	 *             if the percentile is out of range
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(
+					"Percentile must be between 0 and 100");
+		}
+
+		long count = totalCount.get();
+		if (count == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(bucketUpperBound(i), maxValue.get());
+			}
+		}
+		return maxValue.get();
+	}
+
+	/**
+	 * Gets the number of buckets, the indexes used by
+	 * {@link #getBucketCount(int)} range from 0 to this value - 1.
+	 * 
+	 * @return the number of buckets
+	 */
+	public int getBucketLength() {
+		return counts.length();
+	}
+
+	/**
+	 * Gets the number of values recorded in the bucket.
+	 * 
+	 * @param index
+	 *            the index of the bucket
+	 * @return the count
+	 */
+	public long getBucketCount(int index) {
+		return counts.get(index);
+	}
+
+	/**
+	 * Gets the highest value that is recorded in the bucket.
+	 * 
+	 * @param index
+	 *            the index of the bucket
+	 * @return the upper bound of the bucket
+	 */
+	public long getBucketUpperBound(int index) {
+		return bucketUpperBound(index);
+	}
+
+	/**
+	 * Clears all the recorded values. Values recorded concurrently may be
+	 * partially cleared.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		totalValue.set(0);
+		maxValue.set(0);
+	}
+
+	private int bucketIndex(long value) {
+		if (value < subBucketCount) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - precisionBits;
+		int subBucket = (int) (value >>> shift) - subBucketCount;
+		return subBucketCount + shift * subBucketCount + subBucket;
+	}
+
+	private long bucketUpperBound(int index) {
+		if (index < subBucketCount) {
+			return index;
+		}
+
+		int shift = (index - subBucketCount) / subBucketCount;
+		int subBucket = (index - subBucketCount) % subBucketCount;
+		long lowerBound = (long) (subBucketCount + subBucket) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+}
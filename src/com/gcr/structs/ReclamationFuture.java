@@ -0,0 +1,80 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+/**
+ * The Class ReclamationFuture is completed with the key of a monitored object
+ * once the object has been reclaimed by the garbage collector. The
+ * {@link #getOrphanedFuture() orphaned future} is completed earlier, once the
+ * object has been orphaned, or together with this future if the object was
+ * reclaimed before its orphaning was noticed.
+ * 
+ * If the object is removed from the monitoring both the futures are
+ * cancelled. Cancelling a future does not affect the monitoring of the
+ * object.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class ReclamationFuture extends
+		GcEventFuture<AbstractObjectRefrenceKey<Object>> {
+
+	private final GcEventFuture<AbstractObjectRefrenceKey<Object>> orphanedFuture = new GcEventFuture<AbstractObjectRefrenceKey<Object>>();
+
+	/**
+	 * Gets the future completed once the object has been orphaned.
+	 * 
+	 * @return the orphaned future
+	 */
+	public GcEventFuture<AbstractObjectRefrenceKey<Object>> getOrphanedFuture() {
+		return orphanedFuture;
+	}
+
+	/**
+	 * Completes the orphaned future, called by the monitoring module on the
+	 * pre GC event of the object.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public void completeOrphaned(AbstractObjectRefrenceKey<Object> refrenceKey) {
+		orphanedFuture.complete(refrenceKey);
+	}
+
+	/**
+	 * Completes the futures, called by the monitoring module on the post GC
+	 * event of the object.
+	 * 
+	 * @param refrenceKey
+	 *            the key of the object
+	 */
+	public void completeReclaimed(AbstractObjectRefrenceKey<Object> refrenceKey) {
+		orphanedFuture.complete(refrenceKey);
+		complete(refrenceKey);
+	}
+
+	/**
+	 * Cancels both the futures, called when the object is removed from the
+	 * monitoring.
+	 * 
+	 * @return true, if the futures were pending
+	 */
+	public boolean cancelAll() {
+		boolean cancelled = orphanedFuture.cancel(false);
+		return cancel(false) || cancelled;
+	}
+}
@@ -0,0 +1,114 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Class ReclamationFutureGroup is completed once all the objects of a group
+ * have been reclaimed, with the keys of the objects in the order of the
+ * futures given. The {@link #getOrphanedFuture() orphaned future} of the group
+ * is completed once all the objects have been orphaned. A group, or its
+ * orphaned future, is cancelled as soon as one of the futures it is made of
+ * is cancelled.
+ * 
+ * <pre>
+ * List&lt;ReclamationFuture&gt; futures = ...;
+ * new ReclamationFutureGroup(futures).get(10, TimeUnit.SECONDS);
+ * </pre>
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class ReclamationFutureGroup extends
+		GcEventFuture<List<AbstractObjectRefrenceKey<Object>>> {
+
+	private final GcEventFuture<List<AbstractObjectRefrenceKey<Object>>> orphanedFuture = new GcEventFuture<List<AbstractObjectRefrenceKey<Object>>>();
+
+	/**
+	 * Instantiates a new group of futures.
+	 * 
+	 * @param futures
+	 *            the futures of the objects of the group
+	 * @throws NullPointerException
+	 *             if futures or any of the futures is null
+	 */
+	public ReclamationFutureGroup(
+			Collection<? extends ReclamationFuture> futures) {
+		List<GcEventFuture<AbstractObjectRefrenceKey<Object>>> reclaimed = new ArrayList<GcEventFuture<AbstractObjectRefrenceKey<Object>>>(
+				futures.size());
+		List<GcEventFuture<AbstractObjectRefrenceKey<Object>>> orphaned = new ArrayList<GcEventFuture<AbstractObjectRefrenceKey<Object>>>(
+				futures.size());
+		for (ReclamationFuture future : futures) {
+			if (future == null) {
+				throw new NullPointerException("Future can not be null");
+			}
+			reclaimed.add(future);
+			orphaned.add(future.getOrphanedFuture());
+		}
+
+		join(this, reclaimed);
+		join(orphanedFuture, orphaned);
+	}
+
+	/**
+	 * Gets the future completed once all the objects of the group have been
+	 * orphaned.
+	 * 
+	 * @return the orphaned future
+	 */
+	public GcEventFuture<List<AbstractObjectRefrenceKey<Object>>> getOrphanedFuture() {
+		return orphanedFuture;
+	}
+
+	private static void join(
+			final GcEventFuture<List<AbstractObjectRefrenceKey<Object>>> group,
+			final List<GcEventFuture<AbstractObjectRefrenceKey<Object>>> futures) {
+		if (futures.isEmpty()) {
+			group.complete(Collections.<AbstractObjectRefrenceKey<Object>> emptyList());
+			return;
+		}
+
+		final AtomicInteger remaining = new AtomicInteger(futures.size());
+		for (final GcEventFuture<AbstractObjectRefrenceKey<Object>> future : futures) {
+			future.addListener(new Runnable() {
+				@Override
+				public void run() {
+					if (future.isCancelled()) {
+						group.cancel(false);
+					} else if (remaining.decrementAndGet() == 0) {
+						group.complete(collect(futures));
+					}
+				}
+			}, DIRECT_EXECUTOR);
+		}
+	}
+
+	private static List<AbstractObjectRefrenceKey<Object>> collect(
+			List<GcEventFuture<AbstractObjectRefrenceKey<Object>>> futures) {
+		List<AbstractObjectRefrenceKey<Object>> keys = new ArrayList<AbstractObjectRefrenceKey<Object>>(
+				futures.size());
+		for (GcEventFuture<AbstractObjectRefrenceKey<Object>> future : futures) {
+			keys.add(future.getNow());
+		}
+		return Collections.unmodifiableList(keys);
+	}
+}
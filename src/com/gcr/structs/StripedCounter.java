@@ -0,0 +1,112 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Class StripedCounter is a counter that spreads its updates over several
+ * cells, chosen by the updating thread, so concurrent updates do not contend
+ * on a single memory location. The cells are padded apart to keep them on
+ * separate cache lines. Reading the counter sums the cells and is therefore
+ * more expensive than updating it, the counter suits statistics that are
+ * updated often and read rarely.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class StripedCounter {
+
+	/** The number of longs between two cells, 128 bytes. */
+	private static final int PADDING = 16;
+
+	private static final int MAX_STRIPES = 64;
+
+	private final int mask;
+	private final AtomicLongArray cells;
+
+	/**
+	 * Instantiates a new striped counter with twice as many stripes as there
+	 * are processors.
+	 */
+	public StripedCounter() {
+		this(2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Instantiates a new striped counter.
+	 * 
+	 * @param stripes
+	 *            the number of stripes, rounded up to a power of 2 and capped
+	 *            at 64
+	 */
+	public StripedCounter(int stripes) {
+		int size = 1;
+		while (size < stripes && size < MAX_STRIPES) {
+			size <<= 1;
+		}
+
+		this.mask = size - 1;
+		this.cells = new AtomicLongArray(size * PADDING);
+	}
+
+	/**
+	 * Adds 1 to the counter.
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * Adds the value to the counter.
+	 * 
+	 * @param value
+	 *            the value
+	 */
+	public void add(long value) {
+		cells.getAndAdd(cellIndex(), value);
+	}
+
+	/**
+	 * Gets the sum of the counter, the updates made concurrently may or may not
+	 * be included.
+	 * 
+	 * @return the sum
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < cells.length(); i += PADDING) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * Resets the counter to 0, the updates made concurrently may be lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < cells.length(); i += PADDING) {
+			cells.set(i, 0);
+		}
+	}
+
+	private int cellIndex() {
+		// spread the thread ids, consecutive ids would share neighbouring cells
+		long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+		return ((int) (hash >>> 32) & mask) * PADDING;
+	}
+}
@@ -0,0 +1,191 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.structs;
+
+import java.util.Random;
+
+/**
+ * The Class TrackingReservoir caps the number of objects a monitor tracks.
+ * Below the cap every object is admitted. At the cap the objects are admitted
+ * by reservoir sampling: the n<sup>th</sup> object added is admitted with
+ * the probability <code>capacity / n</code> & then takes the place of a
+ * tracked object picked at random, which is {@link
+ * AbstractObjectRefrenceKey#isEvicted() evicted}. The tracked objects are thus
+ * a uniform sample of all the objects added, & the memory & the scanning cost
+ * of the monitor are bounded by the capacity.
+ *
+ * The reservoir is not thread safe, it is guarded by the lock of the watch
+ * list of the monitor.
+ *
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class TrackingReservoir {
+
+	/** The slot returned by {@link #admit()} for an object not admitted. */
+	public static final int NOT_ADMITTED = -1;
+
+	private final Random random;
+
+	private int capacity;
+	private AbstractObjectRefrenceKey<?>[] slots = new AbstractObjectRefrenceKey<?>[0];
+	private int size;
+	private long seenCount;
+
+	/**
+	 * Instantiates a new reservoir without a cap.
+	 */
+	public TrackingReservoir() {
+		this(new Random());
+	}
+
+	/**
+	 * Instantiates a new reservoir without a cap, picking with the random
+	 * generator given.
+	 *
+	 * @param random
+	 *            the random generator
+	 */
+	public TrackingReservoir(Random random) {
+		this.random = random;
+	}
+
+	/**
+	 * Sets the maximum number of objects tracked, only while no object is.
+	 *
+	 * @param capacity
+	 *            the capacity, 0 for no cap
+	 * @throws IllegalArgumentException
+	 *             if capacity is negative
+	 * @throws IllegalStateException
+	 *             if objects are being tracked
+	 */
+	public void setCapacity(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity can not be negative");
+		}
+		if (size > 0) {
+			throw new IllegalStateException(
+					"The capacity can only be set while no object is tracked");
+		}
+
+		this.capacity = capacity;
+		this.slots = new AbstractObjectRefrenceKey<?>[capacity];
+		this.seenCount = 0;
+	}
+
+	/**
+	 * Gets the maximum number of objects tracked.
+	 *
+	 * @return the capacity, 0 if there is no cap
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Checks if the number of objects tracked is capped.
+	 *
+	 * @return true, if capped
+	 */
+	public boolean isCapped() {
+		return capacity > 0;
+	}
+
+	/**
+	 * Decides whether the next object added is admitted, before anything is
+	 * allocated for it.
+	 *
+	 * @return the slot the object is to be {@link #place(AbstractObjectRefrenceKey, int)
+	 *         placed} in, {@link #NOT_ADMITTED} if it is not admitted
+	 */
+	public int admit() {
+		seenCount++;
+		if (size < capacity) {
+			return size;
+		}
+
+		long pick = (long) (random.nextDouble() * seenCount);
+		return pick < capacity ? (int) pick : NOT_ADMITTED;
+	}
+
+	/**
+	 * Places the key of an admitted object in its slot, evicting the key in
+	 * the slot if any. The evicted key has to be removed from the monitoring.
+	 *
+	 * @param refrenceKey
+	 *            the key
+	 * @param slot
+	 *            the slot returned by {@link #admit()}
+	 * @return the evicted key, null if the slot was free
+	 */
+	public AbstractObjectRefrenceKey<?> place(
+			AbstractObjectRefrenceKey<?> refrenceKey, int slot) {
+		AbstractObjectRefrenceKey<?> evicted = null;
+		if (slot == size) {
+			size++;
+		} else {
+			evicted = slots[slot];
+			evicted.reservoirSlot = -1;
+			evicted.evict();
+		}
+
+		slots[slot] = refrenceKey;
+		refrenceKey.reservoirSlot = slot;
+		return evicted;
+	}
+
+	/**
+	 * Removes the key of an object reclaimed or removed from the monitoring,
+	 * freeing its slot.
+	 *
+	 * @param refrenceKey
+	 *            the key
+	 */
+	public void remove(AbstractObjectRefrenceKey<?> refrenceKey) {
+		int slot = refrenceKey.reservoirSlot;
+		if (slot < 0) {
+			return;
+		}
+
+		// the last key fills the gap so that the slots stay contiguous
+		AbstractObjectRefrenceKey<?> last = slots[--size];
+		slots[slot] = last;
+		last.reservoirSlot = slot;
+		slots[size] = null;
+		refrenceKey.reservoirSlot = -1;
+	}
+
+	/**
+	 * Gets the number of objects tracked.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of objects added since the capacity was set, admitted or
+	 * not.
+	 *
+	 * @return the seen count
+	 */
+	public long getSeenCount() {
+		return seenCount;
+	}
+}
@@ -0,0 +1,276 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.gcr.tools.structs.GcCycle;
+
+/**
+ * The Class GcLogParser reads the GC cycles from a JVM unified GC log, as
+ * written with <code>-Xlog:gc</code> or <code>-Xlog:gc*</code>.
+ * 
+ * The time of a line is taken from its <code>time</code>,
+ * <code>utctime</code>, <code>timemillis</code> or <code>timenanos</code>
+ * decoration. Logs decorated with the uptime of the JVM only need the start
+ * time of the JVM to be placed on the same time line as the journal. Only the
+ * lines tagged with <code>gc</code> alone are used, the other tag sets of
+ * <code>-Xlog:gc*</code> report the phases of the cycles.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class GcLogParser {
+
+	private static final Pattern GC_ID = Pattern
+			.compile("^GC\\((\\d+)\\)\\s*(.*)$");
+	private static final Pattern DURATION = Pattern
+			.compile("(\\d+(?:[.,]\\d+)?)ms$");
+	private static final Pattern TIME_DECORATION = Pattern
+			.compile("^\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}[.,]\\d{3}[+-]\\d{4}$");
+	private static final Pattern MILLIS_DECORATION = Pattern
+			.compile("^(\\d+)ms$");
+	private static final Pattern NANOS_DECORATION = Pattern
+			.compile("^(\\d+)ns$");
+	private static final Pattern SECONDS_DECORATION = Pattern
+			.compile("^(\\d+)[.,](\\d+)s$");
+	private static final Pattern TAGS_DECORATION = Pattern
+			.compile("^[a-z][a-z0-9]*(?:,[a-z][a-z0-9]*)*$");
+
+	/** Times in milliseconds above this are since the epoch, not the uptime. */
+	private static final long EPOCH_THRESHOLD_MILLIS = 100000000000L;
+
+	private final long jvmStartTime;
+	private final SimpleDateFormat timeFormat = new SimpleDateFormat(
+			"yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+	private long lastTime = Long.MIN_VALUE;
+	private long skippedLineCount;
+
+	/**
+	 * Instantiates a new GC log parser.
+	 * 
+	 * @param jvmStartTime
+	 *            the time the JVM started in milliseconds since the epoch, to
+	 *            place the uptime decorations; -1 if unknown
+	 */
+	public GcLogParser(long jvmStartTime) {
+		this.jvmStartTime = jvmStartTime;
+	}
+
+	/**
+	 * Parses a GC log file.
+	 * 
+	 * @param file
+	 *            the file
+	 * @return the GC cycles ordered by end time
+	 * @throws IOException
+	 *             if the file can not be read or only has uptime decorations
+	 *             while the JVM start time is unknown
+	 */
+	public List<GcCycle> parse(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file),
+				"UTF-8");
+		try {
+			return parse(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parses a GC log.
+	 * 
+	 * @param reader
+	 *            the reader of the log
+	 * @return the GC cycles ordered by end time
+	 * @throws IOException
+	 *             if the log can not be read or only has uptime decorations
+	 *             while the JVM start time is unknown
+	 */
+	public List<GcCycle> parse(Reader reader) throws IOException {
+		Map<Long, GcCycle> cycles = new HashMap<Long, GcCycle>();
+		BufferedReader in = new BufferedReader(reader);
+
+		String line;
+		while ((line = in.readLine()) != null) {
+			parseLine(line, cycles);
+		}
+
+		List<GcCycle> sorted = new ArrayList<GcCycle>(cycles.values());
+		Collections.sort(sorted, new Comparator<GcCycle>() {
+			@Override
+			public int compare(GcCycle o1, GcCycle o2) {
+				if (o1.getEndTime() != o2.getEndTime()) {
+					return o1.getEndTime() < o2.getEndTime() ? -1 : 1;
+				}
+				return o1.getId() < o2.getId() ? -1
+						: (o1.getId() == o2.getId() ? 0 : 1);
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Gets the time of the last line of the logs parsed so far, the reclaims
+	 * after it can not be attributed to a cycle of the logs.
+	 * 
+	 * @return the last time in milliseconds since the epoch,
+	 *         {@link Long#MIN_VALUE} if no line had a time
+	 */
+	public long getLastTime() {
+		return lastTime;
+	}
+
+	/**
+	 * Gets the number of lines that had no time decoration.
+	 * 
+	 * @return the skipped line count
+	 */
+	public long getSkippedLineCount() {
+		return skippedLineCount;
+	}
+
+	private void parseLine(String line, Map<Long, GcCycle> cycles)
+			throws IOException {
+		long epochTime = Long.MIN_VALUE;
+		long uptime = Long.MIN_VALUE;
+		String tags = null;
+
+		int position = 0;
+		while (position < line.length() && line.charAt(position) == '[') {
+			int end = line.indexOf(']', position);
+			if (end < 0) {
+				break;
+			}
+
+			String decoration = line.substring(position + 1, end).trim();
+			position = end + 1;
+
+			Matcher matcher;
+			if (TIME_DECORATION.matcher(decoration).matches()) {
+				try {
+					epochTime = timeFormat.parse(decoration.replace(',', '.'))
+							.getTime();
+				} catch (ParseException e) {
+					// not a time after all
+				}
+			} else if ((matcher = MILLIS_DECORATION.matcher(decoration))
+					.matches()) {
+				long value = Long.parseLong(matcher.group(1));
+				if (value > EPOCH_THRESHOLD_MILLIS) {
+					epochTime = value;
+				} else {
+					uptime = value;
+				}
+			} else if ((matcher = NANOS_DECORATION.matcher(decoration))
+					.matches()) {
+				long value = Long.parseLong(matcher.group(1)) / 1000000;
+				if (value > EPOCH_THRESHOLD_MILLIS) {
+					epochTime = value;
+				} else {
+					uptime = value;
+				}
+			} else if ((matcher = SECONDS_DECORATION.matcher(decoration))
+					.matches()) {
+				String fraction = (matcher.group(2) + "00").substring(0, 3);
+				uptime = Long.parseLong(matcher.group(1)) * 1000
+						+ Long.parseLong(fraction);
+			} else if (TAGS_DECORATION.matcher(decoration).matches()
+					&& !isLevel(decoration)) {
+				tags = decoration;
+			}
+		}
+
+		long time;
+		if (epochTime != Long.MIN_VALUE) {
+			time = epochTime;
+		} else if (uptime != Long.MIN_VALUE) {
+			if (jvmStartTime < 0) {
+				throw new IOException(
+						"The GC log only has uptime decorations, the JVM start time is needed");
+			}
+			time = jvmStartTime + uptime;
+		} else {
+			skippedLineCount++;
+			return;
+		}
+		lastTime = Math.max(lastTime, time);
+
+		if (tags != null && !tags.equals("gc")) {
+			return;
+		}
+
+		Matcher matcher = GC_ID.matcher(line.substring(position).trim());
+		if (!matcher.matches()) {
+			return;
+		}
+
+		long id = Long.parseLong(matcher.group(1));
+		String message = matcher.group(2);
+
+		double durationMillis = 0;
+		Matcher duration = DURATION.matcher(message);
+		if (duration.find()) {
+			durationMillis = Double.parseDouble(duration.group(1).replace(',',
+					'.'));
+		}
+
+		GcCycle cycle = cycles.get(id);
+		if (cycle == null) {
+			cycle = new GcCycle(id);
+			cycles.put(id, cycle);
+		}
+		if (cycle.getName() == null) {
+			cycle.setName(cycleName(message, duration));
+		}
+		cycle.addLine(time, durationMillis, message.startsWith("Pause"));
+	}
+
+	private static String cycleName(String message, Matcher duration) {
+		String name = message;
+		int transition = name.indexOf("->");
+		if (transition >= 0) {
+			int start = name.lastIndexOf(' ', transition);
+			name = start < 0 ? "" : name.substring(0, start);
+		} else if (duration.find(0)) {
+			name = name.substring(0, duration.start());
+		}
+		return name.trim();
+	}
+
+	private static boolean isLevel(String decoration) {
+		return decoration.equals("trace") || decoration.equals("debug")
+				|| decoration.equals("info") || decoration.equals("warning")
+				|| decoration.equals("error");
+	}
+}
@@ -0,0 +1,795 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import com.gcr.monitors.modules.notification.structs.JournalRecordFormat;
+import com.gcr.structs.CreationTrace;
+import com.gcr.structs.CreationTraceTrie;
+import com.gcr.structs.LifetimeHistogram;
+import com.gcr.tools.structs.GcCycle;
+
+/**
+ * The Class JournalAnalyzer is the command line analyzer of the segments
+ * written by the journal notification module. It reports, per class, the
+ * distribution of the time from adding an object to it being orphaned and
+ * reclaimed, the objects that were orphaned but not reclaimed by the end of
+ * the journal, the orphan & reclaim rates over time and, given a JVM unified
+ * GC log, the GC cycle each reclaim followed. The survivors whose creation
+ * trace was sampled are also aggregated by creation site.
+ * 
+ * The segments are streamed record by record. The memory used grows with the
+ * number of classes, the length of the journal in rate intervals, the number
+ * of GC cycles and the orphaned keys waiting for their reclaim, the keys
+ * carried from one segment to the next are capped.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class JournalAnalyzer {
+
+	/** The default length of the rate intervals. */
+	public static final long DEFAULT_INTERVAL_MILLIS = 10000;
+
+	/** The default number of the oldest survivors listed. */
+	public static final int DEFAULT_SURVIVOR_LIMIT = 20;
+
+	/** The default number of GC cycles listed. */
+	public static final int DEFAULT_GC_CYCLE_LIMIT = 20;
+
+	/** The default number of orphaned keys carried across segments. */
+	public static final int DEFAULT_MAX_CARRIED_KEYS = 1000000;
+
+	/** The default number of creation sites listed. */
+	public static final int DEFAULT_SITE_LIMIT = 10;
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private final long intervalMillis;
+	private final int survivorLimit;
+	private final int gcCycleLimit;
+	private final int maxCarriedKeys;
+	private final int siteLimit;
+
+	private final Map<String, ClassStats> classStats = new TreeMap<String, ClassStats>();
+	private final List<File> segmentFiles = new ArrayList<File>();
+	private final Map<Long, TrackedKey> carriedKeys;
+	private final TreeMap<Long, long[]> rates = new TreeMap<Long, long[]>();
+
+	// the creation traces of all the segments, interned once
+	private final CreationTraceTrie traces = new CreationTraceTrie(
+			Integer.MAX_VALUE);
+
+	private GcCycle[] gcCycles;
+	private long[] gcCycleEnds;
+	private long[] gcCycleReclaimCounts;
+	private long gcLogEnd;
+	private long unattributedReclaimCount;
+
+	private long recordCount;
+	private long truncatedSegmentCount;
+	private long unknownKeyCount;
+	private long evictedKeyCount;
+	private long orphanedCount;
+	private long reclaimedCount;
+	private long firstTime = Long.MAX_VALUE;
+	private long lastTime = Long.MIN_VALUE;
+
+	/**
+	 * Instantiates a new journal analyzer with the default settings.
+	 */
+	public JournalAnalyzer() {
+		this(DEFAULT_INTERVAL_MILLIS, DEFAULT_SURVIVOR_LIMIT,
+				DEFAULT_GC_CYCLE_LIMIT, DEFAULT_MAX_CARRIED_KEYS);
+	}
+
+	/**
+	 * Instantiates a new journal analyzer listing the default number of
+	 * creation sites.
+	 * 
+	 * @param intervalMillis
+	 *            the length of the rate intervals
+	 * @param survivorLimit
+	 *            the number of the oldest survivors listed
+	 * @param gcCycleLimit
+	 *            the number of GC cycles listed, the ones with the most
+	 *            reclaims
+	 * @param maxCarriedKeys
+	 *            the number of orphaned keys carried across segments, the
+	 *            oldest ones are forgotten beyond it
+	 */
+	public JournalAnalyzer(long intervalMillis, int survivorLimit,
+			int gcCycleLimit, int maxCarriedKeys) {
+		this(intervalMillis, survivorLimit, gcCycleLimit, maxCarriedKeys,
+				DEFAULT_SITE_LIMIT);
+	}
+
+	/**
+	 * Instantiates a new journal analyzer.
+	 * 
+	 * @param intervalMillis
+	 *            the length of the rate intervals
+	 * @param survivorLimit
+	 *            the number of the oldest survivors listed
+	 * @param gcCycleLimit
+	 *            the number of GC cycles listed, the ones with the most
+	 *            reclaims
+	 * @param maxCarriedKeys
+	 *            the number of orphaned keys carried across segments, the
+	 *            oldest ones are forgotten beyond it
+	 * @param siteLimit
+	 *            the number of creation sites listed, the ones with the most
+	 *            survivors
+	 */
+	public JournalAnalyzer(long intervalMillis, int survivorLimit,
+			int gcCycleLimit, final int maxCarriedKeys, int siteLimit) {
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException(
+					"The interval must be greater than 0");
+		}
+
+		this.intervalMillis = intervalMillis;
+		this.survivorLimit = survivorLimit;
+		this.gcCycleLimit = gcCycleLimit;
+		this.maxCarriedKeys = maxCarriedKeys;
+		this.siteLimit = siteLimit;
+		this.carriedKeys = new LinkedHashMap<Long, TrackedKey>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Long, TrackedKey> eldest) {
+				if (size() > JournalAnalyzer.this.maxCarriedKeys) {
+					evictedKeyCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Sets the GC cycles the reclaims are attributed to.
+	 * 
+	 * @param cycles
+	 *            the cycles ordered by end time
+	 * @param logEnd
+	 *            the time of the end of the GC log, the reclaims after it are
+	 *            not attributed
+	 */
+	public void setGcCycles(List<GcCycle> cycles, long logEnd) {
+		gcCycles = cycles.toArray(new GcCycle[cycles.size()]);
+		gcCycleEnds = new long[gcCycles.length];
+		gcCycleReclaimCounts = new long[gcCycles.length];
+		for (int i = 0; i < gcCycles.length; i++) {
+			gcCycleEnds[i] = gcCycles[i].getEndTime();
+		}
+		gcLogEnd = logEnd;
+	}
+
+	/**
+	 * Analyzes a segment, the segments must be analyzed in sequence order.
+	 * 
+	 * @param segment
+	 *            the segment file
+	 * @throws IOException
+	 *             if the segment can not be read
+	 */
+	public void analyze(File segment) throws IOException {
+		JournalReader reader = new JournalReader(segment);
+		try {
+			int segmentIndex = segmentFiles.size();
+			segmentFiles.add(segment);
+
+			List<ClassStats> classes = new ArrayList<ClassStats>();
+			List<CreationTrace> segmentTraces = new ArrayList<CreationTrace>();
+			Map<Integer, TrackedKey> liveKeys = new HashMap<Integer, TrackedKey>();
+
+			while (reader.next()) {
+				recordCount++;
+				switch (reader.getType()) {
+				case JournalRecordFormat.CLASS_DEF:
+					defineClass(classes, reader.getClassId(),
+							reader.getString());
+					break;
+				case JournalRecordFormat.KEY_DEF:
+					liveKeys.put(reader.getKeyId(),
+							defineKey(reader, classes, segmentIndex));
+					break;
+				case JournalRecordFormat.TRACE_DEF:
+					defineTrace(segmentTraces, reader);
+					break;
+				case JournalRecordFormat.KEY_TRACE:
+					traceKey(liveKeys.get(reader.getKeyId()), segmentTraces,
+							reader);
+					break;
+				case JournalRecordFormat.START_MONITORING:
+				case JournalRecordFormat.STOP_MONITORING:
+					observe(reader.getTime());
+					break;
+				case JournalRecordFormat.PRE_GC:
+					orphaned(liveKeys.get(reader.getKeyId()), reader.getTime());
+					break;
+				case JournalRecordFormat.POST_GC:
+					reclaimed(liveKeys.remove(reader.getKeyId()),
+							reader.getTime());
+					break;
+				default:
+					break;
+				}
+			}
+
+			if (reader.isTruncated()) {
+				truncatedSegmentCount++;
+			}
+
+			for (TrackedKey key : liveKeys.values()) {
+				carriedKeys.put(carriedId(key.identifierHash, key.added), key);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Prints the report of the segments analyzed so far.
+	 * 
+	 * @param out
+	 *            the stream to print to
+	 * @throws IOException
+	 *             if the identifiers of the survivors can not be read
+	 */
+	public void report(PrintStream out) throws IOException {
+		SimpleDateFormat timeFormat = new SimpleDateFormat(
+				"yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+		timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		out.println("gcRadar journal analysis");
+		out.println("  segments:   " + segmentFiles.size() + " ("
+				+ truncatedSegmentCount + " truncated)");
+		out.println("  records:    " + recordCount);
+		if (firstTime <= lastTime) {
+			out.println("  time range: " + timeFormat.format(new Date(firstTime))
+					+ " - " + timeFormat.format(new Date(lastTime)));
+		}
+		out.println("  orphaned:   " + orphanedCount);
+		out.println("  reclaimed:  " + reclaimedCount);
+		if (unknownKeyCount > 0) {
+			out.println("  events of undefined keys: " + unknownKeyCount);
+		}
+
+		reportLifetimes(out);
+		reportSurvivors(out, timeFormat);
+		reportRates(out, timeFormat);
+		if (gcCycles != null) {
+			reportGcCycles(out, timeFormat);
+		}
+	}
+
+	private void reportLifetimes(PrintStream out) {
+		out.println();
+		out.println("Lifetimes per class (ms)");
+		StringBuilder header = new StringBuilder(String.format(
+				"  %-24s %12s", "", "count"));
+		for (double percentile : PERCENTILES) {
+			header.append(String.format(" %10s", "p" + formatPercentile(percentile)));
+		}
+		header.append(String.format(" %10s %12s", "max", "mean"));
+		out.println(header);
+
+		for (ClassStats stats : classStats.values()) {
+			out.println(stats.name);
+			printHistogram(out, "added -> orphaned", stats.addedToOrphaned);
+			printHistogram(out, "added -> reclaimed", stats.addedToReclaimed);
+			printHistogram(out, "orphaned -> reclaimed",
+					stats.orphanedToReclaimed);
+		}
+	}
+
+	private void reportSurvivors(PrintStream out, SimpleDateFormat timeFormat)
+			throws IOException {
+		Map<ClassStats, int[]> perClass = new LinkedHashMap<ClassStats, int[]>();
+		PriorityQueue<TrackedKey> oldest = new PriorityQueue<TrackedKey>(
+				Math.max(1, survivorLimit), new Comparator<TrackedKey>() {
+					@Override
+					public int compare(TrackedKey o1, TrackedKey o2) {
+						// newest first, so the head is dropped when full
+						return o1.added > o2.added ? -1
+								: (o1.added == o2.added ? 0 : 1);
+					}
+				});
+
+		for (TrackedKey key : carriedKeys.values()) {
+			int[] count = perClass.get(key.stats);
+			if (count == null) {
+				count = new int[1];
+				perClass.put(key.stats, count);
+			}
+			count[0]++;
+
+			if (survivorLimit > 0) {
+				oldest.add(key);
+				if (oldest.size() > survivorLimit) {
+					oldest.poll();
+				}
+			}
+		}
+
+		out.println();
+		out.println("Survivors, orphaned but not reclaimed by the end of the journal: "
+				+ carriedKeys.size());
+		if (evictedKeyCount > 0) {
+			out.println("  not tracked, beyond the carried key limit: "
+					+ evictedKeyCount);
+		}
+		for (Map.Entry<ClassStats, int[]> entry : perClass.entrySet()) {
+			out.println(String.format("  %-60s %10d", entry.getKey().name,
+					entry.getValue()[0]));
+		}
+		reportSurvivorSites(out);
+
+		if (!oldest.isEmpty()) {
+			List<TrackedKey> survivors = new ArrayList<TrackedKey>(oldest);
+			Collections.sort(survivors, Collections.reverseOrder(oldest
+					.comparator()));
+
+			out.println("  Oldest survivors");
+			for (TrackedKey key : survivors) {
+				String identifier = JournalReader.readString(
+						segmentFiles.get(key.segmentIndex),
+						key.identifierPosition);
+				out.println("    " + identifier + " (" + key.stats.name
+						+ ") added "
+						+ timeFormat.format(new Date(key.added))
+						+ (key.orphaned == 0 ? "" : ", orphaned "
+								+ timeFormat.format(new Date(key.orphaned)))
+						+ (key.trace == null ? "" : " at "
+								+ key.trace.getSite().getFrame()));
+			}
+		}
+	}
+
+	private void reportSurvivorSites(PrintStream out) {
+		Map<CreationTrace, Map<CreationTrace, int[]>> bySite = new IdentityHashMap<CreationTrace, Map<CreationTrace, int[]>>();
+		final Map<CreationTrace, int[]> siteCounts = new IdentityHashMap<CreationTrace, int[]>();
+		int tracedCount = 0;
+		for (TrackedKey key : carriedKeys.values()) {
+			if (key.trace == null) {
+				continue;
+			}
+			tracedCount++;
+
+			CreationTrace site = key.trace.getSite();
+			Map<CreationTrace, int[]> traceCounts = bySite.get(site);
+			if (traceCounts == null) {
+				traceCounts = new IdentityHashMap<CreationTrace, int[]>();
+				bySite.put(site, traceCounts);
+				siteCounts.put(site, new int[1]);
+			}
+			siteCounts.get(site)[0]++;
+			int[] count = traceCounts.get(key.trace);
+			if (count == null) {
+				count = new int[1];
+				traceCounts.put(key.trace, count);
+			}
+			count[0]++;
+		}
+		if (tracedCount == 0 || siteLimit <= 0) {
+			return;
+		}
+
+		List<CreationTrace> sites = new ArrayList<CreationTrace>(
+				bySite.keySet());
+		Collections.sort(sites, new Comparator<CreationTrace>() {
+			@Override
+			public int compare(CreationTrace o1, CreationTrace o2) {
+				int c1 = siteCounts.get(o1)[0];
+				int c2 = siteCounts.get(o2)[0];
+				return c1 > c2 ? -1 : (c1 == c2 ? 0 : 1);
+			}
+		});
+
+		out.println("  Survivors per creation site, " + tracedCount
+				+ " traced in " + sites.size() + " sites");
+		for (int i = 0; i < sites.size() && i < siteLimit; i++) {
+			CreationTrace site = sites.get(i);
+			CreationTrace topTrace = null;
+			int topCount = 0;
+			for (Map.Entry<CreationTrace, int[]> entry : bySite.get(site)
+					.entrySet()) {
+				if (entry.getValue()[0] > topCount) {
+					topTrace = entry.getKey();
+					topCount = entry.getValue()[0];
+				}
+			}
+
+			out.println(String.format("    %10d  %s", siteCounts.get(site)[0],
+					site.getFrame()));
+			out.println("                most frequent trace, " + topCount
+					+ " survivors:");
+			for (String frame : topTrace.getFrames()) {
+				out.println("                  at " + frame);
+			}
+		}
+	}
+
+	private void reportRates(PrintStream out, SimpleDateFormat timeFormat) {
+		out.println();
+		out.println("Rates per " + intervalMillis + " ms");
+		out.println(String.format("  %-28s %12s %12s %12s", "interval start",
+				"orphaned", "reclaimed", "reclaimed/s"));
+		for (Map.Entry<Long, long[]> entry : rates.entrySet()) {
+			long[] counts = entry.getValue();
+			out.println(String.format("  %-28s %12d %12d %12.1f", timeFormat
+					.format(new Date(entry.getKey())), counts[0], counts[1],
+					counts[1] * 1000.0 / intervalMillis));
+		}
+	}
+
+	private void reportGcCycles(PrintStream out, SimpleDateFormat timeFormat) {
+		Integer[] order = new Integer[gcCycles.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				long c1 = gcCycleReclaimCounts[o1];
+				long c2 = gcCycleReclaimCounts[o2];
+				return c1 > c2 ? -1 : (c1 == c2 ? o1.compareTo(o2) : 1);
+			}
+		});
+
+		long attributed = reclaimedCount - unattributedReclaimCount;
+		out.println();
+		out.println("Reclaims per GC cycle: " + gcCycles.length
+				+ " cycles, " + attributed + " reclaims attributed, "
+				+ unattributedReclaimCount + " outside of the GC log");
+		out.println(String.format("  %-8s %-28s %10s %12s  %s", "GC",
+				"end", "pause ms", "reclaimed", "cycle"));
+		for (int i = 0; i < order.length && i < gcCycleLimit; i++) {
+			GcCycle cycle = gcCycles[order[i]];
+			if (gcCycleReclaimCounts[order[i]] == 0) {
+				break;
+			}
+			out.println(String.format("  %-8s %-28s %10.3f %12d  %s", "GC("
+					+ cycle.getId() + ")", timeFormat.format(new Date(cycle
+					.getEndTime())), cycle.getPauseMillis(),
+					gcCycleReclaimCounts[order[i]], cycle.getName()));
+		}
+	}
+
+	private void defineClass(List<ClassStats> classes, int classId, String name) {
+		ClassStats stats = classStats.get(name);
+		if (stats == null) {
+			stats = new ClassStats(name);
+			classStats.put(name, stats);
+		}
+
+		while (classes.size() <= classId) {
+			classes.add(null);
+		}
+		classes.set(classId, stats);
+	}
+
+	private TrackedKey defineKey(JournalReader reader,
+			List<ClassStats> classes, int segmentIndex) throws IOException {
+		long identifierHash = reader.getStringHash();
+		long added = reader.getTime();
+
+		TrackedKey key = carriedKeys.remove(carriedId(identifierHash, added));
+		if (key == null) {
+			int classId = reader.getClassId();
+			if (classId >= classes.size() || classes.get(classId) == null) {
+				throw new IOException("Undefined class id " + classId + " in "
+						+ reader.getFile());
+			}
+
+			key = new TrackedKey();
+			key.stats = classes.get(classId);
+			key.added = added;
+			key.identifierHash = identifierHash;
+		}
+		key.segmentIndex = segmentIndex;
+		key.identifierPosition = reader.getStringPosition();
+		return key;
+	}
+
+	private void defineTrace(List<CreationTrace> segmentTraces,
+			JournalReader reader) throws IOException {
+		int parentId = reader.getParentTraceId();
+		String[] frames;
+		if (parentId < 0) {
+			frames = new String[] { reader.getString() };
+		} else {
+			if (parentId >= segmentTraces.size()
+					|| segmentTraces.get(parentId) == null) {
+				throw new IOException("Undefined trace id " + parentId
+						+ " in " + reader.getFile());
+			}
+			String[] parentFrames = segmentTraces.get(parentId).getFrames();
+			frames = Arrays.copyOf(parentFrames, parentFrames.length + 1);
+			frames[parentFrames.length] = reader.getString();
+		}
+
+		while (segmentTraces.size() <= reader.getTraceId()) {
+			segmentTraces.add(null);
+		}
+		segmentTraces.set(reader.getTraceId(),
+				traces.intern(frames, frames.length));
+	}
+
+	private void traceKey(TrackedKey key, List<CreationTrace> segmentTraces,
+			JournalReader reader) throws IOException {
+		int traceId = reader.getTraceId();
+		if (traceId >= segmentTraces.size()
+				|| segmentTraces.get(traceId) == null) {
+			throw new IOException("Undefined trace id " + traceId + " in "
+					+ reader.getFile());
+		}
+		if (key != null) {
+			key.trace = segmentTraces.get(traceId);
+		}
+	}
+
+	private void orphaned(TrackedKey key, long time) {
+		observe(time);
+		if (key == null) {
+			unknownKeyCount++;
+			return;
+		}
+
+		key.orphaned = time;
+		key.stats.addedToOrphaned.record(time - key.added);
+		orphanedCount++;
+		rate(time)[0]++;
+	}
+
+	private void reclaimed(TrackedKey key, long time) {
+		observe(time);
+		if (key == null) {
+			unknownKeyCount++;
+			return;
+		}
+
+		key.stats.addedToReclaimed.record(time - key.added);
+		if (key.orphaned != 0) {
+			key.stats.orphanedToReclaimed.record(time - key.orphaned);
+		}
+		reclaimedCount++;
+		rate(time)[1]++;
+
+		if (gcCycles != null) {
+			int cycle = Arrays.binarySearch(gcCycleEnds, time);
+			if (cycle < 0) {
+				cycle = -(cycle + 1) - 1;
+			}
+			if (cycle < 0 || time > gcLogEnd) {
+				unattributedReclaimCount++;
+			} else {
+				gcCycleReclaimCounts[cycle]++;
+			}
+		}
+	}
+
+	private void observe(long time) {
+		firstTime = Math.min(firstTime, time);
+		lastTime = Math.max(lastTime, time);
+	}
+
+	private long[] rate(long time) {
+		long start = time - ((time % intervalMillis) + intervalMillis)
+				% intervalMillis;
+		long[] counts = rates.get(start);
+		if (counts == null) {
+			counts = new long[2];
+			rates.put(start, counts);
+		}
+		return counts;
+	}
+
+	private static long carriedId(long identifierHash, long added) {
+		return identifierHash * 31 + added;
+	}
+
+	private static void printHistogram(PrintStream out, String label,
+			LifetimeHistogram histogram) {
+		StringBuilder line = new StringBuilder(String.format("  %-24s %12d",
+				label, histogram.getCount()));
+		for (double percentile : PERCENTILES) {
+			line.append(String.format(" %10d",
+					histogram.getValueAtPercentile(percentile)));
+		}
+		line.append(String.format(" %10d %12.1f", histogram.getMax(),
+				histogram.getMean()));
+		out.println(line);
+	}
+
+	private static String formatPercentile(double percentile) {
+		return percentile == Math.floor(percentile) ? String
+				.valueOf((long) percentile) : String.valueOf(percentile);
+	}
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the options followed by the segment files & directories
+	 */
+	public static void main(String[] args) {
+		long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+		int survivorLimit = DEFAULT_SURVIVOR_LIMIT;
+		int gcCycleLimit = DEFAULT_GC_CYCLE_LIMIT;
+		int maxCarriedKeys = DEFAULT_MAX_CARRIED_KEYS;
+		int siteLimit = DEFAULT_SITE_LIMIT;
+		File gcLog = null;
+		long jvmStartTime = -1;
+		List<File> inputs = new ArrayList<File>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("--gc-log")) {
+					gcLog = new File(optionValue(args, ++i));
+				} else if (arg.equals("--jvm-start")) {
+					jvmStartTime = Long.parseLong(optionValue(args, ++i));
+				} else if (arg.equals("--interval")) {
+					intervalMillis = Long.parseLong(optionValue(args, ++i)) * 1000;
+				} else if (arg.equals("--survivors")) {
+					survivorLimit = Integer.parseInt(optionValue(args, ++i));
+				} else if (arg.equals("--gc-cycles")) {
+					gcCycleLimit = Integer.parseInt(optionValue(args, ++i));
+				} else if (arg.equals("--max-tracked")) {
+					maxCarriedKeys = Integer.parseInt(optionValue(args, ++i));
+				} else if (arg.equals("--sites")) {
+					siteLimit = Integer.parseInt(optionValue(args, ++i));
+				} else if (arg.startsWith("--")) {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				} else {
+					inputs.add(new File(arg));
+				}
+			}
+			if (inputs.isEmpty()) {
+				throw new IllegalArgumentException("No journal given");
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+			return;
+		}
+
+		try {
+			JournalAnalyzer analyzer = new JournalAnalyzer(intervalMillis,
+					survivorLimit, gcCycleLimit, maxCarriedKeys, siteLimit);
+
+			if (gcLog != null) {
+				GcLogParser parser = new GcLogParser(jvmStartTime);
+				List<GcCycle> cycles = parser.parse(gcLog);
+				analyzer.setGcCycles(cycles, parser.getLastTime());
+			}
+
+			for (File segment : listSegments(inputs)) {
+				analyzer.analyze(segment);
+			}
+			analyzer.report(System.out);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static List<File> listSegments(List<File> inputs)
+			throws IOException {
+		final Map<File, Long> sequences = new HashMap<File, Long>();
+		for (File input : inputs) {
+			File[] files = input.isDirectory() ? input.listFiles()
+					: new File[] { input };
+			if (files == null) {
+				throw new IOException("Can not list " + input);
+			}
+
+			for (File file : files) {
+				if (input.isDirectory()
+						&& !file.getName().endsWith(
+								JournalRecordFormat.SEGMENT_EXTENSION)) {
+					continue;
+				}
+
+				JournalReader reader = new JournalReader(file,
+						JournalRecordFormat.HEADER_SIZE);
+				try {
+					sequences.put(file, reader.getSequence());
+				} finally {
+					reader.close();
+				}
+			}
+		}
+
+		List<File> segments = new ArrayList<File>(sequences.keySet());
+		Collections.sort(segments, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return sequences.get(o1).compareTo(sequences.get(o2));
+			}
+		});
+		return segments;
+	}
+
+	private static String optionValue(String[] args, int index) {
+		if (index >= args.length) {
+			throw new IllegalArgumentException("Missing value of "
+					+ args[index - 1]);
+		}
+		return args[index];
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: java " + JournalAnalyzer.class.getName()
+				+ " [options] <segment file | directory>...");
+		System.err.println("  --gc-log <file>        unified GC log (-Xlog:gc) to attribute the reclaims to GC cycles");
+		System.err.println("  --jvm-start <millis>   JVM start time since the epoch, for GC logs with uptime decorations only");
+		System.err.println("  --interval <seconds>   length of the rate intervals, default "
+				+ DEFAULT_INTERVAL_MILLIS / 1000);
+		System.err.println("  --survivors <count>    number of the oldest survivors listed, default "
+				+ DEFAULT_SURVIVOR_LIMIT);
+		System.err.println("  --gc-cycles <count>    number of GC cycles listed, default "
+				+ DEFAULT_GC_CYCLE_LIMIT);
+		System.err.println("  --max-tracked <count>  orphaned keys carried across segments, default "
+				+ DEFAULT_MAX_CARRIED_KEYS);
+		System.err.println("  --sites <count>        number of creation sites of the survivors listed, default "
+				+ DEFAULT_SITE_LIMIT);
+	}
+
+	private static class ClassStats {
+		private final String name;
+		private final LifetimeHistogram addedToOrphaned = new LifetimeHistogram();
+		private final LifetimeHistogram addedToReclaimed = new LifetimeHistogram();
+		private final LifetimeHistogram orphanedToReclaimed = new LifetimeHistogram();
+
+		private ClassStats(String name) {
+			this.name = name;
+		}
+	}
+
+	private static class TrackedKey {
+		private ClassStats stats;
+		private long added;
+		private long orphaned;
+		private long identifierHash;
+		private int segmentIndex;
+		private long identifierPosition;
+		private CreationTrace trace;
+	}
+}
@@ -0,0 +1,426 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.gcr.monitors.modules.notification.structs.JournalRecordFormat;
+
+/**
+ * The Class JournalReader reads the records of a journal segment one at a time
+ * through a fixed size buffer, so segments of any size can be read in bounded
+ * memory. The values of the current record are exposed by the getters until
+ * the next call to {@link #next()}. The segments of every version of the
+ * format up to {@link JournalRecordFormat#VERSION} are read, the ones of
+ * version 1 have no creation traces.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class JournalReader implements Closeable {
+
+	/** The default size of the read buffer. */
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	private static final int MAX_RECORD_SIZE = 1 + 3 * JournalRecordFormat.MAX_VARINT_BYTES
+			+ JournalRecordFormat.MAX_STRING_BYTES;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private long bufferOffset;
+
+	private final long sequence;
+	private final long baseTime;
+	private long lastEventTime;
+	private boolean ended;
+	private boolean truncated;
+
+	private byte type;
+	private int classId;
+	private int keyId;
+	private int traceId;
+	private int parentTraceId;
+	private long time;
+	private final byte[] string = new byte[JournalRecordFormat.MAX_STRING_BYTES];
+	private int stringLength;
+	private long stringHash;
+	private long stringPosition;
+
+	/**
+	 * Opens a segment with the default buffer size.
+	 * 
+	 * @param file
+	 *            the segment file
+	 * @throws IOException
+	 *             if the file can not be read or is not a journal segment
+	 */
+	public JournalReader(File file) throws IOException {
+		this(file, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a segment.
+	 * 
+	 * @param file
+	 *            the segment file
+	 * @param bufferSize
+	 *            the size of the read buffer, raised to twice the largest
+	 *            record size if smaller
+	 * @throws IOException
+	 *             if the file can not be read or is not a journal segment
+	 */
+	public JournalReader(File file, int bufferSize) throws IOException {
+		this.file = file;
+		this.randomAccessFile = new RandomAccessFile(file, "r");
+		this.channel = randomAccessFile.getChannel();
+		this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize,
+				2 * MAX_RECORD_SIZE));
+		buffer.flip();
+
+		try {
+			fill(JournalRecordFormat.HEADER_SIZE);
+			if (buffer.remaining() < JournalRecordFormat.HEADER_SIZE
+					|| buffer.getInt() != JournalRecordFormat.MAGIC) {
+				throw new IOException(file + " is not a gcRadar journal segment");
+			}
+
+			byte version = buffer.get();
+			if (version < 1 || version > JournalRecordFormat.VERSION) {
+				throw new IOException("Unsupported journal version " + version
+						+ " in " + file);
+			}
+
+			sequence = buffer.getLong();
+			baseTime = buffer.getLong();
+			lastEventTime = baseTime;
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the next record.
+	 * 
+	 * @return true, if a record has been read; false at the end of the
+	 *         segment
+	 * @throws IOException
+	 *             if the file can not be read or holds an unknown record
+	 */
+	public boolean next() throws IOException {
+		if (ended) {
+			return false;
+		}
+
+		fill(MAX_RECORD_SIZE);
+		if (!buffer.hasRemaining()) {
+			// a full segment ends without an end of segment marker
+			ended = true;
+			return false;
+		}
+
+		try {
+			type = buffer.get();
+			switch (type) {
+			case JournalRecordFormat.END_OF_SEGMENT:
+				ended = true;
+				return false;
+			case JournalRecordFormat.CLASS_DEF:
+				classId = (int) JournalRecordFormat.getVarLong(buffer);
+				readString();
+				break;
+			case JournalRecordFormat.KEY_DEF:
+				keyId = (int) JournalRecordFormat.getVarLong(buffer);
+				classId = (int) JournalRecordFormat.getVarLong(buffer);
+				time = baseTime + JournalRecordFormat.getZigZagLong(buffer);
+				readString();
+				break;
+			case JournalRecordFormat.START_MONITORING:
+			case JournalRecordFormat.STOP_MONITORING:
+				time = readEventTime();
+				break;
+			case JournalRecordFormat.PRE_GC:
+			case JournalRecordFormat.POST_GC:
+				time = readEventTime();
+				keyId = (int) JournalRecordFormat.getVarLong(buffer);
+				break;
+			case JournalRecordFormat.TRACE_DEF:
+				traceId = (int) JournalRecordFormat.getVarLong(buffer);
+				parentTraceId = (int) JournalRecordFormat.getVarLong(buffer) - 1;
+				readString();
+				break;
+			case JournalRecordFormat.KEY_TRACE:
+				keyId = (int) JournalRecordFormat.getVarLong(buffer);
+				traceId = (int) JournalRecordFormat.getVarLong(buffer);
+				break;
+			default:
+				throw new IOException("Unknown record type " + type + " at "
+						+ (bufferOffset + buffer.position() - 1) + " in "
+						+ file);
+			}
+		} catch (BufferUnderflowException e) {
+			ended = true;
+			truncated = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the segment file.
+	 * 
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the sequence number of the segment.
+	 * 
+	 * @return the sequence
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the base time of the segment.
+	 * 
+	 * @return the base time in milliseconds since the epoch
+	 */
+	public long getBaseTime() {
+		return baseTime;
+	}
+
+	/**
+	 * Checks if the segment ended in the middle of a record.
+	 * 
+	 * @return true, if truncated
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Gets the type of the current record, one of the record types of
+	 * {@link JournalRecordFormat}.
+	 * 
+	 * @return the type
+	 */
+	public byte getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the class id of the current class or key definition.
+	 * 
+	 * @return the class id
+	 */
+	public int getClassId() {
+		return classId;
+	}
+
+	/**
+	 * Gets the key id of the current key definition, key trace or GC event.
+	 * 
+	 * @return the key id
+	 */
+	public int getKeyId() {
+		return keyId;
+	}
+
+	/**
+	 * Gets the trace id of the current trace definition or key trace.
+	 * 
+	 * @return the trace id
+	 */
+	public int getTraceId() {
+		return traceId;
+	}
+
+	/**
+	 * Gets the id of the parent of the current trace definition.
+	 * 
+	 * @return the parent trace id, -1 for a creation site
+	 */
+	public int getParentTraceId() {
+		return parentTraceId;
+	}
+
+	/**
+	 * Gets the time of the current event or the time the key of the current
+	 * key definition was added.
+	 * 
+	 * @return the time in milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Gets the class name, the identifier or the frame of the current
+	 * definition.
+	 * 
+	 * @return the string
+	 */
+	public String getString() {
+		return decode(string, stringLength);
+	}
+
+	/**
+	 * Gets a 64 bit hash of the bytes of the current class name or identifier,
+	 * to match the identifiers without decoding them.
+	 * 
+	 * @return the hash
+	 */
+	public long getStringHash() {
+		return stringHash;
+	}
+
+	/**
+	 * Gets the position of the current class name or identifier in the file,
+	 * to read it again later with {@link #readString(File, long)}.
+	 * 
+	 * @return the position
+	 */
+	public long getStringPosition() {
+		return stringPosition;
+	}
+
+	/**
+	 * Closes the segment file.
+	 */
+	public void close() {
+		try {
+			randomAccessFile.close();
+		} catch (IOException e) {
+			// nothing to release anymore
+		}
+	}
+
+	/**
+	 * Reads a class name or identifier at a position returned by
+	 * {@link #getStringPosition()}.
+	 * 
+	 * @param file
+	 *            the segment file
+	 * @param position
+	 *            the position
+	 * @return the string
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static String readString(File file, long position)
+			throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			in.seek(position);
+
+			int length = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = in.readUnsignedByte();
+				length |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			}
+
+			byte[] bytes = new byte[Math.min(length,
+					JournalRecordFormat.MAX_STRING_BYTES)];
+			in.readFully(bytes);
+			return decode(bytes, bytes.length);
+		} finally {
+			in.close();
+		}
+	}
+
+	private long readEventTime() {
+		lastEventTime += JournalRecordFormat.getZigZagLong(buffer);
+		return lastEventTime;
+	}
+
+	private void readString() throws IOException {
+		stringPosition = bufferOffset + buffer.position();
+
+		long length = JournalRecordFormat.getVarLong(buffer);
+		if (length < 0 || length > JournalRecordFormat.MAX_STRING_BYTES) {
+			throw new IOException("Invalid string length " + length + " at "
+					+ stringPosition + " in " + file);
+		}
+
+		stringLength = (int) length;
+		buffer.get(string, 0, stringLength);
+
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < stringLength; i++) {
+			hash ^= string[i] & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		stringHash = hash;
+	}
+
+	private void fill(int needed) throws IOException {
+		if (buffer.remaining() >= needed) {
+			return;
+		}
+
+		bufferOffset += buffer.position();
+		buffer.compact();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+	}
+
+	private static String decode(byte[] bytes, int length) {
+		char[] chars = new char[length];
+		int count = 0;
+		int i = 0;
+		while (i < length) {
+			int b = bytes[i] & 0xFF;
+			if (b < 0x80) {
+				chars[count++] = (char) b;
+				i++;
+			} else if ((b & 0xE0) == 0xC0 && i + 1 < length) {
+				chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+				i += 2;
+			} else if ((b & 0xF0) == 0xE0 && i + 2 < length) {
+				chars[count++] = (char) (((b & 0x0F) << 12)
+						| ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+				i += 3;
+			} else {
+				chars[count++] = '\uFFFD';
+				i++;
+			}
+		}
+		return new String(chars, 0, count);
+	}
+}
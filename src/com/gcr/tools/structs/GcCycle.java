@@ -0,0 +1,117 @@
+/*This file is part of gcRadar.
+
+gcRadar is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by 
+the Free Software Foundation version 3 of the License.
+
+gcRadar is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with gcRadar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.gcr.tools.structs;
+
+/**
+ * The Class GcCycle holds a garbage collection cycle read from a JVM unified GC
+ * log.
+ * 
+ * @author R.daneel.olivaw
+ * @since 0.5
+ */
+public class GcCycle {
+
+	private final long id;
+	private String name;
+	private long startTime = Long.MAX_VALUE;
+	private long endTime = Long.MIN_VALUE;
+	private double pauseMillis;
+
+	/**
+	 * Instantiates a new GC cycle.
+	 * 
+	 * @param id
+	 *            the GC id as logged by the JVM
+	 */
+	public GcCycle(long id) {
+		this.id = id;
+	}
+
+	/**
+	 * Gets the GC id as logged by the JVM.
+	 * 
+	 * @return the id
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the name of the cycle, e.g. "Pause Young (Normal) (G1 Evacuation
+	 * Pause)".
+	 * 
+	 * @return the name, null if unknown
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Sets the name of the cycle.
+	 * 
+	 * @param name
+	 *            the new name
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gets the time the cycle started in milliseconds since the epoch.
+	 * 
+	 * @return the start time
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Gets the time the cycle ended in milliseconds since the epoch.
+	 * 
+	 * @return the end time
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Gets the total time the application was paused by the cycle.
+	 * 
+	 * @return the pause time in milliseconds
+	 */
+	public double getPauseMillis() {
+		return pauseMillis;
+	}
+
+	/**
+	 * Adds a log line of the cycle.
+	 * 
+	 * @param time
+	 *            the time the line was logged
+	 * @param durationMillis
+	 *            the duration reported by the line, 0 if none
+	 * @param pause
+	 *            whether the duration is a pause
+	 */
+	public void addLine(long time, double durationMillis, boolean pause) {
+		startTime = Math.min(startTime, time - (long) durationMillis);
+		endTime = Math.max(endTime, time);
+		if (pause) {
+			pauseMillis += durationMillis;
+		}
+	}
+}